@@ -33,7 +33,7 @@ public class CorsConfig {
         configuration.setAllowCredentials(true);
 
         // Exponer headers de autorización
-        configuration.setExposedHeaders(Arrays.asList("Authorization", "Content-Type"));
+        configuration.setExposedHeaders(Arrays.asList("Authorization", "Content-Type", "Idempotent-Replayed"));
 
         // Tiempo de cache para preflight requests
         configuration.setMaxAge(3600L);
@@ -0,0 +1,49 @@
+package com.example.ToolRent.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/*
+Herramientas, movimientos del kardex y prestamos tenian ids IDENTITY y ahora usan secuencias (pooled-lo).
+En una base de datos que ya tiene filas, ddl-auto crea la secuencia desde 1 y chocaria con los ids existentes,
+por eso al iniciar (antes de atender solicitudes) cada secuencia se adelanta al id maximo de su tabla si quedo atras.
+ */
+@Component
+public class IdSequenceInitializer {
+    private static final Logger log = LoggerFactory.getLogger(IdSequenceInitializer.class);
+
+    //Secuencia -> tabla
+    static final Map<String, String> SEQUENCES = Map.of(
+            "tools_seq", "tools",
+            "movimientos_seq", "movimientos",
+            "loans_seq", "loans");
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    //Se inyecta para que el esquema (ddl-auto) este creado antes de revisar las secuencias
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    public void alignSequences() {
+        Dialect dialect = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+        SEQUENCES.forEach((sequence, table) -> {
+            Long next = jdbcTemplate.queryForObject(dialect.getSequenceSupport().getSequenceNextValString(sequence), Long.class);
+            Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + table, Long.class);
+            if (next != null && maxId != null && next <= maxId) {
+                jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " RESTART WITH " + (maxId + 1));
+                log.info("Secuencia {} adelantada a {} (id maximo de {})", sequence, maxId + 1, table);
+            }
+        });
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.ToolRent.config;
+
+import com.example.ToolRent.services.IdempotencyService;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+Registro del filtro de Idempotency-Key. No es un @Component para que los tests @WebMvcTest de los controladores
+no lo carguen (no tienen IdempotencyService). Se ordena despues de la cadena de Spring Security para conocer
+al usuario autenticado.
+ */
+@Configuration
+public class IdempotencyConfig {
+
+    @Bean
+    public FilterRegistrationBean<IdempotencyFilter> idempotencyFilter(IdempotencyService idempotencyService) {
+        IdempotencyFilter filter = new IdempotencyFilter();
+        filter.idempotencyService = idempotencyService;
+        FilterRegistrationBean<IdempotencyFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns("/api/v1/loans/*", "/api/v1/fines/*");
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER + 1);
+        return registration;
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.ToolRent.config;
+
+import com.example.ToolRent.entities.IdempotencyKeyEntity;
+import com.example.ToolRent.services.IdempotencyService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+/*
+Solicitudes con encabezado Idempotency-Key sobre prestamos y multas (crear prestamo, devolver, pagar multa).
+Los reintentos del proxy o el doble clic en el frontend llegan con la misma llave y reciben la respuesta
+guardada de la primera solicitud, sin volver a validar ni ejecutar la operacion.
+Las llaves son de cada usuario (preferred_username del token) y guardan el SHA-256 del cuerpo: la misma llave
+con otro cuerpo responde 422 en vez de repetir una respuesta que no corresponde.
+Solo se guardan respuestas exitosas: si la operacion falla la llave se libera y el cliente puede reintentar.
+Se registra en IdempotencyConfig despues de la cadena de Spring Security, una solicitud sin autenticar no registra la llave.
+ */
+public class IdempotencyFilter extends OncePerRequestFilter {
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyFilter.class);
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final List<String> PROTECTED_PATHS = List.of("/api/v1/loans", "/api/v1/fines");
+
+    IdempotencyService idempotencyService;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String method = request.getMethod();
+        if (!"POST".equals(method) && !"PUT".equals(method)) {
+            return true;
+        }
+        if (request.getHeader(HEADER) == null) {
+            return true;
+        }
+        String path = request.getRequestURI();
+        return PROTECTED_PATHS.stream().noneMatch(path::startsWith);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String username = currentUsername();
+        if (username == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String key = request.getHeader(HEADER).trim();
+        String method = request.getMethod();
+        String path = request.getRequestURI();
+
+        //El cuerpo se lee una vez para el hash y se entrega de nuevo al controlador
+        CachedBodyRequest cachedRequest = new CachedBodyRequest(request);
+        String requestHash = sha256(cachedRequest.body);
+
+        Optional<IdempotencyKeyEntity> previous;
+        try {
+            previous = idempotencyService.begin(username, key, method, path, requestHash);
+        } catch (IllegalArgumentException e) {
+            writeText(response, HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
+
+        if (previous.isPresent()) {
+            IdempotencyKeyEntity entry = previous.get();
+            if (!requestHash.equals(entry.getRequestHash())) {
+                writeText(response, HttpStatus.UNPROCESSABLE_ENTITY.value(),
+                        "La Idempotency-Key ya fue usada con otro cuerpo de solicitud");
+            } else if (IdempotencyService.COMPLETED.equals(entry.getStatus())) {
+                replay(response, entry);
+            } else {
+                writeText(response, HttpStatus.CONFLICT.value(),
+                        "La solicitud con esta Idempotency-Key todavía se está procesando");
+            }
+            return;
+        }
+
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        boolean stored = false;
+        try {
+            chain.doFilter(cachedRequest, wrapper);
+            stored = store(username, key, method, path, requestHash, wrapper);
+        } finally {
+            if (!stored) {
+                try {
+                    idempotencyService.release(username, key);
+                } catch (RuntimeException e) {
+                    //La llave en curso vence sola al cumplirse el plazo de procesamiento
+                    log.warn("No se pudo liberar la Idempotency-Key {} de {}", key, username, e);
+                }
+            }
+            wrapper.copyBodyToResponse();
+        }
+    }
+
+    //Usuario autenticado por el token, null si la solicitud no tiene autenticacion
+    private String currentUsername() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return null;
+        }
+        if (authentication.getPrincipal() instanceof Jwt jwt && jwt.getClaimAsString("preferred_username") != null) {
+            return jwt.getClaimAsString("preferred_username");
+        }
+        return authentication.getName();
+    }
+
+    //Solo se guardan las respuestas exitosas
+    private boolean store(String username, String key, String method, String path, String requestHash,
+                          ContentCachingResponseWrapper wrapper) {
+        int status = wrapper.getStatus();
+        if (status < 200 || status >= 300) {
+            return false;
+        }
+        try {
+            String body = new String(wrapper.getContentAsByteArray(), StandardCharsets.UTF_8);
+            idempotencyService.complete(username, key, method, path, requestHash, status, wrapper.getContentType(), body);
+            return true;
+        } catch (RuntimeException e) {
+            //La operacion ya se ejecuto, se entrega la respuesta aunque no quede guardada
+            log.warn("No se pudo guardar la respuesta de la Idempotency-Key {} de {}", key, username, e);
+            return false;
+        }
+    }
+
+    private void replay(HttpServletResponse response, IdempotencyKeyEntity entry) throws IOException {
+        response.setStatus(entry.getResponseStatus());
+        response.setHeader(REPLAYED_HEADER, "true");
+        if (entry.getContentType() != null) {
+            response.setContentType(entry.getContentType());
+        }
+        if (entry.getResponseBody() != null) {
+            byte[] body = entry.getResponseBody().getBytes(StandardCharsets.UTF_8);
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+    }
+
+    private void writeText(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(message);
+    }
+
+    static String sha256(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    //Solicitud con el cuerpo ya leido, el controlador lo vuelve a leer desde memoria
+    private static class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request) throws IOException {
+            super(request);
+            this.body = request.getInputStream().readAllBytes();
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    return input.read(buffer, offset, length);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.ToolRent.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+Reintenta los metodos @RetryOnOptimisticLock cuando fallan por un conflicto de version.
+Se ejecuta por fuera de la transaccion (orden menor que el de @Transactional), asi cada intento
+hace rollback completo y el siguiente vuelve a leer los datos actualizados.
+Si el metodo se llama dentro de otra transaccion no reintenta, el conflicto sube hasta el metodo externo.
+Metricas: toolrent.optimistic.lock.conflicts, toolrent.optimistic.lock.retries y
+toolrent.optimistic.lock.exhausted, con el metodo como tag.
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class OptimisticLockRetryAspect {
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    //Reintentos despues del primer intento
+    @Value("${toolrent.retry.optimistic-lock.max-retries:3}")
+    int maxRetries;
+
+    //Espera base antes del primer reintento, se duplica en cada reintento
+    @Value("${toolrent.retry.optimistic-lock.backoff-ms:50}")
+    long backoffMs;
+
+    @Value("${toolrent.retry.optimistic-lock.max-backoff-ms:1000}")
+    long maxBackoffMs;
+
+    @Around("@annotation(com.example.ToolRent.config.RetryOnOptimisticLock)")
+    public Object retry(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return joinPoint.proceed();
+        }
+        String method = joinPoint.getSignature().toShortString();
+        int attempt = 0;
+        while (true) {
+            try {
+                return joinPoint.proceed();
+            } catch (OptimisticLockingFailureException e) {
+                meterRegistry.counter("toolrent.optimistic.lock.conflicts", "method", method).increment();
+                if (attempt >= maxRetries) {
+                    meterRegistry.counter("toolrent.optimistic.lock.exhausted", "method", method).increment();
+                    throw e;
+                }
+                attempt++;
+                meterRegistry.counter("toolrent.optimistic.lock.retries", "method", method).increment();
+                Thread.sleep(backoff(attempt));
+            }
+        }
+    }
+
+    //Espera exponencial con jitter: la mitad fija y la otra mitad aleatoria, para que los nodos en conflicto no reintenten juntos
+    long backoff(int attempt) {
+        long exponential = Math.min(maxBackoffMs, backoffMs << Math.min(attempt - 1, 20));
+        long half = exponential / 2;
+        return half + ThreadLocalRandom.current().nextLong(exponential - half + 1);
+    }
+}
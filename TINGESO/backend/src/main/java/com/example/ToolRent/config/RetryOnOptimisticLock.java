@@ -0,0 +1,17 @@
+package com.example.ToolRent.config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/*
+Marca un metodo de servicio que modifica entidades versionadas (@Version).
+Si la transaccion falla por un conflicto de concurrencia optimista, OptimisticLockRetryAspect
+vuelve a ejecutar el metodo completo en una transaccion nueva.
+El metodo debe ser @Transactional, para que al reintentar no queden cambios a medias del intento anterior.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RetryOnOptimisticLock {
+}
@@ -1,11 +1,14 @@
 package com.example.ToolRent.controllers;
 
+import com.example.ToolRent.dto.FineSummaryDTO;
+import com.example.ToolRent.dto.KeysetSliceDTO;
 import com.example.ToolRent.entities.CustomerEntity;
 import com.example.ToolRent.entities.FineEntity;
 import com.example.ToolRent.entities.LoanEntity;
 import com.example.ToolRent.entities.ToolsInventoryEntity;
 import com.example.ToolRent.services.FineService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -31,6 +34,32 @@ public class FineController {
         return ResponseEntity.ok(fines);
     }
 
+    /*
+    Busqueda con filtros opcionales y paginacion por llave, retorna una pagina liviana de multas
+    Uso: GET /api/v1/fines/search?rut=12345678-9&status=no pagada&minValue=1000&size=20
+    Pagina siguiente: mismo filtro con cursor=nextCursor de la respuesta anterior
+     */
+    @PreAuthorize("hasAnyRole('ADMIN','EMPLOYEE')")
+    @GetMapping("/search")
+    public ResponseEntity<?> searchFines(
+            @RequestParam(required = false) String rut,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) Integer minValue,
+            @RequestParam(required = false) Integer maxValue,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate loanDateFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate loanDateTo,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            KeysetSliceDTO<FineSummaryDTO> fines = fineService.searchFines(rut, status, type, minValue, maxValue,
+                    loanDateFrom, loanDateTo, cursor, size);
+            return ResponseEntity.ok(fines);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @PreAuthorize("hasAnyRole('ADMIN','EMPLOYEE')")
     @GetMapping("/status/{status}")
     public ResponseEntity<?> getFinesByStatus(@PathVariable String status) {
@@ -122,13 +151,25 @@ public class FineController {
     @PutMapping("/")
     public ResponseEntity<?> payFine(@RequestBody FineEntity fine) {
         try {
-            FineEntity newFine = fineService.payFine(fine);
+            FineEntity newFine = fineService.payFine(fine.getId());
             return ResponseEntity.ok(newFine);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
 
+    //Paga todas las multas no pagadas del cliente en una sola operacion
+    @PreAuthorize("hasAnyRole('ADMIN')")
+    @PostMapping("/customer/{rut}/pay-all")
+    public ResponseEntity<?> payAllFines(@PathVariable String rut) {
+        try {
+            List<FineEntity> fines = fineService.payAllFines(rut);
+            return ResponseEntity.ok(fines);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     // RF6.2: Listar clientes con atrasos
     // Uso: GET /api/v1/loans/reports/customers-with-overdue
     // Con filtro: GET /api/v1/fines/reports/customers-with-overdue?startDate=2024-01-01&endDate=2024-12-31
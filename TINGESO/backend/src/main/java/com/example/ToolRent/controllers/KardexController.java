@@ -1,15 +1,28 @@
 package com.example.ToolRent.controllers;
 
+import com.example.ToolRent.dto.KardexRollupDTO;
+import com.example.ToolRent.dto.KardexRollupTotalDTO;
+import com.example.ToolRent.dto.KardexSliceDTO;
 import com.example.ToolRent.entities.KardexEntity;
 import com.example.ToolRent.entities.ToolEntity;
+import com.example.ToolRent.services.KardexRollupService;
 import com.example.ToolRent.services.KardexService;
+import com.example.ToolRent.services.KardexStreamService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 //Convierte automaticamente los objetos Java a JSON/XML
 @RestController
@@ -21,11 +34,41 @@ public class KardexController {
     @Autowired
     KardexService kardexService;
 
+    @Autowired
+    KardexRollupService kardexRollupService;
+
+    @Autowired
+    KardexStreamService kardexStreamService;
+
+    /*
+    Listado de movimientos por paginas (del mas reciente al mas antiguo)
+    Uso: GET /api/v1/movements/?size=50
+    Pagina siguiente: cursorDate=nextCursorDate y cursorId=nextCursorId de la respuesta anterior
+     */
     @PreAuthorize("hasAnyRole('ADMIN','EMPLOYEE')")
     @GetMapping("/")
-    public ResponseEntity<List<KardexEntity>> listMoves() {
-        List<KardexEntity> movements = kardexService.getAllMoves();
-        return ResponseEntity.ok(movements);
+    public ResponseEntity<?> listMoves(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate cursorDate,
+            @RequestParam(required = false) Long cursorId,
+            @RequestParam(defaultValue = "50") int size) {
+        try {
+            KardexSliceDTO movements = kardexService.getMovementsPage(cursorDate, cursorId, size);
+            return ResponseEntity.ok(movements);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /*
+    Movimientos nuevos en vivo (Server-Sent Events) de todas las replicas, cada evento "movement" trae el id del movimiento
+    como id del evento
+    Uso: new EventSource("/api/v1/movements/stream"), al reconectarse el navegador envia Last-Event-ID
+    y se reciben primero los movimientos que se perdieron
+     */
+    @PreAuthorize("hasAnyRole('ADMIN','EMPLOYEE')")
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamMovements(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return kardexStreamService.subscribe(lastEventId);
     }
 
     @PreAuthorize("hasAnyRole('ADMIN','EMPLOYEE')")
@@ -61,5 +104,93 @@ public class KardexController {
         }
     }
 
+    /*
+    Exportacion de movimientos por rango de fechas, se escribe mientras se lee de la base de datos
+    Uso: GET /api/v1/movements/export?from=2025-01-01&to=2025-12-31&format=csv (o ndjson)
+    Con gzip=true se descarga el archivo comprimido (.csv.gz / .ndjson.gz)
+     */
+    @PreAuthorize("hasAnyRole('ADMIN','EMPLOYEE')")
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportMovements(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        String exportFormat;
+        try {
+            exportFormat = kardexService.validateExport(from, to, format);
+        } catch (Exception e) {
+            //El cuerpo de la respuesta es un StreamingResponseBody, el mensaje se escribe igual como texto
+            byte[] message = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+            return ResponseEntity.badRequest().contentType(MediaType.TEXT_PLAIN).body(out -> out.write(message));
+        }
+        StreamingResponseBody body = out -> {
+            if (!gzip) {
+                kardexService.exportMovements(from, to, exportFormat, out);
+                return;
+            }
+            try (GZIPOutputStream compressed = new GZIPOutputStream(out, 8192)) {
+                kardexService.exportMovements(from, to, exportFormat, compressed);
+            }
+        };
+        String fileName = "movimientos_" + from + "_" + to + "." + exportFormat + (gzip ? ".gz" : "");
+        MediaType contentType = gzip ? MediaType.parseMediaType("application/gzip")
+                : exportFormat.equals("csv") ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                : MediaType.APPLICATION_NDJSON;
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(fileName).build().toString())
+                .contentType(contentType)
+                .body(body);
+    }
+
+    /*
+    Reporte diario de movimientos por herramienta del inventario y tipo, desde el resumen del kardex
+    Uso: GET /api/v1/movements/rollups/daily?from=2025-01-01&to=2025-01-31 (opcionales: type=préstamo, inventoryId=3)
+     */
+    @PreAuthorize("hasAnyRole('ADMIN','EMPLOYEE')")
+    @GetMapping("/rollups/daily")
+    public ResponseEntity<?> getDailyRollups(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) Long inventoryId) {
+        try {
+            List<KardexRollupDTO> rollups = kardexRollupService.getDailyRollups(from, to, type, inventoryId);
+            return ResponseEntity.ok(rollups);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    //Totales del rango por herramienta del inventario y tipo
+    @PreAuthorize("hasAnyRole('ADMIN','EMPLOYEE')")
+    @GetMapping("/rollups/totals")
+    public ResponseEntity<?> getRollupTotals(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String type) {
+        try {
+            List<KardexRollupTotalDTO> totals = kardexRollupService.getRollupTotals(from, to, type);
+            return ResponseEntity.ok(totals);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
 
+    /*
+    Recalcula el resumen desde los movimientos (por ejemplo despues de cargar movimientos directo en la base de datos)
+    Sin from parte desde el primer movimiento, sin to llega hasta hoy. Retorna cuantos dias se recalcularon
+     */
+    @PreAuthorize("hasAnyRole('ADMIN')")
+    @PostMapping("/rollups/rebuild")
+    public ResponseEntity<?> rebuildRollups(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            int days = kardexRollupService.rebuildRollups(from, to);
+            return ResponseEntity.ok(days);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
 }
@@ -1,5 +1,8 @@
 package com.example.ToolRent.controllers;
 
+import com.example.ToolRent.dto.LoanBatchRequestDTO;
+import com.example.ToolRent.dto.LoanInventoryRequestDTO;
+import com.example.ToolRent.dto.LoanReturnItemDTO;
 import com.example.ToolRent.entities.CustomerEntity;
 import com.example.ToolRent.entities.LoanEntity;
 import com.example.ToolRent.entities.ToolEntity;
@@ -92,13 +95,52 @@ public class LoanController {
     @PostMapping("/")
     public ResponseEntity<?> createLoan(@RequestBody LoanEntity loan) {
         try {
-            LoanEntity newLoan = loanService.makeLoan(loan);
+            Long customerId = loan.getCustomer() != null ? loan.getCustomer().getId() : null;
+            Long toolId = loan.getTool() != null ? loan.getTool().getId() : null;
+            LoanEntity newLoan = loanService.makeLoan(customerId, toolId, loan.getReturnDate());
             return ResponseEntity.ok(newLoan);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
 
+    //Prestamo por nombre y categoria de la herramienta, el servidor elige la unidad disponible
+    @PreAuthorize("hasAnyRole('ADMIN','EMPLOYEE')")
+    @PostMapping("/inventory")
+    public ResponseEntity<?> createLoanByInventory(@RequestBody LoanInventoryRequestDTO request) {
+        try {
+            LoanEntity newLoan = loanService.makeLoanByInventory(request.getCustomerId(), request.getToolName(),
+                    request.getCategoryName(), request.getReturnDate());
+            return ResponseEntity.ok(newLoan);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    //Prestamo de varias herramientas para un cliente, se crean todos los prestamos o ninguno
+    @PreAuthorize("hasAnyRole('ADMIN','EMPLOYEE')")
+    @PostMapping("/batch")
+    public ResponseEntity<?> createLoans(@RequestBody LoanBatchRequestDTO request) {
+        try {
+            List<LoanEntity> newLoans = loanService.makeLoans(request.getCustomerId(), request.getToolIds(), request.getReturnDate());
+            return ResponseEntity.ok(newLoans);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    //Devolucion de varios prestamos, se devuelven todos o ninguno
+    @PreAuthorize("hasAnyRole('ADMIN','EMPLOYEE')")
+    @PutMapping("/returns")
+    public ResponseEntity<?> returnLoans(@RequestBody List<LoanReturnItemDTO> returns) {
+        try {
+            List<LoanEntity> returnedLoans = loanService.loanReturns(returns);
+            return ResponseEntity.ok(returnedLoans);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @PreAuthorize("hasAnyRole('ADMIN','EMPLOYEE')")
     @PutMapping("/{id}/{toolReturnStatus}")
     public ResponseEntity<?> returnLoan(@PathVariable Long id, @PathVariable String toolReturnStatus) {
@@ -1,13 +1,17 @@
 package com.example.ToolRent.controllers;
 
+import com.example.ToolRent.dto.StockAtDateDTO;
 import com.example.ToolRent.entities.ToolEntity;
 import com.example.ToolRent.entities.ToolsInventoryEntity;
+import com.example.ToolRent.services.StockHistoryService;
 import com.example.ToolRent.services.ToolService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.List;
 
 //Convierte automaticamente los objetos Java a JSON/XML
@@ -21,6 +25,9 @@ public class ToolController {
     @Autowired
     ToolService toolService;
 
+    @Autowired
+    StockHistoryService stockHistoryService;
+
     @PreAuthorize("hasAnyRole('ADMIN','EMPLOYEE')")
     @GetMapping("/id/{id}")
     public ResponseEntity<ToolEntity> findByToolId(@PathVariable Long id) {
@@ -100,6 +107,19 @@ public class ToolController {
         }
     }
 
+    //Stock de la herramienta del inventario al final de una fecha pasada (desde la foto mensual y el kardex)
+    @PreAuthorize("hasAnyRole('ADMIN','EMPLOYEE')")
+    @GetMapping("/inventory/{id}/at/{date}")
+    public ResponseEntity<?> getStockAt(@PathVariable Long id,
+                                        @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        try {
+            StockAtDateDTO stock = stockHistoryService.getStockAt(id, date);
+            return ResponseEntity.ok(stock);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @PreAuthorize("hasAnyRole('ADMIN','EMPLOYEE')")
     @GetMapping("/inventory/name/category/{name}/{category}")
     public ResponseEntity<?> getToolInventory(@PathVariable String name, @PathVariable String category) {
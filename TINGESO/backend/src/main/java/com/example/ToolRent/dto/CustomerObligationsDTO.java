@@ -0,0 +1,24 @@
+package com.example.ToolRent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Contadores de obligaciones de un cliente, leidos en una sola fila
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CustomerObligationsDTO {
+    private int activeLoans;
+
+    private int overdueLoans;
+
+    private int pendingEvaluations;
+
+    private int unpaidFines;
+
+    //Un cliente restringido puede volver a activo cuando no tiene vencidos, evaluaciones ni multas pendientes
+    public boolean canBeActivated() {
+        return overdueLoans == 0 && pendingEvaluations == 0 && unpaidFines == 0;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.ToolRent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Condiciones que decide payFine, cada una es un EXISTS sobre un indice
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class FinePaymentChecksDTO {
+    //El prestamo de la multa tiene otra multa no pagada
+    private Boolean otherUnpaidFineOnLoan;
+
+    //El cliente tiene otra multa no pagada (de cualquier prestamo)
+    private Boolean otherUnpaidFineForCustomer;
+
+    //El cliente tiene otro prestamo en evaluacion pendiente
+    private Boolean otherPendingEvaluationForCustomer;
+}
@@ -0,0 +1,34 @@
+package com.example.ToolRent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+//Fila liviana de la busqueda de multas, solo las columnas que muestra el listado (sin cargar cliente, prestamo ni herramienta)
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class FineSummaryDTO {
+    private Long id;
+
+    private String customerRut;
+
+    private String customerName;
+
+    private Long loanId;
+
+    private LocalDate loanDate;
+
+    private LocalDate returnDate;
+
+    //Tipo de multa (atraso, daño irreparable, daño leve)
+    private String type;
+
+    //Valor de la multa a hoy (las multas por atraso que se calculan al leer se calculan en la consulta)
+    private Integer fineValue;
+
+    //Estado multa: pagada, no pagada
+    private String status;
+}
@@ -0,0 +1,30 @@
+package com.example.ToolRent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+//Movimiento del kardex para el listado, la exportacion y el kardex en vivo, solo columnas (no se cargan la herramienta ni la categoria como entidades)
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class KardexMovementDTO {
+    private Long id;
+
+    private LocalDate date;
+
+    //Tipos: ingreso, prestamo, devolucion, baja, reparacion, reingreso
+    private String type;
+
+    private String username;
+
+    private Integer affectedAmount;
+
+    private Long toolId;
+
+    private String toolName;
+
+    private String categoryName;
+}
@@ -0,0 +1,27 @@
+package com.example.ToolRent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+//Fila del reporte diario de movimientos por herramienta del inventario y tipo
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class KardexRollupDTO {
+    private LocalDate date;
+
+    private Long inventoryId;
+
+    private String toolName;
+
+    private String category;
+
+    private String type;
+
+    private Long totalAmount;
+
+    private Long movementCount;
+}
@@ -0,0 +1,23 @@
+package com.example.ToolRent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Totales de un rango de fechas por herramienta del inventario y tipo de movimiento
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class KardexRollupTotalDTO {
+    private Long inventoryId;
+
+    private String toolName;
+
+    private String category;
+
+    private String type;
+
+    private Long totalAmount;
+
+    private Long movementCount;
+}
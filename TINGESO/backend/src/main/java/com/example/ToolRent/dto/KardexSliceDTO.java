@@ -0,0 +1,26 @@
+package com.example.ToolRent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/*
+Pagina del listado de movimientos con paginacion por llave (keyset), del mas reciente al mas antiguo.
+El cursor es la fecha y el id del ultimo movimiento recibido, la pagina siguiente se pide con ambos
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class KardexSliceDTO {
+    private List<KardexMovementDTO> items;
+
+    //Cursor para pedir la pagina siguiente, null si no hay mas resultados
+    private LocalDate nextCursorDate;
+
+    private Long nextCursorId;
+
+    private boolean hasNext;
+}
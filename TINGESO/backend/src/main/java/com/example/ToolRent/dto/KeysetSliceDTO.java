@@ -0,0 +1,23 @@
+package com.example.ToolRent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/*
+Pagina de resultados con paginacion por llave (keyset): en vez de un numero de pagina se envia el cursor
+de la ultima fila recibida, asi cada pagina cuesta lo mismo sin importar que tan lejos este
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class KeysetSliceDTO<T> {
+    private List<T> items;
+
+    //Cursor para pedir la pagina siguiente, null si no hay mas resultados
+    private Long nextCursor;
+
+    private boolean hasNext;
+}
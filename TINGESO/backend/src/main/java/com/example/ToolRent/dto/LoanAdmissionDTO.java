@@ -0,0 +1,32 @@
+package com.example.ToolRent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Datos que necesita makeLoan para aceptar un prestamo, se obtienen en una sola consulta
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LoanAdmissionDTO {
+    //Cantidad de prestamos activos del cliente
+    private Long activeLoans;
+
+    //true si el cliente ya tiene un prestamo activo de la misma herramienta (mismo nombre y categoria)
+    private Boolean sameToolLoaned;
+
+    //Stock disponible de la herramienta, null si no esta en el inventario
+    private Integer currentStock;
+
+    //Tarifa diaria de arriendo de la herramienta, null si no esta en el inventario
+    private Integer dailyRentalRate;
+
+    //Id y estado del cliente guardados en la base de datos, no los que envia el cliente en la solicitud
+    private Long customerId;
+
+    private String customerStatus;
+
+    public boolean hasAvailableStock() {
+        return currentStock != null && currentStock > 0;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.ToolRent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+//Prestamo de varias herramientas a la vez para un cliente, todas con la misma fecha de devolucion
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LoanBatchRequestDTO {
+    private Long customerId;
+
+    private List<Long> toolIds;
+
+    private LocalDate returnDate;
+}
@@ -0,0 +1,21 @@
+package com.example.ToolRent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+//Prestamo por herramienta del inventario, el servidor elige una unidad disponible
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LoanInventoryRequestDTO {
+    private Long customerId;
+
+    private String toolName;
+
+    private String categoryName;
+
+    private LocalDate returnDate;
+}
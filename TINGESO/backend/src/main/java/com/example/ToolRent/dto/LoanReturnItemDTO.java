@@ -0,0 +1,15 @@
+package com.example.ToolRent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Un prestamo de una devolucion multiple y el estado en que vuelve la herramienta (buen estado, dañada)
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LoanReturnItemDTO {
+    private Long loanId;
+
+    private String toolReturnStatus;
+}
@@ -0,0 +1,28 @@
+package com.example.ToolRent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+//Stock de una herramienta del inventario al final de un dia pasado
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StockAtDateDTO {
+    private Long inventoryId;
+
+    private String name;
+
+    private String category;
+
+    private LocalDate date;
+
+    private int totalTools;
+
+    private int currentStock;
+
+    //Foto desde la que se reprodujeron los movimientos, null si se partio desde el primer movimiento
+    private LocalDate snapshotDate;
+}
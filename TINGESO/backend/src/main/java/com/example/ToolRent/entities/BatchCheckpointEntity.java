@@ -0,0 +1,32 @@
+package com.example.ToolRent.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+//Avance de un proceso por partes, permite retomarlo donde quedo si el nodo se cae
+@Entity
+@Table(name = "BatchCheckpoints")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchCheckpointEntity {
+    //Nombre del proceso
+    @Id
+    private String name;
+
+    //Fecha de la ejecucion, una ejecucion de otro dia no se retoma
+    private LocalDate runDate;
+
+    //Todos los ids hasta este (incluido) ya fueron procesados
+    private Long lastProcessedId;
+
+    //Estado de la ejecucion: "en curso", "completado"
+    private String status;
+
+    private LocalDateTime updatedAt;
+}
@@ -7,6 +7,7 @@ import lombok.NoArgsConstructor; //Genera constructor que acepta todos los campo
 
 //Permite conectar codigo con la base de datos, sin tener que escribir SQL
 import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnDefault;
 
 @Entity
 @Table(name = "Customers")
@@ -40,4 +41,26 @@ public class CustomerEntity {
     @Column(nullable = false)
     private String status;
 
+    /*
+    Contadores de obligaciones del cliente: prestamos activos, prestamos vencidos, prestamos en evaluacion
+    pendiente y multas no pagadas. Se mantienen con UPDATE atomicos (CustomerRepository.adjustObligations)
+    en la misma transaccion que cambia el prestamo o la multa, por eso guardar el cliente no los modifica.
+    CustomerObligationService los compara con las tablas de prestamos y multas y corrige las diferencias
+     */
+    @ColumnDefault("0")
+    @Column(nullable = false, updatable = false)
+    private int activeLoans;
+
+    @ColumnDefault("0")
+    @Column(nullable = false, updatable = false)
+    private int overdueLoans;
+
+    @ColumnDefault("0")
+    @Column(nullable = false, updatable = false)
+    private int pendingEvaluations;
+
+    @ColumnDefault("0")
+    @Column(nullable = false, updatable = false)
+    private int unpaidFines;
+
 }
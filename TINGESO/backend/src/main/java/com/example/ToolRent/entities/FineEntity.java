@@ -1,13 +1,22 @@
 package com.example.ToolRent.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
 //multas
 @Entity
-@Table(name = "Fines")
+//Indices para los EXISTS de payFine: otra multa no pagada del prestamo o del cliente
+@Table(name = "Fines", indexes = {
+        @Index(name = "idx_fines_loan_status", columnList = "loan_id, status"),
+        @Index(name = "idx_fines_customer_status", columnList = "customer_id, status")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -32,8 +41,50 @@ public class FineEntity {
     private String type;
 
     //El valor que lleva la multa hasta ahora
+    //Fuera de equals/hashCode: Lombok usaria getFineValue(), que cambia con la fecha en las multas que se calculan al leer
+    @EqualsAndHashCode.Exclude
     private int fineValue;
 
     //Estado multa: pagada, no pagada
     private String status;
+
+    /*
+    Parametros de las multas por atraso que se calculan al leer (toolrent.fines.accrue-on-read)
+    Si accrualStartDate es null la multa es de valor fijo y se usa fineValue tal cual
+     */
+    //Fecha desde la que corre el atraso (fecha de devolucion del prestamo)
+    private LocalDate accrualStartDate;
+
+    //Fecha en que se devolvio la herramienta, desde ahi la multa deja de crecer
+    private LocalDate accrualEndDate;
+
+    //Tarifa diaria de multa usada en el calculo
+    private Integer dailyFineRate;
+
+    //Tope opcional del valor de la multa
+    private Integer maxFineValue;
+
+    //Valor de la multa a la fecha indicada: dias de atraso * tarifa diaria, con tope si existe
+    public int accruedValue(LocalDate today) {
+        LocalDate end = accrualEndDate != null && accrualEndDate.isBefore(today) ? accrualEndDate : today;
+        long daysLate = Math.max(0, ChronoUnit.DAYS.between(accrualStartDate, end));
+        long value = daysLate * dailyFineRate;
+        if (maxFineValue != null) {
+            value = Math.min(value, maxFineValue);
+        }
+        return (int) Math.min(value, Integer.MAX_VALUE);
+    }
+
+    @JsonIgnore
+    public boolean isAccruing() {
+        return accrualStartDate != null && dailyFineRate != null && "no pagada".equals(status);
+    }
+
+    //Mientras la multa no se paga su valor se calcula al leerla (tambien al serializarla a JSON)
+    public int getFineValue() {
+        if (isAccruing()) {
+            return accruedValue(LocalDate.now());
+        }
+        return fineValue;
+    }
 }
@@ -0,0 +1,59 @@
+package com.example.ToolRent.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+
+//Respuesta guardada de una solicitud con encabezado Idempotency-Key, se repite a los reintentos con la misma llave
+@Entity
+@Table(name = "IdempotencyKeys", indexes = @Index(name = "idx_idempotency_expires_at", columnList = "expiresAt"))
+@IdClass(IdempotencyKeyId.class)
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IdempotencyKeyEntity {
+    //Usuario autenticado (preferred_username) que envio la solicitud, dos usuarios pueden usar la misma llave
+    @Id
+    @Column(length = 100)
+    private String username;
+
+    //Valor del encabezado Idempotency-Key enviado por el cliente
+    @Id
+    @Column(length = 100)
+    private String idempotencyKey;
+
+    //Metodo y ruta de la primera solicitud, la llave no se puede usar en otra operacion
+    @Column(nullable = false, length = 10)
+    private String requestMethod;
+
+    @Column(nullable = false)
+    private String requestPath;
+
+    //SHA-256 del cuerpo de la primera solicitud, un reintento con otro cuerpo no repite la respuesta
+    @Column(nullable = false, length = 64)
+    private String requestHash;
+
+    //en curso, completado
+    @Column(nullable = false)
+    private String status;
+
+    //Respuesta de la primera solicitud, vacia mientras esta en curso
+    private Integer responseStatus;
+
+    private String contentType;
+
+    @JdbcTypeCode(SqlTypes.LONG32VARCHAR)
+    private String responseBody;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    //En curso: plazo para terminar la solicitud, completado: hasta cuando se repite la respuesta
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+}
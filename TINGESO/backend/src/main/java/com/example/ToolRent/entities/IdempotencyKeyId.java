@@ -0,0 +1,16 @@
+package com.example.ToolRent.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+//Llave primaria de IdempotencyKeys: cada usuario tiene sus propias llaves
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IdempotencyKeyId implements Serializable {
+    private String username;
+    private String idempotencyKey;
+}
@@ -0,0 +1,40 @@
+package com.example.ToolRent.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+//Resumen diario del kardex: cantidad afectada y numero de movimientos por dia, herramienta del inventario y tipo
+//La restriccion unica es la llave del upsert que hace KardexRollupService y sirve las consultas por rango de fechas
+@Entity
+@Table(name = "KardexDailyRollups", uniqueConstraints = @UniqueConstraint(
+        name = "uk_kardex_rollups_date_inventory_type", columnNames = {"date", "inventory_id", "type"}))
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class KardexDailyRollupEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private LocalDate date;
+
+    @ManyToOne
+    @JoinColumn(name = "inventory_id", nullable = false)
+    private ToolsInventoryEntity inventory;
+
+    //Tipos: ingreso, prestamo, devolucion, baja, reparacion
+    @Column(nullable = false)
+    private String type;
+
+    //Suma de affectedAmount de los movimientos
+    @Column(nullable = false)
+    private long totalAmount;
+
+    @Column(nullable = false)
+    private long movementCount;
+}
@@ -8,24 +8,35 @@ import lombok.NoArgsConstructor; //Genera constructor que acepta todos los campo
 import jakarta.persistence.*;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "Movimientos")
+//Indice por herramienta y fecha para el historial de una herramienta, con la tabla particionada por mes
+//(KardexPartitionService) PostgreSQL lo crea en cada particion
+//Indice por fecha e id para el listado paginado (se recorre hacia atras desde el cursor)
+//Indice por hora de registro para el kardex en vivo (cada replica lee los movimientos de los ultimos segundos)
+@Table(name = "Movimientos", indexes = {
+        @Index(name = "idx_movimientos_tool_date", columnList = "tool_id, date"),
+        @Index(name = "idx_movimientos_date_id", columnList = "date, id"),
+        @Index(name = "idx_movimientos_recorded_at", columnList = "recordedAt, id")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 public class KardexEntity {
     @Id
-    //Esto es para que la BD genere los ID automaticamente
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    //Ids desde una secuencia que reserva bloques de 50 (pooled-lo), asi los movimientos se insertan en lotes JDBC
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "movimientos_seq")
+    @SequenceGenerator(name = "movimientos_seq", sequenceName = "movimientos_seq", allocationSize = 50)
 
-    /*unique nos dice que el campo debe tener valores unicos
-      nullable = false, el campo no puede ser nulo
+    /*nullable = false, el campo no puede ser nulo
+      Sin unique: en la tabla particionada la llave primaria es (id, date) y PostgreSQL no permite
+      una restriccion unica que no incluya la columna de particion
      */
-    @Column(unique = true, nullable = false)
+    @Column(nullable = false)
     private Long id;
 
-    //Tipos: ingreso, prestamo, devolucion, baja, reparacion
+    //Tipos: ingreso, prestamo, devolucion, baja, reparacion, reingreso (vuelve de reparacion al stock)
     @Column(unique = false, nullable = false)
     private String type;
 
@@ -45,5 +56,11 @@ public class KardexEntity {
     @Column(unique = false, nullable = false)
     private int affectedAmount;
 
+    //Hora en que se inserto (KardexWriter), null en los movimientos anteriores al kardex en vivo
+    private LocalDateTime recordedAt;
+
+    public KardexEntity(Long id, String type, LocalDate date, String username, ToolEntity tool, int affectedAmount) {
+        this(id, type, date, username, tool, affectedAmount, null);
+    }
 
 }
@@ -1,6 +1,7 @@
 package com.example.ToolRent.entities;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnDefault;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -9,13 +10,21 @@ import java.time.LocalDate;
 
 //prestamos
 @Entity
-@Table(name = "Loans")
+//Indice para que el proceso de prestamos vencidos encuentre los activos atrasados sin recorrer toda la tabla
+//e indice por cliente y estado para saber si un cliente tiene prestamos en evaluacion pendiente (payFine)
+@Table(name = "Loans", indexes = {
+        @Index(name = "idx_loans_status_return_date", columnList = "status, return_date"),
+        @Index(name = "idx_loans_customer_status", columnList = "customer_id, status")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 public class LoanEntity {
+    //Ids desde una secuencia que reserva bloques de 50 (pooled-lo), asi los prestamos de un carrito (makeLoans)
+    //se insertan en lotes JDBC, con IDENTITY Hibernate hace un INSERT por prestamo
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loans_seq")
+    @SequenceGenerator(name = "loans_seq", sequenceName = "loans_seq", allocationSize = 50)
     private Long id;
 
     // Relacion de uno a muchos (un cliente puede tener muchos prestamos)
@@ -41,5 +50,10 @@ public class LoanEntity {
     //Es el valor total del prestamo, si se presta 5 dias seria 5*dailyRentalRate(tarifa diaria de arriende de una herramienta)
     private int loanValue;
 
-
+    //Control de concurrencia optimista, un UPDATE con una version antigua falla en vez de pisar cambios
+    //Default 0 para los prestamos que ya existian al agregar la columna
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private long version;
 }
@@ -0,0 +1,32 @@
+package com.example.ToolRent.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+//Arriendo (lease) de un proceso programado, permite que solo un nodo del cluster lo ejecute
+@Entity
+@Table(name = "SchedulerLocks")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SchedulerLockEntity {
+    //Nombre del proceso programado
+    @Id
+    private String name;
+
+    //Nodo que tiene el arriendo
+    @Column(nullable = false)
+    private String lockedBy;
+
+    //Momento en que el nodo renovo el arriendo por ultima vez
+    @Column(nullable = false)
+    private LocalDateTime lockedAt;
+
+    //Si el nodo no renueva antes de esta fecha, otro nodo puede tomar el arriendo
+    @Column(nullable = false)
+    private LocalDateTime lockedUntil;
+}
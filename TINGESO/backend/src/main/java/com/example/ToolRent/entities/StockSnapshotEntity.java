@@ -0,0 +1,35 @@
+package com.example.ToolRent.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+//Foto del stock de una herramienta del inventario al inicio de un dia (antes de los movimientos de ese dia)
+//La restriccion unica sirve para buscar la foto mas cercana anterior a una fecha
+@Entity
+@Table(name = "StockSnapshots", uniqueConstraints = @UniqueConstraint(
+        name = "uk_stock_snapshots_inventory_date", columnNames = {"inventory_id", "snapshot_date"}))
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StockSnapshotEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne
+    @JoinColumn(name = "inventory_id", nullable = false)
+    private ToolsInventoryEntity inventory;
+
+    @Column(nullable = false)
+    private LocalDate snapshotDate;
+
+    @Column(nullable = false)
+    private int totalTools;
+
+    @Column(nullable = false)
+    private int currentStock;
+}
@@ -1,6 +1,7 @@
 package com.example.ToolRent.entities;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnDefault;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -13,7 +14,9 @@ import lombok.NoArgsConstructor;
 
 public class ToolEntity {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    //Ids desde una secuencia que reserva bloques de 50 (pooled-lo), asi Hibernate puede agrupar los INSERT en lotes JDBC
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "tools_seq")
+    @SequenceGenerator(name = "tools_seq", sequenceName = "tools_seq", allocationSize = 50)
     private Long id;
 
     //nullable = false, no puede ser nula la columna
@@ -25,4 +28,10 @@ public class ToolEntity {
 
     private String status;
 
+    //Version para el control de concurrencia optimista (0 en las filas anteriores a la columna)
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private long version;
+
 }
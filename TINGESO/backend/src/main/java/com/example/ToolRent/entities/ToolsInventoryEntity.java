@@ -1,6 +1,7 @@
 package com.example.ToolRent.entities;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnDefault;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -33,4 +34,10 @@ public class ToolsInventoryEntity {
     @Column(unique = false, nullable = false)
     private int dailyRentalRate;
 
+    //Version del inventario, las reservas de stock masivas tambien la incrementan. Parte en 0 en las filas existentes
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private long version;
+
 }
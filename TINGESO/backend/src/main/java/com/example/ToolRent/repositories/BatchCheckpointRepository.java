@@ -0,0 +1,9 @@
+package com.example.ToolRent.repositories;
+
+import com.example.ToolRent.entities.BatchCheckpointEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface BatchCheckpointRepository extends JpaRepository<BatchCheckpointEntity, String> {
+}
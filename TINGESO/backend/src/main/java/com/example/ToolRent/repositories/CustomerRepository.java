@@ -1,8 +1,14 @@
 package com.example.ToolRent.repositories;
 
+import com.example.ToolRent.dto.CustomerObligationsDTO;
 import com.example.ToolRent.entities.CustomerEntity;
 //Proporciona CRUD basico automaticamente
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 //Permite definir consultas personalizadas, con SQL nativo
 
 /*:nombre y :depto son placeholders con nombre
@@ -12,8 +18,10 @@ Ventaja: El orden de los parámetros ya no importa/*
  */
 //Para detectar que es repositorio, igual lo detecta solo con JPArepo.. pero este da mas beneficios
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 //Para usar lista
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
@@ -28,4 +36,88 @@ public interface CustomerRepository extends JpaRepository<CustomerEntity, Long>
 
     public CustomerEntity findByPhoneNumber(String phoneNumber);
 
+    //Restringe a los clientes que tienen algun prestamo activo con la fecha de devolucion ya pasada
+    @Modifying
+    @Transactional
+    @Query("UPDATE CustomerEntity c SET c.status = 'restringido' WHERE c.status <> 'restringido' " +
+            "AND EXISTS (SELECT l.id FROM LoanEntity l WHERE l.customer = c AND l.status = 'activo' AND l.returnDate < :today " +
+            "AND l.id BETWEEN :fromId AND :toId)")
+    int restrictCustomersWithOverdueLoans(@Param("today") LocalDate today,
+                                          @Param("fromId") Long fromId,
+                                          @Param("toId") Long toId);
+
+    //Restringe al cliente de un prestamo
+    @Modifying
+    @Transactional
+    @Query("UPDATE CustomerEntity c SET c.status = 'restringido' " +
+            "WHERE c.id = (SELECT l.customer.id FROM LoanEntity l WHERE l.id = :loanId)")
+    int restrictCustomerOfLoan(@Param("loanId") Long loanId);
+
+
+    // ========== CONTADORES DE OBLIGACIONES DEL CLIENTE ==========
+
+    //Suma (o resta, con valores negativos) a los contadores del cliente en un solo UPDATE atomico
+    @Modifying
+    @Transactional
+    @Query("UPDATE CustomerEntity c SET c.activeLoans = c.activeLoans + :activeLoans, " +
+            "c.overdueLoans = c.overdueLoans + :overdueLoans, " +
+            "c.pendingEvaluations = c.pendingEvaluations + :pendingEvaluations, " +
+            "c.unpaidFines = c.unpaidFines + :unpaidFines " +
+            "WHERE c.id = :customerId")
+    int adjustObligations(@Param("customerId") Long customerId,
+                          @Param("activeLoans") int activeLoans,
+                          @Param("overdueLoans") int overdueLoans,
+                          @Param("pendingEvaluations") int pendingEvaluations,
+                          @Param("unpaidFines") int unpaidFines);
+
+    @Query("SELECT new com.example.ToolRent.dto.CustomerObligationsDTO(c.activeLoans, c.overdueLoans, c.pendingEvaluations, c.unpaidFines) " +
+            "FROM CustomerEntity c WHERE c.id = :customerId")
+    Optional<CustomerObligationsDTO> findObligations(@Param("customerId") Long customerId);
+
+    //Proceso de vencidos: antes de crear las multas y pasar a vencido los prestamos de un rango de ids,
+    //cada cliente pasa esos prestamos de activos a vencidos y suma las multas por atraso que se van a crear
+    @Modifying
+    @Transactional
+    @Query("UPDATE CustomerEntity c SET " +
+            "c.activeLoans = c.activeLoans - (SELECT COUNT(l) FROM LoanEntity l WHERE l.customer = c " +
+            "AND l.status = 'activo' AND l.returnDate < :today AND l.id BETWEEN :fromId AND :toId), " +
+            "c.overdueLoans = c.overdueLoans + (SELECT COUNT(l) FROM LoanEntity l WHERE l.customer = c " +
+            "AND l.status = 'activo' AND l.returnDate < :today AND l.id BETWEEN :fromId AND :toId), " +
+            "c.unpaidFines = c.unpaidFines + (SELECT COUNT(l) FROM LoanEntity l WHERE l.customer = c " +
+            "AND l.status = 'activo' AND l.returnDate < :today AND l.id BETWEEN :fromId AND :toId " +
+            "AND NOT EXISTS (SELECT f.id FROM FineEntity f WHERE f.loan = l AND f.type = 'atraso')) " +
+            "WHERE EXISTS (SELECT l.id FROM LoanEntity l WHERE l.customer = c AND l.status = 'activo' " +
+            "AND l.returnDate < :today AND l.id BETWEEN :fromId AND :toId)")
+    int countOverdueLoansInObligations(@Param("today") LocalDate today,
+                                       @Param("fromId") Long fromId,
+                                       @Param("toId") Long toId);
+
+    //Clientes cuyos contadores no coinciden con las tablas de prestamos y multas
+    @Query("SELECT c.id FROM CustomerEntity c WHERE " +
+            "c.activeLoans <> (SELECT COUNT(l) FROM LoanEntity l WHERE l.customer = c AND l.status = 'activo') " +
+            "OR c.overdueLoans <> (SELECT COUNT(l) FROM LoanEntity l WHERE l.customer = c AND l.status = 'vencido') " +
+            "OR c.pendingEvaluations <> (SELECT COUNT(l) FROM LoanEntity l WHERE l.customer = c AND l.status = 'evaluación pendiente') " +
+            "OR c.unpaidFines <> (SELECT COUNT(f) FROM FineEntity f WHERE f.customer = c AND f.status = 'no pagada')")
+    List<Long> findCustomersWithDriftedObligations();
+
+    //Bloquea la fila del cliente, las transacciones que cambian sus contadores esperan hasta confirmar la correccion
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c.id FROM CustomerEntity c WHERE c.id = :customerId")
+    Optional<Long> lockById(@Param("customerId") Long customerId);
+
+    //Vuelve a contar las obligaciones del cliente desde las tablas, retorna 0 si ya estaban bien
+    @Modifying
+    @Transactional
+    @Query("UPDATE CustomerEntity c SET " +
+            "c.activeLoans = (SELECT COUNT(l) FROM LoanEntity l WHERE l.customer = c AND l.status = 'activo'), " +
+            "c.overdueLoans = (SELECT COUNT(l) FROM LoanEntity l WHERE l.customer = c AND l.status = 'vencido'), " +
+            "c.pendingEvaluations = (SELECT COUNT(l) FROM LoanEntity l WHERE l.customer = c AND l.status = 'evaluación pendiente'), " +
+            "c.unpaidFines = (SELECT COUNT(f) FROM FineEntity f WHERE f.customer = c AND f.status = 'no pagada') " +
+            "WHERE c.id = :customerId AND (" +
+            "c.activeLoans <> (SELECT COUNT(l) FROM LoanEntity l WHERE l.customer = c AND l.status = 'activo') " +
+            "OR c.overdueLoans <> (SELECT COUNT(l) FROM LoanEntity l WHERE l.customer = c AND l.status = 'vencido') " +
+            "OR c.pendingEvaluations <> (SELECT COUNT(l) FROM LoanEntity l WHERE l.customer = c AND l.status = 'evaluación pendiente') " +
+            "OR c.unpaidFines <> (SELECT COUNT(f) FROM FineEntity f WHERE f.customer = c AND f.status = 'no pagada'))")
+    int reconcileObligations(@Param("customerId") Long customerId);
+
 }
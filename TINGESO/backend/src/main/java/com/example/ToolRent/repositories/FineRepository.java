@@ -1,18 +1,22 @@
 package com.example.ToolRent.repositories;
 
+import com.example.ToolRent.dto.FinePaymentChecksDTO;
 import com.example.ToolRent.entities.CustomerEntity;
 import com.example.ToolRent.entities.FineEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface FineRepository extends JpaRepository<FineEntity,Long> {
+public interface FineRepository extends JpaRepository<FineEntity,Long>, FineSearchRepository {
     public Optional<List<FineEntity>> findByStatus(String status);
 
     public Optional<List<FineEntity>> findByType(String type);
@@ -51,4 +55,104 @@ public interface FineRepository extends JpaRepository<FineEntity,Long> {
             "WHERE f.status = 'no pagada' AND f.type = 'atraso'")
     List<CustomerEntity> findCustomersWithOverdueLoans();
 
+
+    //Multas no pagadas del cliente junto a su prestamo y herramienta en una sola consulta (pago de todas las multas)
+    @Query("SELECT f FROM FineEntity f JOIN FETCH f.loan l JOIN FETCH l.tool JOIN FETCH f.customer " +
+            "WHERE f.customer.id = :customerId AND f.status = 'no pagada' ORDER BY f.id")
+    List<FineEntity> findUnpaidFinesWithLoanByCustomerId(@Param("customerId") Long customerId);
+
+    boolean existsByCustomerIdAndStatus(Long customerId, String status);
+
+    //Las tres condiciones de payFine en una sola consulta, cada EXISTS usa un indice (loan_id, status),
+    //(customer_id, status) de multas y (customer_id, status) de prestamos, no depende del total de multas
+    @Query("SELECT new com.example.ToolRent.dto.FinePaymentChecksDTO(" +
+            "CASE WHEN EXISTS (SELECT o.id FROM FineEntity o WHERE o.loan.id = :loanId AND o.status = 'no pagada' " +
+            "AND o.id <> :fineId) THEN true ELSE false END, " +
+            "CASE WHEN EXISTS (SELECT o.id FROM FineEntity o WHERE o.customer.id = :customerId AND o.status = 'no pagada' " +
+            "AND o.id <> :fineId) THEN true ELSE false END, " +
+            "CASE WHEN EXISTS (SELECT l.id FROM LoanEntity l WHERE l.customer.id = :customerId " +
+            "AND l.status = 'evaluación pendiente' AND l.id <> :loanId) THEN true ELSE false END) " +
+            "FROM CustomerEntity c WHERE c.id = :customerId")
+    Optional<FinePaymentChecksDTO> findFinePaymentChecks(@Param("fineId") Long fineId,
+                                                         @Param("loanId") Long loanId,
+                                                         @Param("customerId") Long customerId);
+
+
+    // ========== QUERIES PARA EL PROCESO DE PRESTAMOS VENCIDOS ==========
+
+    //Crea la multa por atraso de cada prestamo activo cuya fecha de devolucion ya paso
+    //Con accrueOnRead la multa guarda sus parametros y su valor se calcula al leerla,
+    //si no, el valor parte en 0 y se calcula despues con recalculateLateFines
+    //El NOT EXISTS evita duplicar la multa si el proceso se ejecuta dos veces
+    @Modifying
+    @Transactional
+    @Query("INSERT INTO FineEntity (customer, loan, type, fineValue, status, accrualStartDate, dailyFineRate, maxFineValue) " +
+            "SELECT l.customer, l, 'atraso', 0, 'no pagada', " +
+            "CASE WHEN :accrueOnRead = true THEN l.returnDate ELSE NULL END, :dailyFineRate, cast(:maxFineValue as Integer) " +
+            "FROM LoanEntity l " +
+            "WHERE l.status = 'activo' AND l.returnDate < :today AND l.id BETWEEN :fromId AND :toId " +
+            "AND NOT EXISTS (SELECT f.id FROM FineEntity f WHERE f.loan = l AND f.type = 'atraso')")
+    int insertLateFinesForOverdueLoans(@Param("today") LocalDate today,
+                                       @Param("fromId") Long fromId,
+                                       @Param("toId") Long toId,
+                                       @Param("accrueOnRead") boolean accrueOnRead,
+                                       @Param("dailyFineRate") int dailyFineRate,
+                                       @Param("maxFineValue") Integer maxFineValue);
+
+    //Crea la multa por atraso de un solo prestamo, con el valor ya calculado
+    @Modifying
+    @Transactional
+    @Query("INSERT INTO FineEntity (customer, loan, type, fineValue, status, accrualStartDate, dailyFineRate, maxFineValue) " +
+            "SELECT l.customer, l, 'atraso', :fineValue, 'no pagada', " +
+            "CASE WHEN :accrueOnRead = true THEN l.returnDate ELSE NULL END, :dailyFineRate, cast(:maxFineValue as Integer) " +
+            "FROM LoanEntity l " +
+            "WHERE l.id = :loanId " +
+            "AND NOT EXISTS (SELECT f.id FROM FineEntity f WHERE f.loan = l AND f.type = 'atraso')")
+    int insertLateFineForLoan(@Param("loanId") Long loanId,
+                              @Param("fineValue") int fineValue,
+                              @Param("accrueOnRead") boolean accrueOnRead,
+                              @Param("dailyFineRate") int dailyFineRate,
+                              @Param("maxFineValue") Integer maxFineValue);
+
+    //Recalcula el valor de todas las multas por atraso no pagadas de prestamos vencidos
+    //valor = dias de atraso * tarifa diaria de multa, solo se escriben las filas cuyo valor cambia
+    //Las multas que se calculan al leer (accrualStartDate) no se tocan
+    @Modifying
+    @Transactional
+    @Query("UPDATE FineEntity f SET f.fineValue = " +
+            "(SELECT cast((:today - l.returnDate) by day as Integer) * :dailyFineRate FROM LoanEntity l WHERE l.id = f.loan.id) " +
+            "WHERE f.status = 'no pagada' AND f.type = 'atraso' AND f.accrualStartDate IS NULL " +
+            "AND f.loan.id BETWEEN :fromId AND :toId " +
+            "AND f.loan.id IN (SELECT l.id FROM LoanEntity l WHERE l.status = 'vencido' " +
+            "AND cast((:today - l.returnDate) by day as Integer) * :dailyFineRate <> f.fineValue)")
+    int recalculateLateFines(@Param("today") LocalDate today,
+                             @Param("fromId") Long fromId,
+                             @Param("toId") Long toId,
+                             @Param("dailyFineRate") int dailyFineRate);
+
+    //Al devolver la herramienta la multa por atraso deja de crecer
+    @Modifying
+    @Transactional
+    @Query("UPDATE FineEntity f SET f.accrualEndDate = :today " +
+            "WHERE f.loan.id = :loanId AND f.type = 'atraso' AND f.status = 'no pagada' " +
+            "AND f.accrualStartDate IS NOT NULL AND f.accrualEndDate IS NULL")
+    int stopLateFineAccrual(@Param("loanId") Long loanId, @Param("today") LocalDate today);
+
+    //Igual que stopLateFineAccrual para varios prestamos devueltos juntos
+    @Modifying
+    @Transactional
+    @Query("UPDATE FineEntity f SET f.accrualEndDate = :today " +
+            "WHERE f.loan.id IN :loanIds AND f.type = 'atraso' AND f.status = 'no pagada' " +
+            "AND f.accrualStartDate IS NOT NULL AND f.accrualEndDate IS NULL")
+    int stopLateFineAccrualForLoans(@Param("loanIds") Collection<Long> loanIds, @Param("today") LocalDate today);
+
+    //Al cambiar la tarifa diaria de multa se actualiza en las multas que siguen creciendo,
+    //igual que antes cuando el proceso recalculaba con la tarifa vigente
+    @Modifying
+    @Transactional
+    @Query("UPDATE FineEntity f SET f.dailyFineRate = :dailyFineRate " +
+            "WHERE f.type = 'atraso' AND f.status = 'no pagada' " +
+            "AND f.accrualStartDate IS NOT NULL AND f.accrualEndDate IS NULL")
+    int updateAccruingLateFineRate(@Param("dailyFineRate") int dailyFineRate);
+
 }
@@ -0,0 +1,15 @@
+package com.example.ToolRent.repositories;
+
+import com.example.ToolRent.dto.FineSummaryDTO;
+import com.example.ToolRent.entities.FineEntity;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+import java.util.List;
+
+//Busqueda dinamica de multas (Criteria), la implementa FineSearchRepositoryImpl y se expone en FineRepository
+public interface FineSearchRepository {
+
+    //Multas que cumplen los filtros, de la mas nueva a la mas antigua, como maximo limit filas
+    List<FineSummaryDTO> searchFines(Specification<FineEntity> specification, LocalDate today, int limit);
+}
@@ -0,0 +1,54 @@
+package com.example.ToolRent.repositories;
+
+import com.example.ToolRent.dto.FineSummaryDTO;
+import com.example.ToolRent.entities.CustomerEntity;
+import com.example.ToolRent.entities.FineEntity;
+import com.example.ToolRent.entities.LoanEntity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public class FineSearchRepositoryImpl implements FineSearchRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<FineSummaryDTO> searchFines(Specification<FineEntity> specification, LocalDate today, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<FineSummaryDTO> query = cb.createQuery(FineSummaryDTO.class);
+        Root<FineEntity> fine = query.from(FineEntity.class);
+        Join<FineEntity, CustomerEntity> customer = FineSpecifications.join(fine, "customer");
+        Join<FineEntity, LoanEntity> loan = FineSpecifications.join(fine, "loan");
+
+        //Solo las columnas del listado, sin cargar las entidades relacionadas
+        query.select(cb.construct(FineSummaryDTO.class,
+                fine.get("id"),
+                customer.get("rut"),
+                customer.get("name"),
+                loan.get("id"),
+                loan.get("loanDate"),
+                loan.get("returnDate"),
+                fine.get("type"),
+                FineSpecifications.fineValue(fine, cb, today),
+                fine.get("status")));
+
+        Predicate predicate = specification == null ? null : specification.toPredicate(fine, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(cb.desc(fine.get("id")));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+}
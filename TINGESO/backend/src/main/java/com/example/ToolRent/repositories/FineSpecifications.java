@@ -0,0 +1,121 @@
+package com.example.ToolRent.repositories;
+
+import com.example.ToolRent.entities.FineEntity;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.From;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import org.hibernate.query.sqm.TemporalUnit;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+
+//Filtros de la busqueda de multas, cada uno es opcional (null no filtra)
+public final class FineSpecifications {
+
+    private FineSpecifications() {
+    }
+
+    public static Specification<FineEntity> hasCustomerRut(String rut) {
+        if (rut == null || rut.isBlank()) {
+            return null;
+        }
+        return (root, query, cb) -> cb.equal(join(root, "customer").get("rut"), rut);
+    }
+
+    public static Specification<FineEntity> hasStatus(String status) {
+        if (status == null || status.isBlank()) {
+            return null;
+        }
+        return (root, query, cb) -> cb.equal(root.get("status"), status);
+    }
+
+    public static Specification<FineEntity> hasType(String type) {
+        if (type == null || type.isBlank()) {
+            return null;
+        }
+        return (root, query, cb) -> cb.equal(root.get("type"), type);
+    }
+
+    //Rango sobre el valor de la multa a hoy, incluye las multas por atraso que se calculan al leer
+    public static Specification<FineEntity> fineValueBetween(Integer minValue, Integer maxValue, LocalDate today) {
+        if (minValue == null && maxValue == null) {
+            return null;
+        }
+        return (root, query, cb) -> {
+            Expression<Integer> value = fineValue(root, cb, today);
+            if (minValue == null) {
+                return cb.le(value, maxValue);
+            }
+            if (maxValue == null) {
+                return cb.ge(value, minValue);
+            }
+            return cb.between(value, minValue, maxValue);
+        };
+    }
+
+    public static Specification<FineEntity> loanDateBetween(LocalDate from, LocalDate to) {
+        if (from == null && to == null) {
+            return null;
+        }
+        return (root, query, cb) -> {
+            Expression<LocalDate> loanDate = join(root, "loan").get("loanDate");
+            if (from == null) {
+                return cb.lessThanOrEqualTo(loanDate, to);
+            }
+            if (to == null) {
+                return cb.greaterThanOrEqualTo(loanDate, from);
+            }
+            return cb.between(loanDate, from, to);
+        };
+    }
+
+    //Cursor de la paginacion: las multas se listan de la mas nueva a la mas antigua
+    public static Specification<FineEntity> idBefore(Long cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        return (root, query, cb) -> cb.lessThan(root.get("id"), cursor);
+    }
+
+    /*
+    Mismo calculo que FineEntity.getFineValue, pero en la consulta:
+    si la multa se calcula al leer, dias de atraso (hasta la devolucion o hasta hoy) * tarifa diaria, con tope si existe
+     */
+    public static Expression<Integer> fineValue(Root<FineEntity> root, CriteriaBuilder cb, LocalDate today) {
+        HibernateCriteriaBuilder hcb = (HibernateCriteriaBuilder) cb;
+        Expression<LocalDate> start = root.get("accrualStartDate");
+        Expression<LocalDate> endDate = root.get("accrualEndDate");
+        Expression<Integer> dailyFineRate = root.get("dailyFineRate");
+        Expression<Integer> maxFineValue = root.get("maxFineValue");
+
+        Expression<LocalDate> end = cb.<LocalDate>selectCase()
+                .when(cb.and(cb.isNotNull(endDate), cb.lessThan(endDate, today)), endDate)
+                .otherwise(today);
+        Expression<Long> daysLate = hcb.durationByUnit(TemporalUnit.DAY, hcb.durationBetween(end, start));
+        Expression<Long> accrued = cb.prod(daysLate, dailyFineRate.as(Long.class));
+        Expression<Long> capped = cb.<Long>selectCase()
+                .when(cb.lessThan(end, start), 0L)
+                .when(cb.and(cb.isNotNull(maxFineValue), cb.gt(accrued, maxFineValue)), maxFineValue.as(Long.class))
+                .otherwise(accrued);
+
+        return cb.<Integer>selectCase()
+                .when(cb.and(cb.isNotNull(start), cb.isNotNull(dailyFineRate), cb.equal(root.get("status"), "no pagada")),
+                        capped.as(Integer.class))
+                .otherwise(root.get("fineValue"));
+    }
+
+    //Reutiliza el join si otro filtro (o la proyeccion) ya lo creo
+    @SuppressWarnings("unchecked")
+    static <Y> Join<FineEntity, Y> join(From<?, FineEntity> root, String attribute) {
+        for (Join<FineEntity, ?> join : root.getJoins()) {
+            if (join.getAttribute().getName().equals(attribute) && join.getJoinType() == JoinType.INNER) {
+                return (Join<FineEntity, Y>) join;
+            }
+        }
+        return root.join(attribute);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.ToolRent.repositories;
+
+import com.example.ToolRent.entities.IdempotencyKeyEntity;
+import com.example.ToolRent.entities.IdempotencyKeyId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+//Las operaciones usan REQUIRES_NEW para que la llave quede confirmada independiente de la operacion que protege
+@Repository
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKeyEntity, IdempotencyKeyId> {
+
+    //Registra la llave del usuario como en curso, si otra solicitud la registro antes falla por llave duplicada
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("INSERT INTO IdempotencyKeyEntity (username, idempotencyKey, requestMethod, requestPath, requestHash, status, createdAt, expiresAt) " +
+            "VALUES (:username, :key, :method, :path, :hash, :status, :now, :until)")
+    int insert(@Param("username") String username,
+               @Param("key") String key,
+               @Param("method") String method,
+               @Param("path") String path,
+               @Param("hash") String hash,
+               @Param("status") String status,
+               @Param("now") LocalDateTime now,
+               @Param("until") LocalDateTime until);
+
+    //Guarda la respuesta de la primera solicitud
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("UPDATE IdempotencyKeyEntity k SET k.status = :status, k.responseStatus = :responseStatus, " +
+            "k.contentType = :contentType, k.responseBody = :body, k.expiresAt = :until " +
+            "WHERE k.username = :username AND k.idempotencyKey = :key")
+    int complete(@Param("username") String username,
+                 @Param("key") String key,
+                 @Param("status") String status,
+                 @Param("responseStatus") Integer responseStatus,
+                 @Param("contentType") String contentType,
+                 @Param("body") String body,
+                 @Param("until") LocalDateTime until);
+
+    //Libera una llave cuya solicitud no termino bien, para que el cliente pueda reintentar
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("DELETE FROM IdempotencyKeyEntity k WHERE k.username = :username AND k.idempotencyKey = :key AND k.status = :status")
+    int deleteByKeyAndStatus(@Param("username") String username, @Param("key") String key, @Param("status") String status);
+
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("DELETE FROM IdempotencyKeyEntity k WHERE k.username = :username AND k.idempotencyKey = :key AND k.expiresAt <= :now")
+    int deleteExpiredKey(@Param("username") String username, @Param("key") String key, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("DELETE FROM IdempotencyKeyEntity k WHERE k.expiresAt <= :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -1,9 +1,12 @@
 package com.example.ToolRent.repositories;
 
+import com.example.ToolRent.dto.KardexMovementDTO;
 import com.example.ToolRent.entities.KardexEntity;
 //Proporciona CRUD basico automaticamente
 import com.example.ToolRent.entities.ToolEntity;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 //Permite definir consultas personalizadas, con SQL nativo
 
 /*:nombre y :depto son placeholders con nombre
@@ -12,15 +15,45 @@ Ventaja: El orden de los parámetros ya no importa/*
 
  */
 //Para detectar que es repositorio, igual lo detecta solo con JPArepo.. pero este da mas beneficios
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface KardexRepository extends JpaRepository<KardexEntity, Long> {
+    /**
+     * Listado de movimientos paginado por llave, del mas reciente al mas antiguo
+     * Primera pagina, usar con PageRequest.of(0, tamaño)
+     */
+    @Query("SELECT new com.example.ToolRent.dto.KardexMovementDTO(k.id, k.date, k.type, k.username, k.affectedAmount, " +
+            "t.id, t.name, c.name) " +
+            "FROM KardexEntity k LEFT JOIN k.tool t LEFT JOIN t.category c " +
+            "ORDER BY k.date DESC, k.id DESC")
+    List<KardexMovementDTO> findMovementPage(Pageable pageable);
+
+
+    /**
+     * Paginas siguientes: movimientos anteriores al cursor (fecha, id) del ultimo movimiento recibido
+     * La comparacion de tuplas recorre el indice (date, id) desde el cursor, sin saltar filas con OFFSET
+     */
+    @Query("SELECT new com.example.ToolRent.dto.KardexMovementDTO(k.id, k.date, k.type, k.username, k.affectedAmount, " +
+            "t.id, t.name, c.name) " +
+            "FROM KardexEntity k LEFT JOIN k.tool t LEFT JOIN t.category c " +
+            "WHERE (k.date, k.id) < (:cursorDate, :cursorId) " +
+            "ORDER BY k.date DESC, k.id DESC")
+    List<KardexMovementDTO> findMovementPageBefore(@Param("cursorDate") LocalDate cursorDate,
+                                                   @Param("cursorId") Long cursorId,
+                                                   Pageable pageable);
+
+
     /**
      * RF5.2 - Consultar historial de movimientos de cada herramienta
      * Busca todos los movimientos de una herramienta específica, ordenados por fecha (más reciente primero)
@@ -45,4 +78,88 @@ public interface KardexRepository extends JpaRepository<KardexEntity, Long> {
     List<KardexEntity> findByToolIdAndDateBetween(@Param("toolId") Long toolId,
                                                   @Param("startDate") LocalDate startDate,
                                                   @Param("endDate") LocalDate endDate);
+
+
+    /**
+     * Exportacion de movimientos por rango de fechas
+     * Filas de solo columnas leidas con un cursor de a fetch-size filas, usar dentro de una transaccion
+     * y cerrar el Stream (en PostgreSQL el cursor requiere autocommit desactivado)
+     */
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.fetchSize", value = "500"),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    @Query("SELECT new com.example.ToolRent.dto.KardexMovementDTO(k.id, k.date, k.type, k.username, k.affectedAmount, " +
+            "t.id, t.name, c.name) " +
+            "FROM KardexEntity k LEFT JOIN k.tool t LEFT JOIN t.category c " +
+            "WHERE k.date BETWEEN :startDate AND :endDate ORDER BY k.date, k.id")
+    Stream<KardexMovementDTO> streamExportRows(@Param("startDate") LocalDate startDate,
+                                                @Param("endDate") LocalDate endDate);
+
+
+    /**
+     * Movimientos que un suscriptor del kardex en vivo pudo perder desde el ultimo recibido (Last-Event-ID):
+     * id mayor, o registrados desde since (los ids de otra replica pueden ser menores), en orden de id
+     */
+    @Query("SELECT new com.example.ToolRent.dto.KardexMovementDTO(k.id, k.date, k.type, k.username, k.affectedAmount, " +
+            "t.id, t.name, c.name) " +
+            "FROM KardexEntity k LEFT JOIN k.tool t LEFT JOIN t.category c " +
+            "WHERE (k.id > :lastId OR k.recordedAt >= :since) AND k.id <> :lastId ORDER BY k.id")
+    List<KardexMovementDTO> findMovementsAfter(@Param("lastId") Long lastId,
+                                               @Param("since") LocalDateTime since,
+                                               Pageable pageable);
+
+    //Hora de registro de un movimiento, null si no existe o es anterior al kardex en vivo
+    @Query("SELECT k.recordedAt FROM KardexEntity k WHERE k.id = :id")
+    LocalDateTime findRecordedAt(@Param("id") Long id);
+
+    //Ids de los movimientos registrados desde since, la revision del kardex en vivo descarta los ya enviados
+    @Query("SELECT k.id FROM KardexEntity k WHERE k.recordedAt >= :since")
+    List<Long> findIdsRecordedSince(@Param("since") LocalDateTime since);
+
+    @Query("SELECT new com.example.ToolRent.dto.KardexMovementDTO(k.id, k.date, k.type, k.username, k.affectedAmount, " +
+            "t.id, t.name, c.name) " +
+            "FROM KardexEntity k LEFT JOIN k.tool t LEFT JOIN t.category c " +
+            "WHERE k.id IN :ids ORDER BY k.id")
+    List<KardexMovementDTO> findMovementsByIds(@Param("ids") Collection<Long> ids);
+
+
+    /**
+     * Suma de affectedAmount por tipo de los movimientos de una herramienta del inventario (nombre y categoria)
+     * con fecha desde startDate (inclusivo) hasta endDate (exclusivo), para reconstruir el stock desde una foto
+     * Retorna filas [tipo, suma]
+     */
+    @Query("SELECT k.type, SUM(k.affectedAmount) FROM KardexEntity k JOIN k.tool t " +
+            "WHERE t.name = :name AND t.category.name = :category " +
+            "AND k.date >= :startDate AND k.date < :endDate GROUP BY k.type")
+    List<Object[]> sumAmountsByType(@Param("name") String name, @Param("category") String category,
+                                    @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+
+    /**
+     * Lo mismo para todos los movimientos anteriores a endDate (cuando todavia no hay una foto)
+     */
+    @Query("SELECT k.type, SUM(k.affectedAmount) FROM KardexEntity k JOIN k.tool t " +
+            "WHERE t.name = :name AND t.category.name = :category " +
+            "AND k.date < :endDate GROUP BY k.type")
+    List<Object[]> sumAmountsByTypeBefore(@Param("name") String name, @Param("category") String category,
+                                          @Param("endDate") LocalDate endDate);
+
+
+    @Query("SELECT MIN(k.date) FROM KardexEntity k JOIN k.tool t WHERE t.name = :name AND t.category.name = :category")
+    LocalDate findFirstMovementDate(@Param("name") String name, @Param("category") String category);
+
+
+    @Query("SELECT MIN(k.date) FROM KardexEntity k")
+    LocalDate findOldestMovementDate();
+
+
+    /**
+     * Borra movimientos ya escritos en un segmento del archivo (KardexArchiveService), por ids y con el rango de fechas
+     * del mes para que en la tabla particionada solo se lea la particion del mes
+     */
+    @Modifying
+    @Query("DELETE FROM KardexEntity k WHERE k.date BETWEEN :startDate AND :endDate AND k.id IN :ids")
+    int deleteArchived(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate,
+                       @Param("ids") List<Long> ids);
 }
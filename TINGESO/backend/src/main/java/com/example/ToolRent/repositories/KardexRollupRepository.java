@@ -0,0 +1,93 @@
+package com.example.ToolRent.repositories;
+
+import com.example.ToolRent.dto.KardexRollupDTO;
+import com.example.ToolRent.dto.KardexRollupTotalDTO;
+import com.example.ToolRent.entities.KardexDailyRollupEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface KardexRollupRepository extends JpaRepository<KardexDailyRollupEntity, Long> {
+
+    // Suma movimientos al resumen del dia (PostgreSQL): inserta la fila o suma a la existente en una sola sentencia
+    // La herramienta del inventario se busca por nombre y categoria, ON CONFLICT evita duplicados con transacciones concurrentes
+    @Modifying
+    @Query(value = "INSERT INTO kardex_daily_rollups (date, inventory_id, type, total_amount, movement_count) " +
+            "SELECT :date, ti.id, :type, :amount, :movements FROM tools_inventory ti " +
+            "WHERE ti.name = :name AND ti.category = :category " +
+            "ON CONFLICT (date, inventory_id, type) DO UPDATE SET " +
+            "total_amount = kardex_daily_rollups.total_amount + EXCLUDED.total_amount, " +
+            "movement_count = kardex_daily_rollups.movement_count + EXCLUDED.movement_count",
+            nativeQuery = true)
+    int upsertRollup(@Param("date") LocalDate date, @Param("name") String name, @Param("category") String category,
+                     @Param("type") String type, @Param("amount") long amount, @Param("movements") long movements);
+
+    // Lo mismo con MERGE estandar, para H2 (pruebas) que no tiene ON CONFLICT ... DO UPDATE
+    @Modifying
+    @Query(value = "MERGE INTO kardex_daily_rollups r " +
+            "USING (SELECT CAST(:date AS DATE) AS date, ti.id AS inventory_id, CAST(:type AS VARCHAR(255)) AS type " +
+            "FROM tools_inventory ti WHERE ti.name = :name AND ti.category = :category) s " +
+            "ON r.date = s.date AND r.inventory_id = s.inventory_id AND r.type = s.type " +
+            "WHEN MATCHED THEN UPDATE SET total_amount = r.total_amount + :amount, " +
+            "movement_count = r.movement_count + :movements " +
+            "WHEN NOT MATCHED THEN INSERT (date, inventory_id, type, total_amount, movement_count) " +
+            "VALUES (s.date, s.inventory_id, s.type, :amount, :movements)",
+            nativeQuery = true)
+    int mergeRollup(@Param("date") LocalDate date, @Param("name") String name, @Param("category") String category,
+                    @Param("type") String type, @Param("amount") long amount, @Param("movements") long movements);
+
+    @Modifying
+    @Query("DELETE FROM KardexDailyRollupEntity r WHERE r.date = :date")
+    int deleteByDate(@Param("date") LocalDate date);
+
+    // Recalcula el resumen de un dia desde los movimientos (con particiones solo lee la particion del mes)
+    @Modifying
+    @Query(value = "INSERT INTO kardex_daily_rollups (date, inventory_id, type, total_amount, movement_count) " +
+            "SELECT k.date, ti.id, k.type, SUM(k.affected_amount), COUNT(*) FROM movimientos k " +
+            "JOIN tools t ON t.id = k.tool_id " +
+            "JOIN categories c ON c.id = t.category_id " +
+            "JOIN tools_inventory ti ON ti.name = t.name AND ti.category = c.name " +
+            "WHERE k.date = :date " +
+            "GROUP BY k.date, ti.id, k.type",
+            nativeQuery = true)
+    int insertRollupsFromMovements(@Param("date") LocalDate date);
+
+    @Query("SELECT MIN(k.date) FROM KardexEntity k")
+    LocalDate findFirstMovementDate();
+
+    /**
+     * Reporte diario por herramienta del inventario y tipo en un rango de fechas
+     * type e inventoryId son opcionales (null = todos)
+     */
+    @Query("SELECT new com.example.ToolRent.dto.KardexRollupDTO(r.date, i.id, i.name, i.category, r.type, " +
+            "r.totalAmount, r.movementCount) " +
+            "FROM KardexDailyRollupEntity r JOIN r.inventory i " +
+            "WHERE r.date BETWEEN :startDate AND :endDate " +
+            "AND (:type IS NULL OR r.type = :type) " +
+            "AND (:inventoryId IS NULL OR i.id = :inventoryId) " +
+            "ORDER BY r.date, i.name, i.category, r.type")
+    List<KardexRollupDTO> findDailyRollups(@Param("startDate") LocalDate startDate,
+                                           @Param("endDate") LocalDate endDate,
+                                           @Param("type") String type,
+                                           @Param("inventoryId") Long inventoryId);
+
+    /**
+     * Totales del rango por herramienta del inventario y tipo
+     */
+    @Query("SELECT new com.example.ToolRent.dto.KardexRollupTotalDTO(i.id, i.name, i.category, r.type, " +
+            "SUM(r.totalAmount), SUM(r.movementCount)) " +
+            "FROM KardexDailyRollupEntity r JOIN r.inventory i " +
+            "WHERE r.date BETWEEN :startDate AND :endDate " +
+            "AND (:type IS NULL OR r.type = :type) " +
+            "GROUP BY i.id, i.name, i.category, r.type " +
+            "ORDER BY i.name, i.category, r.type")
+    List<KardexRollupTotalDTO> findRollupTotals(@Param("startDate") LocalDate startDate,
+                                                @Param("endDate") LocalDate endDate,
+                                                @Param("type") String type);
+}
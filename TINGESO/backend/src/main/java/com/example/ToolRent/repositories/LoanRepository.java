@@ -1,13 +1,17 @@
 package com.example.ToolRent.repositories;
 
+import com.example.ToolRent.dto.LoanAdmissionDTO;
 import com.example.ToolRent.entities.CustomerEntity;
 import com.example.ToolRent.entities.LoanEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,6 +24,8 @@ public interface LoanRepository extends JpaRepository<LoanEntity, Long> {
 
     public Optional<List<LoanEntity>> findByStatus(String status);
 
+    boolean existsByCustomerIdAndStatus(Long customerId, String status);
+
 
     // Buscar préstamos por RUT del cliente (usando query personalizada)
     @Query("SELECT l FROM LoanEntity l WHERE l.customer.rut = :rut")
@@ -31,6 +37,57 @@ public interface LoanRepository extends JpaRepository<LoanEntity, Long> {
 
 
 
+    // Validaciones de makeLoan en una sola consulta: prestamos activos del cliente (contador del cliente), si ya tiene
+    // la misma herramienta, stock y tarifa del inventario (null si la herramienta no esta en el inventario),
+    // y el id y estado guardados del cliente
+    @Query("SELECT new com.example.ToolRent.dto.LoanAdmissionDTO(" +
+            "cast(c.activeLoans as Long), " +
+            "CASE WHEN EXISTS (SELECT l.id FROM LoanEntity l WHERE l.customer = c AND l.status = 'activo' " +
+            "AND l.tool.name = :toolName AND l.tool.category.name = :category) THEN true ELSE false END, " +
+            "ti.currentStock, ti.dailyRentalRate, c.id, c.status) " +
+            "FROM CustomerEntity c LEFT JOIN ToolsInventoryEntity ti ON ti.name = :toolName AND ti.category = :category " +
+            "WHERE c.rut = :rut")
+    Optional<LoanAdmissionDTO> findLoanAdmission(@Param("rut") String rut,
+                                                 @Param("toolName") String toolName,
+                                                 @Param("category") String category);
+
+    // Nombre y categoria de las herramientas de los prestamos activos de un cliente, para validar un prestamo multiple
+    @Query("SELECT l.tool.name, l.tool.category.name FROM LoanEntity l WHERE l.customer.id = :customerId AND l.status = 'activo'")
+    List<Object[]> findActiveLoanToolFamilies(@Param("customerId") Long customerId);
+
+    // Prestamos de una devolucion multiple con su herramienta, categoria y cliente en una sola consulta
+    @Query("SELECT l FROM LoanEntity l JOIN FETCH l.tool t JOIN FETCH t.category JOIN FETCH l.customer " +
+            "WHERE l.id IN :loanIds")
+    List<LoanEntity> findAllForReturn(@Param("loanIds") Collection<Long> loanIds);
+
+    // ========== QUERIES PARA EL PROCESO DE PRESTAMOS VENCIDOS ==========
+
+    // Las sentencias masivas reciben un rango de ids de prestamos para poder procesar la tabla por partes
+
+    // Pasa a vencido, en una sola sentencia, todos los prestamos activos cuya fecha de devolucion ya paso
+    // VERSIONED incrementa la version, un prestamo leido antes de este UPDATE no puede pisarlo al guardarse
+    @Modifying
+    @Transactional
+    @Query("UPDATE VERSIONED LoanEntity l SET l.status = 'vencido' WHERE l.status = 'activo' AND l.returnDate < :today " +
+            "AND l.id BETWEEN :fromId AND :toId")
+    int markOverdueLoans(@Param("today") LocalDate today, @Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    // Menor y mayor id de la tabla de prestamos, para dividirla en partes
+    @Query("SELECT MIN(l.id), MAX(l.id) FROM LoanEntity l")
+    List<Object[]> findLoanIdRange();
+
+    //Pasa a vencido un solo prestamo, retorna 0 si ya fue devuelto o si otro nodo ya lo proceso
+    @Modifying
+    @Transactional
+    @Query("UPDATE VERSIONED LoanEntity l SET l.status = 'vencido' WHERE l.id = :loanId AND l.status = 'activo' AND l.returnDate < :today")
+    int markLoanAsOverdue(@Param("loanId") Long loanId, @Param("today") LocalDate today);
+
+    //Id y fecha de devolucion de los prestamos activos, para cargar los temporizadores de vencimiento
+    @Query("SELECT l.id, l.returnDate FROM LoanEntity l WHERE l.status = 'activo'")
+    List<Object[]> findActiveLoanReturnDates();
+
+
+
     // ========== QUERIES PARA REPORTES (ÉPICA 6) ==========
 
     // RF6.1: Buscar préstamos activos (vigentes y atrasados) en un rango de fechas
@@ -0,0 +1,45 @@
+package com.example.ToolRent.repositories;
+
+import com.example.ToolRent.entities.SchedulerLockEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/*
+Las operaciones usan REQUIRES_NEW para que el arriendo se confirme aunque se llame dentro de otra transaccion.
+Las fechas salen del reloj de la base de datos (local datetime), no del reloj de cada nodo: con relojes desfasados
+un nodo adelantado tomaria el arriendo de otro antes de que venza
+ */
+@Repository
+public interface SchedulerLockRepository extends JpaRepository<SchedulerLockEntity, String> {
+
+    //Toma o renueva el arriendo por leaseSeconds, solo si esta vencido o si ya es de este nodo
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("UPDATE SchedulerLockEntity s SET s.lockedBy = :node, s.lockedAt = local datetime, " +
+            "s.lockedUntil = timestampadd(second, :leaseSeconds, local datetime) " +
+            "WHERE s.name = :name AND (s.lockedUntil <= local datetime OR s.lockedBy = :node)")
+    int acquire(@Param("name") String name,
+                @Param("node") String node,
+                @Param("leaseSeconds") long leaseSeconds);
+
+    //Crea la fila del arriendo la primera vez, si otro nodo la crea antes falla por llave duplicada
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("INSERT INTO SchedulerLockEntity (name, lockedBy, lockedAt, lockedUntil) " +
+            "VALUES (:name, :node, local datetime, timestampadd(second, :leaseSeconds, local datetime))")
+    int insert(@Param("name") String name,
+               @Param("node") String node,
+               @Param("leaseSeconds") long leaseSeconds);
+
+    //Libera el arriendo para que otro nodo lo tome de inmediato
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("UPDATE SchedulerLockEntity s SET s.lockedUntil = local datetime WHERE s.name = :name AND s.lockedBy = :node")
+    int release(@Param("name") String name,
+                @Param("node") String node);
+}
@@ -0,0 +1,15 @@
+package com.example.ToolRent.repositories;
+
+import com.example.ToolRent.entities.StockSnapshotEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+@Repository
+public interface StockSnapshotRepository extends JpaRepository<StockSnapshotEntity, Long> {
+    // Foto mas reciente de la herramienta del inventario tomada en o antes de la fecha
+    Optional<StockSnapshotEntity> findFirstByInventoryIdAndSnapshotDateLessThanEqualOrderBySnapshotDateDesc(
+            Long inventoryId, LocalDate date);
+}
@@ -1,8 +1,13 @@
 package com.example.ToolRent.repositories;
 
 import com.example.ToolRent.entities.ToolEntity;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -26,9 +31,33 @@ public interface ToolRepository extends JpaRepository<ToolEntity,Long> {
             @Param("categoryName") String categoryName
     );
 
+    // Ids de las unidades de una herramienta del inventario (nombre y categoria)
+    @Query("SELECT t.id FROM ToolEntity t WHERE t.name = :toolName AND t.category.name = :categoryName")
+    List<Long> findIdsByNameAndCategory(@Param("toolName") String toolName, @Param("categoryName") String categoryName);
+
     @Query("SELECT DISTINCT t FROM ToolEntity t " +
             "JOIN LoanEntity l ON l.tool.id = t.id " +
             "JOIN FineEntity f ON f.loan.id = l.id " +
             "WHERE t.status = 'en reparacion' AND f.type = 'daño leve'")
     List<ToolEntity> findToolsInRepairWithMinorDamageFine();
+
+    // Herramientas de un prestamo multiple junto a su inventario (null si no esta en el inventario), en una sola consulta
+    // Cada fila es [ToolEntity, ToolsInventoryEntity]
+    @Query("SELECT t, ti FROM ToolEntity t " +
+            "LEFT JOIN ToolsInventoryEntity ti ON ti.name = t.name AND ti.category = t.category.name " +
+            "WHERE t.id IN :toolIds")
+    List<Object[]> findToolsWithInventory(@Param("toolIds") List<Long> toolIds);
+
+    // Bloquea una unidad disponible de la herramienta (SELECT ... FOR UPDATE SKIP LOCKED), usar con PageRequest.of(0, 1)
+    // lock.timeout -2 es SKIP LOCKED: las unidades bloqueadas por otro prestamo se saltan en vez de esperarlas
+    // La categoria va en subconsulta para que el FOR UPDATE bloquee solo la fila de la herramienta
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT t FROM ToolEntity t " +
+            "WHERE t.name = :toolName AND t.status = 'disponible' " +
+            "AND t.category.id IN (SELECT c.id FROM CategoryEntity c WHERE c.name = :categoryName) " +
+            "ORDER BY t.id")
+    List<ToolEntity> lockAvailableTool(@Param("toolName") String toolName,
+                                       @Param("categoryName") String categoryName,
+                                       Pageable pageable);
 }
@@ -2,10 +2,17 @@ package com.example.ToolRent.repositories;
 
 import com.example.ToolRent.entities.ToolEntity;
 import com.example.ToolRent.entities.ToolsInventoryEntity;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ToolsInventoryRepository extends JpaRepository<ToolsInventoryEntity,Long> {
@@ -13,4 +20,26 @@ public interface ToolsInventoryRepository extends JpaRepository<ToolsInventoryEn
     public ToolsInventoryEntity findByNameAndCategory(String name, String category);
     public List<ToolsInventoryEntity> findByCategory(String category);
 
+    // Bloquea la fila del inventario: los cambios de stock (y sus movimientos del kardex, que se confirman
+    // en la misma transaccion) esperan, asi el inventario y la suma del kardex se leen en el mismo punto
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT t FROM ToolsInventoryEntity t WHERE t.id = :id")
+    Optional<ToolsInventoryEntity> lockById(@Param("id") Long id);
+
+    // Reserva una unidad del stock en una sola sentencia, sin leer y volver a escribir el inventario
+    // Retorna 0 si no quedaba stock, asi dos prestamos concurrentes no pueden dejar el stock negativo
+    // VERSIONED incrementa la version para que un save del inventario con el stock antiguo falle
+    @Modifying
+    @Transactional
+    @Query("UPDATE VERSIONED ToolsInventoryEntity t SET t.currentStock = t.currentStock - 1 " +
+            "WHERE t.name = :name AND t.category = :category AND t.currentStock > 0")
+    int reserveStock(@Param("name") String name, @Param("category") String category);
+
+    // Devuelve unidades al stock en una sola sentencia (una devolucion multiple suma todas las de una herramienta)
+    @Modifying
+    @Transactional
+    @Query("UPDATE VERSIONED ToolsInventoryEntity t SET t.currentStock = t.currentStock + :amount " +
+            "WHERE t.name = :name AND t.category = :category")
+    int releaseStock(@Param("name") String name, @Param("category") String category, @Param("amount") int amount);
+
 }
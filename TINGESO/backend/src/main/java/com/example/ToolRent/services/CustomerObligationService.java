@@ -0,0 +1,99 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.dto.CustomerObligationsDTO;
+import com.example.ToolRent.repositories.CustomerRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/*
+Contadores de obligaciones de los clientes (prestamos activos, vencidos, evaluaciones pendientes y multas no pagadas).
+Los servicios de prestamos y multas los actualizan con CustomerRepository.adjustObligations en la misma transaccion
+que cambia el estado, asi decidir si un cliente puede pedir prestamos o volver a activo es leer una sola fila.
+La conciliacion compara los contadores con las tablas de prestamos y multas y corrige a los clientes que no
+coinciden, por ejemplo los que existian antes de tener contadores o un cambio hecho directo en la base de datos.
+ */
+@Service
+public class CustomerObligationService {
+    private static final Logger log = LoggerFactory.getLogger(CustomerObligationService.class);
+
+    //Nombre del arriendo de la conciliacion en SchedulerLocks
+    public static final String RECONCILE_JOB = "reconcileCustomerObligations";
+
+    @Autowired
+    CustomerRepository customerRepository;
+
+    @Autowired
+    SchedulerLockService schedulerLockService;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    public CustomerObligationsDTO getObligations(Long customerId) {
+        return customerRepository.findObligations(customerId)
+                .orElseThrow(() -> new IllegalArgumentException("Cliente con id " + customerId + " no encontrado"));
+    }
+
+    //Al iniciar se concilia una vez, los clientes creados antes de tener contadores parten en 0
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileOnStartup() {
+        reconcileObligations();
+    }
+
+    @Scheduled(cron = "${toolrent.customers.reconcile-cron:0 15 3 * * *}")
+    public void reconcileObligations() {
+        if (!schedulerLockService.holdJobLease(RECONCILE_JOB)) {
+            return;
+        }
+        reconcile(() -> schedulerLockService.holdJobLease(RECONCILE_JOB));
+    }
+
+    //Retorna cuantos clientes tenian contadores distintos a las tablas
+    public int reconcile() {
+        return reconcile(() -> true);
+    }
+
+    //keepRunning renueva el arriendo antes de cada cliente, si retorna false la conciliacion se detiene
+    int reconcile(BooleanSupplier keepRunning) {
+        List<Long> driftedCustomers = customerRepository.findCustomersWithDriftedObligations();
+        int fixed = 0;
+        for (Long customerId : driftedCustomers) {
+            if (!keepRunning.getAsBoolean()) {
+                log.warn("Se perdio el arriendo de la conciliacion de obligaciones, se detiene");
+                break;
+            }
+            fixed += reconcileCustomer(customerId);
+        }
+        if (fixed > 0) {
+            log.warn("Se corrigieron los contadores de obligaciones de {} clientes", fixed);
+        }
+        return fixed;
+    }
+
+    /*
+    Cada cliente en su propia transaccion: primero se bloquea su fila y despues se vuelve a contar.
+    Una transaccion que cambia un prestamo tambien actualiza la fila del cliente, asi que al tener el bloqueo
+    ya confirmo o todavia no suma, y el conteo no pierde ese cambio
+     */
+    public int reconcileCustomer(Long customerId) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        Integer fixed = transaction.execute(status -> {
+            if (customerRepository.lockById(customerId).isEmpty()) {
+                return 0;
+            }
+            return customerRepository.reconcileObligations(customerId);
+        });
+        return fixed != null ? fixed : 0;
+    }
+}
@@ -1,14 +1,22 @@
 package com.example.ToolRent.services;
 
+import com.example.ToolRent.config.RetryOnOptimisticLock;
+import com.example.ToolRent.dto.FinePaymentChecksDTO;
+import com.example.ToolRent.dto.FineSummaryDTO;
+import com.example.ToolRent.dto.KeysetSliceDTO;
 import com.example.ToolRent.entities.*;
 import com.example.ToolRent.repositories.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -27,6 +35,8 @@ public class FineService {
     private ToolService toolService;
     @Autowired
     private ToolRepository toolRepository;
+    @Autowired
+    private CustomerObligationService customerObligationService;
 
 
 
@@ -39,6 +49,46 @@ public class FineService {
                 .orElseThrow(() -> new IllegalArgumentException("Multas con estado " + status + " no encontrados"));
     }
 
+    //Tamaño maximo de pagina de searchFines
+    public static final int MAX_SEARCH_PAGE_SIZE = 100;
+
+    /*
+    Busqueda de multas con filtros opcionales, paginada por llave: las multas se listan de la mas nueva a la mas antigua
+    y cursor es el id de la ultima multa de la pagina anterior (null para la primera pagina)
+     */
+    public KeysetSliceDTO<FineSummaryDTO> searchFines(String rut, String status, String type,
+                                                      Integer minValue, Integer maxValue,
+                                                      LocalDate loanDateFrom, LocalDate loanDateTo,
+                                                      Long cursor, int size) {
+        if (size < 1 || size > MAX_SEARCH_PAGE_SIZE) {
+            throw new IllegalArgumentException("El tamaño de página debe estar entre 1 y " + MAX_SEARCH_PAGE_SIZE);
+        }
+        if (minValue != null && maxValue != null && minValue > maxValue) {
+            throw new IllegalArgumentException("El valor mínimo no puede ser mayor al valor máximo");
+        }
+        if (loanDateFrom != null && loanDateTo != null && loanDateFrom.isAfter(loanDateTo)) {
+            throw new IllegalArgumentException("La fecha de inicio no puede ser posterior a la fecha de término");
+        }
+
+        LocalDate today = LocalDate.now();
+        Specification<FineEntity> specification = Specification.allOf(
+                FineSpecifications.hasCustomerRut(rut),
+                FineSpecifications.hasStatus(status),
+                FineSpecifications.hasType(type),
+                FineSpecifications.fineValueBetween(minValue, maxValue, today),
+                FineSpecifications.loanDateBetween(loanDateFrom, loanDateTo),
+                FineSpecifications.idBefore(cursor));
+
+        //Se pide una fila extra para saber si hay pagina siguiente
+        List<FineSummaryDTO> fines = fineRepository.searchFines(specification, today, size + 1);
+        boolean hasNext = fines.size() > size;
+        if (hasNext) {
+            fines = fines.subList(0, size);
+        }
+        Long nextCursor = hasNext ? fines.get(fines.size() - 1).getId() : null;
+        return new KeysetSliceDTO<>(new ArrayList<>(fines), nextCursor, hasNext);
+    }
+
     //Devuelve todos las multas de un cliente
     public ArrayList<FineEntity> findFineByCustomerRut(String rut){
 
@@ -93,10 +143,14 @@ public class FineService {
         fine.setFineValue(fineValue);
         fine.setStatus("no pagada");
 
-        return fineRepository.save(fine);
+        FineEntity savedFine = fineRepository.save(fine);
+        customerRepository.adjustObligations(customer.getId(), 0, 0, 0, 1);
+        return savedFine;
     }
 
     //Se genera una multa por daño irreparable
+    @Transactional
+    @RetryOnOptimisticLock
     public FineEntity generateFineForIrreparableDamage(CustomerEntity customer, Long idLoan) {
         FineEntity fine = new FineEntity();
         LoanEntity loan = loanService.findLoanById(idLoan);
@@ -125,6 +179,9 @@ public class FineService {
             fine.setStatus("no pagada");
 
             fineRepository.save(fine);
+
+            //El prestamo deja de estar en evaluacion pendiente y el cliente suma una multa no pagada
+            customerRepository.adjustObligations(loan.getCustomer().getId(), 0, 0, -1, 1);
         }
         else{
             throw new IllegalArgumentException("El estado del prestamo no es correcto");
@@ -134,6 +191,8 @@ public class FineService {
 
     //Se genera una multa por daños menores
     //fineValue es el cargo de reparacion, aplicado por el administrador en daños menores
+    @Transactional
+    @RetryOnOptimisticLock
     public FineEntity generateFineForMinorDamage(CustomerEntity customer, Long idLoan, int fineValue) {
         FineEntity fine = new FineEntity();
         LoanEntity loan = loanService.findLoanById(idLoan);
@@ -152,6 +211,9 @@ public class FineService {
             fine.setStatus("no pagada");
 
             fineRepository.save(fine);
+
+            //El prestamo deja de estar en evaluacion pendiente y el cliente suma una multa no pagada
+            customerRepository.adjustObligations(loan.getCustomer().getId(), 0, 0, -1, 1);
         }
         else{
             throw new IllegalArgumentException("El estado del prestamo no es correcto");
@@ -174,9 +236,22 @@ public class FineService {
     }
 
 
-    public FineEntity payFine(FineEntity fine) {
+    //Recibe el id y no la multa de la solicitud: multa, prestamo y cliente se leen en cada intento, asi un reintento
+    //por conflicto de version parte de la version actual de las filas
+    @Transactional
+    @RetryOnOptimisticLock
+    public FineEntity payFine(Long fineId) {
+        if (fineId == null) {
+            throw new IllegalArgumentException("Debe indicar la multa a pagar");
+        }
+        FineEntity fine = fineRepository.findById(fineId)
+                .orElseThrow(() -> new IllegalArgumentException("Multa con ID " + fineId + " no encontrada"));
+
         //Verifico estado multa
         if (fine.getStatus().equals("no pagada")) {
+            //Si el valor de la multa se calcula al leer, queda fijo al momento de pagarla
+            fine.setFineValue(fine.getFineValue());
+
             CustomerEntity customer = fine.getCustomer();
             LoanEntity loan = fine.getLoan();
             ToolEntity tool = loan.getTool();
@@ -184,6 +259,9 @@ public class FineService {
             //Verifico estado prestamo
             if (!loan.getStatus().equals("vencido") && !loan.getStatus().equals("activo")) {
 
+                //La multa se paga en todos los casos, el cliente tiene una multa no pagada menos
+                customerRepository.adjustObligations(customer.getId(), 0, 0, 0, -1);
+
                 // 1) Verifico que el estado del prestamo sea distinto a evaluacion pendiente
                 /*razon: Si ingresa aca, es poque hay una multa por atraso, pero ademas se devolvio la herramienta
                 con daños, por lo tanto el estado del préstamo es: evaluacion pendiente. Por lo que mas adelante se
@@ -195,75 +273,35 @@ public class FineService {
                     return fineRepository.save(fine);
                 }
 
+                //Las condiciones 2), 3) y 4) se resuelven con EXISTS indexados, sin cargar todas las multas
+                FinePaymentChecksDTO checks = fineRepository.findFinePaymentChecks(fine.getId(), loan.getId(), customer.getId())
+                        .orElseThrow(() -> new IllegalArgumentException("Cliente con id " + customer.getId() + " no encontrado"));
+
                     // 2) Verificar si el PRÉSTAMO tiene asociada otra multa
                 /*
                 En este caso habrian dos multas una por atraso y otra por daño (menor o irreparable)
                  */
-                ArrayList<FineEntity> unpaidFines = getFinesByStatus("no pagada");
-
-                for (FineEntity fineEntity : unpaidFines) {
-                    LoanEntity loanEntity = fineEntity.getLoan();
-
-                    //Las multas tienen que ser distintas
-                    if (!fine.getId().equals(fineEntity.getId())){
-                        //El prestamo asociado tiene que ser el mismo
-                        if (loanEntity.getId().equals(loan.getId())){
-                            fine.setStatus("pagada");
-                            return fineRepository.save(fine);
-                        }
-                    }
-                }
-
-                // 3) Verificar si el CLIENTE tiene otra multa asociada
-                for (FineEntity fineEntity : unpaidFines) {
-                    CustomerEntity customerEntity = fineEntity.getCustomer();
-
-                    //Las multas tienen que ser distintas
-                    if (!fine.getId().equals(fineEntity.getId())){
-                        //Los clientes tienen que ser iguales
-                        if (customerEntity.getId().equals(customer.getId())) {
-
-                            //Cambio el estado del prestamo y actualizo herramienta
-                            loan.setStatus("finalizado con multa");
-                            loanRepository.save(loan);
-
-                            //Cambio el estado de la multa y actualizo variables
-                            fine.setStatus("pagada");
-                            fine.setLoan(loan);
-
-                            return fineRepository.save(fine);
-
-                        }
-
-                    }
+                if (checks.getOtherUnpaidFineOnLoan()) {
+                    fine.setStatus("pagada");
+                    return fineRepository.save(fine);
                 }
 
-                // 4) Verificar si Cliente tiene otros préstamos asociados a otras herramientas, con estado = ev. pendiente
+                // 3) y 4) Verificar si el CLIENTE tiene otra multa no pagada u otro prestamo en evaluacion pendiente
+                //(un prestamo vencido siempre tiene su multa por atraso no pagada, por lo que cae en el caso 3)
                 //Si ese es el caso, estado del cliente sigue en restringido
+                if (checks.getOtherUnpaidFineForCustomer() || checks.getOtherPendingEvaluationForCustomer()) {
 
-                ArrayList<LoanEntity> loansWithPendingEvaluation = loanService.findLoanByStatus("evaluación pendiente");
-                for (LoanEntity loanEntity : loansWithPendingEvaluation) {
-                    CustomerEntity customerEntity = loanEntity.getCustomer();
-
-                    //Tienen que ser diferentyes prestamos
-                    if (!loanEntity.getId().equals(loan.getId())){
-                        //El cliente tiene que ser el mismo
-                        if(customerEntity.getId().equals(customer.getId())){
-
-                            //Cambio el estado del prestamo y actualizo herramienta
-                            loan.setStatus("finalizado con multa");
-                            loanRepository.save(loan);
+                    //Cambio el estado del prestamo y actualizo herramienta
+                    loan.setStatus("finalizado con multa");
+                    loanRepository.save(loan);
 
-                            //Cambio el estado de la multa y actualizo variables
-                            fine.setStatus("pagada");
-                            fine.setLoan(loan);
+                    //Cambio el estado de la multa y actualizo variables
+                    fine.setStatus("pagada");
+                    fine.setLoan(loan);
 
-                            return fineRepository.save(fine);
-                        }
-                    }
+                    return fineRepository.save(fine);
                 }
 
-
                 /*
                 5) Si llega hasta aca, es poque ninguna de las condiciones anteriores se cumplio,
                 por lo que el cliente queda con estado activo
@@ -293,4 +331,63 @@ public class FineService {
             throw new IllegalArgumentException("El estado de la multa no es correcto");
         }
     }
+
+    /*
+    Paga todas las multas no pagadas de un cliente en una sola transaccion.
+    Equivale a llamar payFine por cada multa, pero el estado del cliente se evalua una sola vez al final
+    y las multas y prestamos se guardan en lotes JDBC (hibernate.jdbc.batch_size)
+     */
+    @Transactional
+    @RetryOnOptimisticLock
+    public List<FineEntity> payAllFines(String rut) {
+        CustomerEntity customer = customerRepository.findByRut(rut)
+                .orElseThrow(() -> new IllegalArgumentException("Cliente con rut " + rut + " no encontrado"));
+
+        //Bloqueo al cliente para que otro pago o una multa nueva no cambie sus multas mientras se pagan
+        customerRepository.lockById(customer.getId());
+
+        List<FineEntity> fines = fineRepository.findUnpaidFinesWithLoanByCustomerId(customer.getId());
+        if (fines.isEmpty()) {
+            throw new IllegalArgumentException("El cliente no tiene multas no pagadas");
+        }
+
+        //Mismas validaciones que payFine, si un prestamo no se puede cerrar no se paga ninguna multa
+        Map<Long, LoanEntity> loans = new LinkedHashMap<>();
+        for (FineEntity fine : fines) {
+            LoanEntity loan = fine.getLoan();
+            if (loan.getStatus().equals("vencido") || loan.getStatus().equals("activo")) {
+                throw new IllegalArgumentException("El estado del prestamo " + loan.getId() + " no es correcto");
+            }
+            loans.put(loan.getId(), loan);
+        }
+
+        for (FineEntity fine : fines) {
+            //Si el valor de la multa se calcula al leer, queda fijo al momento de pagarla
+            fine.setFineValue(fine.getFineValue());
+            fine.setStatus("pagada");
+        }
+
+        //Con todas sus multas pagadas el prestamo finaliza, salvo que siga en evaluacion pendiente
+        //(se generara una multa por daños mas adelante)
+        List<LoanEntity> finishedLoans = new ArrayList<>();
+        for (LoanEntity loan : loans.values()) {
+            if (!loan.getStatus().equals("evaluación pendiente")) {
+                loan.setStatus("finalizado con multa");
+                finishedLoans.add(loan);
+            }
+        }
+
+        fineRepository.saveAll(fines);
+        loanRepository.saveAll(finishedLoans);
+        customerRepository.adjustObligations(customer.getId(), 0, 0, 0, -fines.size());
+
+        //El cliente queda activo si no le quedan multas no pagadas ni prestamos en evaluacion pendiente
+        if (!fineRepository.existsByCustomerIdAndStatus(customer.getId(), "no pagada")
+                && !loanRepository.existsByCustomerIdAndStatus(customer.getId(), "evaluación pendiente")) {
+            customer.setStatus("activo");
+            customerRepository.save(customer);
+        }
+
+        return fines;
+    }
 }
\ No newline at end of file
@@ -3,9 +3,11 @@ package com.example.ToolRent.services;
 import com.example.ToolRent.entities.GlobalRatesEntity;
 import com.example.ToolRent.entities.LoanEntity;
 import com.example.ToolRent.entities.ToolEntity;
+import com.example.ToolRent.repositories.FineRepository;
 import com.example.ToolRent.repositories.GlobalRatesRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
 
@@ -13,6 +15,8 @@ import java.util.ArrayList;
 public class GlobalRatesService {
     @Autowired
     private GlobalRatesRepository globalRatesRepository;
+    @Autowired
+    private FineRepository fineRepository;
 
 
     //Metodos auxiliares
@@ -55,11 +59,18 @@ public class GlobalRatesService {
         return globalRatesRepository.save(globalRatesEntity);
     }
 
+    //La tarifa y las multas que la usan cambian en la misma transaccion, si una falla no queda ninguna
+    @Transactional
     public GlobalRatesEntity updateValueRate(Long id, Integer dailyRateValue) {
         GlobalRatesEntity globalRatesEntity = globalRatesRepository.findById(id)
             .orElseThrow(() -> new IllegalArgumentException("tarifa con ID " + id + " no encontrada"));
         validateDailyRateValue(dailyRateValue);
         globalRatesEntity.setDailyRateValue(dailyRateValue);
+
+        //Las multas por atraso que se calculan al leer usan la nueva tarifa
+        if ("tarifa diaria de multa".equals(globalRatesEntity.getRateName())) {
+            fineRepository.updateAccruingLateFineRate(dailyRateValue);
+        }
         return globalRatesRepository.save(globalRatesEntity);
     }
 }
@@ -0,0 +1,147 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.entities.IdempotencyKeyEntity;
+import com.example.ToolRent.entities.IdempotencyKeyId;
+import com.example.ToolRent.repositories.IdempotencyKeyRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/*
+Llaves de idempotencia para las operaciones que crean o modifican prestamos y multas.
+Las llaves son de cada usuario autenticado, la misma llave enviada por dos usuarios son dos registros distintos.
+La primera solicitud con una llave la registra como en curso junto al hash de su cuerpo, al terminar bien se guarda
+su respuesta y los reintentos con la misma llave reciben esa respuesta sin volver a ejecutar la operacion.
+Las respuestas completadas quedan tambien en un cache en memoria acotado, asi un reintento en el mismo
+nodo no consulta la base de datos. La fila en IdempotencyKeys es la que vale entre replicas.
+ */
+@Service
+public class IdempotencyService {
+    public static final String IN_PROGRESS = "en curso";
+    public static final String COMPLETED = "completado";
+    public static final int MAX_KEY_LENGTH = 100;
+
+    @Autowired
+    IdempotencyKeyRepository idempotencyKeyRepository;
+
+    //Tiempo que se repite la respuesta guardada
+    @Value("${toolrent.idempotency.ttl-hours:24}")
+    long ttlHours;
+
+    //Si el nodo se cae con la solicitud en curso, la llave se libera al cumplirse este plazo
+    @Value("${toolrent.idempotency.processing-timeout-seconds:300}")
+    long processingTimeoutSeconds;
+
+    @Value("${toolrent.idempotency.cache-size:10000}")
+    int cacheSize;
+
+    //Respuestas completadas mas recientes (LRU)
+    private final Map<IdempotencyKeyId, IdempotencyKeyEntity> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<IdempotencyKeyId, IdempotencyKeyEntity> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    /*
+    Retorna vacio si la llave quedo registrada para esta solicitud y la operacion se debe ejecutar.
+    Si la llave ya existe retorna su registro: completado para repetir la respuesta o en curso si otra
+    solicitud con la misma llave todavia no termina. Comparar el hash del cuerpo queda para quien llama.
+     */
+    public Optional<IdempotencyKeyEntity> begin(String username, String key, String method, String path, String requestHash) {
+        if (key == null || key.isBlank()) {
+            throw new IllegalArgumentException("La Idempotency-Key no puede ser vacía");
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("La Idempotency-Key no puede tener mas de " + MAX_KEY_LENGTH + " caracteres");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        IdempotencyKeyId id = new IdempotencyKeyId(username, key);
+
+        IdempotencyKeyEntity cached = getCached(id, now);
+        if (cached != null) {
+            return Optional.of(checkSameRequest(cached, method, path));
+        }
+
+        Optional<IdempotencyKeyEntity> stored = idempotencyKeyRepository.findById(id);
+        if (stored.isPresent()) {
+            IdempotencyKeyEntity existing = stored.get();
+            if (existing.getExpiresAt().isAfter(now)) {
+                if (COMPLETED.equals(existing.getStatus())) {
+                    putCached(existing);
+                }
+                return Optional.of(checkSameRequest(existing, method, path));
+            }
+            idempotencyKeyRepository.deleteExpiredKey(username, key, now);
+        }
+
+        try {
+            idempotencyKeyRepository.insert(username, key, method, path, requestHash, IN_PROGRESS,
+                    now, now.plusSeconds(processingTimeoutSeconds));
+            return Optional.empty();
+        } catch (DataIntegrityViolationException e) {
+            //Otra solicitud con la misma llave la registro al mismo tiempo
+            IdempotencyKeyEntity other = idempotencyKeyRepository.findById(id)
+                    .orElse(new IdempotencyKeyEntity(username, key, method, path, requestHash, IN_PROGRESS,
+                            null, null, null, now, now));
+            return Optional.of(checkSameRequest(other, method, path));
+        }
+    }
+
+    //Guarda la respuesta de la primera solicitud para repetirla a los reintentos
+    public void complete(String username, String key, String method, String path, String requestHash,
+                         int responseStatus, String contentType, String body) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime until = now.plusHours(ttlHours);
+        if (idempotencyKeyRepository.complete(username, key, COMPLETED, responseStatus, contentType, body, until) > 0) {
+            putCached(new IdempotencyKeyEntity(username, key, method, path, requestHash, COMPLETED,
+                    responseStatus, contentType, body, now, until));
+        }
+    }
+
+    //La solicitud fallo, se borra la llave para que un reintento ejecute de nuevo la operacion
+    public void release(String username, String key) {
+        idempotencyKeyRepository.deleteByKeyAndStatus(username, key, IN_PROGRESS);
+    }
+
+    //Borrar llaves vencidas es idempotente, por eso cada nodo lo hace sin tomar arriendo
+    @Scheduled(cron = "${toolrent.idempotency.purge-cron:0 30 * * * *}")
+    public int purgeExpiredKeys() {
+        LocalDateTime now = LocalDateTime.now();
+        synchronized (cache) {
+            cache.values().removeIf(entry -> !entry.getExpiresAt().isAfter(now));
+        }
+        return idempotencyKeyRepository.deleteExpired(now);
+    }
+
+    private IdempotencyKeyEntity checkSameRequest(IdempotencyKeyEntity entry, String method, String path) {
+        if (!entry.getRequestMethod().equals(method) || !entry.getRequestPath().equals(path)) {
+            throw new IllegalArgumentException("La Idempotency-Key ya fue usada en otra operación");
+        }
+        return entry;
+    }
+
+    private IdempotencyKeyEntity getCached(IdempotencyKeyId id, LocalDateTime now) {
+        synchronized (cache) {
+            IdempotencyKeyEntity entry = cache.get(id);
+            if (entry != null && !entry.getExpiresAt().isAfter(now)) {
+                cache.remove(id);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    private void putCached(IdempotencyKeyEntity entry) {
+        synchronized (cache) {
+            cache.put(new IdempotencyKeyId(entry.getUsername(), entry.getIdempotencyKey()), entry);
+        }
+    }
+}
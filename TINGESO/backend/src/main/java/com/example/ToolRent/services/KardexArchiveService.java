@@ -0,0 +1,135 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.dto.KardexMovementDTO;
+import com.example.ToolRent.repositories.KardexRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+/*
+Archivo de movimientos antiguos del kardex.
+Cada dia (con toolrent.kardex.archive.enabled) los meses completos anteriores a horizon-months se escriben en un
+segmento comprimido en disco (KardexArchiveStore) y se borran de la tabla movimientos, asi la tabla y sus indices
+solo tienen los movimientos recientes. Las lecturas del historial juntan la tabla con los segmentos.
+Antes de archivar se guardan las fotos del stock hasta el corte (StockHistoryService), el stock historico de fechas
+recientes no necesita leer el archivo. El resumen diario (KardexDailyRollups) de los dias archivados se conserva.
+Si el proceso se detiene entre escribir el segmento y borrar las filas, la siguiente ejecucion solo las borra.
+ */
+@Service
+public class KardexArchiveService {
+    private static final Logger log = LoggerFactory.getLogger(KardexArchiveService.class);
+
+    //Nombre del arriendo del archivo en SchedulerLocks
+    public static final String ARCHIVE_JOB = "archiveKardexMovements";
+
+    //Ids por sentencia DELETE
+    private static final int DELETE_CHUNK = 1000;
+
+    @Autowired
+    KardexRepository kardexRepository;
+
+    @Autowired
+    KardexArchiveStore kardexArchiveStore;
+
+    @Autowired
+    StockHistoryService stockHistoryService;
+
+    @Autowired
+    SchedulerLockService schedulerLockService;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Value("${toolrent.kardex.archive.enabled:false}")
+    boolean enabled;
+
+    //Meses completos que se mantienen en la tabla
+    @Value("${toolrent.kardex.archive.horizon-months:24}")
+    int horizonMonths;
+
+    @Scheduled(cron = "${toolrent.kardex.archive.cron:0 0 5 * * *}")
+    public void archiveMovements() {
+        if (!enabled || !schedulerLockService.holdJobLease(ARCHIVE_JOB)) {
+            return;
+        }
+        archive(LocalDate.now(), () -> schedulerLockService.holdJobLease(ARCHIVE_JOB));
+    }
+
+    //Archiva los meses anteriores al corte, retorna cuantos movimientos se sacaron de la tabla
+    public int archive(LocalDate today) {
+        return archive(today, () -> true);
+    }
+
+    //keepRunning renueva el arriendo antes de cada mes, si retorna false el archivo se detiene y lo sigue otro nodo
+    int archive(LocalDate today, BooleanSupplier keepRunning) {
+        YearMonth cutoff = YearMonth.from(today).minusMonths(horizonMonths);
+        LocalDate oldest = kardexRepository.findOldestMovementDate();
+        if (oldest == null || !YearMonth.from(oldest).isBefore(cutoff)) {
+            return 0;
+        }
+        stockHistoryService.ensureSnapshots(cutoff.atDay(1), keepRunning);
+
+        int archived = 0;
+        for (YearMonth month = YearMonth.from(oldest); month.isBefore(cutoff); month = month.plusMonths(1)) {
+            if (!keepRunning.getAsBoolean()) {
+                log.warn("Se perdio el arriendo del archivo del kardex, se detiene antes de {}", month);
+                break;
+            }
+            archived += archiveMonth(month);
+        }
+        log.info("{} movimientos del kardex archivados anteriores a {}", archived, cutoff.atDay(1));
+        return archived;
+    }
+
+    int archiveMonth(YearMonth month) {
+        LocalDate startDate = month.atDay(1);
+        LocalDate endDate = month.atEndOfMonth();
+        if (!kardexArchiveStore.hasMonth(month)) {
+            List<KardexSegment.Entry> entries = readMonth(startDate, endDate);
+            if (entries.isEmpty()) {
+                return 0;
+            }
+            try {
+                kardexArchiveStore.writeMonth(month, entries);
+            } catch (IOException e) {
+                throw new IllegalStateException("No se pudo escribir el segmento del kardex " + month + ": " + e.getMessage(), e);
+            }
+        }
+
+        //Solo se borran los movimientos que quedaron en el segmento
+        List<Long> ids = new ArrayList<>(kardexArchiveStore.archivedIds(month));
+        Integer deleted = new TransactionTemplate(transactionManager).execute(status -> {
+            int count = 0;
+            for (int start = 0; start < ids.size(); start += DELETE_CHUNK) {
+                count += kardexRepository.deleteArchived(startDate, endDate,
+                        ids.subList(start, Math.min(start + DELETE_CHUNK, ids.size())));
+            }
+            return count;
+        });
+        return deleted != null ? deleted : 0;
+    }
+
+    private List<KardexSegment.Entry> readMonth(LocalDate startDate, LocalDate endDate) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        return transaction.execute(status -> {
+            try (Stream<KardexMovementDTO> rows = kardexRepository.streamExportRows(startDate, endDate)) {
+                return rows.map(row -> new KardexSegment.Entry(row.getId(), row.getDate(), row.getType(),
+                        row.getUsername(), row.getToolId(), row.getAffectedAmount())).toList();
+            }
+        });
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.entities.KardexEntity;
+import com.example.ToolRent.entities.ToolEntity;
+import com.example.ToolRent.repositories.ToolRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/*
+Movimientos del kardex archivados en disco (KardexArchiveService los mueve desde la tabla movimientos).
+Un segmento por mes en toolrent.kardex.archive.dir (movimientos_2024_03.seg), se abren al iniciar y se leen
+junto con la tabla en el historial de una herramienta, los rangos de fechas y el stock historico.
+Con varias replicas el directorio debe ser un volumen compartido. El archivo lo escribe la replica que tiene el
+arriendo, las demas revisan el directorio antes de cada lectura (fecha de modificacion, y una lista completa cada
+rescan-seconds por si el volumen no la actualiza) y abren los segmentos nuevos sin reiniciar.
+ */
+@Service
+public class KardexArchiveStore {
+    private static final Logger log = LoggerFactory.getLogger(KardexArchiveStore.class);
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+    private static final Pattern SEGMENT_NAME = Pattern.compile("movimientos_(\\d{4})_(\\d{2})\\.seg");
+
+    @Autowired
+    ToolRepository toolRepository;
+
+    @Value("${toolrent.kardex.archive.dir:kardex-archive}")
+    String directory;
+
+    //Movimientos por bloque comprimido, la unidad minima que se lee de un segmento
+    @Value("${toolrent.kardex.archive.block-size:512}")
+    int blockSize;
+
+    //Plazo maximo entre dos listas completas del directorio aunque su fecha de modificacion no cambie
+    @Value("${toolrent.kardex.archive.rescan-seconds:60}")
+    long rescanSeconds;
+
+    private final NavigableMap<YearMonth, KardexSegment> segments = new ConcurrentSkipListMap<>();
+
+    //Fecha de modificacion del directorio y hora de la ultima lista, para no listarlo en cada lectura
+    private volatile long scannedModified = Long.MIN_VALUE;
+    private volatile long scannedAt;
+
+    @PostConstruct
+    public void loadSegments() throws IOException {
+        synchronized (segments) {
+            segments.clear();
+            scannedModified = Long.MIN_VALUE;
+            int opened = scan();
+            if (opened > 0) {
+                log.info("{} segmentos del kardex archivados abiertos desde {}", opened, Path.of(directory).toAbsolutePath());
+            }
+        }
+    }
+
+    //Abre los segmentos que otra replica agrego al directorio desde la ultima revision
+    void refresh() {
+        Path dir = Path.of(directory);
+        try {
+            if (!Files.isDirectory(dir)) {
+                return;
+            }
+            long modified = Files.getLastModifiedTime(dir).toMillis();
+            if (modified == scannedModified && System.currentTimeMillis() - scannedAt < rescanSeconds * 1000) {
+                return;
+            }
+            synchronized (segments) {
+                int opened = scan();
+                if (opened > 0) {
+                    log.info("{} segmentos nuevos del kardex archivados abiertos desde {}", opened, dir.toAbsolutePath());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo revisar el directorio del kardex archivado " + dir, e);
+        }
+    }
+
+    //Abre los segmentos del directorio que todavia no estan abiertos, retorna cuantos abrio
+    private int scan() throws IOException {
+        Path dir = Path.of(directory);
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        //La fecha se lee antes de listar: un segmento que llegue durante la lista cambia la fecha otra vez
+        long modified = Files.getLastModifiedTime(dir).toMillis();
+        int opened = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "movimientos_*.seg")) {
+            for (Path file : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                YearMonth month = matcher.matches()
+                        ? YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))) : null;
+                if (month != null && !segments.containsKey(month)) {
+                    KardexSegment segment = KardexSegment.open(file);
+                    segments.put(segment.month(), segment);
+                    opened++;
+                }
+            }
+        }
+        scannedModified = modified;
+        scannedAt = System.currentTimeMillis();
+        return opened;
+    }
+
+    public static String segmentName(YearMonth month) {
+        return "movimientos_" + month.format(SUFFIX) + ".seg";
+    }
+
+    public boolean hasMonth(YearMonth month) {
+        refresh();
+        return segments.containsKey(month);
+    }
+
+    //Primer dia despues del ultimo mes archivado, null si no hay nada archivado
+    public LocalDate archivedBefore() {
+        refresh();
+        return segments.isEmpty() ? null : segments.lastKey().plusMonths(1).atDay(1);
+    }
+
+    //Escribe el segmento de un mes (los movimientos en cualquier orden) y lo deja disponible para las lecturas
+    public void writeMonth(YearMonth month, List<KardexSegment.Entry> entries) throws IOException {
+        List<KardexSegment.Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparingLong(KardexSegment.Entry::toolKey)
+                .thenComparing(KardexSegment.Entry::date)
+                .thenComparingLong(KardexSegment.Entry::id));
+        Path dir = Path.of(directory);
+        Files.createDirectories(dir);
+        Path file = dir.resolve(segmentName(month));
+        KardexSegment.write(file, month, sorted, Math.max(1, blockSize));
+        segments.put(month, KardexSegment.open(file));
+    }
+
+    //Ids de los movimientos de un mes archivado
+    public Set<Long> archivedIds(YearMonth month) {
+        refresh();
+        KardexSegment segment = segments.get(month);
+        if (segment == null) {
+            return Set.of();
+        }
+        Set<Long> ids = new HashSet<>(segment.size());
+        read(segment, null).forEach(entry -> ids.add(entry.id()));
+        return ids;
+    }
+
+    //Movimientos archivados de una herramienta con fecha entre startDate y endDate (inclusivas, null = sin limite)
+    public List<KardexEntity> findToolMovements(Long toolId, LocalDate startDate, LocalDate endDate) {
+        refresh();
+        return toEntities(readRange(toolId, startDate, endDate));
+    }
+
+    //Movimientos archivados con fecha entre startDate y endDate (inclusivas)
+    public List<KardexEntity> findMovements(LocalDate startDate, LocalDate endDate) {
+        refresh();
+        return toEntities(readRange(null, startDate, endDate));
+    }
+
+    /*
+    Suma de affectedAmount por tipo de los movimientos archivados de las herramientas, con fecha desde startDate
+    (inclusiva, null = desde el principio) hasta endDate (exclusiva). Filas [tipo, suma] como KardexRepository
+     */
+    public List<Object[]> sumAmountsByType(Collection<Long> toolIds, LocalDate startDate, LocalDate endDate) {
+        refresh();
+        Map<String, Long> sums = new HashMap<>();
+        LocalDate lastDay = endDate.minusDays(1);
+        for (Long toolId : toolIds) {
+            for (KardexSegment.Entry entry : readRange(toolId, startDate, lastDay)) {
+                sums.merge(entry.type(), (long) entry.affectedAmount(), Long::sum);
+            }
+        }
+        List<Object[]> rows = new ArrayList<>();
+        sums.forEach((type, sum) -> rows.add(new Object[]{type, sum}));
+        return rows;
+    }
+
+    //Meses archivados entre las fechas (inclusivas, null = sin limite), del mas antiguo al mas reciente
+    public List<YearMonth> archivedMonths(LocalDate startDate, LocalDate endDate) {
+        refresh();
+        List<YearMonth> result = new ArrayList<>();
+        for (KardexSegment segment : months(startDate, endDate)) {
+            result.add(segment.month());
+        }
+        return result;
+    }
+
+    //true si algun mes entre las fechas (inclusivas, null = sin limite) esta archivado
+    public boolean covers(LocalDate startDate, LocalDate endDate) {
+        refresh();
+        return !months(startDate, endDate).isEmpty();
+    }
+
+    private Collection<KardexSegment> months(LocalDate startDate, LocalDate endDate) {
+        if (segments.isEmpty() || (startDate != null && endDate != null && startDate.isAfter(endDate))) {
+            return List.of();
+        }
+        YearMonth from = startDate != null ? YearMonth.from(startDate) : segments.firstKey();
+        YearMonth to = endDate != null ? YearMonth.from(endDate) : segments.lastKey();
+        if (from.isAfter(to)) {
+            return List.of();
+        }
+        return segments.subMap(from, true, to, true).values();
+    }
+
+    private List<KardexSegment.Entry> readRange(Long toolId, LocalDate startDate, LocalDate endDate) {
+        List<KardexSegment.Entry> result = new ArrayList<>();
+        for (KardexSegment segment : months(startDate, endDate)) {
+            for (KardexSegment.Entry entry : read(segment, toolId)) {
+                if ((startDate == null || !entry.date().isBefore(startDate))
+                        && (endDate == null || !entry.date().isAfter(endDate))) {
+                    result.add(entry);
+                }
+            }
+        }
+        return result;
+    }
+
+    private List<KardexSegment.Entry> read(KardexSegment segment, Long toolId) {
+        try {
+            return toolId != null ? segment.readTool(toolId) : segment.readAll();
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo leer el segmento del kardex " + segment.month(), e);
+        }
+    }
+
+    //Las herramientas no se archivan, se cargan juntas desde la tabla
+    private List<KardexEntity> toEntities(List<KardexSegment.Entry> entries) {
+        if (entries.isEmpty()) {
+            return List.of();
+        }
+        Set<Long> toolIds = entries.stream().map(KardexSegment.Entry::toolId)
+                .filter(Objects::nonNull).collect(Collectors.toSet());
+        Map<Long, ToolEntity> tools = toolRepository.findAllById(toolIds).stream()
+                .collect(Collectors.toMap(ToolEntity::getId, Function.identity()));
+        List<KardexEntity> movements = new ArrayList<>(entries.size());
+        for (KardexSegment.Entry entry : entries) {
+            movements.add(new KardexEntity(entry.id(), entry.type(), entry.date(), entry.username(),
+                    entry.toolId() != null ? tools.get(entry.toolId()) : null, entry.affectedAmount()));
+        }
+        return movements;
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.ToolRent.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+Particiones mensuales de la tabla de movimientos del kardex (solo PostgreSQL).
+Con toolrent.kardex.partitions.enabled la tabla movimientos se declara PARTITION BY RANGE (date) con una particion
+por mes (movimientos_2026_10 = octubre 2026), asi las consultas por rango de fechas solo leen los meses del rango.
+Al iniciar, si la tabla que creo ddl-auto no esta particionada se convierte (se copian los movimientos existentes).
+La llave primaria pasa a ser (id, date) y los indices de KardexEntity se crean en cada particion.
+Viene desactivado: la conversion bloquea la tabla mientras copia, se activa una vez en una ventana de mantencion
+con una sola replica (pasos en application.properties).
+Cada dia se crean las particiones de los proximos meses (months-ahead) y, si hay retencion (retention-months),
+las particiones mas antiguas se separan de la tabla y quedan como tablas movimientos_archivo_yyyy_mm para respaldarlas.
+Una particion solo se separa si su mes ya esta en el archivo del kardex (KardexArchiveStore) o no tiene movimientos,
+asi el historial y el stock historico no pierden movimientos; si no, se mantiene y se avisa en el log.
+En H2 (pruebas) no hay particiones y movimientos queda como tabla normal con el mismo indice.
+ */
+@Service
+public class KardexPartitionService {
+    private static final Logger log = LoggerFactory.getLogger(KardexPartitionService.class);
+
+    //Nombre del arriendo de la mantencion en SchedulerLocks
+    public static final String MAINTENANCE_JOB = "maintainKardexPartitions";
+
+    static final String TABLE = "movimientos";
+    static final String ARCHIVE_PREFIX = TABLE + "_archivo_";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+    private static final Pattern PARTITION_NAME = Pattern.compile(TABLE + "_(\\d{4})_(\\d{2})");
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    SchedulerLockService schedulerLockService;
+
+    @Autowired
+    KardexArchiveStore kardexArchiveStore;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    //Se inyecta para que el esquema (ddl-auto) este creado antes de revisar la tabla
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Value("${toolrent.kardex.partitions.enabled:false}")
+    boolean enabled;
+
+    @Value("${toolrent.kardex.partitions.months-ahead:3}")
+    int monthsAhead;
+
+    //Meses anteriores al actual que se mantienen en la tabla (0 = todos)
+    @Value("${toolrent.kardex.partitions.retention-months:0}")
+    int retentionMonths;
+
+    //Los meses fuera de la retencion deben estar archivados, la retencion no puede ser menor al horizonte del archivo
+    @Value("${toolrent.kardex.archive.horizon-months:24}")
+    int archiveHorizonMonths;
+
+    //true cuando la tabla de movimientos esta particionada
+    boolean active;
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public static String partitionName(YearMonth month) {
+        return TABLE + "_" + month.format(SUFFIX);
+    }
+
+    //Antes de atender solicitudes, asi el mes actual siempre tiene particion
+    @PostConstruct
+    public void initPartitions() {
+        if (!enabled) {
+            return;
+        }
+        if (retentionMonths > 0 && retentionMonths < archiveHorizonMonths) {
+            log.warn("retention-months ({}) es menor que el horizonte del archivo del kardex ({}), las particiones " +
+                    "de los meses sin archivar no se van a separar", retentionMonths, archiveHorizonMonths);
+        }
+        Dialect dialect = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+        if (!(dialect instanceof PostgreSQLDialect)) {
+            log.info("Las particiones del kardex requieren PostgreSQL, {} queda como tabla normal", TABLE);
+            return;
+        }
+        transaction().executeWithoutResult(status -> {
+            if (!isPartitioned()) {
+                convertToPartitioned(YearMonth.now());
+            }
+        });
+        active = true;
+        maintain(LocalDate.now());
+    }
+
+    @Scheduled(cron = "${toolrent.kardex.partitions.cron:0 0 4 * * *}")
+    public void maintainPartitions() {
+        //Una sola transaccion, no necesita renovar el arriendo mientras corre
+        if (!active || !schedulerLockService.holdJobLease(MAINTENANCE_JOB)) {
+            return;
+        }
+        maintain(LocalDate.now());
+    }
+
+    //Crea las particiones que faltan hasta months-ahead y separa las que quedaron fuera de la retencion
+    void maintain(LocalDate today) {
+        YearMonth current = YearMonth.from(today);
+        Set<YearMonth> attached = attachedPartitions();
+        List<YearMonth> missing = missingMonths(attached, current, current.plusMonths(monthsAhead));
+        List<YearMonth> expired = new ArrayList<>();
+        for (YearMonth month : expiredMonths(attached, current, retentionMonths)) {
+            if (kardexArchiveStore.hasMonth(month) || isEmpty(partitionName(month))) {
+                expired.add(month);
+            } else {
+                log.warn("La particion {} esta fuera de la retencion pero su mes no esta archivado, se mantiene en {}",
+                        partitionName(month), TABLE);
+            }
+        }
+        if (missing.isEmpty() && expired.isEmpty()) {
+            return;
+        }
+        transaction().executeWithoutResult(status -> {
+            missing.forEach(this::createPartition);
+            expired.forEach(this::detachPartition);
+        });
+    }
+
+    static List<YearMonth> missingMonths(Set<YearMonth> attached, YearMonth from, YearMonth to) {
+        List<YearMonth> missing = new ArrayList<>();
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            if (!attached.contains(month)) {
+                missing.add(month);
+            }
+        }
+        return missing;
+    }
+
+    static List<YearMonth> expiredMonths(Set<YearMonth> attached, YearMonth current, int retentionMonths) {
+        if (retentionMonths <= 0) {
+            return List.of();
+        }
+        YearMonth oldestKept = current.minusMonths(retentionMonths);
+        return attached.stream().filter(month -> month.isBefore(oldestKept)).sorted().toList();
+    }
+
+    private boolean isPartitioned() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_class c WHERE c.relname = '" + TABLE + "' " +
+                        "AND c.relkind = 'p' AND pg_table_is_visible(c.oid))", Boolean.class));
+    }
+
+    private boolean isEmpty(String partition) {
+        return !Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM " + partition + ")", Boolean.class));
+    }
+
+    //Meses de las particiones que hoy forman parte de la tabla
+    private Set<YearMonth> attachedPartitions() {
+        List<String> names = jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                        "WHERE i.inhparent = '" + TABLE + "'::regclass", String.class);
+        Set<YearMonth> months = new TreeSet<>();
+        for (String name : names) {
+            Matcher matcher = PARTITION_NAME.matcher(name);
+            if (matcher.matches()) {
+                months.add(YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))));
+            }
+        }
+        return months;
+    }
+
+    /*
+    Reemplaza la tabla normal por una particionada con los mismos datos, en una sola transaccion.
+    La tabla se bloquea mientras se copia, si otra replica la convirtio primero no se hace nada
+     */
+    void convertToPartitioned(YearMonth current) {
+        jdbcTemplate.execute("LOCK TABLE " + TABLE + " IN ACCESS EXCLUSIVE MODE");
+        if (isPartitioned()) {
+            return;
+        }
+        String previous = TABLE + "_sin_particion";
+        List<Map<String, Object>> foreignKeys = jdbcTemplate.queryForList(
+                "SELECT conname, pg_get_constraintdef(oid) AS definition FROM pg_constraint " +
+                        "WHERE conrelid = '" + TABLE + "'::regclass AND contype = 'f'");
+        LocalDate oldest = jdbcTemplate.queryForObject("SELECT MIN(date) FROM " + TABLE, LocalDate.class);
+        LocalDate newest = jdbcTemplate.queryForObject("SELECT MAX(date) FROM " + TABLE, LocalDate.class);
+
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " RENAME TO " + previous);
+        jdbcTemplate.execute("CREATE TABLE " + TABLE + " (LIKE " + previous + " INCLUDING DEFAULTS) PARTITION BY RANGE (date)");
+        YearMonth from = oldest != null && oldest.isBefore(current.atDay(1)) ? YearMonth.from(oldest) : current;
+        YearMonth to = current.plusMonths(monthsAhead);
+        if (newest != null && YearMonth.from(newest).isAfter(to)) {
+            to = YearMonth.from(newest);
+        }
+        missingMonths(Set.of(), from, to).forEach(this::createPartition);
+        jdbcTemplate.execute("INSERT INTO " + TABLE + " SELECT * FROM " + previous);
+        jdbcTemplate.execute("DROP TABLE " + previous);
+
+        //La llave primaria debe incluir la columna de particion
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " ADD PRIMARY KEY (id, date)");
+        for (Map<String, Object> foreignKey : foreignKeys) {
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " ADD CONSTRAINT \"" + foreignKey.get("conname") + "\" "
+                    + foreignKey.get("definition"));
+        }
+        //LIKE no copia los indices, se crean los mismos de KardexEntity
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_movimientos_tool_date ON " + TABLE + " (tool_id, date)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_movimientos_date_id ON " + TABLE + " (date, id)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_movimientos_recorded_at ON " + TABLE + " (recorded_at, id)");
+        log.info("Tabla {} convertida a particiones mensuales desde {} hasta {}", TABLE, from, to);
+    }
+
+    private void createPartition(YearMonth month) {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(month) + " PARTITION OF " + TABLE +
+                " FOR VALUES FROM ('" + month.atDay(1) + "') TO ('" + month.plusMonths(1).atDay(1) + "')");
+    }
+
+    //La particion separada conserva sus movimientos como tabla independiente
+    private void detachPartition(YearMonth month) {
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + partitionName(month));
+        jdbcTemplate.execute("ALTER TABLE " + partitionName(month) + " RENAME TO " + ARCHIVE_PREFIX + month.format(SUFFIX));
+        log.info("Particion {} separada de {} por retencion", partitionName(month), TABLE);
+    }
+
+    private TransactionTemplate transaction() {
+        return new TransactionTemplate(transactionManager);
+    }
+}
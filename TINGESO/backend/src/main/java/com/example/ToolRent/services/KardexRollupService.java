@@ -0,0 +1,173 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.dto.KardexRollupDTO;
+import com.example.ToolRent.dto.KardexRollupTotalDTO;
+import com.example.ToolRent.entities.KardexEntity;
+import com.example.ToolRent.repositories.KardexRollupRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/*
+Resumen diario del kardex (KardexDailyRollups): por dia, herramienta del inventario y tipo de movimiento
+guarda la suma de affectedAmount y el numero de movimientos, asi los reportes de flujo de inventario
+no recorren la tabla de movimientos.
+KardexWriter suma cada lote de movimientos al resumen en la misma transaccion que los inserta (upsert),
+y rebuildRollups recalcula dias completos desde los movimientos, un dia por transaccion y varios dias en paralelo.
+ */
+@Service
+public class KardexRollupService {
+    private static final Logger log = LoggerFactory.getLogger(KardexRollupService.class);
+
+    //Las transacciones que suman las mismas filas las bloquean en el mismo orden
+    private static final Comparator<RollupKey> KEY_ORDER = Comparator.comparing(RollupKey::date)
+            .thenComparing(RollupKey::name)
+            .thenComparing(RollupKey::category)
+            .thenComparing(RollupKey::type);
+
+    @Autowired
+    KardexRollupRepository kardexRollupRepository;
+
+    @Autowired
+    KardexArchiveStore kardexArchiveStore;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    //Dias que se recalculan al mismo tiempo, debe ser menor que el pool de conexiones
+    @Value("${toolrent.kardex.rollups.rebuild-parallelism:4}")
+    int parallelism;
+
+    //PostgreSQL usa INSERT ... ON CONFLICT, las demas bases de datos (H2 en pruebas) MERGE
+    boolean postgres;
+
+    @PostConstruct
+    void detectDialect() {
+        postgres = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect() instanceof PostgreSQLDialect;
+    }
+
+    //Suma los movimientos al resumen, una sentencia por dia, herramienta y tipo. Usar dentro de la transaccion que los inserta
+    public void applyMovements(Collection<KardexEntity> movements) {
+        Map<RollupKey, long[]> groups = new TreeMap<>(KEY_ORDER);
+        for (KardexEntity movement : movements) {
+            if (movement.getTool() == null || movement.getTool().getCategory() == null) {
+                continue;
+            }
+            RollupKey key = new RollupKey(movement.getDate(), movement.getTool().getName(),
+                    movement.getTool().getCategory().getName(), movement.getType());
+            long[] totals = groups.computeIfAbsent(key, k -> new long[2]);
+            totals[0] += movement.getAffectedAmount();
+            totals[1]++;
+        }
+        groups.forEach((key, totals) -> {
+            if (postgres) {
+                kardexRollupRepository.upsertRollup(key.date(), key.name(), key.category(), key.type(), totals[0], totals[1]);
+            } else {
+                kardexRollupRepository.mergeRollup(key.date(), key.name(), key.category(), key.type(), totals[0], totals[1]);
+            }
+        });
+    }
+
+    public List<KardexRollupDTO> getDailyRollups(LocalDate startDate, LocalDate endDate, String type, Long inventoryId) {
+        validateRange(startDate, endDate);
+        return kardexRollupRepository.findDailyRollups(startDate, endDate, normalizeType(type), inventoryId);
+    }
+
+    public List<KardexRollupTotalDTO> getRollupTotals(LocalDate startDate, LocalDate endDate, String type) {
+        validateRange(startDate, endDate);
+        return kardexRollupRepository.findRollupTotals(startDate, endDate, normalizeType(type));
+    }
+
+    /*
+    Recalcula el resumen de los dias del rango desde los movimientos, retorna cuantos dias se recalcularon
+    Sin fecha de inicio parte desde el primer movimiento, sin fecha de fin llega hasta hoy
+     */
+    public int rebuildRollups(LocalDate startDate, LocalDate endDate) {
+        LocalDate from = startDate != null ? startDate : kardexRollupRepository.findFirstMovementDate();
+        LocalDate to = endDate != null ? endDate : LocalDate.now();
+        if (from == null) {
+            return 0;
+        }
+        validateRange(from, to);
+        //Los dias archivados ya no tienen movimientos en la tabla, se conserva su resumen
+        LocalDate archivedBefore = kardexArchiveStore.archivedBefore();
+        if (archivedBefore != null && from.isBefore(archivedBefore)) {
+            from = archivedBefore;
+            if (from.isAfter(to)) {
+                return 0;
+            }
+        }
+
+        List<LocalDate> days = from.datesUntil(to.plusDays(1)).toList();
+        ExecutorService pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (LocalDate day : days) {
+                futures.add(pool.submit(() -> rebuildDay(day)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("No se pudo recalcular el resumen del kardex: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Se interrumpió el recálculo del resumen del kardex");
+        } finally {
+            pool.shutdown();
+        }
+        log.info("Resumen del kardex recalculado desde {} hasta {} ({} dias)", from, to, days.size());
+        return days.size();
+    }
+
+    //Reemplaza el resumen de un dia en su propia transaccion
+    public void rebuildDay(LocalDate date) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transaction.executeWithoutResult(status -> {
+            kardexRollupRepository.deleteByDate(date);
+            kardexRollupRepository.insertRollupsFromMovements(date);
+        });
+    }
+
+    private void validateRange(LocalDate startDate, LocalDate endDate) {
+        if (startDate == null || endDate == null) {
+            throw new IllegalArgumentException("Las fechas no pueden ser null");
+        }
+        if (startDate.isAfter(endDate)) {
+            throw new IllegalArgumentException("La fecha de inicio no puede ser posterior a la fecha de fin");
+        }
+    }
+
+    private String normalizeType(String type) {
+        return type == null || type.isBlank() ? null : type.toLowerCase().trim();
+    }
+
+    private record RollupKey(LocalDate date, String name, String category, String type) {
+    }
+}
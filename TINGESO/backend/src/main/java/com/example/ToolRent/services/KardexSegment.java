@@ -0,0 +1,242 @@
+package com.example.ToolRent.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/*
+Archivo de un mes de movimientos archivados del kardex (inmutable).
+Formato:
+- cabecera: MAGIC, VERSION, año, mes
+- bloques de hasta blockSize movimientos comprimidos con Deflate, ordenados por herramienta, fecha e id
+- indice disperso: por bloque la primera y ultima herramienta, posicion, largo y cantidad de movimientos
+- cola: posicion del indice, cantidad de bloques, cantidad de movimientos, MAGIC
+El archivo se lee con un MappedByteBuffer: para una herramienta solo se descomprimen los bloques del indice
+que la contienen, directo desde el mapa sin copiar el archivo al heap.
+ */
+final class KardexSegment {
+    private static final int MAGIC = 0x544B5347; //"TKSG"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int TRAILER_BYTES = 20;
+    private static final long NO_TOOL = -1L;
+
+    //Movimiento archivado, toolId null si el movimiento no tenia herramienta
+    record Entry(long id, LocalDate date, String type, String username, Long toolId, int affectedAmount) {
+        long toolKey() {
+            return toolId != null ? toolId : NO_TOOL;
+        }
+    }
+
+    private final YearMonth month;
+    private final MappedByteBuffer buffer;
+    private final long[] firstTool;
+    private final long[] lastTool;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[] counts;
+    private final int size;
+
+    private KardexSegment(YearMonth month, MappedByteBuffer buffer, long[] firstTool, long[] lastTool,
+                          long[] offsets, int[] lengths, int[] counts, int size) {
+        this.month = month;
+        this.buffer = buffer;
+        this.firstTool = firstTool;
+        this.lastTool = lastTool;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.counts = counts;
+        this.size = size;
+    }
+
+    YearMonth month() {
+        return month;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /*
+    Escribe el archivo con los movimientos ya ordenados por herramienta, fecha e id.
+    Se escribe en un archivo temporal, se fuerza a disco y se renombra, asi nunca queda un segmento a medias
+     */
+    static void write(Path file, YearMonth month, List<Entry> entries, int blockSize) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        List<long[]> index = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                    .putInt(MAGIC).putInt(VERSION).putInt(month.getYear()).putInt(month.getMonthValue());
+            writeFully(channel, header.flip());
+
+            for (int start = 0; start < entries.size(); start += blockSize) {
+                List<Entry> block = entries.subList(start, Math.min(start + blockSize, entries.size()));
+                byte[] compressed = compress(block);
+                long offset = channel.position();
+                writeFully(channel, ByteBuffer.wrap(compressed));
+                index.add(new long[]{block.get(0).toolKey(), block.get(block.size() - 1).toolKey(),
+                        offset, compressed.length, block.size()});
+            }
+
+            long indexOffset = channel.position();
+            ByteBuffer footer = ByteBuffer.allocate(index.size() * 32 + TRAILER_BYTES);
+            for (long[] block : index) {
+                footer.putLong(block[0]).putLong(block[1]).putLong(block[2]).putInt((int) block[3]).putInt((int) block[4]);
+            }
+            footer.putLong(indexOffset).putInt(index.size()).putInt(entries.size()).putInt(MAGIC);
+            writeFully(channel, footer.flip());
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static KardexSegment open(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int limit = buffer.limit();
+        if (limit < HEADER_BYTES + TRAILER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(limit - 4) != MAGIC) {
+            throw new IOException("Segmento del kardex invalido: " + file);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Version de segmento del kardex no soportada: " + file);
+        }
+        YearMonth month = YearMonth.of(buffer.getInt(8), buffer.getInt(12));
+        long indexOffset = buffer.getLong(limit - TRAILER_BYTES);
+        int blocks = buffer.getInt(limit - 12);
+        int size = buffer.getInt(limit - 8);
+
+        long[] firstTool = new long[blocks];
+        long[] lastTool = new long[blocks];
+        long[] offsets = new long[blocks];
+        int[] lengths = new int[blocks];
+        int[] counts = new int[blocks];
+        int position = (int) indexOffset;
+        for (int i = 0; i < blocks; i++, position += 32) {
+            firstTool[i] = buffer.getLong(position);
+            lastTool[i] = buffer.getLong(position + 8);
+            offsets[i] = buffer.getLong(position + 16);
+            lengths[i] = buffer.getInt(position + 24);
+            counts[i] = buffer.getInt(position + 28);
+        }
+        return new KardexSegment(month, buffer, firstTool, lastTool, offsets, lengths, counts, size);
+    }
+
+    //Movimientos de una herramienta, solo se leen los bloques que la pueden contener
+    List<Entry> readTool(long toolId) throws IOException {
+        List<Entry> result = new ArrayList<>();
+        for (int block = firstBlockFor(toolId); block < offsets.length && firstTool[block] <= toolId; block++) {
+            for (Entry entry : readBlock(block)) {
+                if (entry.toolKey() == toolId) {
+                    result.add(entry);
+                }
+            }
+        }
+        return result;
+    }
+
+    List<Entry> readAll() throws IOException {
+        List<Entry> result = new ArrayList<>(size);
+        for (int block = 0; block < offsets.length; block++) {
+            result.addAll(readBlock(block));
+        }
+        return result;
+    }
+
+    //Primer bloque cuya ultima herramienta es mayor o igual (busqueda binaria en el indice)
+    private int firstBlockFor(long toolId) {
+        int low = 0;
+        int high = lastTool.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (lastTool[middle] < toolId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private List<Entry> readBlock(int block) throws IOException {
+        //slice no cambia la posicion del mapa, varios hilos pueden leer el mismo segmento
+        ByteBuffer compressed = buffer.slice((int) offsets[block], lengths[block]);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream raw = new ByteArrayOutputStream(counts[block] * 48);
+            byte[] chunk = new byte[8192];
+            while (!inflater.finished()) {
+                int read = inflater.inflate(chunk);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Bloque del segmento del kardex " + month + " incompleto");
+                }
+                raw.write(chunk, 0, read);
+            }
+            return decode(raw.toByteArray(), counts[block]);
+        } catch (DataFormatException e) {
+            throw new IOException("Bloque del segmento del kardex " + month + " corrupto", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] compress(List<Entry> block) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            for (Entry entry : block) {
+                out.writeLong(entry.id());
+                out.writeLong(entry.date().toEpochDay());
+                out.writeUTF(entry.type());
+                out.writeUTF(entry.username());
+                out.writeLong(entry.toolKey());
+                out.writeInt(entry.affectedAmount());
+            }
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Entry> decode(byte[] raw, int count) throws IOException {
+        List<Entry> entries = new ArrayList<>(count);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw))) {
+            for (int i = 0; i < count; i++) {
+                long id = in.readLong();
+                LocalDate date = LocalDate.ofEpochDay(in.readLong());
+                String type = in.readUTF();
+                String username = in.readUTF();
+                long tool = in.readLong();
+                int affectedAmount = in.readInt();
+                entries.add(new Entry(id, date, type, username, tool == NO_TOOL ? null : tool, affectedAmount));
+            }
+        }
+        return entries;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+}
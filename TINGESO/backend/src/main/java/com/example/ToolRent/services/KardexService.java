@@ -1,23 +1,56 @@
 package com.example.ToolRent.services;
 
+import com.example.ToolRent.dto.KardexMovementDTO;
+import com.example.ToolRent.dto.KardexSliceDTO;
 import com.example.ToolRent.entities.KardexEntity;
 import com.example.ToolRent.entities.ToolEntity;
 import com.example.ToolRent.repositories.KardexRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Service
 public class KardexService {
     @Autowired
     KardexRepository kardexRepository;
 
+    @Autowired
+    KardexWriter kardexWriter;
+
+    @Autowired
+    KardexArchiveStore kardexArchiveStore;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    public static final int MAX_PAGE_SIZE = 100;
+
+    public static final Set<String> EXPORT_FORMATS = Set.of("csv", "ndjson");
+
+    private static final String CSV_HEADER = "id,fecha,tipo,usuario,cantidad,herramienta_id,herramienta,categoria";
+
 
     //Metodos auxiliares
 
@@ -46,13 +79,50 @@ public class KardexService {
 
 
     //----------------------------------------------------------------------------------------
-    public ArrayList<KardexEntity> getAllMoves() {
-        return (ArrayList<KardexEntity>) kardexRepository.findAll();
+    /*
+    Listado de movimientos por paginas, del mas reciente al mas antiguo.
+    Sin cursor retorna la primera pagina, con cursor (fecha e id del ultimo movimiento recibido) la siguiente
+     */
+    public KardexSliceDTO getMovementsPage(LocalDate cursorDate, Long cursorId, int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("El tamaño de página debe estar entre 1 y " + MAX_PAGE_SIZE);
+        }
+        if ((cursorDate == null) != (cursorId == null)) {
+            throw new IllegalArgumentException("El cursor debe incluir la fecha y el id del movimiento");
+        }
+
+        //Se pide una fila extra para saber si hay pagina siguiente
+        PageRequest page = PageRequest.of(0, size + 1);
+        List<KardexMovementDTO> movements = cursorDate == null
+                ? kardexRepository.findMovementPage(page)
+                : kardexRepository.findMovementPageBefore(cursorDate, cursorId, page);
+        boolean hasNext = movements.size() > size;
+        if (hasNext) {
+            movements = movements.subList(0, size);
+        }
+        KardexMovementDTO last = hasNext ? movements.get(movements.size() - 1) : null;
+        return new KardexSliceDTO(new ArrayList<>(movements),
+                last != null ? last.getDate() : null,
+                last != null ? last.getId() : null,
+                hasNext);
     }
 
+    //El movimiento se inserta junto con los demas de la transaccion antes del commit (KardexWriter)
     public KardexEntity registerMovement(String type, ToolEntity tool) {
+        KardexEntity kardex = buildMovement(type, tool);
+        kardexWriter.write(kardex);
+        return kardex;
+    }
+
+    public void registerMovements(List<KardexEntity> movements) {
+        kardexWriter.writeAll(movements);
+    }
+
+    //Crea el movimiento sin guardarlo, para registrar varios juntos con registerMovements
+    public KardexEntity buildMovement(String type, ToolEntity tool) {
         type = normalizeString(type);
-        if (!type.equals("ingreso") && !type.equals("préstamo") && !type.equals("devolución") && !type.equals("baja") && !type.equals("reparación")) {
+        if (!type.equals("ingreso") && !type.equals("préstamo") && !type.equals("devolución") && !type.equals("baja") && !type.equals("reparación")
+                && !type.equals("reingreso")) {
             throw  new IllegalArgumentException("El tipo de prestamo no es valido");
         }
         LocalDate today = LocalDate.now();
@@ -65,7 +135,7 @@ public class KardexService {
         kardex.setUsername(username);
         kardex.setAffectedAmount(1);
 
-        return kardexRepository.save(kardex);
+        return kardex;
 
 
     }
@@ -74,7 +144,8 @@ public class KardexService {
         if (toolId == null) {
             throw new IllegalArgumentException("La herramienta no puede ser null");
         }
-        return kardexRepository.findByToolOrderByDateDesc(toolId);
+        return withArchived(kardexRepository.findByToolOrderByDateDesc(toolId),
+                kardexArchiveStore.findToolMovements(toolId, null, null));
     }
 
     public List<KardexEntity> getMovementsByDateRange(LocalDate startDate, LocalDate endDate) {
@@ -87,7 +158,8 @@ public class KardexService {
             throw new IllegalArgumentException("La fecha de inicio no puede ser posterior a la fecha de fin");
         }
 
-        return kardexRepository.findByDateBetweenOrderByDateDesc(startDate, endDate);
+        return withArchived(kardexRepository.findByDateBetweenOrderByDateDesc(startDate, endDate),
+                kardexArchiveStore.findMovements(startDate, endDate));
     }
 
     public List<KardexEntity> getToolMovementsByDateRange(Long toolId, LocalDate startDate, LocalDate endDate) {
@@ -99,9 +171,122 @@ public class KardexService {
             throw new IllegalArgumentException("La fecha de inicio no puede ser posterior a la fecha de fin");
         }
 
-        return kardexRepository.findByToolIdAndDateBetween(toolId, startDate, endDate);
+        return withArchived(kardexRepository.findByToolIdAndDateBetween(toolId, startDate, endDate),
+                kardexArchiveStore.findToolMovements(toolId, startDate, endDate));
     }
 
+    /*
+    Junta los movimientos de la tabla con los archivados (KardexArchiveStore), del mas reciente al mas antiguo.
+    Un movimiento que quedo en los dos (archivado pero todavia no borrado de la tabla) aparece una vez
+     */
+    private List<KardexEntity> withArchived(List<KardexEntity> movements, List<KardexEntity> archived) {
+        if (archived.isEmpty()) {
+            return movements;
+        }
+        Set<Long> ids = new HashSet<>();
+        List<KardexEntity> merged = new ArrayList<>(movements.size() + archived.size());
+        for (KardexEntity movement : movements) {
+            ids.add(movement.getId());
+            merged.add(movement);
+        }
+        for (KardexEntity movement : archived) {
+            if (ids.add(movement.getId())) {
+                merged.add(movement);
+            }
+        }
+        merged.sort(Comparator.comparing(KardexEntity::getDate).thenComparing(KardexEntity::getId).reversed());
+        return merged;
+    }
 
+    //Valida los parametros de la exportacion antes de empezar a escribir la respuesta, retorna el formato normalizado
+    public String validateExport(LocalDate startDate, LocalDate endDate, String format) {
+        if (startDate == null || endDate == null) {
+            throw new IllegalArgumentException("Las fechas no pueden ser null");
+        }
+        if (startDate.isAfter(endDate)) {
+            throw new IllegalArgumentException("La fecha de inicio no puede ser posterior a la fecha de fin");
+        }
+        String exportFormat = normalizeString(format);
+        if (exportFormat == null || !EXPORT_FORMATS.contains(exportFormat)) {
+            throw new IllegalArgumentException("El formato de exportación debe ser csv o ndjson");
+        }
+        return exportFormat;
+    }
 
+    /*
+    Escribe los movimientos del rango en out a medida que se leen del cursor, sin juntarlos en una lista,
+    asi la memoria usada no depende del tamaño del rango. La transaccion (de solo lectura) mantiene abierto
+    el cursor mientras se escribe. Despues de la tabla se escriben los meses archivados del rango (KardexArchiveStore),
+    de a un mes y ordenados por fecha e id; un movimiento que sigue en la tabla mientras su mes se archiva
+    no se repite. Retorna cuantos movimientos se escribieron, out no se cierra
+     */
+    @Transactional(readOnly = true)
+    public long exportMovements(LocalDate startDate, LocalDate endDate, String format, OutputStream out) throws IOException {
+        String exportFormat = validateExport(startDate, endDate, format);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        Set<YearMonth> archivedMonths = new LinkedHashSet<>(kardexArchiveStore.archivedMonths(startDate, endDate));
+        //Ids de la tabla con fecha en un mes archivado, normalmente ninguno
+        Set<Long> exportedIds = new HashSet<>();
+        long rows = 0;
+        if (exportFormat.equals("csv")) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+        try (Stream<KardexMovementDTO> movements = kardexRepository.streamExportRows(startDate, endDate)) {
+            Iterator<KardexMovementDTO> iterator = movements.iterator();
+            while (iterator.hasNext()) {
+                KardexMovementDTO row = iterator.next();
+                if (archivedMonths.contains(YearMonth.from(row.getDate()))) {
+                    exportedIds.add(row.getId());
+                }
+                writeExportRow(writer, exportFormat, row);
+                rows++;
+            }
+        }
+        for (YearMonth month : archivedMonths) {
+            LocalDate from = month.atDay(1).isBefore(startDate) ? startDate : month.atDay(1);
+            LocalDate to = month.atEndOfMonth().isAfter(endDate) ? endDate : month.atEndOfMonth();
+            List<KardexEntity> archived = new ArrayList<>(kardexArchiveStore.findMovements(from, to));
+            archived.sort(Comparator.comparing(KardexEntity::getDate).thenComparing(KardexEntity::getId));
+            for (KardexEntity movement : archived) {
+                if (!exportedIds.contains(movement.getId())) {
+                    writeExportRow(writer, exportFormat, toExportRow(movement));
+                    rows++;
+                }
+            }
+        }
+        writer.flush();
+        return rows;
+    }
+
+    private void writeExportRow(Writer writer, String exportFormat, KardexMovementDTO row) throws IOException {
+        writer.write(exportFormat.equals("csv") ? toCsv(row) : objectMapper.writeValueAsString(row));
+        writer.write('\n');
+    }
+
+    private KardexMovementDTO toExportRow(KardexEntity movement) {
+        ToolEntity tool = movement.getTool();
+        return new KardexMovementDTO(movement.getId(), movement.getDate(), movement.getType(), movement.getUsername(),
+                movement.getAffectedAmount(), tool != null ? tool.getId() : null, tool != null ? tool.getName() : null,
+                tool != null && tool.getCategory() != null ? tool.getCategory().getName() : null);
+    }
+
+    private String toCsv(KardexMovementDTO row) {
+        return String.join(",",
+                csvValue(row.getId()), csvValue(row.getDate()), csvValue(row.getType()), csvValue(row.getUsername()),
+                csvValue(row.getAffectedAmount()), csvValue(row.getToolId()), csvValue(row.getToolName()),
+                csvValue(row.getCategoryName()));
+    }
+
+    //Los valores con coma, comillas o salto de linea van entre comillas (RFC 4180)
+    private String csvValue(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.contains(",") || text.contains("\"") || text.contains("\n") || text.contains("\r")) {
+            return "\"" + text.replace("\"", "\"\"") + "\"";
+        }
+        return text;
+    }
 }
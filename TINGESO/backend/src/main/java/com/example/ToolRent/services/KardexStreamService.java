@@ -0,0 +1,366 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.dto.KardexMovementDTO;
+import com.example.ToolRent.entities.KardexEntity;
+import com.example.ToolRent.repositories.KardexRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Movimientos del kardex en vivo por Server-Sent Events (/api/v1/movements/stream).
+KardexWriter publica los movimientos despues del commit de la transaccion que los inserto, cada suscriptor
+los recibe como eventos "movement" con el id del movimiento como id del evento.
+Los movimientos confirmados en otras replicas llegan por una revision de la tabla cada poll-ms: se leen los ids
+registrados (recordedAt) en los ultimos poll-lag-seconds y se envian los que esta replica todavia no envio.
+Los ids salen de bloques pooled-lo de cada replica y no siguen el orden de los commits, por eso la revision usa la
+hora de registro y no el id. poll-lag-seconds debe cubrir el tiempo entre el insert de un lote y su commit mas el
+desfase de relojes entre replicas. No se bloquea ninguna fila: las transacciones con movimientos no se esperan entre si.
+Cada suscriptor tiene una cola con tope (buffer-size) y un grupo pequeño de hilos (sender-threads) la envia,
+asi el commit nunca espera a un cliente lento y un suscriptor sin movimientos no ocupa un hilo (solo su conexion).
+Si la cola se llena: con overflow=disconnect se cierra la conexion y el cliente se reconecta con Last-Event-ID,
+con overflow=drop se descartan los movimientos nuevos y despues se envia un evento "dropped" con cuantos se perdieron.
+Al reconectarse con Last-Event-ID se envian primero los movimientos con id mayor y los registrados desde
+poll-lag-seconds antes del ultimo recibido (hasta replay-limit, si hay mas se envia un evento "reset" para recargar
+el listado). Algunos de esos ya los tenia el cliente: la entrega es al menos una vez y el cliente descarta ids repetidos.
+Cada heartbeat-ms se envia un comentario para que los proxies no cierren la conexion y para detectar clientes caidos.
+Metricas: toolrent.kardex.stream.subscribers, toolrent.kardex.stream.dropped y toolrent.kardex.stream.disconnected
+ */
+@Service
+public class KardexStreamService {
+    private static final Logger log = LoggerFactory.getLogger(KardexStreamService.class);
+
+    public static final String OVERFLOW_DROP = "drop";
+
+    @Autowired
+    KardexRepository kardexRepository;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    //Movimientos en cola por suscriptor
+    @Value("${toolrent.kardex.stream.buffer-size:256}")
+    int bufferSize;
+
+    //disconnect (por defecto) o drop
+    @Value("${toolrent.kardex.stream.overflow:disconnect}")
+    String overflow;
+
+    //Movimientos que se envian al reconectarse con Last-Event-ID
+    @Value("${toolrent.kardex.stream.replay-limit:1000}")
+    int replayLimit;
+
+    //Duracion maxima de una conexion, el navegador se reconecta solo con Last-Event-ID
+    @Value("${toolrent.kardex.stream.timeout-ms:1800000}")
+    long timeoutMs;
+
+    @Value("${toolrent.kardex.stream.sender-threads:4}")
+    int senderThreads;
+
+    //Ventana de la revision de la tabla, movimientos registrados en los ultimos poll-lag-seconds
+    @Value("${toolrent.kardex.stream.poll-lag-seconds:10}")
+    long pollLagSeconds;
+
+    //Movimientos por consulta al leer los nuevos de la revision
+    @Value("${toolrent.kardex.stream.poll-limit:500}")
+    int pollLimit;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    /*
+    Ids ya enviados (o ya confirmados antes de que hubiera suscriptores) con la hora en que se tomaron,
+    se olvidan cuando salen de la ventana. La publicacion local y la revision toman cada id una sola vez
+     */
+    private final Map<Long, LocalDateTime> seenIds = new ConcurrentHashMap<>();
+    private final Object pollLock = new Object();
+    //false sin suscriptores, la primera revision solo marca como vistos los movimientos de la ventana
+    private boolean primed;
+
+    Executor sender;
+    private Counter droppedCounter;
+    private Counter disconnectedCounter;
+
+    @PostConstruct
+    void init() {
+        sender = Executors.newFixedThreadPool(Math.max(1, senderThreads));
+        Gauge.builder("toolrent.kardex.stream.subscribers", subscribers, Set::size)
+                .description("Suscriptores conectados al kardex en vivo")
+                .register(meterRegistry);
+        droppedCounter = Counter.builder("toolrent.kardex.stream.dropped")
+                .description("Movimientos descartados por suscriptores con la cola llena")
+                .register(meterRegistry);
+        disconnectedCounter = Counter.builder("toolrent.kardex.stream.disconnected")
+                .description("Suscriptores desconectados por tener la cola llena")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+        if (sender instanceof ExecutorService executor) {
+            executor.shutdownNow();
+        }
+    }
+
+    public SseEmitter subscribe(Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        register(emitter, lastEventId);
+        return emitter;
+    }
+
+    //El suscriptor se agrega antes de leer los movimientos perdidos, asi no se pierde lo confirmado mientras tanto
+    void register(SseEmitter emitter, Long lastEventId) {
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(error -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        synchronized (pollLock) {
+            if (!primed) {
+                prime();
+            }
+        }
+
+        List<KardexMovementDTO> missed = List.of();
+        boolean reset = false;
+        if (lastEventId != null) {
+            //Sin hora de registro (movimiento antiguo o archivado) solo se buscan los ids mayores
+            LocalDateTime recordedAt = kardexRepository.findRecordedAt(lastEventId);
+            LocalDateTime since = recordedAt != null ? recordedAt.minusSeconds(pollLagSeconds) : LocalDateTime.now();
+            missed = kardexRepository.findMovementsAfter(lastEventId, since, PageRequest.of(0, replayLimit + 1));
+            if (missed.size() > replayLimit) {
+                missed = List.of();
+                reset = true;
+            }
+        }
+        subscriber.start(missed, reset);
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    //Se llama despues del commit, no bloquea: solo deja los movimientos en la cola de cada suscriptor
+    public void publish(Collection<KardexEntity> movements) {
+        if (subscribers.isEmpty() || movements.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<KardexMovementDTO> events = new ArrayList<>(movements.size());
+        for (KardexEntity movement : movements) {
+            if (seenIds.putIfAbsent(movement.getId(), now) == null) {
+                events.add(toMovement(movement));
+            }
+        }
+        offer(events);
+    }
+
+    //Lee los movimientos confirmados en cualquier replica dentro de la ventana y envia los que no se han enviado
+    @Scheduled(fixedDelayString = "${toolrent.kardex.stream.poll-ms:500}")
+    public void poll() {
+        synchronized (pollLock) {
+            if (subscribers.isEmpty()) {
+                seenIds.clear();
+                primed = false;
+                return;
+            }
+            if (!primed) {
+                prime();
+                return;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime since = now.minusSeconds(pollLagSeconds);
+            List<Long> fresh = new ArrayList<>();
+            for (Long id : kardexRepository.findIdsRecordedSince(since)) {
+                if (seenIds.putIfAbsent(id, now) == null) {
+                    fresh.add(id);
+                }
+            }
+            //Un id tomado antes de la ventana se registro antes de la ventana, ya no vuelve a aparecer
+            seenIds.values().removeIf(takenAt -> takenAt.isBefore(since));
+            fresh.sort(null);
+            for (int start = 0; start < fresh.size(); start += pollLimit) {
+                offer(kardexRepository.findMovementsByIds(fresh.subList(start, Math.min(start + pollLimit, fresh.size()))));
+            }
+        }
+    }
+
+    //Los movimientos confirmados antes del primer suscriptor no se envian en vivo
+    private void prime() {
+        LocalDateTime now = LocalDateTime.now();
+        for (Long id : kardexRepository.findIdsRecordedSince(now.minusSeconds(pollLagSeconds))) {
+            seenIds.putIfAbsent(id, now);
+        }
+        primed = true;
+    }
+
+    private void offer(List<KardexMovementDTO> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(events);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${toolrent.kardex.stream.heartbeat-ms:25000}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.ping();
+        }
+    }
+
+    private KardexMovementDTO toMovement(KardexEntity movement) {
+        Long toolId = null;
+        String toolName = null;
+        String categoryName = null;
+        if (movement.getTool() != null) {
+            toolId = movement.getTool().getId();
+            toolName = movement.getTool().getName();
+            categoryName = movement.getTool().getCategory() != null ? movement.getTool().getCategory().getName() : null;
+        }
+        return new KardexMovementDTO(movement.getId(), movement.getDate(), movement.getType(), movement.getUsername(),
+                movement.getAffectedAmount(), toolId, toolName, categoryName);
+    }
+
+    /*
+    Un suscriptor conectado. Lo envia un solo hilo a la vez (scheduled), los movimientos en vivo esperan en la cola
+    hasta que se terminen de enviar los perdidos (started)
+     */
+    private class Subscriber {
+        private final SseEmitter emitter;
+        private final BlockingQueue<KardexMovementDTO> queue = new LinkedBlockingQueue<>(bufferSize);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean pingPending = new AtomicBoolean();
+        private final AtomicInteger dropped = new AtomicInteger();
+        private volatile boolean started;
+        private volatile boolean closed;
+        private List<KardexMovementDTO> missed = List.of();
+        private Set<Long> replayedIds = Set.of();
+        private boolean reset;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void start(List<KardexMovementDTO> missed, boolean reset) {
+            this.missed = missed;
+            this.reset = reset;
+            this.replayedIds = new HashSet<>();
+            missed.forEach(movement -> replayedIds.add(movement.getId()));
+            started = true;
+            schedule();
+        }
+
+        void offer(List<KardexMovementDTO> events) {
+            for (KardexMovementDTO event : events) {
+                if (queue.offer(event)) {
+                    continue;
+                }
+                if (OVERFLOW_DROP.equals(overflow)) {
+                    dropped.incrementAndGet();
+                    droppedCounter.increment();
+                    continue;
+                }
+                disconnectedCounter.increment();
+                close();
+                return;
+            }
+            schedule();
+        }
+
+        void ping() {
+            pingPending.set(true);
+            schedule();
+        }
+
+        private void schedule() {
+            if (started && !closed && scheduled.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                if (reset) {
+                    reset = false;
+                    emitter.send(SseEmitter.event().name("reset").data("Recargar el listado de movimientos"));
+                }
+                if (!missed.isEmpty()) {
+                    for (KardexMovementDTO movement : missed) {
+                        sendMovement(movement);
+                    }
+                    missed = List.of();
+                }
+                KardexMovementDTO movement;
+                while (!closed && (movement = queue.poll()) != null) {
+                    if (replayedIds.isEmpty() || !replayedIds.remove(movement.getId())) {
+                        sendMovement(movement);
+                    }
+                }
+                int lost = dropped.getAndSet(0);
+                if (lost > 0) {
+                    emitter.send(SseEmitter.event().name("dropped").data(lost));
+                }
+                if (pingPending.getAndSet(false)) {
+                    emitter.send(SseEmitter.event().comment("ping"));
+                }
+            } catch (IOException | IllegalStateException e) {
+                //El cliente cerro la conexion
+                log.debug("Suscriptor del kardex desconectado: {}", e.getMessage());
+                closed = true;
+                subscribers.remove(this);
+                emitter.completeWithError(e);
+                return;
+            } finally {
+                scheduled.set(false);
+            }
+            if (!queue.isEmpty() || pingPending.get() || dropped.get() > 0) {
+                schedule();
+            }
+        }
+
+        private void sendMovement(KardexMovementDTO movement) throws IOException {
+            emitter.send(SseEmitter.event()
+                    .id(String.valueOf(movement.getId()))
+                    .name("movement")
+                    .data(movement, MediaType.APPLICATION_JSON));
+        }
+
+        private void close() {
+            closed = true;
+            subscribers.remove(this);
+            queue.clear();
+            emitter.complete();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.entities.KardexEntity;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Escritura de movimientos del kardex.
+Dentro de una transaccion los movimientos se acumulan en una cola de la transaccion y se insertan juntos
+en lotes JDBC justo antes de confirmarla (los ids salen de una secuencia pooled-lo, por lo que Hibernate
+agrupa los INSERT segun hibernate.jdbc.batch_size), asi el movimiento se guarda o se descarta junto con el cambio
+de inventario que lo genero y no queda nada pendiente en memoria despues del commit (ni al apagar la aplicacion).
+La cola tiene tope (toolrent.kardex.writer.max-pending): al llenarse se inserta en ese momento.
+Cada lote tambien se suma al resumen diario del kardex (KardexRollupService) en la misma transaccion.
+Fuera de una transaccion los movimientos y su resumen se insertan de inmediato en una transaccion propia.
+Cada lote guarda la hora en que se inserto (recordedAt), las demas replicas leen los movimientos nuevos por esa hora.
+Despues del commit los movimientos se publican a los suscriptores de esta replica (KardexStreamService).
+Metricas: toolrent.kardex.queue.depth (movimientos en cola) y toolrent.kardex.flush (latencia de cada lote)
+ */
+@Service
+public class KardexWriter {
+    @Autowired
+    KardexRollupService kardexRollupService;
+
+    @Autowired
+    KardexStreamService kardexStreamService;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${toolrent.kardex.writer.max-pending:500}")
+    int maxPending;
+
+    //Movimientos en cola de todas las transacciones abiertas
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    private Timer flushTimer;
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("toolrent.kardex.queue.depth", queueDepth, AtomicInteger::get)
+                .description("Movimientos del kardex en cola esperando el commit")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("toolrent.kardex.flush")
+                .description("Latencia de cada lote de movimientos del kardex")
+                .register(meterRegistry);
+    }
+
+    public void write(KardexEntity movement) {
+        writeAll(List.of(movement));
+    }
+
+    public void writeAll(Collection<KardexEntity> movements) {
+        if (movements.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            List<KardexEntity> batch = new ArrayList<>(movements);
+            insertBatch(batch);
+            kardexStreamService.publish(batch);
+            return;
+        }
+        PendingMovements pending = (PendingMovements) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new PendingMovements();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        pending.add(movements);
+    }
+
+    public int queueDepth() {
+        return queueDepth.get();
+    }
+
+    //Inserta los movimientos en lotes JDBC y los suma al resumen diario
+    private void insertBatch(List<KardexEntity> movements) {
+        flushTimer.record(() -> {
+            if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+                new TransactionTemplate(transactionManager).executeWithoutResult(status -> persistBatch(movements));
+                return;
+            }
+            persistBatch(movements);
+        });
+    }
+
+    private void persistBatch(List<KardexEntity> movements) {
+        LocalDateTime recordedAt = LocalDateTime.now();
+        for (KardexEntity movement : movements) {
+            movement.setRecordedAt(recordedAt);
+            entityManager.persist(movement);
+        }
+        entityManager.flush();
+        kardexRollupService.applyMovements(movements);
+    }
+
+    //Cola de movimientos de una transaccion
+    private class PendingMovements implements TransactionSynchronization {
+        private final List<KardexEntity> movements = new ArrayList<>();
+        //Movimientos ya insertados, se publican despues del commit
+        private final List<KardexEntity> inserted = new ArrayList<>();
+
+        void add(Collection<KardexEntity> newMovements) {
+            movements.addAll(newMovements);
+            queueDepth.addAndGet(newMovements.size());
+            if (movements.size() >= maxPending) {
+                flushPending();
+            }
+        }
+
+        void flushPending() {
+            if (movements.isEmpty()) {
+                return;
+            }
+            List<KardexEntity> batch = new ArrayList<>(movements);
+            movements.clear();
+            queueDepth.addAndGet(-batch.size());
+            insertBatch(batch);
+            inserted.addAll(batch);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            flushPending();
+        }
+
+        @Override
+        public void afterCommit() {
+            kardexStreamService.publish(inserted);
+        }
+
+        //Si la transaccion hace rollback los movimientos en cola se descartan
+        @Override
+        public void afterCompletion(int status) {
+            queueDepth.addAndGet(-movements.size());
+            movements.clear();
+            inserted.clear();
+            TransactionSynchronizationManager.unbindResourceIfPossible(KardexWriter.this);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.repositories.LoanRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Temporizadores de vencimiento de prestamos.
+Cada prestamo activo tiene un temporizador en una DelayQueue que vence al inicio del dia siguiente
+a su fecha de devolucion, en ese momento el prestamo pasa a vencido (LoanService.markLoanAsOverdue).
+La cola se llena con los prestamos activos al iniciar la aplicacion y se mantiene con makeLoan y loanReturn.
+Con varias replicas cada nodo solo conoce los prestamos que creo despues de iniciar, por eso el paso
+a vencido es idempotente y el proceso masivo de LoanService queda como respaldo.
+Cancelar o reemplazar un temporizador solo lo marca como cancelado (sacarlo de la cola recorre toda la cola),
+la cola lo descarta al vencer y se limpia completa cuando los cancelados superan a los vigentes.
+ */
+@Service
+public class LoanDueDateScheduler {
+    private static final Logger log = LoggerFactory.getLogger(LoanDueDateScheduler.class);
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    @Autowired
+    @Lazy
+    LoanService loanService;
+
+    private final DelayQueue<LoanDueTimer> queue = new DelayQueue<>();
+    //Temporizador vigente de cada prestamo, para poder cancelarlo o reemplazarlo
+    private final Map<Long, LoanDueTimer> timers = new ConcurrentHashMap<>();
+    //Temporizadores cancelados que siguen en la cola
+    private final AtomicInteger cancelledTimers = new AtomicInteger();
+
+    private Thread worker;
+
+    //Un prestamo se vence cuando la fecha actual es posterior a la fecha de devolucion
+    public static Instant dueInstant(LocalDate returnDate) {
+        return returnDate.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant();
+    }
+
+    public void schedule(Long loanId, LocalDate returnDate) {
+        if (loanId == null || returnDate == null) {
+            return;
+        }
+        afterCommit(() -> addTimer(loanId, returnDate));
+    }
+
+    private void addTimer(Long loanId, LocalDate returnDate) {
+        LoanDueTimer timer = new LoanDueTimer(loanId, dueInstant(returnDate));
+        LoanDueTimer previous = timers.put(loanId, timer);
+        if (previous != null) {
+            markCancelled(previous);
+        }
+        synchronized (queue) {
+            queue.put(timer);
+        }
+    }
+
+    private void markCancelled(LoanDueTimer timer) {
+        timer.cancelled = true;
+        if (cancelledTimers.incrementAndGet() > timers.size()) {
+            purgeCancelled();
+        }
+    }
+
+    /*
+    Rearma la cola solo con los temporizadores vigentes, una vez por cada tantos cancelados como vigentes.
+    Un temporizador que el hilo tome mientras tanto puede quedar dos veces, fire solo lo dispara una
+     */
+    private void purgeCancelled() {
+        synchronized (queue) {
+            List<LoanDueTimer> live = new ArrayList<>(queue.size());
+            for (LoanDueTimer timer : queue) {
+                if (!timer.cancelled) {
+                    live.add(timer);
+                }
+            }
+            queue.clear();
+            queue.addAll(live);
+            cancelledTimers.set(0);
+        }
+    }
+
+    public void cancel(Long loanId) {
+        if (loanId == null) {
+            return;
+        }
+        afterCommit(() -> {
+            LoanDueTimer timer = timers.remove(loanId);
+            if (timer != null) {
+                markCancelled(timer);
+            }
+        });
+    }
+
+    //Dentro de una transaccion el cambio se aplica al confirmarla, si hace rollback los temporizadores no cambian
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    public int pendingTimers() {
+        return timers.size();
+    }
+
+    //Temporizadores en la cola, incluye los cancelados que todavia no se limpian
+    int queuedTimers() {
+        return queue.size();
+    }
+
+    //Carga los temporizadores de todos los prestamos activos
+    public void loadActiveLoans() {
+        for (Object[] row : loanRepository.findActiveLoanReturnDates()) {
+            schedule((Long) row[0], (LocalDate) row[1]);
+        }
+    }
+
+    //Dispara todos los temporizadores vencidos sin bloquear, retorna cuantos se dispararon
+    public int fireExpiredTimers() {
+        List<LoanDueTimer> expired = new ArrayList<>();
+        queue.drainTo(expired);
+        int fired = 0;
+        for (LoanDueTimer timer : expired) {
+            if (fire(timer)) {
+                fired++;
+            }
+        }
+        return fired;
+    }
+
+    private boolean fire(LoanDueTimer timer) {
+        //Si el temporizador fue reemplazado o cancelado no se hace nada
+        if (timer.cancelled) {
+            cancelledTimers.updateAndGet(count -> Math.max(0, count - 1));
+            return false;
+        }
+        if (!timers.remove(timer.loanId, timer)) {
+            return false;
+        }
+        try {
+            loanService.markLoanAsOverdue(timer.loanId);
+        } catch (RuntimeException e) {
+            //El proceso masivo de prestamos vencidos lo tomara en su siguiente ejecucion
+            log.error("No se pudo pasar a vencido el préstamo {}", timer.loanId, e);
+        }
+        return true;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        loadActiveLoans();
+        worker = new Thread(this::run, "loan-due-date-timer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                fire(queue.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    private static final class LoanDueTimer implements Delayed {
+        private final Long loanId;
+        private final Instant dueAt;
+        private volatile boolean cancelled;
+
+        private LoanDueTimer(Long loanId, Instant dueAt) {
+            this.loanId = loanId;
+            this.dueAt = dueAt;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueAt.toEpochMilli() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        //Por la fecha fija de vencimiento: comparar getDelay() lee el reloj dos veces y el orden puede cambiar entre lecturas
+        @Override
+        public int compareTo(Delayed other) {
+            LoanDueTimer timer = (LoanDueTimer) other;
+            int byDueAt = dueAt.compareTo(timer.dueAt);
+            return byDueAt != 0 ? byDueAt : Long.compare(loanId, timer.loanId);
+        }
+    }
+}
@@ -1,17 +1,27 @@
 package com.example.ToolRent.services;
 
+import com.example.ToolRent.config.RetryOnOptimisticLock;
+import com.example.ToolRent.dto.LoanAdmissionDTO;
+import com.example.ToolRent.dto.LoanReturnItemDTO;
 import com.example.ToolRent.entities.*;
 import com.example.ToolRent.repositories.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cglib.core.Local;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.hibernate.engine.transaction.internal.jta.JtaStatusHelper.isActive;
 
@@ -43,11 +53,31 @@ public class LoanService {
     private ToolsInventoryRepository toolsInventoryRepository;
 
     @Autowired
-    private KardexRepository kardexRepository;
+    private ToolRepository toolRepository;
 
     @Autowired
     private KardexService kardexService;
 
+    @Autowired
+    private SchedulerLockService schedulerLockService;
+
+    @Autowired
+    private LoanDueDateScheduler loanDueDateScheduler;
+
+    @Autowired
+    private OverdueLoanBatchService overdueLoanBatchService;
+
+    //Nombre del arriendo del proceso de prestamos vencidos en SchedulerLocks
+    public static final String OVERDUE_LOANS_JOB = "processOverdueLoans";
+
+    //Si es true las multas por atraso guardan sus parametros y su valor se calcula al leerlas
+    @Value("${toolrent.fines.accrue-on-read:true}")
+    boolean accrueLateFinesOnRead;
+
+    //Tope del valor de una multa por atraso, 0 es sin tope
+    @Value("${toolrent.fines.late-fine-cap:0}")
+    int lateFineCap;
+
     //Metodos auxiliares
 
 
@@ -59,36 +89,23 @@ public class LoanService {
         return input.toLowerCase().trim();
     }
 
-    //Cuenta prestamos de una arreglo de prestamos
-    public int countLoands(ArrayList<LoanEntity> loans){
-        int count = 0;
-        for(LoanEntity loan : loans){
-            count++;
-        }
-        return count;
+    private Integer maxLateFineValue() {
+        return lateFineCap > 0 ? lateFineCap : null;
     }
 
-    /*
-    Entradas: lista de prestamos activos de un cliente, herramienta solicitada por cliente
-    Salida: booleano, true si son la misma, false si son distintas
-    Recorre toda la lista de los prestamos del cliente asociado hasta encontrar la misma herramienta solicitada
-    */
-    public boolean isTheSameTool(ArrayList<LoanEntity> clientActiveLoans, ToolEntity tool){
-
-        String categoryName = tool.getCategory().getName();
-
-        ToolsInventoryEntity toolInventory = toolsInventoryRepository.findByNameAndCategory(tool.getName(), categoryName);
-        for(LoanEntity loan : clientActiveLoans){
-            ToolEntity toolClient = loan.getTool();
-            ToolsInventoryEntity customerToolsInventory = toolsInventoryRepository.findByNameAndCategory(toolClient.getName(), categoryName);
-            if (customerToolsInventory != null){
-                if (customerToolsInventory.equals(toolInventory)){
-                    return true;
-                }
-            }
+    //Cambio en los contadores del cliente al devolver un prestamo: {activos, vencidos, evaluaciones pendientes}
+    //El prestamo deja de estar activo o vencido, y si la herramienta volvio dañada queda en evaluacion pendiente
+    private int[] returnObligations(String previousStatus, String newStatus) {
+        int[] obligations = new int[3];
+        if (previousStatus.equals("activo")) {
+            obligations[0] = -1;
+        } else if (previousStatus.equals("vencido")) {
+            obligations[1] = -1;
         }
-
-        return false;
+        if (newStatus.equals("evaluación pendiente")) {
+            obligations[2] = 1;
+        }
+        return obligations;
     }
 
     private void toolStatusIsDamaged(String toolReturnStatus, LoanEntity loan) {
@@ -106,8 +123,7 @@ public class LoanService {
             loan.setCustomer(customer);
 
             //Se hace un movimiento en el kardex DE TIPO DEVOLUCION
-            KardexEntity kardex = kardexService.registerMovement("devolución", newTool);
-            kardexRepository.save(kardex);
+            kardexService.registerMovement("devolución", newTool);
 
             loanRepository.save(loan);
         }
@@ -125,8 +141,7 @@ public class LoanService {
             loan.setStatus("finalizado");
 
             //Se hace un movimiento en el kardex DE TIPO DEVOLUCION
-            KardexEntity kardex = kardexService.registerMovement("devolución", newTool);
-            kardexRepository.save(kardex);
+            kardexService.registerMovement("devolución", newTool);
 
             loanRepository.save(loan);
         }
@@ -175,44 +190,59 @@ public class LoanService {
                 .orElseThrow(() -> new IllegalArgumentException("Prestamos con fecha de devolucion " + returnDate + " no encontrados"));
     }
 
-    //Realizar un prestamo, si se cumplen todas las validaciones, retorna el prestamo
-    public LoanEntity makeLoan(LoanEntity loan){
-        CustomerEntity customer = loan.getCustomer();
-        ToolEntity tool = loan.getTool();
-
-        String categoryName = tool.getCategory().getName();
-
-        // Se tienen que hacer todas las validaciones antes de realizar el prestamo
+    //Validaciones 1), 2), 3) y 4) de un prestamo con una sola consulta, retorna la tarifa diaria de la herramienta
+    private LoanAdmissionDTO checkLoanAdmission(String rut, String toolName, String categoryName){
+        LoanAdmissionDTO admission = loanRepository.findLoanAdmission(rut, toolName, categoryName)
+                .orElseThrow(() -> new IllegalArgumentException("Cliente con rut " + rut + " no encontrado"));
 
-        // 1) se verifica si el estado del cliente
-        if (!customerService.isActive(customer.getStatus())){
+        // 1) se verifica el estado del cliente, el guardado en la base de datos y no el que viene en la solicitud
+        if (!customerService.isActive(admission.getCustomerStatus())){
             throw new IllegalArgumentException("El cliente tiene estado restringido");
-
         }
-        // 2) se verifica que no tenga 5 prestamos activos
-        //Se obtiene la lista de los prestamos del cliente
-        ArrayList<LoanEntity> clientLoans = findByCustomerRutAndStatus(customer.getRut(), "activo");
 
-        if (countLoands(clientLoans) >= 5){
+        // 2) se verifica que no tenga 5 prestamos activos
+        if (admission.getActiveLoans() >= 5){
             throw new IllegalArgumentException("El cliente tiene 5 prestamos activos");
         }
 
         // 3) Verificar que la herramienta solicitada no sea igual a las que ya tiene prestadas
-
-        //Se obtiene la lista de los prestamos activos de un cliente
-        //Se obtienen solo los prestamos activos, xq todos los demas estados (excepto finalizados) hacen que
+        //Se consideran solo los prestamos activos, xq todos los demas estados (excepto finalizados) hacen que
         //el cliente pase a estar en restringido (primera verificacion)
-
-        ArrayList<LoanEntity> clientActiveLoans = findByCustomerRutAndStatus(customer.getRut(), "activo");
-
-        if (isTheSameTool(clientActiveLoans, tool)){
+        if (admission.getSameToolLoaned()){
             throw new IllegalArgumentException("El cliente ya posee un prestamo con la herramienta solicitada");
         }
 
         // 4) Verificar que el stock de la herramienta sea mayor a 0
-        if (!toolService.hasAvailableStock(tool.getName(), categoryName)){
+        if (!admission.hasAvailableStock()){
             throw new IllegalArgumentException("El stock de la herramienta es insuficiente");
         }
+        return admission;
+    }
+
+    /*
+    Realizar un prestamo, si se cumplen todas las validaciones, retorna el prestamo
+    Entradas: id del cliente, id de la herramienta, fecha de devolucion
+    Recibe ids y no entidades de la solicitud: cliente y herramienta se leen en cada intento, asi un reintento
+    por conflicto de version parte de la version actual de las filas
+     */
+    @Transactional
+    @RetryOnOptimisticLock
+    public LoanEntity makeLoan(Long customerId, Long toolId, LocalDate returnDate){
+        if (customerId == null || toolId == null) {
+            throw new IllegalArgumentException("Debe indicar el cliente y la herramienta del préstamo");
+        }
+        CustomerEntity customer = customerRepository.findById(customerId)
+                .orElseThrow(() -> new IllegalArgumentException("Cliente con id " + customerId + " no encontrado"));
+        ToolEntity tool = toolRepository.findById(toolId)
+                .orElseThrow(() -> new IllegalArgumentException("Herramienta con ID " + toolId + " no encontrada"));
+
+        String categoryName = tool.getCategory().getName();
+
+        // Se tienen que hacer todas las validaciones antes de realizar el prestamo
+
+        // 1), 2), 3) y 4) se validan con una sola consulta (estado del cliente, prestamos activos, misma herramienta,
+        // stock y tarifa)
+        LoanAdmissionDTO admission = checkLoanAdmission(customer.getRut(), tool.getName(), categoryName);
 
         //NO se si sea neecaria esta verificacion, xq ya esta la de prestamos con herramioemtas iguales*
         // 5) Verificar estado herramienta, solo se pueden prestar las que tienen estado activo
@@ -223,26 +253,18 @@ public class LoanService {
         // 6) Verificar que la fecha de devolucion no sea anterior a la fecha del prestamo
 
         //Primero se pone por defecto la fecha de prestamo por la fecha actual
-        loan.setLoanDate(LocalDate.now());
-        //loan.setLoanDate(LocalDate.of(2025, 10, 8));
+        LocalDate today = LocalDate.now();
         // Verificar que returnDate no sea anterior a loanDate
-        if (loan.getReturnDate().isBefore(loan.getLoanDate()) || loan.getReturnDate().isEqual(loan.getLoanDate())) {
+        if (returnDate == null || !returnDate.isAfter(today)) {
             throw new IllegalArgumentException("La fecha de devolución no puede ser anterior o igual a la fecha de prestamo");
         }
 
         //Como ya se hicieron las validaciones, se procede a restar el stock y cambiar el estado de la herramienta
 
         ToolEntity borrowedTool = toolService.borrowedTool(tool.getId());
-        loan.setTool(borrowedTool);
-        //Se deja estado activo por defecto
-        loan.setStatus("activo");
 
         //Se calcula el valor total del prestamo por todos los dias
-        LocalDate today = loan.getLoanDate();
-        LocalDate returnDate = loan.getReturnDate();
-
-        ToolsInventoryEntity toolInventory = toolsInventoryRepository.findByNameAndCategory(tool.getName(), categoryName);
-        int dailyRentalRate = toolInventory.getDailyRentalRate();
+        int dailyRentalRate = admission.getDailyRentalRate();
 
         //Calcular dias de diferencia
         long daysBetween = ChronoUnit.DAYS.between(today, returnDate);
@@ -253,16 +275,149 @@ public class LoanService {
         //Calculo valor prestamo
         int loanValue = daysLate*dailyRentalRate;
 
-        loan.setLoanValue(loanValue);
+        //Se deja estado activo por defecto
+        LoanEntity loan = new LoanEntity(null, customer, borrowedTool, today, returnDate, "activo", loanValue, 0L);
+
+        //Se hace un movimiento en el kardex DE TIPO PRESTAMO
+        kardexService.registerMovement("préstamo", borrowedTool);
+
+        LoanEntity savedLoan = loanRepository.save(loan);
+        customerRepository.adjustObligations(admission.getCustomerId(), 1, 0, 0, 0);
+
+        //El prestamo pasara a vencido exactamente cuando se cumpla su fecha de devolucion
+        loanDueDateScheduler.schedule(savedLoan.getId(), savedLoan.getReturnDate());
+
+        return savedLoan;
+    }
+
+    /*
+    Prestamo por herramienta del inventario (nombre y categoria), el servidor elige la unidad
+    Entradas: id del cliente, nombre y categoria de la herramienta, fecha de devolucion
+    Salida: el prestamo creado con la unidad que quedo prestada
+    Mismas reglas de makeLoan, pero la unidad se toma con FOR UPDATE SKIP LOCKED (ToolService.borrowAvailableTool),
+    asi los mesones que prestan el mismo modelo al mismo tiempo no compiten por la misma unidad
+     */
+    @Transactional
+    @RetryOnOptimisticLock
+    public LoanEntity makeLoanByInventory(Long customerId, String toolName, String categoryName, LocalDate returnDate) {
+        CustomerEntity customer = customerRepository.findById(customerId)
+                .orElseThrow(() -> new IllegalArgumentException("Cliente con id " + customerId + " no encontrado"));
+
+        // 1), 2), 3) y 4)
+        LoanAdmissionDTO admission = checkLoanAdmission(customer.getRut(), toolName, categoryName);
+
+        // 6) Verificar que la fecha de devolucion sea posterior a la fecha del prestamo
+        LocalDate today = LocalDate.now();
+        if (returnDate == null || !returnDate.isAfter(today)) {
+            throw new IllegalArgumentException("La fecha de devolución no puede ser anterior o igual a la fecha de prestamo");
+        }
+
+        //Se toma la unidad al final, para tener bloqueada su fila el menor tiempo posible
+        ToolEntity borrowedTool = toolService.borrowAvailableTool(toolName, categoryName);
+
+        int loanValue = (int) ChronoUnit.DAYS.between(today, returnDate) * admission.getDailyRentalRate();
+        LoanEntity loan = new LoanEntity(null, customer, borrowedTool, today, returnDate, "activo", loanValue, 0L);
 
         //Se hace un movimiento en el kardex DE TIPO PRESTAMO
-        KardexEntity kardex = kardexService.registerMovement("préstamo", borrowedTool);
-        kardexRepository.save(kardex);
+        kardexService.registerMovement("préstamo", borrowedTool);
+
+        LoanEntity savedLoan = loanRepository.save(loan);
+        customerRepository.adjustObligations(customerId, 1, 0, 0, 0);
+        loanDueDateScheduler.schedule(savedLoan.getId(), savedLoan.getReturnDate());
+        return savedLoan;
+    }
+
+    /*
+    Prestamo de varias herramientas a la vez (carrito), todo o nada en una sola transaccion
+    Entradas: id del cliente, ids de las herramientas, fecha de devolucion comun
+    Salida: los prestamos creados, uno por herramienta
+    Se aplican las mismas reglas de makeLoan a todo el carrito con una sola lectura del estado del cliente:
+    maximo 5 prestamos activos contando el carrito, sin repetir herramienta (nombre y categoria) con los
+    prestamos activos ni dentro del carrito, y stock suficiente de cada herramienta.
+    Los prestamos y movimientos de kardex se guardan con saveAll para que Hibernate los agrupe en lotes JDBC
+     */
+    @Transactional
+    @RetryOnOptimisticLock
+    public List<LoanEntity> makeLoans(Long customerId, List<Long> toolIds, LocalDate returnDate) {
+        if (toolIds == null || toolIds.isEmpty()) {
+            throw new IllegalArgumentException("Debe indicar al menos una herramienta");
+        }
+        if (new HashSet<>(toolIds).size() != toolIds.size()) {
+            throw new IllegalArgumentException("Una herramienta no puede estar dos veces en el mismo préstamo");
+        }
+
+        // 1) se verifica el estado del cliente
+        CustomerEntity customer = customerRepository.findById(customerId)
+                .orElseThrow(() -> new IllegalArgumentException("Cliente con id " + customerId + " no encontrado"));
+        if (!customerService.isActive(customer.getStatus())){
+            throw new IllegalArgumentException("El cliente tiene estado restringido");
+        }
+
+        // 2) se verifica que con el carrito no supere 5 prestamos activos
+        List<Object[]> activeFamilies = loanRepository.findActiveLoanToolFamilies(customerId);
+        if (activeFamilies.size() + toolIds.size() > 5){
+            throw new IllegalArgumentException("El cliente no puede tener mas de 5 prestamos activos");
+        }
+
+        // 3), 4) y 5) herramientas e inventario del carrito en una sola consulta
+        Set<String> families = new HashSet<>();
+        for (Object[] family : activeFamilies) {
+            families.add(family[0] + "|" + family[1]);
+        }
+        Map<Long, ToolEntity> tools = new HashMap<>();
+        Map<Long, ToolsInventoryEntity> inventories = new HashMap<>();
+        for (Object[] row : toolRepository.findToolsWithInventory(toolIds)) {
+            ToolEntity tool = (ToolEntity) row[0];
+            tools.put(tool.getId(), tool);
+            inventories.put(tool.getId(), (ToolsInventoryEntity) row[1]);
+        }
 
-        return loanRepository.save(loan);
+        for (Long toolId : toolIds) {
+            ToolEntity tool = tools.get(toolId);
+            if (tool == null) {
+                throw new IllegalArgumentException("Herramienta con ID " + toolId + " no encontrada");
+            }
+            if (!families.add(tool.getName() + "|" + tool.getCategory().getName())){
+                throw new IllegalArgumentException("El cliente ya posee un prestamo con la herramienta solicitada");
+            }
+            ToolsInventoryEntity inventory = inventories.get(toolId);
+            if (inventory == null || inventory.getCurrentStock() <= 0){
+                throw new IllegalArgumentException("El stock de la herramienta es insuficiente");
+            }
+            if (tool.getStatus().equals("prestada")){
+                throw new IllegalArgumentException("La herramienta solicitada ya esta prestada");
+            }
+        }
+
+        // 6) Verificar que la fecha de devolucion sea posterior a la fecha del prestamo
+        LocalDate today = LocalDate.now();
+        if (returnDate == null || !returnDate.isAfter(today)) {
+            throw new IllegalArgumentException("La fecha de devolución no puede ser anterior o igual a la fecha de prestamo");
+        }
+        int days = (int) ChronoUnit.DAYS.between(today, returnDate);
+
+        //Se reserva el stock de cada herramienta, si alguna falla se deshace todo el carrito
+        List<LoanEntity> loans = new ArrayList<>();
+        List<KardexEntity> movements = new ArrayList<>();
+        for (Long toolId : toolIds) {
+            ToolEntity borrowedTool = toolService.borrowedTool(toolId);
+            int loanValue = days * inventories.get(toolId).getDailyRentalRate();
+            loans.add(new LoanEntity(null, customer, borrowedTool, today, returnDate, "activo", loanValue, 0L));
+            movements.add(kardexService.buildMovement("préstamo", borrowedTool));
+        }
+        kardexService.registerMovements(movements);
+        List<LoanEntity> savedLoans = loanRepository.saveAll(loans);
+        customerRepository.adjustObligations(customerId, savedLoans.size(), 0, 0, 0);
+
+        for (LoanEntity savedLoan : savedLoans) {
+            loanDueDateScheduler.schedule(savedLoan.getId(), savedLoan.getReturnDate());
+        }
+        return savedLoans;
     }
 
     //Solo puede existir dos estados para la herramienta devuelta (buen estado, dañada)
+    @Transactional
+    @RetryOnOptimisticLock
     public LoanEntity loanReturn(Long loanId, String toolReturnStatus){
 
         //Primero se busca el prestamo por el id
@@ -274,6 +429,7 @@ public class LoanService {
         if (!loan.getStatus().equals("activo") && !loan.getStatus().equals("vencido")){
             throw new IllegalArgumentException("El estado del préstamo no es válido. Solo se aceptan estados activos o vencidos para la devolución ");
         }
+        String previousStatus = loan.getStatus();
 
         //Se verifica si la fecha actaul es menor que la fecha de devolucion de la herramienta
         LocalDate today = LocalDate.now();
@@ -284,6 +440,9 @@ public class LoanService {
         }
         // El cliente devuelve herramienta atrasada
         else {
+            //La multa por atraso deja de crecer desde hoy
+            fineRepository.stopLateFineAccrual(loanId, today);
+
             if (normalizeString(toolReturnStatus).equals("buen estado")){
                 //Se suma stock en el inventario y el estado a la herramienta cambia a disponible
                 ToolEntity newTool = toolService.availableTool(loan.getTool().getId());
@@ -292,8 +451,7 @@ public class LoanService {
                 loan.setStatus("multa pendiente");
 
                 //Se hace un movimiento en el kardex DE TIPO DEVOLUCION
-                KardexEntity kardex = kardexService.registerMovement("devolución", newTool);
-                kardexRepository.save(kardex);
+                kardexService.registerMovement("devolución", newTool);
 
                 loanRepository.save(loan);
             }
@@ -304,87 +462,175 @@ public class LoanService {
 
         }
 
-        return loan;
-    }
-
+        int[] obligations = returnObligations(previousStatus, loan.getStatus());
+        customerRepository.adjustObligations(loan.getCustomer().getId(), obligations[0], obligations[1], obligations[2], 0);
 
+        //La herramienta ya fue devuelta, el prestamo no debe pasar a vencido
+        loanDueDateScheduler.cancel(loanId);
 
+        return loan;
+    }
 
-    // Job que se ejecuta diariamente (usando @Scheduled)
-    //@Scheduled(cron = "0 0 0 * * ?") // Todos los días a medianoche
-    @Scheduled(fixedRate = 10000)
-    private  void processOverdueLoans(){
-        //Se obtienen todos los prestamos existentes
-        ArrayList<LoanEntity> loans = getLoans();
-
-        for (LoanEntity loan : loans) {
-            //Si el prestamo esta vencido se recalcula la multa
-            if (loan.getStatus().equals("vencido")) {
-
-                // Conseguimos todas las multas no pagadas
-                ArrayList<FineEntity> Fines = fineService.getFinesByStatus("no pagada");
-
-                for (FineEntity fine : Fines) {
-                    //Si los id de los prestamos son iguales, se recalcula multa
-                    if (loan.getId().equals(fine.getLoan().getId())) {
-
-                        //dia de hoy
 
-                        LocalDate today = LocalDate.now();
-                        //LocalDate today = LocalDate.of(2025, 9, 20);
 
-                        //Buscamos el valor de la tarifa diaria de multa
-                        GlobalRatesEntity dailyFineRate = globalRatesService.findByRateName("tarifa diaria de multa");
-                        int dailyFineRateValue = dailyFineRate.getDailyRateValue();
 
-                        //Se procede a calcular valor multa
-                        int fineValue = fineService.calculateLatePaymentPenalty(loan.getReturnDate(), today, dailyFineRateValue);
+    /*
+    Devolucion de varios prestamos a la vez, todo o nada en una sola transaccion
+    Aplica las mismas reglas de loanReturn (a tiempo o atrasado, buen estado o dañada) pero:
+    - carga todos los prestamos con su herramienta y cliente en una sola consulta
+    - valida todo antes de escribir
+    - suma el stock devuelto por inventario y lo aplica con un UPDATE por herramienta
+    - los cambios de estado de herramientas, prestamos y clientes se escriben al confirmar en lotes JDBC,
+      y los movimientos de kardex con saveAll
+     */
+    @Transactional
+    @RetryOnOptimisticLock
+    public List<LoanEntity> loanReturns(List<LoanReturnItemDTO> returns) {
+        if (returns == null || returns.isEmpty()) {
+            throw new IllegalArgumentException("Debe indicar al menos un préstamo a devolver");
+        }
+        Map<Long, String> returnStatuses = new LinkedHashMap<>();
+        for (LoanReturnItemDTO item : returns) {
+            if (returnStatuses.put(item.getLoanId(), normalizeString(item.getToolReturnStatus())) != null) {
+                throw new IllegalArgumentException("El préstamo " + item.getLoanId() + " está dos veces en la devolución");
+            }
+        }
 
-                        //Actualizamos el valor de la multa
-                        fine.setFineValue(fineValue);
+        Map<Long, LoanEntity> loans = new HashMap<>();
+        for (LoanEntity loan : loanRepository.findAllForReturn(returnStatuses.keySet())) {
+            loans.put(loan.getId(), loan);
+        }
 
-                        //Se guatda multa yu prestamo
-                        fineRepository.save(fine);
-                        loanRepository.save(loan);
+        //Se valida todo antes de escribir
+        for (Map.Entry<Long, String> entry : returnStatuses.entrySet()) {
+            LoanEntity loan = loans.get(entry.getKey());
+            if (loan == null) {
+                throw new IllegalArgumentException("Préstamo con ID " + entry.getKey() + " no encontrada");
+            }
+            if (!loan.getStatus().equals("activo") && !loan.getStatus().equals("vencido")){
+                throw new IllegalArgumentException("El estado del préstamo no es válido. Solo se aceptan estados activos o vencidos para la devolución ");
+            }
+            if (!"buen estado".equals(entry.getValue()) && !"dañada".equals(entry.getValue())) {
+                throw new IllegalArgumentException("El estado ingresado para la herramienta a devolver no es válido");
+            }
+        }
 
-                    }
-                }
+        LocalDate today = LocalDate.now();
+        //Unidades devueltas por inventario (nombre y categoria)
+        Map<List<String>, Integer> stockDeltas = new LinkedHashMap<>();
+        List<Long> lateLoanIds = new ArrayList<>();
+        List<KardexEntity> movements = new ArrayList<>();
+        List<LoanEntity> returnedLoans = new ArrayList<>();
+        //Cambios en los contadores de cada cliente (activos, vencidos, evaluaciones pendientes)
+        Map<Long, int[]> obligationDeltas = new LinkedHashMap<>();
+
+        for (Map.Entry<Long, String> entry : returnStatuses.entrySet()) {
+            LoanEntity loan = loans.get(entry.getKey());
+            ToolEntity tool = loan.getTool();
+            String previousStatus = loan.getStatus();
+            boolean late = !today.isBefore(loan.getReturnDate());
+            if (late) {
+                lateLoanIds.add(loan.getId());
             }
-            //Si el prestamo esta activo, se tiene que revisar y si ya paso la fecha de devolucion
-            else if (loan.getStatus().equals("activo")) {
 
-                LocalDate today = LocalDate.now();
+            if (entry.getValue().equals("buen estado")) {
+                //Se suma stock en el inventario y el estado a la herramienta cambia a disponible
+                stockDeltas.merge(List.of(tool.getName(), tool.getCategory().getName()), 1, Integer::sum);
+                tool.setStatus("disponible");
+                loan.setStatus(late ? "multa pendiente" : "finalizado");
+            }
+            else {
+                //Herramienta a reparacion, cliente restringido y prestamo a evaluacion pendiente
+                tool.setStatus("en reparacion");
+                movements.add(kardexService.buildMovement("reparación", tool));
+                loan.getCustomer().setStatus("restringido");
+                loan.setStatus("evaluación pendiente");
+            }
+            //Se hace un movimiento en el kardex DE TIPO DEVOLUCION
+            movements.add(kardexService.buildMovement("devolución", tool));
+            returnedLoans.add(loan);
 
-                //Si la fecha es actual es despues que la fecha de devolucion, entonces se tiene que crear multa
-                if (today.isAfter(loan.getReturnDate())) {
-                    //Buscamos el valor de la tarifa diaria de multa
-                    GlobalRatesEntity dailyFineRate = globalRatesService.findGlobalRatesById(1L);
-                    int dailyFineRateValue = dailyFineRate.getDailyRateValue();
+            int[] obligations = returnObligations(previousStatus, loan.getStatus());
+            int[] customerDelta = obligationDeltas.computeIfAbsent(loan.getCustomer().getId(), id -> new int[3]);
+            for (int i = 0; i < obligations.length; i++) {
+                customerDelta[i] += obligations[i];
+            }
+        }
 
-                    //Se procede a calcular valor multa
-                    int fineValue = fineService.calculateLatePaymentPenalty(loan.getReturnDate(), today, dailyFineRateValue);
+        for (Map.Entry<List<String>, Integer> delta : stockDeltas.entrySet()) {
+            toolsInventoryRepository.releaseStock(delta.getKey().get(0), delta.getKey().get(1), delta.getValue());
+        }
+        if (!lateLoanIds.isEmpty()) {
+            //Las multas por atraso dejan de crecer desde hoy
+            fineRepository.stopLateFineAccrualForLoans(lateLoanIds, today);
+        }
+        kardexService.registerMovements(movements);
+        for (Map.Entry<Long, int[]> delta : obligationDeltas.entrySet()) {
+            int[] obligations = delta.getValue();
+            customerRepository.adjustObligations(delta.getKey(), obligations[0], obligations[1], obligations[2], 0);
+        }
 
-                    //Se crea la multa
-                    FineEntity newFine = fineService.generateALateFine(loan.getCustomer(), loan, fineValue);
+        //Las herramientas ya fueron devueltas, los prestamos no deben pasar a vencido
+        for (LoanEntity loan : returnedLoans) {
+            loanDueDateScheduler.cancel(loan.getId());
+        }
+        return returnedLoans;
+    }
 
-                    //Se guarda la multa en el repositorio
-                    fineRepository.save(newFine);
+    /*
+    Pasa a vencido un prestamo en el momento en que vence, lo llama LoanDueDateScheduler
+    El UPDATE condicional asegura que solo un nodo lo procese y que no se procese si ya fue devuelto
+     */
+    @Transactional
+    @RetryOnOptimisticLock
+    public void markLoanAsOverdue(Long loanId) {
+        LocalDate today = LocalDate.now();
+        LoanEntity loan = loanRepository.findById(loanId).orElse(null);
+        if (loan == null || loanRepository.markLoanAsOverdue(loanId, today) == 0) {
+            return;
+        }
 
-                    //Se cambia de estado al prestamo
-                    loan.setStatus("vencido");
+        //Buscamos el valor de la tarifa diaria de multa
+        GlobalRatesEntity dailyFineRate = globalRatesService.findByRateName("tarifa diaria de multa");
+        int dailyFineRateValue = dailyFineRate != null ? dailyFineRate.getDailyRateValue() : 0;
 
-                    //Se cambia el estado del cliente a restringido
-                    CustomerEntity customer = loan.getCustomer();
-                    customer.setStatus("restringido");
-                    customerRepository.save(customer);
-                    loan.setCustomer(customer);
+        //Se procede a calcular valor multa
+        int fineValue = fineService.calculateLatePaymentPenalty(loan.getReturnDate(), today, dailyFineRateValue);
 
-                    loanRepository.save(loan);
+        int createdFines = fineRepository.insertLateFineForLoan(loanId, fineValue, accrueLateFinesOnRead, dailyFineRateValue, maxLateFineValue());
+        customerRepository.adjustObligations(loan.getCustomer().getId(), -1, 1, 0, createdFines);
+        customerRepository.restrictCustomerOfLoan(loanId);
+    }
 
-                }
-            }
+    // Job de respaldo, los prestamos pasan a vencido con LoanDueDateScheduler en el momento exacto
+    // Este proceso recalcula las multas por atraso (cambian una vez al dia) y toma los prestamos que
+    // ningun temporizador proceso, por ejemplo los creados en una replica que se cayo
+    /*
+    Se procesa por conjuntos con sentencias masivas, en vez de recorrer prestamo por prestamo:
+    1) Se crean las multas por atraso de los prestamos activos cuya fecha de devolucion ya paso
+    2) Se restringen los clientes de esos prestamos
+    3) Esos prestamos pasan a vencido
+    4) Se recalcula en un solo UPDATE el valor de las multas por atraso no pagadas que no se calculan al leer
+    El orden importa, 1 y 2 buscan los prestamos que todavia estan activos
+    Los 4 pasos se hacen por rangos de ids en paralelo, con un checkpoint para retomar si el nodo se cae
+    Con varias replicas del backend solo el nodo que tiene el arriendo del proceso lo ejecuta
+     */
+    @Scheduled(cron = "${toolrent.overdue.sweep-cron:0 0 * * * *}")
+    public void processOverdueLoans(){
+        if (!schedulerLockService.holdJobLease(OVERDUE_LOANS_JOB)) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
 
+        //Buscamos el valor de la tarifa diaria de multa
+        GlobalRatesEntity dailyFineRate = globalRatesService.findByRateName("tarifa diaria de multa");
+        if (dailyFineRate == null) {
+            return;
         }
+        int dailyFineRateValue = dailyFineRate.getDailyRateValue();
+
+        //Cada parte de la tabla se confirma en su propia transaccion (OverdueLoanBatchService)
+        overdueLoanBatchService.run(OVERDUE_LOANS_JOB, today, accrueLateFinesOnRead, dailyFineRateValue, maxLateFineValue());
     }
 
     // ========== MÉTODOS PARA REPORTES (ÉPICA 6) ==========
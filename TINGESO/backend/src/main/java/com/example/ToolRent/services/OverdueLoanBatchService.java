@@ -0,0 +1,200 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.entities.BatchCheckpointEntity;
+import com.example.ToolRent.repositories.BatchCheckpointRepository;
+import com.example.ToolRent.repositories.CustomerRepository;
+import com.example.ToolRent.repositories.FineRepository;
+import com.example.ToolRent.repositories.LoanRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/*
+Proceso de prestamos vencidos por partes.
+La tabla de prestamos se divide en rangos de ids, cada rango se procesa con las mismas sentencias masivas
+de siempre pero en su propia transaccion corta, y los rangos se reparten en un pool de hilos acotado.
+El avance queda en BatchCheckpoints: si el nodo se cae la siguiente ejecucion del mismo dia parte
+desde el ultimo rango confirmado. Las sentencias son idempotentes, repetir un rango no duplica multas.
+ */
+@Service
+public class OverdueLoanBatchService {
+    private static final Logger log = LoggerFactory.getLogger(OverdueLoanBatchService.class);
+
+    public static final String IN_PROGRESS = "en curso";
+    public static final String COMPLETED = "completado";
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    @Autowired
+    FineRepository fineRepository;
+
+    @Autowired
+    CustomerRepository customerRepository;
+
+    @Autowired
+    BatchCheckpointRepository batchCheckpointRepository;
+
+    @Autowired
+    SchedulerLockService schedulerLockService;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    //Cantidad de ids de prestamos por parte
+    @Value("${toolrent.overdue.batch.chunk-size:5000}")
+    long chunkSize;
+
+    //Hilos que procesan partes al mismo tiempo, debe ser menor que el pool de conexiones
+    @Value("${toolrent.overdue.batch.parallelism:4}")
+    int parallelism;
+
+    /*
+    Procesa los prestamos con id entre fromId y toId en una sola transaccion nueva
+    El orden importa, los contadores de clientes, las multas y la restriccion buscan los prestamos que todavia estan activos
+     */
+    public void processChunk(LocalDate today, Long fromId, Long toId,
+                             boolean accrueOnRead, int dailyFineRate, Integer maxFineValue) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transaction.executeWithoutResult(status -> {
+            customerRepository.countOverdueLoansInObligations(today, fromId, toId);
+            fineRepository.insertLateFinesForOverdueLoans(today, fromId, toId, accrueOnRead, dailyFineRate, maxFineValue);
+            customerRepository.restrictCustomersWithOverdueLoans(today, fromId, toId);
+            loanRepository.markOverdueLoans(today, fromId, toId);
+            fineRepository.recalculateLateFines(today, fromId, toId, dailyFineRate);
+        });
+    }
+
+    /*
+    Procesa toda la tabla por partes, retomando la ejecucion del dia si quedo a medias
+    Salida: true si se completaron todas las partes
+     */
+    public boolean run(String jobName, LocalDate today,
+                       boolean accrueOnRead, int dailyFineRate, Integer maxFineValue) {
+        List<Object[]> range = loanRepository.findLoanIdRange();
+        if (range.isEmpty() || range.get(0)[0] == null) {
+            return true;
+        }
+        long minId = (Long) range.get(0)[0];
+        long maxId = (Long) range.get(0)[1];
+
+        BatchCheckpointEntity checkpoint = batchCheckpointRepository.findById(jobName).orElse(null);
+        long startId = minId;
+        //Una ejecucion completada se vuelve a recorrer entera, pueden haber prestamos nuevos vencidos
+        if (checkpoint != null && IN_PROGRESS.equals(checkpoint.getStatus())
+                && today.equals(checkpoint.getRunDate()) && checkpoint.getLastProcessedId() != null) {
+            startId = Math.max(minId, checkpoint.getLastProcessedId() + 1);
+        }
+        saveCheckpoint(jobName, today, startId - 1, IN_PROGRESS);
+
+        //Rangos [from, to] de cada parte
+        List<long[]> chunks = new ArrayList<>();
+        for (long from = startId; from <= maxId; from += chunkSize) {
+            chunks.add(new long[]{from, Math.min(from + chunkSize - 1, maxId)});
+        }
+
+        ChunkProgress progress = new ChunkProgress(chunks, startId - 1);
+        ExecutorService pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < chunks.size(); i++) {
+                int index = i;
+                futures.add(pool.submit(() -> {
+                    //Si el nodo perdio el arriendo no sigue, otro nodo retoma desde el checkpoint
+                    if (progress.isStopped() || !schedulerLockService.holdJobLease(jobName)) {
+                        progress.stop();
+                        return;
+                    }
+                    long[] chunk = chunks.get(index);
+                    processChunk(today, chunk[0], chunk[1], accrueOnRead, dailyFineRate, maxFineValue);
+                    Long confirmed = progress.complete(index);
+                    if (confirmed != null) {
+                        saveCheckpoint(jobName, today, confirmed, IN_PROGRESS);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    progress.stop();
+                    log.error("Falló una parte del proceso de préstamos vencidos", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            progress.stop();
+        } finally {
+            pool.shutdown();
+        }
+
+        if (progress.isStopped()) {
+            return false;
+        }
+        saveCheckpoint(jobName, today, maxId, COMPLETED);
+        return true;
+    }
+
+    private synchronized void saveCheckpoint(String jobName, LocalDate today, long lastProcessedId, String status) {
+        BatchCheckpointEntity checkpoint = batchCheckpointRepository.findById(jobName)
+                .orElseGet(BatchCheckpointEntity::new);
+        checkpoint.setName(jobName);
+        checkpoint.setRunDate(today);
+        checkpoint.setLastProcessedId(lastProcessedId);
+        checkpoint.setStatus(status);
+        checkpoint.setUpdatedAt(LocalDateTime.now());
+        batchCheckpointRepository.save(checkpoint);
+    }
+
+    /*
+    Lleva las partes terminadas, que pueden terminar en cualquier orden
+    El checkpoint solo avanza hasta la ultima parte de una secuencia sin huecos
+     */
+    static final class ChunkProgress {
+        private final List<long[]> chunks;
+        private final boolean[] done;
+        private int nextPending;
+        private long confirmedId;
+        private volatile boolean stopped;
+
+        ChunkProgress(List<long[]> chunks, long confirmedId) {
+            this.chunks = chunks;
+            this.done = new boolean[chunks.size()];
+            this.confirmedId = confirmedId;
+        }
+
+        //Marca la parte como terminada, retorna el nuevo id confirmado o null si no avanzo
+        synchronized Long complete(int index) {
+            done[index] = true;
+            int before = nextPending;
+            while (nextPending < done.length && done[nextPending]) {
+                confirmedId = chunks.get(nextPending)[1];
+                nextPending++;
+            }
+            return nextPending > before ? confirmedId : null;
+        }
+
+        void stop() {
+            stopped = true;
+        }
+
+        boolean isStopped() {
+            return stopped;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.repositories.SchedulerLockRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+Eleccion de lider para los procesos programados (@Scheduled) cuando hay varias replicas del backend.
+Cada proceso tiene una fila en SchedulerLocks con el nodo dueño y la fecha de vencimiento del arriendo.
+Cada ejecucion toma el arriendo por job-lease-seconds (holdJobLease) y lo renueva antes de cada parte del trabajo
+(heartbeat), si el nodo se cae el arriendo vence y el siguiente nodo que lo intente lo toma.
+La duracion del arriendo debe ser mayor a la parte mas larga del proceso entre dos renovaciones, no al periodo:
+entre ejecuciones el arriendo puede vencer y la siguiente la hace el nodo que lo tome primero. Al terminar no se
+libera, asi un nodo cuyo cron se dispara unos segundos despues no repite la ejecucion.
+El vencimiento se calcula y se compara con el reloj de la base de datos, asi el desfase entre los relojes
+de los nodos no adelanta ni atrasa el cambio de lider.
+ */
+@Service
+public class SchedulerLockService {
+    @Autowired
+    SchedulerLockRepository schedulerLockRepository;
+
+    //Identificador del nodo, en docker HOSTNAME es distinto para cada contenedor
+    @Value("${toolrent.scheduling.node-id:${HOSTNAME:}}")
+    String nodeId;
+
+    //Duracion por defecto del arriendo
+    @Value("${toolrent.scheduling.lease-seconds:30}")
+    long leaseSeconds;
+
+    //Duracion del arriendo de los procesos programados, se renueva mientras corren
+    @Value("${toolrent.scheduling.job-lease-seconds:600}")
+    long jobLeaseSeconds;
+
+    //Arriendos tomados por este nodo, para liberarlos al apagar la aplicacion
+    private final Set<String> heldLocks = ConcurrentHashMap.newKeySet();
+
+    //Hora (System.nanoTime) y duracion de la ultima renovacion de cada arriendo de este nodo
+    private final Map<String, long[]> renewals = new ConcurrentHashMap<>();
+
+    public String getNodeId() {
+        if (nodeId == null || nodeId.isBlank()) {
+            nodeId = UUID.randomUUID().toString();
+        }
+        return nodeId;
+    }
+
+    public boolean tryAcquire(String name) {
+        return tryAcquire(name, Duration.ofSeconds(leaseSeconds));
+    }
+
+    //Retorna true si este nodo tiene el arriendo del proceso hasta la hora de la base de datos + leaseDuration
+    public boolean tryAcquire(String name, Duration leaseDuration) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("El nombre del proceso no puede ser vacío");
+        }
+        String node = getNodeId();
+        long leaseSeconds = leaseDuration.toSeconds();
+        //Se toma antes de ir a la base de datos, el arriendo vence despues de esta hora
+        long requestedAt = System.nanoTime();
+
+        boolean acquired = schedulerLockRepository.acquire(name, node, leaseSeconds) > 0;
+        if (!acquired && !schedulerLockRepository.existsById(name)) {
+            try {
+                acquired = schedulerLockRepository.insert(name, node, leaseSeconds) > 0;
+            } catch (DataIntegrityViolationException e) {
+                //Otro nodo creo la fila al mismo tiempo, se queda con el arriendo
+                acquired = false;
+            }
+        }
+
+        if (acquired) {
+            heldLocks.add(name);
+            renewals.put(name, new long[]{requestedAt, leaseDuration.toNanos()});
+        } else {
+            heldLocks.remove(name);
+            renewals.remove(name);
+        }
+        return acquired;
+    }
+
+    /*
+    Toma o renueva el arriendo de un proceso programado por job-lease-seconds. Se llama al empezar y antes
+    de cada parte del trabajo; solo va a la base de datos cuando paso un tercio del arriendo desde la ultima
+    renovacion. Retorna false si otro nodo tiene el arriendo, en ese caso el proceso debe detenerse
+     */
+    public boolean holdJobLease(String name) {
+        long[] renewal = renewals.get(name);
+        if (renewal != null && heldLocks.contains(name) && System.nanoTime() - renewal[0] < renewal[1] / 3) {
+            return true;
+        }
+        return tryAcquire(name, Duration.ofSeconds(jobLeaseSeconds));
+    }
+
+    public void release(String name) {
+        schedulerLockRepository.release(name, getNodeId());
+        heldLocks.remove(name);
+        renewals.remove(name);
+    }
+
+    //Al apagar el nodo se liberan sus arriendos para que otro nodo los tome sin esperar el vencimiento
+    @PreDestroy
+    public void releaseAll() {
+        for (String name : heldLocks) {
+            try {
+                release(name);
+            } catch (RuntimeException e) {
+                //Si la base de datos ya no esta disponible, el arriendo simplemente vence
+            }
+        }
+    }
+}
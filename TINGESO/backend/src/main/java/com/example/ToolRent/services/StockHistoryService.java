@@ -0,0 +1,229 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.dto.StockAtDateDTO;
+import com.example.ToolRent.entities.StockSnapshotEntity;
+import com.example.ToolRent.entities.ToolsInventoryEntity;
+import com.example.ToolRent.repositories.KardexRepository;
+import com.example.ToolRent.repositories.StockSnapshotRepository;
+import com.example.ToolRent.repositories.ToolRepository;
+import com.example.ToolRent.repositories.ToolsInventoryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+/*
+Stock historico de las herramientas del inventario (totalTools y currentStock en una fecha pasada).
+El primer dia de cada mes se guarda una foto del stock de cada herramienta del inventario (StockSnapshots) y
+para una fecha se parte de la foto mas cercana anterior y se suman los movimientos del kardex desde ese dia,
+asi una consulta lee a lo mas un mes de movimientos de una herramienta y no todo el kardex.
+Las fotos nuevas se anclan en el inventario actual (ToolsInventory): la del mes mas reciente es el inventario
+menos los movimientos desde ese dia y las anteriores se obtienen hacia atras restando los movimientos de cada mes.
+Asi un ajuste que no quedo en el kardex (por ejemplo reparaciones anteriores al kardex) no se arrastra como un
+error en todas las fotos; si una foto ya guardada no cuadra con el inventario se registra la diferencia en el log.
+Al iniciar se completan las fotos que falten.
+Efecto de cada tipo de movimiento (affectedAmount):
+ingreso suma al total y al stock, prestamo y reparacion restan al stock, devolucion y reingreso suman al stock,
+baja resta al total (la herramienta ya estaba fuera del stock por estar en reparacion).
+ */
+@Service
+public class StockHistoryService {
+    private static final Logger log = LoggerFactory.getLogger(StockHistoryService.class);
+
+    //Nombre del arriendo de las fotos mensuales en SchedulerLocks
+    public static final String SNAPSHOT_JOB = "takeStockSnapshots";
+
+    @Autowired
+    StockSnapshotRepository stockSnapshotRepository;
+
+    @Autowired
+    KardexRepository kardexRepository;
+
+    @Autowired
+    ToolsInventoryRepository toolsInventoryRepository;
+
+    @Autowired
+    ToolRepository toolRepository;
+
+    @Autowired
+    KardexArchiveStore kardexArchiveStore;
+
+    @Autowired
+    SchedulerLockService schedulerLockService;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    //Stock al final del dia indicado
+    public StockAtDateDTO getStockAt(Long inventoryId, LocalDate date) {
+        if (date == null) {
+            throw new IllegalArgumentException("La fecha no puede ser null");
+        }
+        if (date.isAfter(LocalDate.now())) {
+            throw new IllegalArgumentException("La fecha no puede ser posterior a hoy");
+        }
+        ToolsInventoryEntity inventory = toolsInventoryRepository.findById(inventoryId)
+                .orElseThrow(() -> new IllegalArgumentException("Inventario de herramienta con ID " + inventoryId + " no encontrado"));
+
+        //La foto de un dia es el stock antes de sus movimientos, por eso se busca hasta el dia siguiente
+        LocalDate end = date.plusDays(1);
+        Optional<StockSnapshotEntity> snapshot = stockSnapshotRepository
+                .findFirstByInventoryIdAndSnapshotDateLessThanEqualOrderBySnapshotDateDesc(inventoryId, end);
+
+        int[] stock;
+        LocalDate snapshotDate = null;
+        if (snapshot.isPresent()) {
+            snapshotDate = snapshot.get().getSnapshotDate();
+            stock = replay(snapshot.get().getTotalTools(), snapshot.get().getCurrentStock(),
+                    sumAmountsByType(inventory, snapshotDate, end));
+        } else {
+            stock = replay(0, 0, sumAmountsByType(inventory, null, end));
+        }
+        return new StockAtDateDTO(inventoryId, inventory.getName(), inventory.getCategory(), date,
+                stock[0], stock[1], snapshotDate);
+    }
+
+    //Sumas por tipo desde startDate (null = desde el principio) hasta endDate (exclusiva), de la tabla y del archivo
+    private List<Object[]> sumAmountsByType(ToolsInventoryEntity inventory, LocalDate startDate, LocalDate endDate) {
+        List<Object[]> sums = new ArrayList<>(startDate != null
+                ? kardexRepository.sumAmountsByType(inventory.getName(), inventory.getCategory(), startDate, endDate)
+                : kardexRepository.sumAmountsByTypeBefore(inventory.getName(), inventory.getCategory(), endDate));
+        if (kardexArchiveStore.covers(startDate, endDate.minusDays(1))) {
+            List<Long> toolIds = toolRepository.findIdsByNameAndCategory(inventory.getName(), inventory.getCategory());
+            sums.addAll(kardexArchiveStore.sumAmountsByType(toolIds, startDate, endDate));
+        }
+        return sums;
+    }
+
+    //Aplica las sumas por tipo de movimiento [tipo, suma] a un stock, retorna {totalTools, currentStock}
+    static int[] replay(int totalTools, int currentStock, List<Object[]> sumsByType) {
+        for (Object[] row : sumsByType) {
+            int amount = ((Number) row[1]).intValue();
+            switch ((String) row[0]) {
+                case "ingreso" -> {
+                    totalTools += amount;
+                    currentStock += amount;
+                }
+                case "préstamo", "reparación" -> currentStock -= amount;
+                case "devolución", "reingreso" -> currentStock += amount;
+                case "baja" -> totalTools -= amount;
+                default -> log.warn("Tipo de movimiento {} sin efecto en el stock", row[0]);
+            }
+        }
+        return new int[]{totalTools, currentStock};
+    }
+
+    //Deshace las sumas por tipo de movimiento: el stock antes de los movimientos a partir del stock despues de ellos
+    static int[] unreplay(int totalTools, int currentStock, List<Object[]> sumsByType) {
+        List<Object[]> negated = new ArrayList<>(sumsByType.size());
+        for (Object[] row : sumsByType) {
+            negated.add(new Object[]{row[0], -((Number) row[1]).intValue()});
+        }
+        return replay(totalTools, currentStock, negated);
+    }
+
+    //Al iniciar se completan las fotos que falten, por ejemplo despues de tener la aplicacion detenida un cambio de mes
+    @EventListener(ApplicationReadyEvent.class)
+    public void snapshotsOnStartup() {
+        takeSnapshots();
+    }
+
+    @Scheduled(cron = "${toolrent.inventory.snapshots.cron:0 30 0 1 * *}")
+    public void takeSnapshots() {
+        if (!schedulerLockService.holdJobLease(SNAPSHOT_JOB)) {
+            return;
+        }
+        int created = ensureSnapshots(LocalDate.now(), () -> schedulerLockService.holdJobLease(SNAPSHOT_JOB));
+        if (created > 0) {
+            log.info("Se guardaron {} fotos del stock del inventario", created);
+        }
+    }
+
+    //Guarda las fotos del primer dia de cada mes hasta la fecha para todo el inventario, retorna cuantas se crearon
+    public int ensureSnapshots(LocalDate upTo) {
+        return ensureSnapshots(upTo, () -> true);
+    }
+
+    //keepRunning renueva el arriendo del proceso antes de cada herramienta, si retorna false se detiene
+    public int ensureSnapshots(LocalDate upTo, BooleanSupplier keepRunning) {
+        int created = 0;
+        for (ToolsInventoryEntity inventory : toolsInventoryRepository.findAll()) {
+            if (!keepRunning.getAsBoolean()) {
+                log.warn("Se perdio el arriendo de las fotos del stock, quedan herramientas sin foto hasta {}", upTo);
+                break;
+            }
+            created += ensureSnapshots(inventory.getId(), upTo);
+        }
+        return created;
+    }
+
+    //Cada herramienta del inventario en su propia transaccion, con la fila del inventario bloqueada
+    public int ensureSnapshots(Long inventoryId, LocalDate upTo) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        Integer created = transaction.execute(status -> {
+            ToolsInventoryEntity inventory = toolsInventoryRepository.lockById(inventoryId).orElse(null);
+            if (inventory == null) {
+                return 0;
+            }
+            Optional<StockSnapshotEntity> last = stockSnapshotRepository
+                    .findFirstByInventoryIdAndSnapshotDateLessThanEqualOrderBySnapshotDateDesc(inventoryId, upTo);
+
+            //Primer dia del mes de la ultima foto guardada o, sin fotos, del mes del primer movimiento
+            LocalDate from;
+            if (last.isPresent()) {
+                from = last.get().getSnapshotDate();
+            } else {
+                //Sin movimientos no hay nada que guardar, la primera foto es el mes siguiente al primer movimiento
+                from = kardexRepository.findFirstMovementDate(inventory.getName(), inventory.getCategory());
+                if (from == null) {
+                    return 0;
+                }
+                from = from.withDayOfMonth(1);
+            }
+            LocalDate newest = upTo.withDayOfMonth(1);
+            if (!newest.isAfter(from)) {
+                return 0;
+            }
+
+            //La foto mas reciente es el inventario actual menos los movimientos desde ese dia
+            int[] stock = unreplay(inventory.getTotalTools(), inventory.getCurrentStock(),
+                    sumAmountsByType(inventory, newest, LocalDate.now().plusDays(1)));
+            int count = 0;
+            for (LocalDate month = newest; month.isAfter(from); month = month.minusMonths(1)) {
+                stockSnapshotRepository.save(new StockSnapshotEntity(null, inventory, month, stock[0], stock[1]));
+                count++;
+                stock = unreplay(stock[0], stock[1], sumAmountsByType(inventory, month.minusMonths(1), month));
+            }
+
+            //stock quedo en el dia "from": debe coincidir con la foto anterior o, sin fotos, ser cero
+            int expectedTotal = last.map(StockSnapshotEntity::getTotalTools).orElse(0);
+            int expectedStock = last.map(StockSnapshotEntity::getCurrentStock).orElse(0);
+            if (stock[0] != expectedTotal || stock[1] != expectedStock) {
+                log.warn("El kardex de {} ({}) no cuadra con el inventario al {}: se esperaba total {} y stock {}, " +
+                                "el inventario actual da total {} y stock {}",
+                        inventory.getName(), inventory.getCategory(), from, expectedTotal, expectedStock, stock[0], stock[1]);
+                //Sin fotos se guarda tambien la del mes del primer movimiento, para que las fechas
+                //de ese mes partan de ella y no de cero
+                if (last.isEmpty()) {
+                    stockSnapshotRepository.save(new StockSnapshotEntity(null, inventory, from, stock[0], stock[1]));
+                    count++;
+                }
+            }
+            return count;
+        });
+        return created != null ? created : 0;
+    }
+}
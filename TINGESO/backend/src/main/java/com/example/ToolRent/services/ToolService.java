@@ -1,13 +1,16 @@
 package com.example.ToolRent.services;
 
+import com.example.ToolRent.config.RetryOnOptimisticLock;
+import com.example.ToolRent.entities.CategoryEntity;
 import com.example.ToolRent.entities.KardexEntity;
 import com.example.ToolRent.entities.ToolEntity;
 import com.example.ToolRent.entities.ToolsInventoryEntity;
-import com.example.ToolRent.repositories.KardexRepository;
 import com.example.ToolRent.repositories.ToolRepository;
 import com.example.ToolRent.repositories.ToolsInventoryRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.tools.Tool;
 import java.util.ArrayList;
@@ -19,8 +22,6 @@ public class ToolService {
     ToolRepository toolRepository;
     @Autowired
     ToolsInventoryRepository toolsInventoryRepository;
-    @Autowired
-    private KardexRepository kardexRepository;
 
     @Autowired
     private KardexService kardexService;
@@ -170,6 +171,8 @@ public class ToolService {
     }
 
     //Se modifica el valor de reposicion
+    @Transactional
+    @RetryOnOptimisticLock
     public ToolsInventoryEntity updateReplacementValue(Long inventoryId, Integer replacementValue){
         //Se valida que sea correcto el valor de reposicion
         validateReplacementValue(replacementValue);
@@ -183,6 +186,8 @@ public class ToolService {
     }
 
     //Se modifica el valor de la tarifa de arriendo
+    @Transactional
+    @RetryOnOptimisticLock
     public ToolsInventoryEntity updateDailyRentalRate(Long inventoryId, Integer dailyRentalRate){
         //Se valida que sea correcto el valor de reposicion
         validateDailyRentalRate(dailyRentalRate);
@@ -197,6 +202,8 @@ public class ToolService {
 
 
     //Guarda herramientas que ya estan en el sistema
+    @Transactional
+    @RetryOnOptimisticLock
     public List<ToolEntity> saveRegisteredTool(ToolEntity tool, int quantity) {
         //Revisamos que la cantidad sea mayor a cero
         if (quantity <= 0) {
@@ -226,26 +233,12 @@ public class ToolService {
         else{
             throw new IllegalArgumentException("La herramienta ingresada no se encuentra en el sistema");
         }
-        List<ToolEntity> savedTools = new ArrayList<>();
-
-        //Se crean y guardan cada herramienta de forma individual (con id unico)
-        for (int i = 0; i<quantity; i++) {
-            ToolEntity newTool = new ToolEntity();
-            newTool.setName(tool.getName());
-            newTool.setCategory(tool.getCategory());
-            newTool.setStatus("disponible");
-
-            //Guardo en base de datos de la herramienta
-            ToolEntity savedTool = toolRepository.save(newTool);
-            savedTools.add(savedTool);
-            //Se hace un movimiento en el kardex DE TIPO INGRESO
-            KardexEntity kardex = kardexService.registerMovement("ingreso", savedTool);
-            kardexRepository.save(kardex);
-        }
-        return savedTools;
+        return intakeTools(tool.getName(), tool.getCategory(), quantity);
     }
 
         //Guardar herramienta NO registrada en el sistema
+    @Transactional
+    @RetryOnOptimisticLock
     public List<ToolEntity> saveTool(ToolEntity tool, int quantity, int replacementValue, int dailyRentalRate) {
         //Revisamos que la cantidad sea mayor a cero
         if (quantity <= 0) {
@@ -279,24 +272,30 @@ public class ToolService {
             throw new IllegalArgumentException("La herramienta ingresada SI se encuentra en el sistema");
         }
 
-        List<ToolEntity> savedTools = new ArrayList<>();
+        return intakeTools(normalizeString(tool.getName()), tool.getCategory(), quantity);
+    }
 
-        //Se crean y guardan cada herramienta de forma individual (con id unico)
-        for (int i = 0; i<quantity; i++) {
+    /*
+    Ingreso de quantity unidades de una herramienta (cada una con id unico) y un movimiento DE TIPO INGRESO por unidad.
+    Las unidades y sus movimientos se guardan en lotes: los ids salen de secuencias pooled-lo, sin ir a la base de datos
+    por cada fila, y Hibernate agrupa los INSERT en lotes JDBC (hibernate.jdbc.batch_size)
+     */
+    private List<ToolEntity> intakeTools(String name, CategoryEntity category, int quantity) {
+        List<ToolEntity> newTools = new ArrayList<>(quantity);
+        for (int i = 0; i < quantity; i++) {
             ToolEntity newTool = new ToolEntity();
-            newTool.setName(normalizeString(tool.getName()));
-            newTool.setCategory(tool.getCategory());
+            newTool.setName(name);
+            newTool.setCategory(category);
             newTool.setStatus("disponible");
+            newTools.add(newTool);
+        }
+        List<ToolEntity> savedTools = toolRepository.saveAll(newTools);
 
-            //Guardo en base de datos de la herramienta
-            ToolEntity savedTool = toolRepository.save(newTool);
-            savedTools.add(savedTool);
-
-            //Se hace un movimiento en el kardex DE TIPO INGRESO
-            KardexEntity kardex = kardexService.registerMovement("ingreso", savedTool);
-            kardexRepository.save(kardex);
-
+        List<KardexEntity> movements = new ArrayList<>(quantity);
+        for (ToolEntity savedTool : savedTools) {
+            movements.add(kardexService.buildMovement("ingreso", savedTool));
         }
+        kardexService.registerMovements(movements);
 
         return savedTools;
     }
@@ -304,6 +303,8 @@ public class ToolService {
     //METODOS AUXILIARES QUE SERAN USADOS EN PRESTAMOS (OTRO SERVICIO)
 
     // Al tener una herramienta prestada se le resta el stock y se cambia de estado a "prestada"
+    @Transactional
+    @RetryOnOptimisticLock
     public ToolEntity borrowedTool(Long toolId){
         /*BORRAR DESPUES-RECORDATORIO
         Aca no se va a ver el tema de si hay stock disponible / estado, etc, eso se ve en el objeto prestamo
@@ -314,25 +315,46 @@ public class ToolService {
         ToolEntity tool = toolRepository.findById(toolId)
                 .orElseThrow(() -> new IllegalArgumentException("Herramienta con ID " + toolId + " no encontrada"));
 
-        // Cambio del estado disponible a prestada
-        tool.setStatus("prestada");
+        return borrow(tool);
+
+    }
+
+    /*
+    Prestamo por herramienta del inventario (nombre y categoria) en vez de una unidad especifica.
+    Se bloquea cualquier unidad disponible con FOR UPDATE SKIP LOCKED, asi dos prestamos simultaneos del mismo
+    modelo toman unidades distintas en vez de chocar en la misma. El bloqueo dura hasta el fin de la transaccion
+    del prestamo, por eso se debe llamar dentro de ella.
+     */
+    @Transactional
+    public ToolEntity borrowAvailableTool(String toolName, String categoryName){
+        ToolEntity tool = toolRepository.lockAvailableTool(toolName, categoryName, PageRequest.of(0, 1))
+                .stream()
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No hay unidades disponibles de la herramienta " + toolName));
+
+        return borrow(tool);
+    }
 
+    private ToolEntity borrow(ToolEntity tool){
         String categoryName = tool.getCategory().getName();
 
-        //Resto stock
-        ToolsInventoryEntity toolsInventory = toolsInventoryRepository.findByNameAndCategory(tool.getName(), categoryName);
-        toolsInventory.setCurrentStock(toolsInventory.getCurrentStock() - 1);
+        //Resto stock, la reserva es atomica y falla si otro prestamo tomo la ultima unidad
+        if (toolsInventoryRepository.reserveStock(tool.getName(), categoryName) == 0) {
+            throw new IllegalArgumentException("El stock de la herramienta es insuficiente");
+        }
+
+        // Cambio del estado disponible a prestada
+        tool.setStatus("prestada");
 
-        //Se guardan los cambios hechos al inventario d ela herramienta
-        toolsInventoryRepository.save(toolsInventory);
         //Se guardan los cambios hechos a la herramienta
         toolRepository.save(tool);
         return tool;
-
     }
 
     // Herramienta vuelve al estado disponible, ya sea por devolucion sin daños, o porque ya esta reparada
     // se cambia estado a disponible y se le suma el stock
+    @Transactional
+    @RetryOnOptimisticLock
     public ToolEntity availableTool(Long toolId){
         ToolEntity tool = toolRepository.findById(toolId)
                 .orElseThrow(() -> new IllegalArgumentException("Herramienta con ID " + toolId + " no encontrada"));
@@ -342,17 +364,16 @@ public class ToolService {
         String categoryName = tool.getCategory().getName();
 
         //Se aumenta el stock en 1
+        toolsInventoryRepository.releaseStock(tool.getName(), categoryName, 1);
 
-        ToolsInventoryEntity toolsInventory = toolsInventoryRepository.findByNameAndCategory(tool.getName(), categoryName);
-        toolsInventory.setCurrentStock(toolsInventory.getCurrentStock() + 1);
-
-        toolsInventoryRepository.save(toolsInventory);
         toolRepository.save(tool);
         return tool;
     }
 
     //Si una herramienta es dada de baja se le resta al stock y al total de herramientas
     //Se cambia estado a dada de baja
+    @Transactional
+    @RetryOnOptimisticLock
     public ToolEntity decommissionedTool(Long toolId){
         ToolEntity tool = toolRepository.findById(toolId)
                 .orElseThrow(() -> new IllegalArgumentException("Herramienta con ID " + toolId + " no encontrada"));
@@ -367,14 +388,15 @@ public class ToolService {
         toolRepository.save(tool);
 
         //Se hace un movimiento en el kardex DE TIPO BAJA
-        KardexEntity kardex = kardexService.registerMovement("baja", tool);
-        kardexRepository.save(kardex);
+        kardexService.registerMovement("baja", tool);
 
         return tool;
 
     }
 
     //Si la herramienta es devuelta con daños, solo se cambia el estado
+    @Transactional
+    @RetryOnOptimisticLock
     public ToolEntity damagedTool(Long toolId){
         ToolEntity tool = toolRepository.findById(toolId)
                 .orElseThrow(() -> new IllegalArgumentException("Herramienta con ID " + toolId + " no encontrada"));
@@ -383,12 +405,13 @@ public class ToolService {
         toolRepository.save(tool);
 
         //Se hace un movimiento en el kardex DE TIPO REPARACION
-        KardexEntity kardex = kardexService.registerMovement("reparación", tool);
-        kardexRepository.save(kardex);
+        kardexService.registerMovement("reparación", tool);
 
         return tool;
     }
 
+    @Transactional
+    @RetryOnOptimisticLock
     public ToolEntity repairedTool(Long toolId){
         ToolEntity tool = toolRepository.findById(toolId)
                 .orElseThrow(() -> new IllegalArgumentException("Herramienta con ID " + toolId + " no encontrada"));
@@ -396,6 +419,9 @@ public class ToolService {
         if (tool.getStatus().equals("en reparacion")) {
             ToolEntity newTool = availableTool(toolId);
             toolRepository.save(newTool);
+
+            //Se hace un movimiento en el kardex DE TIPO REINGRESO (la herramienta vuelve al stock)
+            kardexService.registerMovement("reingreso", newTool);
             return newTool;
         }
 
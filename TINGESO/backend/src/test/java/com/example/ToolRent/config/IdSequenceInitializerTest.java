@@ -0,0 +1,81 @@
+package com.example.ToolRent.config;
+
+import com.example.ToolRent.entities.CategoryEntity;
+import com.example.ToolRent.entities.ToolEntity;
+import com.example.ToolRent.repositories.CategoryRepository;
+import com.example.ToolRent.repositories.ToolRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//Sin transaccion de prueba: ALTER SEQUENCE confirma la transaccion en curso
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(IdSequenceInitializer.class)
+class IdSequenceInitializerTest {
+
+    @Autowired
+    private IdSequenceInitializer idSequenceInitializer;
+
+    @Autowired
+    private ToolRepository toolRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() {
+        toolRepository.deleteAll();
+        categoryRepository.deleteAll();
+    }
+
+    @Test
+    void whenTableHasIdsAheadOfSequence_thenSequenceIsMovedPastMaxId() {
+        // Given: una fila creada cuando la tabla usaba IDENTITY
+        CategoryEntity category = categoryRepository.save(new CategoryEntity(null, "Herramientas Eléctricas"));
+        jdbcTemplate.update("INSERT INTO tools (id, name, category_id, status, version) VALUES (5000, 'taladro', ?, 'disponible', 0)",
+                category.getId());
+
+        // When
+        idSequenceInitializer.alignSequences();
+        List<ToolEntity> newTools = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            newTools.add(new ToolEntity(null, "taladro", category, "disponible", 0L));
+        }
+        List<ToolEntity> saved = toolRepository.saveAll(newTools);
+
+        // Then: el bloque de ids que Hibernate ya tenia reservado se termina de usar, los siguientes parten despues de 5000
+        assertThat(saved).extracting(ToolEntity::getId).doesNotContain(5000L).doesNotHaveDuplicates();
+        assertThat(saved.get(saved.size() - 1).getId()).isGreaterThan(5000L);
+        assertThat(toolRepository.count()).isEqualTo(61);
+    }
+
+    @Test
+    void whenSequenceIsAhead_thenSequenceIsNotMovedBack() {
+        // Given
+        CategoryEntity category = categoryRepository.save(new CategoryEntity(null, "Herramientas Manuales"));
+        Long firstId = toolRepository.save(new ToolEntity(null, "martillo", category, "disponible", 0L)).getId();
+
+        // When
+        idSequenceInitializer.alignSequences();
+        Long nextId = toolRepository.save(new ToolEntity(null, "martillo", category, "disponible", 0L)).getId();
+
+        // Then
+        assertThat(nextId).isGreaterThan(firstId);
+    }
+}
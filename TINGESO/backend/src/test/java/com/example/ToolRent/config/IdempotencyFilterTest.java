@@ -0,0 +1,217 @@
+package com.example.ToolRent.config;
+
+import com.example.ToolRent.entities.IdempotencyKeyEntity;
+import com.example.ToolRent.services.IdempotencyService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyFilterTest {
+
+    @Mock
+    private IdempotencyService idempotencyService;
+
+    private IdempotencyFilter filter;
+    private AtomicInteger executions;
+
+    @BeforeEach
+    void setUp() {
+        filter = new IdempotencyFilter();
+        filter.idempotencyService = idempotencyService;
+        executions = new AtomicInteger();
+        authenticate("ana");
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private void authenticate(String username) {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(username, null, List.of()));
+    }
+
+    private static String hash(String body) {
+        return IdempotencyFilter.sha256(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private FilterChain chain(int status, String body) {
+        return (request, response) -> {
+            executions.incrementAndGet();
+            ((HttpServletResponse) response).setStatus(status);
+            response.setContentType("application/json");
+            response.getWriter().write(body);
+        };
+    }
+
+    private MockHttpServletRequest request(String method, String path, String key) {
+        return request(method, path, key, "");
+    }
+
+    private MockHttpServletRequest request(String method, String path, String key, String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        if (key != null) {
+            request.addHeader(IdempotencyFilter.HEADER, key);
+        }
+        return request;
+    }
+
+    @Test
+    void whenFirstRequestSucceeds_thenResponseIsStored() throws Exception {
+        // Given
+        String body = "{\"tool\":{\"id\":3}}";
+        when(idempotencyService.begin("ana", "k1", "POST", "/api/v1/loans/", hash(body))).thenReturn(Optional.empty());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain readsBody = (request, chainResponse) -> {
+            //El controlador recibe el cuerpo aunque el filtro ya lo leyo para el hash
+            assertThat(new String(request.getInputStream().readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(body);
+            chain(200, "{\"id\":1}").doFilter(request, chainResponse);
+        };
+
+        // When
+        filter.doFilter(request("POST", "/api/v1/loans/", "k1", body), response, readsBody);
+
+        // Then
+        assertThat(executions.get()).isEqualTo(1);
+        assertThat(response.getContentAsString()).isEqualTo("{\"id\":1}");
+        verify(idempotencyService).complete(eq("ana"), eq("k1"), eq("POST"), eq("/api/v1/loans/"), eq(hash(body)),
+                eq(200), any(), eq("{\"id\":1}"));
+        verify(idempotencyService, never()).release(any(), any());
+    }
+
+    @Test
+    void whenKeyIsCompleted_thenReplayWithoutExecuting() throws Exception {
+        // Given
+        LocalDateTime now = LocalDateTime.now();
+        IdempotencyKeyEntity stored = new IdempotencyKeyEntity("ana", "k1", "POST", "/api/v1/loans/", hash("{}"),
+                "completado", 200, "application/json", "{\"id\":1}", now, now.plusHours(1));
+        when(idempotencyService.begin("ana", "k1", "POST", "/api/v1/loans/", hash("{}"))).thenReturn(Optional.of(stored));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(request("POST", "/api/v1/loans/", "k1", "{}"), response, chain(200, "{\"id\":2}"));
+
+        // Then
+        assertThat(executions.get()).isZero();
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString()).isEqualTo("{\"id\":1}");
+        assertThat(response.getHeader(IdempotencyFilter.REPLAYED_HEADER)).isEqualTo("true");
+    }
+
+    @Test
+    void whenKeyIsInProgress_thenReturnConflict() throws Exception {
+        // Given
+        LocalDateTime now = LocalDateTime.now();
+        IdempotencyKeyEntity running = new IdempotencyKeyEntity("ana", "k1", "PUT", "/api/v1/fines/", hash(""),
+                "en curso", null, null, null, now, now.plusMinutes(5));
+        when(idempotencyService.begin("ana", "k1", "PUT", "/api/v1/fines/", hash(""))).thenReturn(Optional.of(running));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(request("PUT", "/api/v1/fines/", "k1"), response, chain(200, "{}"));
+
+        // Then
+        assertThat(executions.get()).isZero();
+        assertThat(response.getStatus()).isEqualTo(409);
+    }
+
+    @Test
+    void whenKeyIsReusedWithAnotherBody_thenReturnUnprocessableEntity() throws Exception {
+        // Given
+        LocalDateTime now = LocalDateTime.now();
+        IdempotencyKeyEntity stored = new IdempotencyKeyEntity("ana", "k1", "POST", "/api/v1/loans/", hash("{\"tool\":{\"id\":3}}"),
+                "completado", 200, "application/json", "{\"id\":1}", now, now.plusHours(1));
+        when(idempotencyService.begin("ana", "k1", "POST", "/api/v1/loans/", hash("{\"tool\":{\"id\":4}}")))
+                .thenReturn(Optional.of(stored));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(request("POST", "/api/v1/loans/", "k1", "{\"tool\":{\"id\":4}}"), response, chain(200, "{\"id\":2}"));
+
+        // Then
+        assertThat(executions.get()).isZero();
+        assertThat(response.getStatus()).isEqualTo(422);
+        assertThat(response.getHeader(IdempotencyFilter.REPLAYED_HEADER)).isNull();
+    }
+
+    @Test
+    void whenAnotherUserSendsSameKey_thenKeyIsScopedToThatUser() throws Exception {
+        // Given
+        when(idempotencyService.begin(eq("luis"), eq("k1"), eq("POST"), eq("/api/v1/loans/"), any())).thenReturn(Optional.empty());
+        authenticate("luis");
+
+        // When
+        filter.doFilter(request("POST", "/api/v1/loans/", "k1"), new MockHttpServletResponse(), chain(200, "{}"));
+
+        // Then
+        assertThat(executions.get()).isEqualTo(1);
+        verify(idempotencyService, never()).begin(eq("ana"), any(), any(), any(), any());
+    }
+
+    @Test
+    void whenRequestIsNotAuthenticated_thenKeyIsNotRegistered() throws Exception {
+        // Given
+        SecurityContextHolder.clearContext();
+
+        // When
+        filter.doFilter(request("POST", "/api/v1/loans/", "k1"), new MockHttpServletResponse(), chain(200, "{}"));
+
+        // Then
+        assertThat(executions.get()).isEqualTo(1);
+        verifyNoInteractions(idempotencyService);
+    }
+
+    @Test
+    void whenOperationFails_thenKeyIsReleased() throws Exception {
+        // Given
+        when(idempotencyService.begin("ana", "k1", "PUT", "/api/v1/loans/5/buen estado", hash(""))).thenReturn(Optional.empty());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(request("PUT", "/api/v1/loans/5/buen estado", "k1"), response, chain(400, "Préstamo no encontrado"));
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(400);
+        verify(idempotencyService).release("ana", "k1");
+        verify(idempotencyService, never()).complete(any(), any(), any(), any(), any(), anyInt(), any(), any());
+    }
+
+    @Test
+    void whenRequestHasNoKeyOrIsNotProtected_thenFilterIsSkipped() throws Exception {
+        // When
+        filter.doFilter(request("POST", "/api/v1/loans/", null), new MockHttpServletResponse(), new MockFilterChain());
+        filter.doFilter(request("GET", "/api/v1/loans/", "k1"), new MockHttpServletResponse(), new MockFilterChain());
+        filter.doFilter(request("POST", "/api/v1/tools/", "k1"), new MockHttpServletResponse(), new MockFilterChain());
+
+        // Then
+        verifyNoInteractions(idempotencyService);
+    }
+}
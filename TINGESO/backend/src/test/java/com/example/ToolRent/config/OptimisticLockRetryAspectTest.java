@@ -0,0 +1,107 @@
+package com.example.ToolRent.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class OptimisticLockRetryAspectTest {
+
+    @Mock
+    private ProceedingJoinPoint joinPoint;
+
+    @Mock
+    private Signature signature;
+
+    private SimpleMeterRegistry meterRegistry;
+    private OptimisticLockRetryAspect aspect;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        aspect = new OptimisticLockRetryAspect();
+        aspect.meterRegistry = meterRegistry;
+        aspect.maxRetries = 2;
+        aspect.backoffMs = 1;
+        aspect.maxBackoffMs = 4;
+        lenient().when(joinPoint.getSignature()).thenReturn(signature);
+        lenient().when(signature.toShortString()).thenReturn("LoanService.makeLoan(..)");
+    }
+
+    private double count(String name) {
+        return meterRegistry.counter(name, "method", "LoanService.makeLoan(..)").count();
+    }
+
+    private ObjectOptimisticLockingFailureException conflict() {
+        return new ObjectOptimisticLockingFailureException(Object.class, 1L);
+    }
+
+    @Test
+    void whenConflictThenSuccess_thenRetryAndReturnResult() throws Throwable {
+        // Given
+        when(joinPoint.proceed()).thenThrow(conflict()).thenReturn("ok");
+
+        // When
+        Object result = aspect.retry(joinPoint);
+
+        // Then
+        assertThat(result).isEqualTo("ok");
+        verify(joinPoint, times(2)).proceed();
+        assertThat(count("toolrent.optimistic.lock.conflicts")).isEqualTo(1);
+        assertThat(count("toolrent.optimistic.lock.retries")).isEqualTo(1);
+        assertThat(count("toolrent.optimistic.lock.exhausted")).isZero();
+    }
+
+    @Test
+    void whenConflictPersists_thenThrowAfterMaxRetries() throws Throwable {
+        // Given
+        when(joinPoint.proceed()).thenThrow(conflict());
+
+        // When & Then
+        assertThatThrownBy(() -> aspect.retry(joinPoint))
+                .isInstanceOf(ObjectOptimisticLockingFailureException.class);
+        verify(joinPoint, times(3)).proceed();
+        assertThat(count("toolrent.optimistic.lock.conflicts")).isEqualTo(3);
+        assertThat(count("toolrent.optimistic.lock.retries")).isEqualTo(2);
+        assertThat(count("toolrent.optimistic.lock.exhausted")).isEqualTo(1);
+    }
+
+    @Test
+    void whenOtherException_thenDoNotRetry() throws Throwable {
+        // Given
+        when(joinPoint.proceed()).thenThrow(new IllegalArgumentException("El stock de la herramienta es insuficiente"));
+
+        // When & Then
+        assertThatThrownBy(() -> aspect.retry(joinPoint))
+                .isInstanceOf(IllegalArgumentException.class);
+        verify(joinPoint, times(1)).proceed();
+        assertThat(count("toolrent.optimistic.lock.conflicts")).isZero();
+    }
+
+    @Test
+    void whenBackoff_thenStayBetweenHalfAndCap() {
+        // Given
+        aspect.backoffMs = 100;
+        aspect.maxBackoffMs = 300;
+
+        // When & Then
+        for (int i = 0; i < 50; i++) {
+            assertThat(aspect.backoff(1)).isBetween(50L, 100L);
+            assertThat(aspect.backoff(2)).isBetween(100L, 200L);
+            assertThat(aspect.backoff(5)).isBetween(150L, 300L);
+        }
+    }
+}
@@ -43,7 +43,7 @@ public class CustomerControllerTest {
                 "12345678-5",
                 "alex@example.cl",
                 "987654321",
-                "activo");
+                "activo", 0, 0, 0, 0);
 
         CustomerEntity customer2 = new CustomerEntity(
                 2L,
@@ -51,7 +51,7 @@ public class CustomerControllerTest {
                 "19124070-7",
                 "Jose@example.cl",
                 "987634321",
-                "activo");
+                "activo", 0, 0, 0, 0);
 
         ArrayList<CustomerEntity> customerList = new ArrayList<>(Arrays.asList(customer1, customer2));
 
@@ -75,7 +75,7 @@ public class CustomerControllerTest {
                 "12345678-5",
                 "alex@example.cl",
                 "987654321",
-                "activo");
+                "activo", 0, 0, 0, 0);
 
         given(customerService.getCustomerByRut("12345678-5")).willReturn(customer);
 
@@ -105,7 +105,7 @@ public class CustomerControllerTest {
                 "12345678-5",
                 "alex@example.cl",
                 "987654321",
-                "activo");
+                "activo", 0, 0, 0, 0);
 
         given(customerService.getCustomerById(1L)).willReturn(customer);
 
@@ -135,7 +135,7 @@ public class CustomerControllerTest {
                 "12345678-5",
                 "alex@example.cl",
                 "987654321",
-                "activo");
+                "activo", 0, 0, 0, 0);
 
         CustomerEntity customer2 = new CustomerEntity(
                 2L,
@@ -143,7 +143,7 @@ public class CustomerControllerTest {
                 "98765432-1",
                 "maria@example.cl",
                 "912345678",
-                "activo");
+                "activo", 0, 0, 0, 0);
 
         ArrayList<CustomerEntity> activeCustomers = new ArrayList<>(Arrays.asList(customer1, customer2));
 
@@ -167,7 +167,7 @@ public class CustomerControllerTest {
                 "15678901-2",
                 "pedro@example.cl",
                 "956789012",
-                "activo");
+                "activo", 0, 0, 0, 0);
 
         given(customerService.saveCustomer(Mockito.any(CustomerEntity.class))).willReturn(savedCustomer);
 
@@ -221,7 +221,7 @@ public class CustomerControllerTest {
                 "12345678-5",
                 "alex.updated@example.cl",
                 "999888777",
-                "activo");
+                "activo", 0, 0, 0, 0);
 
         given(customerService.updateCustomer(Mockito.any(CustomerEntity.class))).willReturn(updatedCustomer);
 
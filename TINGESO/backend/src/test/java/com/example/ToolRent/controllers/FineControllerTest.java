@@ -1,5 +1,7 @@
 package com.example.ToolRent.controllers;
 
+import com.example.ToolRent.dto.FineSummaryDTO;
+import com.example.ToolRent.dto.KeysetSliceDTO;
 import com.example.ToolRent.entities.CategoryEntity;
 import com.example.ToolRent.entities.CustomerEntity;
 import com.example.ToolRent.entities.FineEntity;
@@ -100,8 +102,8 @@ public class FineControllerTest {
                 LocalDate.of(2024, 10, 12),
                 "finalizado con multa", 42000);
 
-        FineEntity fine1 = new FineEntity(1L, customer1, loan1, "atraso", 5000, "pagada");
-        FineEntity fine2 = new FineEntity(2L, customer2, loan2, "daño leve", 10000, "no pagada");
+        FineEntity fine1 = new FineEntity(1L, customer1, loan1, "atraso", 5000, "pagada", null, null, null, null);
+        FineEntity fine2 = new FineEntity(2L, customer2, loan2, "daño leve", 10000, "no pagada", null, null, null, null);
 
         ArrayList<FineEntity> fineList = new ArrayList<>(Arrays.asList(fine1, fine2));
 
@@ -136,8 +138,8 @@ public class FineControllerTest {
                 LocalDate.of(2024, 10, 12),
                 "finalizado con multa", 42000);
 
-        FineEntity fine1 = new FineEntity(1L, customer1, loan1, "atraso", 5000, "no pagada");
-        FineEntity fine2 = new FineEntity(2L, customer2, loan2, "daño leve", 10000, "no pagada");
+        FineEntity fine1 = new FineEntity(1L, customer1, loan1, "atraso", 5000, "no pagada", null, null, null, null);
+        FineEntity fine2 = new FineEntity(2L, customer2, loan2, "daño leve", 10000, "no pagada", null, null, null, null);
 
         ArrayList<FineEntity> unpaidFines = new ArrayList<>(Arrays.asList(fine1, fine2));
 
@@ -181,8 +183,8 @@ public class FineControllerTest {
                 LocalDate.of(2024, 10, 12),
                 "finalizado con multa", 42000);
 
-        FineEntity fine1 = new FineEntity(1L, customer1, loan1, "atraso", 5000, "no pagada");
-        FineEntity fine2 = new FineEntity(2L, customer2, loan2, "atraso", 7000, "pagada");
+        FineEntity fine1 = new FineEntity(1L, customer1, loan1, "atraso", 5000, "no pagada", null, null, null, null);
+        FineEntity fine2 = new FineEntity(2L, customer2, loan2, "atraso", 7000, "pagada", null, null, null, null);
 
         ArrayList<FineEntity> delayFines = new ArrayList<>(Arrays.asList(fine1, fine2));
 
@@ -225,8 +227,8 @@ public class FineControllerTest {
                 LocalDate.of(2024, 10, 12),
                 "finalizado con multa", 42000);
 
-        FineEntity fine1 = new FineEntity(1L, customer, loan1, "atraso", 5000, "no pagada");
-        FineEntity fine2 = new FineEntity(2L, customer, loan2, "daño leve", 10000, "pagada");
+        FineEntity fine1 = new FineEntity(1L, customer, loan1, "atraso", 5000, "no pagada", null, null, null, null);
+        FineEntity fine2 = new FineEntity(2L, customer, loan2, "daño leve", 10000, "pagada", null, null, null, null);
 
         ArrayList<FineEntity> customerFines = new ArrayList<>(Arrays.asList(fine1, fine2));
 
@@ -261,7 +263,7 @@ public class FineControllerTest {
                 LocalDate.of(2024, 10, 8),
                 "finalizado con multa", 35000);
 
-        FineEntity fine = new FineEntity(1L, customer, loan, "atraso", 5000, "no pagada");
+        FineEntity fine = new FineEntity(1L, customer, loan, "atraso", 5000, "no pagada", null, null, null, null);
 
         ArrayList<FineEntity> unpaidCustomerFines = new ArrayList<>(Arrays.asList(fine));
 
@@ -297,7 +299,7 @@ public class FineControllerTest {
                 LocalDate.of(2024, 10, 8),
                 "finalizado con multa", 35000);
 
-        FineEntity fine = new FineEntity(1L, customer, loan, "atraso", 5000, "no pagada");
+        FineEntity fine = new FineEntity(1L, customer, loan, "atraso", 5000, "no pagada", null, null, null, null);
 
         ArrayList<FineEntity> delayFines = new ArrayList<>(Arrays.asList(fine));
 
@@ -333,7 +335,7 @@ public class FineControllerTest {
                 LocalDate.of(2024, 10, 8),
                 "finalizado con multa", 35000);
 
-        FineEntity fine = new FineEntity(1L, customer, loan, "atraso", 5000, "no pagada");
+        FineEntity fine = new FineEntity(1L, customer, loan, "atraso", 5000, "no pagada", null, null, null, null);
 
         ArrayList<FineEntity> specificFines = new ArrayList<>(Arrays.asList(fine));
 
@@ -372,7 +374,7 @@ public class FineControllerTest {
                 LocalDate.of(2024, 10, 8),
                 "finalizado con multa", 35000);
 
-        FineEntity createdFine = new FineEntity(1L, customer, loan, "daño irreparable", 50000, "no pagada");
+        FineEntity createdFine = new FineEntity(1L, customer, loan, "daño irreparable", 50000, "no pagada", null, null, null, null);
 
         given(fineService.generateFineForIrreparableDamage(Mockito.any(CustomerEntity.class), Mockito.eq(1L)))
                 .willReturn(createdFine);
@@ -434,7 +436,7 @@ public class FineControllerTest {
                 LocalDate.of(2024, 10, 8),
                 "finalizado con multa", 35000);
 
-        FineEntity createdFine = new FineEntity(1L, customer, loan, "daño leve", 15000, "no pagada");
+        FineEntity createdFine = new FineEntity(1L, customer, loan, "daño leve", 15000, "no pagada", null, null, null, null);
 
         given(fineService.generateFineForMinorDamage(Mockito.any(CustomerEntity.class), Mockito.eq(1L), Mockito.eq(15000)))
                 .willReturn(createdFine);
@@ -496,9 +498,9 @@ public class FineControllerTest {
                 LocalDate.of(2024, 10, 8),
                 "finalizado", 35000);
 
-        FineEntity paidFine = new FineEntity(1L, customer, loan, "atraso", 5000, "pagada");
+        FineEntity paidFine = new FineEntity(1L, customer, loan, "atraso", 5000, "pagada", null, null, null, null);
 
-        given(fineService.payFine(Mockito.any(FineEntity.class))).willReturn(paidFine);
+        given(fineService.payFine(Mockito.anyLong())).willReturn(paidFine);
 
         String fineJson = """
             {
@@ -527,7 +529,7 @@ public class FineControllerTest {
 
     @Test
     public void payFine_ShouldReturnBadRequest_WhenException() throws Exception {
-        given(fineService.payFine(Mockito.any(FineEntity.class)))
+        given(fineService.payFine(Mockito.anyLong()))
                 .willThrow(new RuntimeException("Multa no encontrada"));
 
         String fineJson = """
@@ -553,6 +555,62 @@ public class FineControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    // ==================== searchFines ====================
+
+    @Test
+    public void searchFines_ShouldReturnSlice() throws Exception {
+        FineSummaryDTO fine = new FineSummaryDTO(7L, "12345678-5", "Alex Garcia", 1L,
+                LocalDate.of(2024, 10, 1), LocalDate.of(2024, 10, 8), "atraso", 5000, "no pagada");
+
+        given(fineService.searchFines("12345678-5", "no pagada", null, 1000, null,
+                LocalDate.of(2024, 1, 1), null, null, 20))
+                .willReturn(new KeysetSliceDTO<>(List.of(fine), 7L, true));
+
+        mockMvc.perform(get("/api/v1/fines/search")
+                        .param("rut", "12345678-5")
+                        .param("status", "no pagada")
+                        .param("minValue", "1000")
+                        .param("loanDateFrom", "2024-01-01"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.items[0].customerRut", is("12345678-5")))
+                .andExpect(jsonPath("$.nextCursor", is(7)))
+                .andExpect(jsonPath("$.hasNext", is(true)));
+    }
+
+    // ==================== payAllFines ====================
+
+    @Test
+    public void payAllFines_ShouldReturnPaidFines() throws Exception {
+        CustomerEntity customer = createCustomer(1L, "Alex Garcia", "12345678-5");
+        CategoryEntity category = createCategory(1L, "Electricas");
+        ToolEntity tool = createTool(1L, "Taladro", category, "disponible");
+        LoanEntity loan = createLoan(1L, customer, tool,
+                LocalDate.of(2024, 10, 1),
+                LocalDate.of(2024, 10, 8),
+                "finalizado con multa", 35000);
+
+        FineEntity lateFine = new FineEntity(1L, customer, loan, "atraso", 5000, "pagada", null, null, null, null);
+        FineEntity damageFine = new FineEntity(2L, customer, loan, "daño leve", 3000, "pagada", null, null, null, null);
+
+        given(fineService.payAllFines("12345678-5")).willReturn(List.of(lateFine, damageFine));
+
+        mockMvc.perform(post("/api/v1/fines/customer/{rut}/pay-all", "12345678-5"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[1].status", is("pagada")));
+    }
+
+    @Test
+    public void payAllFines_ShouldReturnBadRequest_WhenException() throws Exception {
+        given(fineService.payAllFines("12345678-5"))
+                .willThrow(new IllegalArgumentException("El cliente no tiene multas no pagadas"));
+
+        mockMvc.perform(post("/api/v1/fines/customer/{rut}/pay-all", "12345678-5"))
+                .andExpect(status().isBadRequest());
+    }
+
     // ========== TESTS PARA REPORTES (ÉPICA 6) ==========
 
     @Test
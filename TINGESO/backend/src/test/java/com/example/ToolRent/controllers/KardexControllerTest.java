@@ -1,9 +1,14 @@
 package com.example.ToolRent.controllers;
 
+import com.example.ToolRent.dto.KardexMovementDTO;
+import com.example.ToolRent.dto.KardexRollupDTO;
+import com.example.ToolRent.dto.KardexSliceDTO;
 import com.example.ToolRent.entities.CategoryEntity;
 import com.example.ToolRent.entities.KardexEntity;
 import com.example.ToolRent.entities.ToolEntity;
+import com.example.ToolRent.services.KardexRollupService;
 import com.example.ToolRent.services.KardexService;
+import com.example.ToolRent.services.KardexStreamService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -11,13 +16,19 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.OutputStream;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -35,6 +46,12 @@ public class KardexControllerTest {
     @MockitoBean
     private KardexService kardexService;
 
+    @MockitoBean
+    private KardexRollupService kardexRollupService;
+
+    @MockitoBean
+    private KardexStreamService kardexStreamService;
+
     // Helper methods para crear objetos de prueba
     private CategoryEntity createCategory(Long id, String name) {
         CategoryEntity category = new CategoryEntity();
@@ -55,39 +72,25 @@ public class KardexControllerTest {
     // ==================== listMoves ====================
 
     @Test
-    public void listMoves_ShouldReturnAllMovements() throws Exception {
-        CategoryEntity category = createCategory(1L, "Electricas");
-        ToolEntity tool1 = createTool(1L, "Taladro", category, "disponible");
-        ToolEntity tool2 = createTool(2L, "Sierra", category, "prestado");
-
-        KardexEntity movement1 = new KardexEntity(
-                1L,
-                "ingreso",
-                LocalDate.of(2024, 11, 1),
-                "admin",
-                tool1,
-                5);
-
-        KardexEntity movement2 = new KardexEntity(
-                2L,
-                "prestamo",
-                LocalDate.of(2024, 11, 3),
-                "empleado1",
-                tool2,
-                1);
-
-        ArrayList<KardexEntity> movements = new ArrayList<>(Arrays.asList(movement1, movement2));
+    public void listMoves_ShouldReturnFirstPageWithCursor() throws Exception {
+        KardexMovementDTO movement1 = new KardexMovementDTO(
+                2L, LocalDate.of(2024, 11, 3), "prestamo", "empleado1", 1, 2L, "Sierra", "Electricas");
+        KardexMovementDTO movement2 = new KardexMovementDTO(
+                1L, LocalDate.of(2024, 11, 1), "ingreso", "admin", 5, 1L, "Taladro", "Electricas");
 
-        given(kardexService.getAllMoves()).willReturn(movements);
+        given(kardexService.getMovementsPage(null, null, 2))
+                .willReturn(new KardexSliceDTO(List.of(movement1, movement2), LocalDate.of(2024, 11, 1), 1L, true));
 
-        mockMvc.perform(get("/api/v1/movements/"))
+        mockMvc.perform(get("/api/v1/movements/").param("size", "2"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(jsonPath("$", hasSize(2)))
-                .andExpect(jsonPath("$[0].type", is("ingreso")))
-                .andExpect(jsonPath("$[1].type", is("prestamo")))
-                .andExpect(jsonPath("$[0].affectedAmount", is(5)))
-                .andExpect(jsonPath("$[1].affectedAmount", is(1)));
+                .andExpect(jsonPath("$.items", hasSize(2)))
+                .andExpect(jsonPath("$.items[0].type", is("prestamo")))
+                .andExpect(jsonPath("$.items[1].affectedAmount", is(5)))
+                .andExpect(jsonPath("$.items[1].toolName", is("Taladro")))
+                .andExpect(jsonPath("$.nextCursorDate", is("2024-11-01")))
+                .andExpect(jsonPath("$.nextCursorId", is(1)))
+                .andExpect(jsonPath("$.hasNext", is(true)));
     }
 
     // ==================== getToolMovementHistory ====================
@@ -311,36 +314,29 @@ public class KardexControllerTest {
 
 
     @Test
-    public void listMoves_WithDifferentUsers_ShouldReturnAllMovements() throws Exception {
-        CategoryEntity category = createCategory(1L, "Electricas");
-        ToolEntity tool1 = createTool(1L, "Taladro", category, "disponible");
-        ToolEntity tool2 = createTool(2L, "Sierra", category, "prestado");
+    public void listMoves_WithCursor_ShouldReturnNextPage() throws Exception {
+        LocalDate cursorDate = LocalDate.of(2024, 11, 5);
+        KardexMovementDTO movement = new KardexMovementDTO(
+                3L, LocalDate.of(2024, 11, 5), "prestamo", "empleado2", 1, 2L, "Sierra", "Electricas");
 
-        KardexEntity adminMovement = new KardexEntity(
-                1L, "ingreso", LocalDate.of(2024, 11, 1), "admin", tool1, 10);
+        given(kardexService.getMovementsPage(cursorDate, 4L, 50))
+                .willReturn(new KardexSliceDTO(List.of(movement), null, null, false));
 
-        KardexEntity employee1Movement = new KardexEntity(
-                2L, "prestamo", LocalDate.of(2024, 11, 3), "empleado1", tool1, 1);
-
-        KardexEntity employee2Movement = new KardexEntity(
-                3L, "prestamo", LocalDate.of(2024, 11, 5), "empleado2", tool2, 1);
-
-        KardexEntity tecnicoMovement = new KardexEntity(
-                4L, "reparacion", LocalDate.of(2024, 11, 8), "tecnico", tool1, 1);
-
-        ArrayList<KardexEntity> movements = new ArrayList<>(
-                Arrays.asList(adminMovement, employee1Movement, employee2Movement, tecnicoMovement));
+        mockMvc.perform(get("/api/v1/movements/")
+                        .param("cursorDate", "2024-11-05").param("cursorId", "4"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.items[0].username", is("empleado2")))
+                .andExpect(jsonPath("$.hasNext", is(false)));
+    }
 
-        given(kardexService.getAllMoves()).willReturn(movements);
+    @Test
+    public void listMoves_ShouldReturnBadRequest_WhenCursorIsIncomplete() throws Exception {
+        given(kardexService.getMovementsPage(null, 4L, 50))
+                .willThrow(new IllegalArgumentException("El cursor debe incluir la fecha y el id del movimiento"));
 
-        mockMvc.perform(get("/api/v1/movements/"))
-                .andExpect(status().isOk())
-                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(jsonPath("$", hasSize(4)))
-                .andExpect(jsonPath("$[0].username", is("admin")))
-                .andExpect(jsonPath("$[1].username", is("empleado1")))
-                .andExpect(jsonPath("$[2].username", is("empleado2")))
-                .andExpect(jsonPath("$[3].username", is("tecnico")));
+        mockMvc.perform(get("/api/v1/movements/").param("cursorId", "4"))
+                .andExpect(status().isBadRequest());
     }
 
     @Test
@@ -368,4 +364,83 @@ public class KardexControllerTest {
                 .andExpect(jsonPath("$[0].date", is("2024-11-05")))
                 .andExpect(jsonPath("$[1].date", is("2024-11-05")));
     }
-}
\ No newline at end of file
+
+    // ==================== exportMovements ====================
+
+    @Test
+    public void exportMovements_ShouldStreamCsvFile() throws Exception {
+        LocalDate from = LocalDate.of(2024, 11, 1);
+        LocalDate to = LocalDate.of(2024, 11, 30);
+
+        given(kardexService.validateExport(from, to, "csv")).willReturn("csv");
+        willAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(3);
+            out.write("id,fecha\n1,2024-11-05\n".getBytes());
+            return 1L;
+        }).given(kardexService).exportMovements(eq(from), eq(to), eq("csv"), any());
+
+        var result = mockMvc.perform(get("/api/v1/movements/export")
+                        .param("from", "2024-11-01").param("to", "2024-11-30").param("format", "csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Disposition", containsString("movimientos_2024-11-01_2024-11-30.csv")))
+                .andExpect(content().string("id,fecha\n1,2024-11-05\n"));
+    }
+
+    @Test
+    public void exportMovements_ShouldReturnBadRequest_WhenFormatIsInvalid() throws Exception {
+        LocalDate from = LocalDate.of(2024, 11, 1);
+        LocalDate to = LocalDate.of(2024, 11, 30);
+
+        given(kardexService.validateExport(from, to, "xml"))
+                .willThrow(new IllegalArgumentException("El formato de exportación debe ser csv o ndjson"));
+
+        mockMvc.perform(get("/api/v1/movements/export")
+                        .param("from", "2024-11-01").param("to", "2024-11-30").param("format", "xml"))
+                .andExpect(status().isBadRequest());
+    }
+
+    // ==================== rollups ====================
+
+    @Test
+    public void getDailyRollups_ShouldReturnRollupsOfRange() throws Exception {
+        LocalDate from = LocalDate.of(2024, 11, 1);
+        LocalDate to = LocalDate.of(2024, 11, 30);
+
+        given(kardexRollupService.getDailyRollups(from, to, "prestamo", null)).willReturn(List.of(
+                new KardexRollupDTO(LocalDate.of(2024, 11, 5), 1L, "Taladro", "Electricas", "prestamo", 3L, 3L)));
+
+        mockMvc.perform(get("/api/v1/movements/rollups/daily")
+                        .param("from", "2024-11-01").param("to", "2024-11-30").param("type", "prestamo"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].date", is("2024-11-05")))
+                .andExpect(jsonPath("$[0].totalAmount", is(3)));
+    }
+
+    @Test
+    public void rebuildRollups_ShouldReturnRebuiltDays() throws Exception {
+        LocalDate from = LocalDate.of(2024, 11, 1);
+        LocalDate to = LocalDate.of(2024, 11, 30);
+
+        given(kardexRollupService.rebuildRollups(from, to)).willReturn(30);
+
+        mockMvc.perform(post("/api/v1/movements/rollups/rebuild")
+                        .param("from", "2024-11-01").param("to", "2024-11-30"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("30"));
+    }
+
+    @Test
+    public void streamMovements_ShouldSubscribeFromLastEventId() throws Exception {
+        given(kardexStreamService.subscribe(41L)).willReturn(new SseEmitter());
+
+        mockMvc.perform(get("/api/v1/movements/stream")
+                        .header("Last-Event-ID", "41")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted());
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.ToolRent.controllers;
 
+import com.example.ToolRent.dto.LoanReturnItemDTO;
 import com.example.ToolRent.entities.CategoryEntity;
 import com.example.ToolRent.entities.CustomerEntity;
 import com.example.ToolRent.entities.LoanEntity;
@@ -17,6 +18,7 @@ import org.springframework.test.web.servlet.MockMvc;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.hamcrest.Matchers.*;
 import static org.mockito.BDDMockito.given;
@@ -80,13 +82,13 @@ public class LoanControllerTest {
                 1L, customer1, tool1,
                 LocalDate.of(2024, 11, 1),
                 LocalDate.of(2024, 11, 8),
-                "activo", 35000);
+                "activo", 35000, 0L);
 
         LoanEntity loan2 = new LoanEntity(
                 2L, customer2, tool2,
                 LocalDate.of(2024, 11, 3),
                 LocalDate.of(2024, 11, 10),
-                "activo", 42000);
+                "activo", 42000, 0L);
 
         ArrayList<LoanEntity> loanList = new ArrayList<>(Arrays.asList(loan1, loan2));
 
@@ -112,7 +114,7 @@ public class LoanControllerTest {
                 1L, customer, tool,
                 LocalDate.of(2024, 11, 1),
                 LocalDate.of(2024, 11, 8),
-                "activo", 35000);
+                "activo", 35000, 0L);
 
         given(loanService.findLoanById(1L)).willReturn(loan);
 
@@ -148,13 +150,13 @@ public class LoanControllerTest {
                 1L, customer1, tool1,
                 LocalDate.of(2024, 11, 1),
                 LocalDate.of(2024, 11, 8),
-                "activo", 35000);
+                "activo", 35000, 0L);
 
         LoanEntity loan2 = new LoanEntity(
                 2L, customer2, tool2,
                 LocalDate.of(2024, 11, 3),
                 LocalDate.of(2024, 11, 10),
-                "activo", 42000);
+                "activo", 42000, 0L);
 
         ArrayList<LoanEntity> activeLoans = new ArrayList<>(Arrays.asList(loan1, loan2));
 
@@ -191,13 +193,13 @@ public class LoanControllerTest {
                 1L, customer, tool1,
                 LocalDate.of(2024, 11, 1),
                 LocalDate.of(2024, 11, 8),
-                "activo", 35000);
+                "activo", 35000, 0L);
 
         LoanEntity loan2 = new LoanEntity(
                 2L, customer, tool2,
                 LocalDate.of(2024, 10, 15),
                 LocalDate.of(2024, 10, 22),
-                "finalizado", 42000);
+                "finalizado", 42000, 0L);
 
         ArrayList<LoanEntity> customerLoans = new ArrayList<>(Arrays.asList(loan1, loan2));
 
@@ -230,7 +232,7 @@ public class LoanControllerTest {
                 1L, customer, tool,
                 LocalDate.of(2024, 11, 1),
                 LocalDate.of(2024, 11, 8),
-                "activo", 35000);
+                "activo", 35000, 0L);
 
         ArrayList<LoanEntity> activeLoans = new ArrayList<>(Arrays.asList(loan));
 
@@ -269,13 +271,13 @@ public class LoanControllerTest {
                 1L, customer1, tool1,
                 LocalDate.of(2024, 11, 1),
                 returnDate,
-                "activo", 35000);
+                "activo", 35000, 0L);
 
         LoanEntity loan2 = new LoanEntity(
                 2L, customer2, tool2,
                 LocalDate.of(2024, 11, 1),
                 returnDate,
-                "activo", 42000);
+                "activo", 42000, 0L);
 
         ArrayList<LoanEntity> loansForDate = new ArrayList<>(Arrays.asList(loan1, loan2));
 
@@ -308,9 +310,9 @@ public class LoanControllerTest {
                 1L, customer, tool,
                 LocalDate.of(2024, 11, 1),
                 LocalDate.of(2024, 11, 8),
-                "activo", 35000);
+                "activo", 35000, 0L);
 
-        given(loanService.makeLoan(Mockito.any(LoanEntity.class))).willReturn(createdLoan);
+        given(loanService.makeLoan(Mockito.anyLong(), Mockito.anyLong(), Mockito.any(LocalDate.class))).willReturn(createdLoan);
 
         String loanJson = """
             {
@@ -341,7 +343,7 @@ public class LoanControllerTest {
 
     @Test
     public void createLoan_ShouldReturnBadRequest_WhenException() throws Exception {
-        given(loanService.makeLoan(Mockito.any(LoanEntity.class)))
+        given(loanService.makeLoan(Mockito.anyLong(), Mockito.anyLong(), Mockito.any(LocalDate.class)))
                 .willThrow(new RuntimeException("Herramienta no disponible"));
 
         String loanJson = """
@@ -368,6 +370,150 @@ public class LoanControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    // ==================== createLoans (batch) ====================
+
+    @Test
+    public void createLoans_ShouldReturnCreatedLoans() throws Exception {
+        CustomerEntity customer = createCustomer(1L, "Alex Garcia", "12345678-5");
+        CategoryEntity category = createCategory(1L, "Electricas");
+        ToolEntity drill = createTool(1L, "Taladro", category, "prestada");
+        ToolEntity saw = createTool(2L, "Sierra", category, "prestada");
+
+        List<LoanEntity> createdLoans = List.of(
+                new LoanEntity(1L, customer, drill, LocalDate.of(2024, 11, 1), LocalDate.of(2024, 11, 8), "activo", 35000, 0L),
+                new LoanEntity(2L, customer, saw, LocalDate.of(2024, 11, 1), LocalDate.of(2024, 11, 8), "activo", 28000, 0L));
+
+        given(loanService.makeLoans(1L, List.of(1L, 2L), LocalDate.of(2024, 11, 8))).willReturn(createdLoans);
+
+        String requestJson = """
+            {
+                "customerId": 1,
+                "toolIds": [1, 2],
+                "returnDate": "2024-11-08"
+            }
+            """;
+
+        mockMvc.perform(post("/api/v1/loans/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(requestJson))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[1].loanValue", is(28000)));
+    }
+
+    @Test
+    public void createLoans_ShouldReturnBadRequest_WhenException() throws Exception {
+        given(loanService.makeLoans(Mockito.any(), Mockito.anyList(), Mockito.any()))
+                .willThrow(new IllegalArgumentException("El stock de la herramienta es insuficiente"));
+
+        String requestJson = """
+            {
+                "customerId": 1,
+                "toolIds": [1, 2],
+                "returnDate": "2024-11-08"
+            }
+            """;
+
+        mockMvc.perform(post("/api/v1/loans/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(requestJson))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("El stock de la herramienta es insuficiente"));
+    }
+
+    // ==================== createLoanByInventory ====================
+
+    @Test
+    public void createLoanByInventory_ShouldReturnLoanWithPickedTool() throws Exception {
+        CustomerEntity customer = createCustomer(1L, "Alex Garcia", "12345678-5");
+        CategoryEntity category = createCategory(1L, "Electricas");
+        ToolEntity drill = createTool(7L, "Taladro", category, "prestada");
+        LoanEntity loan = new LoanEntity(1L, customer, drill, LocalDate.of(2024, 11, 1), LocalDate.of(2024, 11, 8), "activo", 35000, 0L);
+
+        given(loanService.makeLoanByInventory(1L, "Taladro", "Electricas", LocalDate.of(2024, 11, 8))).willReturn(loan);
+
+        String requestJson = """
+            {
+                "customerId": 1,
+                "toolName": "Taladro",
+                "categoryName": "Electricas",
+                "returnDate": "2024-11-08"
+            }
+            """;
+
+        mockMvc.perform(post("/api/v1/loans/inventory")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(requestJson))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.tool.id", is(7)));
+    }
+
+    @Test
+    public void createLoanByInventory_ShouldReturnBadRequest_WhenNoUnitsAvailable() throws Exception {
+        given(loanService.makeLoanByInventory(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .willThrow(new IllegalArgumentException("No hay unidades disponibles de la herramienta Taladro"));
+
+        String requestJson = """
+            {
+                "customerId": 1,
+                "toolName": "Taladro",
+                "categoryName": "Electricas",
+                "returnDate": "2024-11-08"
+            }
+            """;
+
+        mockMvc.perform(post("/api/v1/loans/inventory")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(requestJson))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("No hay unidades disponibles de la herramienta Taladro"));
+    }
+
+    // ==================== returnLoans (batch) ====================
+
+    @Test
+    public void returnLoans_ShouldReturnReturnedLoans() throws Exception {
+        CustomerEntity customer = createCustomer(1L, "Alex Garcia", "12345678-5");
+        CategoryEntity category = createCategory(1L, "Electricas");
+        ToolEntity drill = createTool(1L, "Taladro", category, "disponible");
+
+        List<LoanEntity> returnedLoans = List.of(
+                new LoanEntity(1L, customer, drill, LocalDate.of(2024, 11, 1), LocalDate.of(2024, 11, 8), "finalizado", 35000, 1L));
+
+        given(loanService.loanReturns(List.of(new LoanReturnItemDTO(1L, "buen estado")))).willReturn(returnedLoans);
+
+        String requestJson = """
+            [
+                {"loanId": 1, "toolReturnStatus": "buen estado"}
+            ]
+            """;
+
+        mockMvc.perform(put("/api/v1/loans/returns")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(requestJson))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].status", is("finalizado")));
+    }
+
+    @Test
+    public void returnLoans_ShouldReturnBadRequest_WhenException() throws Exception {
+        given(loanService.loanReturns(Mockito.anyList()))
+                .willThrow(new IllegalArgumentException("Préstamo con ID 99 no encontrada"));
+
+        String requestJson = """
+            [
+                {"loanId": 99, "toolReturnStatus": "buen estado"}
+            ]
+            """;
+
+        mockMvc.perform(put("/api/v1/loans/returns")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(requestJson))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Préstamo con ID 99 no encontrada"));
+    }
+
     // ==================== returnLoan ====================
 
     @Test
@@ -380,7 +526,7 @@ public class LoanControllerTest {
                 1L, customer, tool,
                 LocalDate.of(2024, 11, 1),
                 LocalDate.of(2024, 11, 8),
-                "finalizado", 35000);
+                "finalizado", 35000, 0L);
 
         given(loanService.loanReturn(1L, "bueno")).willReturn(returnedLoan);
 
@@ -414,13 +560,13 @@ public class LoanControllerTest {
                 1L, customer1, tool1,
                 LocalDate.of(2024, 11, 1),
                 LocalDate.of(2024, 11, 8),
-                "activo", 35000);
+                "activo", 35000, 0L);
 
         LoanEntity loan2 = new LoanEntity(
                 2L, customer2, tool2,
                 LocalDate.of(2024, 11, 3),
                 LocalDate.of(2024, 11, 10),
-                "vencido", 42000);
+                "vencido", 42000, 0L);
 
         ArrayList<LoanEntity> activeLoans = new ArrayList<>(Arrays.asList(loan1, loan2));
 
@@ -442,7 +588,7 @@ public class LoanControllerTest {
                 1L, customer, tool,
                 LocalDate.of(2024, 11, 1),
                 LocalDate.of(2024, 11, 8),
-                "activo", 35000);
+                "activo", 35000, 0L);
 
         ArrayList<LoanEntity> filteredLoans = new ArrayList<>(Arrays.asList(loan));
 
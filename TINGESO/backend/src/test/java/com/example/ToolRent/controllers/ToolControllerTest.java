@@ -1,8 +1,10 @@
 package com.example.ToolRent.controllers;
 
+import com.example.ToolRent.dto.StockAtDateDTO;
 import com.example.ToolRent.entities.CategoryEntity;
 import com.example.ToolRent.entities.ToolEntity;
 import com.example.ToolRent.entities.ToolsInventoryEntity;
+import com.example.ToolRent.services.StockHistoryService;
 import com.example.ToolRent.services.ToolService;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -13,6 +15,7 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -36,6 +39,9 @@ public class ToolControllerTest {
     @MockitoBean
     private ToolService toolService;
 
+    @MockitoBean
+    private StockHistoryService stockHistoryService;
+
     // Helper method para crear CategoryEntity
     private CategoryEntity createCategory(Long id, String name) {
         CategoryEntity category = new CategoryEntity();
@@ -49,7 +55,7 @@ public class ToolControllerTest {
     @Test
     public void findByToolId_ShouldReturnTool() throws Exception {
         CategoryEntity category = createCategory(1L, "Electricas");
-        ToolEntity tool = new ToolEntity(1L, "Taladro", category, "disponible");
+        ToolEntity tool = new ToolEntity(1L, "Taladro", category, "disponible", 0L);
 
         given(toolService.findToolById(1L)).willReturn(tool);
 
@@ -65,8 +71,8 @@ public class ToolControllerTest {
     @Test
     public void findByName_ShouldReturnTools() throws Exception {
         CategoryEntity category = createCategory(1L, "Electricas");
-        ToolEntity tool1 = new ToolEntity(1L, "Taladro", category, "disponible");
-        ToolEntity tool2 = new ToolEntity(2L, "Taladro", category, "prestado");
+        ToolEntity tool1 = new ToolEntity(1L, "Taladro", category, "disponible", 0L);
+        ToolEntity tool2 = new ToolEntity(2L, "Taladro", category, "prestado", 0L);
 
         ArrayList<ToolEntity> tools = new ArrayList<>(Arrays.asList(tool1, tool2));
 
@@ -85,7 +91,7 @@ public class ToolControllerTest {
     @Test
     public void findToolByNameAndCategory_ShouldReturnTool() throws Exception {
         CategoryEntity category = createCategory(1L, "Electricas");
-        ToolEntity tool = new ToolEntity(1L, "Taladro", category, "disponible");
+        ToolEntity tool = new ToolEntity(1L, "Taladro", category, "disponible", 0L);
 
         given(toolService.findToolByNameAndCategory("Taladro", "Electricas")).willReturn(tool);
 
@@ -102,8 +108,8 @@ public class ToolControllerTest {
         CategoryEntity category1 = createCategory(1L, "Electricas");
         CategoryEntity category2 = createCategory(2L, "Manuales");
 
-        ToolEntity tool1 = new ToolEntity(1L, "Taladro", category1, "disponible");
-        ToolEntity tool2 = new ToolEntity(2L, "Martillo", category2, "disponible");
+        ToolEntity tool1 = new ToolEntity(1L, "Taladro", category1, "disponible", 0L);
+        ToolEntity tool2 = new ToolEntity(2L, "Martillo", category2, "disponible", 0L);
 
         ArrayList<ToolEntity> tools = new ArrayList<>(Arrays.asList(tool1, tool2));
 
@@ -122,8 +128,8 @@ public class ToolControllerTest {
     @Test
     public void getToolsByStatus_ShouldReturnTools() throws Exception {
         CategoryEntity category = createCategory(1L, "Electricas");
-        ToolEntity tool1 = new ToolEntity(1L, "Taladro", category, "disponible");
-        ToolEntity tool2 = new ToolEntity(2L, "Sierra", category, "disponible");
+        ToolEntity tool1 = new ToolEntity(1L, "Taladro", category, "disponible", 0L);
+        ToolEntity tool2 = new ToolEntity(2L, "Sierra", category, "disponible", 0L);
 
         ArrayList<ToolEntity> tools = new ArrayList<>(Arrays.asList(tool1, tool2));
 
@@ -151,8 +157,8 @@ public class ToolControllerTest {
     @Test
     public void getToolsByCategory_ShouldReturnTools() throws Exception {
         CategoryEntity category = createCategory(1L, "Electricas");
-        ToolEntity tool1 = new ToolEntity(1L, "Taladro", category, "disponible");
-        ToolEntity tool2 = new ToolEntity(2L, "Sierra", category, "disponible");
+        ToolEntity tool1 = new ToolEntity(1L, "Taladro", category, "disponible", 0L);
+        ToolEntity tool2 = new ToolEntity(2L, "Sierra", category, "disponible", 0L);
 
         ArrayList<ToolEntity> tools = new ArrayList<>(Arrays.asList(tool1, tool2));
 
@@ -169,9 +175,9 @@ public class ToolControllerTest {
     @Test
     public void getToolsInventory_ShouldReturnInventory() throws Exception {
         ToolsInventoryEntity inventory1 = new ToolsInventoryEntity(
-                1L, "Taladro", "Electricas", 10, 8, 50000, 5000);
+                1L, "Taladro", "Electricas", 10, 8, 50000, 5000, 0L);
         ToolsInventoryEntity inventory2 = new ToolsInventoryEntity(
-                2L, "Martillo", "Manuales", 15, 12, 15000, 2000);
+                2L, "Martillo", "Manuales", 15, 12, 15000, 2000, 0L);
 
         ArrayList<ToolsInventoryEntity> inventoryList = new ArrayList<>(Arrays.asList(inventory1, inventory2));
 
@@ -190,9 +196,9 @@ public class ToolControllerTest {
     @Test
     public void findByCategory_ShouldReturnInventoryByCategory() throws Exception {
         ToolsInventoryEntity inventory1 = new ToolsInventoryEntity(
-                1L, "Taladro", "Electricas", 10, 8, 50000, 5000);
+                1L, "Taladro", "Electricas", 10, 8, 50000, 5000, 0L);
         ToolsInventoryEntity inventory2 = new ToolsInventoryEntity(
-                2L, "Sierra", "Electricas", 5, 4, 60000, 6000);
+                2L, "Sierra", "Electricas", 5, 4, 60000, 6000, 0L);
 
         ArrayList<ToolsInventoryEntity> inventoryList = new ArrayList<>(Arrays.asList(inventory1, inventory2));
 
@@ -211,7 +217,7 @@ public class ToolControllerTest {
     @Test
     public void findToolByName_ShouldReturnInventory() throws Exception {
         ToolsInventoryEntity inventory = new ToolsInventoryEntity(
-                1L, "Taladro", "Electricas", 10, 8, 50000, 5000);
+                1L, "Taladro", "Electricas", 10, 8, 50000, 5000, 0L);
 
         given(toolService.findToolByName("Taladro")).willReturn(inventory);
 
@@ -228,7 +234,7 @@ public class ToolControllerTest {
     @Test
     public void findById_ShouldReturnInventory() throws Exception {
         ToolsInventoryEntity inventory = new ToolsInventoryEntity(
-                1L, "Taladro", "Electricas", 10, 8, 50000, 5000);
+                1L, "Taladro", "Electricas", 10, 8, 50000, 5000, 0L);
 
         given(toolService.findById(1L)).willReturn(inventory);
 
@@ -248,12 +254,39 @@ public class ToolControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    // ==================== getStockAt ====================
+
+    @Test
+    public void getStockAt_ShouldReturnStockAtDate() throws Exception {
+        StockAtDateDTO stock = new StockAtDateDTO(1L, "Taladro", "Electricas",
+                LocalDate.of(2025, 3, 15), 10, 7, LocalDate.of(2025, 3, 1));
+
+        given(stockHistoryService.getStockAt(1L, LocalDate.of(2025, 3, 15))).willReturn(stock);
+
+        mockMvc.perform(get("/api/v1/tools/inventory/{id}/at/{date}", 1L, "2025-03-15"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.totalTools", is(10)))
+                .andExpect(jsonPath("$.currentStock", is(7)))
+                .andExpect(jsonPath("$.snapshotDate", is("2025-03-01")));
+    }
+
+    @Test
+    public void getStockAt_ShouldReturnBadRequest_WhenException() throws Exception {
+        given(stockHistoryService.getStockAt(1L, LocalDate.of(2099, 1, 1)))
+                .willThrow(new IllegalArgumentException("La fecha no puede ser posterior a hoy"));
+
+        mockMvc.perform(get("/api/v1/tools/inventory/{id}/at/{date}", 1L, "2099-01-01"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("La fecha no puede ser posterior a hoy"));
+    }
+
     // ==================== getToolInventory ====================
 
     @Test
     public void getToolInventory_ShouldReturnInventory() throws Exception {
         ToolsInventoryEntity inventory = new ToolsInventoryEntity(
-                1L, "Taladro", "Electricas", 10, 8, 50000, 5000);
+                1L, "Taladro", "Electricas", 10, 8, 50000, 5000, 0L);
 
         given(toolService.getToolInventory("Taladro", "Electricas")).willReturn(inventory);
 
@@ -278,7 +311,7 @@ public class ToolControllerTest {
     @Test
     public void updateReplacementValue_ShouldReturnUpdatedInventory() throws Exception {
         ToolsInventoryEntity updatedInventory = new ToolsInventoryEntity(
-                1L, "Taladro", "Electricas", 10, 8, 55000, 5000);
+                1L, "Taladro", "Electricas", 10, 8, 55000, 5000, 0L);
 
         given(toolService.updateReplacementValue(1L, 55000)).willReturn(updatedInventory);
 
@@ -302,7 +335,7 @@ public class ToolControllerTest {
     @Test
     public void updateDailyRentalRate_ShouldReturnUpdatedInventory() throws Exception {
         ToolsInventoryEntity updatedInventory = new ToolsInventoryEntity(
-                1L, "Taladro", "Electricas", 10, 8, 50000, 6000);
+                1L, "Taladro", "Electricas", 10, 8, 50000, 6000, 0L);
 
         given(toolService.updateDailyRentalRate(1L, 6000)).willReturn(updatedInventory);
 
@@ -326,8 +359,8 @@ public class ToolControllerTest {
     @Test
     public void saveTool_ShouldReturnSavedTools() throws Exception {
         CategoryEntity category = createCategory(1L, "Electricas");
-        ToolEntity tool1 = new ToolEntity(1L, "Taladro", category, "disponible");
-        ToolEntity tool2 = new ToolEntity(2L, "Taladro", category, "disponible");
+        ToolEntity tool1 = new ToolEntity(1L, "Taladro", category, "disponible", 0L);
+        ToolEntity tool2 = new ToolEntity(2L, "Taladro", category, "disponible", 0L);
 
         ArrayList<ToolEntity> savedTools = new ArrayList<>(Arrays.asList(tool1, tool2));
 
@@ -381,8 +414,8 @@ public class ToolControllerTest {
     @Test
     public void saveRegisteredTool_ShouldReturnSavedTools() throws Exception {
         CategoryEntity category = createCategory(1L, "Electricas");
-        ToolEntity tool1 = new ToolEntity(3L, "Taladro", category, "disponible");
-        ToolEntity tool2 = new ToolEntity(4L, "Taladro", category, "disponible");
+        ToolEntity tool1 = new ToolEntity(3L, "Taladro", category, "disponible", 0L);
+        ToolEntity tool2 = new ToolEntity(4L, "Taladro", category, "disponible", 0L);
 
         ArrayList<ToolEntity> savedTools = new ArrayList<>(Arrays.asList(tool1, tool2));
 
@@ -436,7 +469,7 @@ public class ToolControllerTest {
     @Test
     public void repairedTool_ShouldReturnRepairedTool() throws Exception {
         CategoryEntity category = createCategory(1L, "Electricas");
-        ToolEntity repairedTool = new ToolEntity(1L, "Taladro", category, "disponible");
+        ToolEntity repairedTool = new ToolEntity(1L, "Taladro", category, "disponible", 0L);
 
         given(toolService.repairedTool(1L)).willReturn(repairedTool);
 
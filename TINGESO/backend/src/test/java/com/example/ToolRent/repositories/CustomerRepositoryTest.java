@@ -1,12 +1,18 @@
 package com.example.ToolRent.repositories;
 
+import com.example.ToolRent.entities.CategoryEntity;
+import com.example.ToolRent.dto.CustomerObligationsDTO;
 import com.example.ToolRent.entities.CustomerEntity;
+import com.example.ToolRent.entities.FineEntity;
+import com.example.ToolRent.entities.LoanEntity;
+import com.example.ToolRent.entities.ToolEntity;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.test.context.ActiveProfiles;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
@@ -31,7 +37,7 @@ class CustomerRepositoryTest {
                 "12345678-9",
                 "juan.perez@email.com",
                 "+56912345678",
-                "ACTIVE");
+                "ACTIVE", 0, 0, 0, 0);
         entityManager.persistAndFlush(customer);
 
         // when
@@ -51,14 +57,14 @@ class CustomerRepositoryTest {
                 "12345678-9",
                 "maria.gonzalez@email.com",
                 "+56912345678",
-                "ACTIVE");
+                "ACTIVE", 0, 0, 0, 0);
         CustomerEntity customer2 = new CustomerEntity(
                 null,
                 "Pedro Silva",
                 "98765432-1",
                 "pedro.silva@email.com",
                 "+56987654321",
-                "ACTIVE");
+                "ACTIVE", 0, 0, 0, 0);
         entityManager.persist(customer1);
         entityManager.persist(customer2);
         entityManager.flush();
@@ -79,7 +85,7 @@ class CustomerRepositoryTest {
                 "11111111-1",
                 "ana.torres@email.com",
                 "+56911111111",
-                "ACTIVE");
+                "ACTIVE", 0, 0, 0, 0);
         entityManager.persistAndFlush(customer);
 
         // when
@@ -99,7 +105,7 @@ class CustomerRepositoryTest {
                 "22222222-2",
                 "carlos.ramirez@email.com",
                 "+56922222222",
-                "ACTIVE");
+                "ACTIVE", 0, 0, 0, 0);
         entityManager.persistAndFlush(customer);
 
         // when
@@ -109,4 +115,126 @@ class CustomerRepositoryTest {
         assertThat(found).isNotNull();
         assertThat(found.getPhoneNumber()).isEqualTo(customer.getPhoneNumber());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void whenRestrictCustomersWithOverdueLoans_thenRestrictOnlyCustomersWithDueLoans() {
+        // given
+        CustomerEntity lateCustomer = new CustomerEntity(null, "Rosa Díaz", "14141414-1",
+                "rosa@email.com", "+56914141414", "activo", 0, 0, 0, 0);
+        CustomerEntity onTimeCustomer = new CustomerEntity(null, "Jorge Vega", "15151515-1",
+                "jorge@email.com", "+56915151515", "activo", 0, 0, 0, 0);
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "prestada", 0L);
+
+        entityManager.persist(lateCustomer);
+        entityManager.persist(onTimeCustomer);
+        entityManager.persist(category);
+        entityManager.persist(tool);
+        entityManager.persist(new LoanEntity(null, lateCustomer, tool,
+                LocalDate.now().minusDays(5), LocalDate.now().minusDays(1), "activo", 5000, 0L));
+        entityManager.persist(new LoanEntity(null, onTimeCustomer, tool,
+                LocalDate.now(), LocalDate.now().plusDays(3), "activo", 5000, 0L));
+        entityManager.flush();
+
+        // when
+        int updated = customerRepository.restrictCustomersWithOverdueLoans(LocalDate.now(), 0L, Long.MAX_VALUE);
+        entityManager.clear();
+
+        // then
+        assertThat(updated).isEqualTo(1);
+        assertThat(customerRepository.findByRut("14141414-1").get().getStatus()).isEqualTo("restringido");
+        assertThat(customerRepository.findByRut("15151515-1").get().getStatus()).isEqualTo("activo");
+    }
+
+    @Test
+    public void whenAdjustObligations_thenCountersChangeAndSaveDoesNotOverwriteThem() {
+        // given
+        CustomerEntity customer = new CustomerEntity(null, "Lucía Rojas", "16161616-1",
+                "lucia@email.com", "+56916161616", "activo", 0, 0, 0, 0);
+        entityManager.persistAndFlush(customer);
+
+        // when
+        customerRepository.adjustObligations(customer.getId(), 2, 1, 0, 1);
+        customerRepository.adjustObligations(customer.getId(), -1, 0, 1, 0);
+        entityManager.clear();
+        CustomerEntity stale = new CustomerEntity(customer.getId(), "Lucía Rojas", "16161616-1",
+                "lucia@email.com", "+56916161616", "restringido", 0, 0, 0, 0);
+        customerRepository.saveAndFlush(stale);
+        entityManager.clear();
+
+        // then
+        CustomerObligationsDTO obligations = customerRepository.findObligations(customer.getId()).get();
+        assertThat(obligations).isEqualTo(new CustomerObligationsDTO(1, 1, 1, 1));
+        assertThat(obligations.canBeActivated()).isFalse();
+    }
+
+    @Test
+    public void whenCountOverdueLoansInObligations_thenMoveDueLoansToOverdueAndCountNewFines() {
+        // given
+        CustomerEntity customer = new CustomerEntity(null, "Pablo Soto", "18181818-1",
+                "pablo@email.com", "+56918181818", "activo", 3, 0, 0, 0);
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "prestada", 0L);
+        entityManager.persist(customer);
+        entityManager.persist(category);
+        entityManager.persist(tool);
+        LoanEntity dueWithFine = new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(5), LocalDate.now().minusDays(1), "activo", 5000, 0L);
+        entityManager.persist(dueWithFine);
+        entityManager.persist(new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(5), LocalDate.now().minusDays(2), "activo", 5000, 0L));
+        entityManager.persist(new LoanEntity(null, customer, tool,
+                LocalDate.now(), LocalDate.now().plusDays(3), "activo", 5000, 0L));
+        entityManager.persist(new FineEntity(null, customer, dueWithFine, "atraso", 1000, "no pagada", null, null, null, null));
+        entityManager.flush();
+
+        // when
+        int updated = customerRepository.countOverdueLoansInObligations(LocalDate.now(), 0L, Long.MAX_VALUE);
+        entityManager.clear();
+
+        // then
+        assertThat(updated).isEqualTo(1);
+        assertThat(customerRepository.findObligations(customer.getId()).get())
+                .isEqualTo(new CustomerObligationsDTO(1, 2, 0, 1));
+    }
+
+    @Test
+    public void whenCountersDrift_thenReconcileFixesOnlyDriftedCustomers() {
+        // given
+        CustomerEntity drifted = new CustomerEntity(null, "Elena Paz", "19191919-1",
+                "elena@email.com", "+56919191919", "restringido", 0, 0, 0, 0);
+        CustomerEntity consistent = new CustomerEntity(null, "Tomás Leal", "20202020-1",
+                "tomas@email.com", "+56920202020", "activo", 1, 0, 0, 0);
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Manuales");
+        ToolEntity tool = new ToolEntity(null, "Martillo", category, "prestada", 0L);
+        entityManager.persist(drifted);
+        entityManager.persist(consistent);
+        entityManager.persist(category);
+        entityManager.persist(tool);
+        LoanEntity overdue = new LoanEntity(null, drifted, tool,
+                LocalDate.now().minusDays(5), LocalDate.now().minusDays(1), "vencido", 5000, 0L);
+        entityManager.persist(overdue);
+        entityManager.persist(new LoanEntity(null, drifted, tool,
+                LocalDate.now().minusDays(9), LocalDate.now().minusDays(6), "evaluación pendiente", 5000, 0L));
+        entityManager.persist(new LoanEntity(null, consistent, tool,
+                LocalDate.now(), LocalDate.now().plusDays(3), "activo", 5000, 0L));
+        entityManager.persist(new FineEntity(null, drifted, overdue, "atraso", 1000, "no pagada", null, null, null, null));
+        entityManager.flush();
+
+        // when
+        List<Long> driftedIds = customerRepository.findCustomersWithDriftedObligations();
+        Optional<Long> locked = customerRepository.lockById(drifted.getId());
+        int fixedDrifted = customerRepository.reconcileObligations(drifted.getId());
+        int fixedConsistent = customerRepository.reconcileObligations(consistent.getId());
+        entityManager.clear();
+
+        // then
+        assertThat(driftedIds).containsExactly(drifted.getId());
+        assertThat(locked).contains(drifted.getId());
+        assertThat(fixedDrifted).isEqualTo(1);
+        assertThat(fixedConsistent).isZero();
+        assertThat(customerRepository.findObligations(drifted.getId()).get())
+                .isEqualTo(new CustomerObligationsDTO(0, 1, 1, 1));
+        assertThat(customerRepository.findCustomersWithDriftedObligations()).isEmpty();
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.ToolRent.repositories;
+
+import com.example.ToolRent.dto.FinePaymentChecksDTO;
+import com.example.ToolRent.entities.*;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+Benchmark de las condiciones de payFine con muchas multas abiertas.
+No corre con mvn test, se ejecuta con: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+@DataJpaTest
+@ActiveProfiles("test")
+class FinePaymentChecksBenchmarkTest {
+
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 200;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private FineRepository fineRepository;
+
+    @Test
+    public void whenOpenFinesGrowTo100k_thenPaymentChecksLatencyStaysFlat() {
+        // given: el cliente que paga tiene un solo prestamo con una sola multa no pagada
+        CustomerEntity customer = new CustomerEntity(null, "Juan Pérez", "12345678-9",
+                "juan@email.com", "+56912345678", "restringido", 0, 0, 0, 1);
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "disponible", 0L);
+        LoanEntity loan = new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(5), LocalDate.now().minusDays(1), "multa pendiente", 5000, 0L);
+        entityManager.persist(customer);
+        entityManager.persist(category);
+        entityManager.persist(tool);
+        entityManager.persist(loan);
+        FineEntity fine = entityManager.persist(
+                new FineEntity(null, customer, loan, "atraso", 2000, "no pagada", null, null, null, null));
+        entityManager.flush();
+
+        insertOpenFines(tool.getId(), 1, 1_000);
+        long smallTable = medianNanos(fine, loan, customer);
+
+        insertOpenFines(tool.getId(), 1_001, 100_000);
+        long largeTable = medianNanos(fine, loan, customer);
+
+        //Referencia: lo que hacia payFine antes, cargar todas las multas no pagadas
+        entityManager.clear();
+        long scanStart = System.nanoTime();
+        int unpaidFines = fineRepository.findByStatus("no pagada").orElseThrow().size();
+        long scan = System.nanoTime() - scanStart;
+
+        System.out.printf("findFinePaymentChecks mediana: 1k multas %d us, 100k multas %d us; " +
+                        "findByStatus(\"no pagada\") con %d multas: %d ms%n",
+                smallTable / 1_000, largeTable / 1_000, unpaidFines, scan / 1_000_000);
+
+        // then
+        assertThat(unpaidFines).isEqualTo(100_001);
+        assertThat(fineRepository.findFinePaymentChecks(fine.getId(), loan.getId(), customer.getId()))
+                .contains(new FinePaymentChecksDTO(false, false, false));
+        //Cada EXISTS es una busqueda por indice, la latencia no crece con el tamaño de la tabla
+        assertThat(largeTable).isLessThan(Math.max(smallTable * 5, 2_000_000L));
+        assertThat(largeTable).isLessThan(scan);
+    }
+
+    //Un cliente y un prestamo vencido por cada multa no pagada, insertados en bloque
+    private void insertOpenFines(Long toolId, int from, int to) {
+        entityManager.getEntityManager().createNativeQuery(
+                "INSERT INTO customers (name, rut, email, phone_number, status, " +
+                        "active_loans, overdue_loans, pending_evaluations, unpaid_fines) " +
+                        "SELECT 'Cliente ' || x, 'rut-' || x, 'cliente' || x || '@email.com', 'fono-' || x, " +
+                        "'restringido', 0, 1, 0, 1 FROM SYSTEM_RANGE(:from, :to)")
+                .setParameter("from", from).setParameter("to", to).executeUpdate();
+        entityManager.getEntityManager().createNativeQuery(
+                "INSERT INTO loans (id, customer_id, tool_id, loan_date, return_date, status, loan_value, version) " +
+                        "SELECT NEXT VALUE FOR loans_seq, c.id, :toolId, DATEADD(DAY, -10, CURRENT_DATE), DATEADD(DAY, -3, CURRENT_DATE), " +
+                        "'vencido', 5000, 0 FROM customers c WHERE c.rut LIKE 'rut-%' " +
+                        "AND c.id NOT IN (SELECT l.customer_id FROM loans l)")
+                .setParameter("toolId", toolId).executeUpdate();
+        entityManager.getEntityManager().createNativeQuery(
+                "INSERT INTO fines (customer_id, loan_id, type, fine_value, status) " +
+                        "SELECT l.customer_id, l.id, 'atraso', 2000, 'no pagada' FROM loans l " +
+                        "WHERE l.id NOT IN (SELECT f.loan_id FROM fines f)")
+                .executeUpdate();
+    }
+
+    private long medianNanos(FineEntity fine, LoanEntity loan, CustomerEntity customer) {
+        for (int i = 0; i < WARMUP; i++) {
+            fineRepository.findFinePaymentChecks(fine.getId(), loan.getId(), customer.getId());
+        }
+        long[] samples = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            fineRepository.findFinePaymentChecks(fine.getId(), loan.getId(), customer.getId());
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        return samples[ITERATIONS / 2];
+    }
+}
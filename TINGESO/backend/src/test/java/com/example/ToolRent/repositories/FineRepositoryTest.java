@@ -1,10 +1,13 @@
 package com.example.ToolRent.repositories;
 
+import com.example.ToolRent.dto.FinePaymentChecksDTO;
+import com.example.ToolRent.dto.FineSummaryDTO;
 import com.example.ToolRent.entities.*;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.time.LocalDate;
@@ -27,19 +30,19 @@ class FineRepositoryTest {
     public void whenFindByStatus_thenReturnFines() {
         // given
         CustomerEntity customer = new CustomerEntity(null, "Juan Pérez", "12345678-9",
-                "juan@email.com", "+56912345678", "ACTIVE");
+                "juan@email.com", "+56912345678", "ACTIVE", 0, 0, 0, 0);
         CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
-        ToolEntity tool = new ToolEntity(null, "Taladro", category, "AVAILABLE");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "AVAILABLE", 0L);
         LoanEntity loan = new LoanEntity(null, customer, tool,
-                LocalDate.now(), LocalDate.now().plusDays(5), "activo", 5000);
+                LocalDate.now(), LocalDate.now().plusDays(5), "activo", 5000, 0L);
 
         entityManager.persist(customer);
         entityManager.persist(category);
         entityManager.persist(tool);
         entityManager.persist(loan);
 
-        FineEntity fine1 = new FineEntity(null, customer, loan, "atraso", 2000, "no pagada");
-        FineEntity fine2 = new FineEntity(null, customer, loan, "daño leve", 3000, "no pagada");
+        FineEntity fine1 = new FineEntity(null, customer, loan, "atraso", 2000, "no pagada", null, null, null, null);
+        FineEntity fine2 = new FineEntity(null, customer, loan, "daño leve", 3000, "no pagada", null, null, null, null);
         entityManager.persist(fine1);
         entityManager.persist(fine2);
         entityManager.flush();
@@ -57,19 +60,19 @@ class FineRepositoryTest {
     public void whenFindByType_thenReturnFines() {
         // given
         CustomerEntity customer = new CustomerEntity(null, "María González", "98765432-1",
-                "maria@email.com", "+56987654321", "ACTIVE");
+                "maria@email.com", "+56987654321", "ACTIVE", 0, 0, 0, 0);
         CategoryEntity category = new CategoryEntity(null, "Herramientas Manuales");
-        ToolEntity tool = new ToolEntity(null, "Martillo", category, "AVAILABLE");
+        ToolEntity tool = new ToolEntity(null, "Martillo", category, "AVAILABLE", 0L);
         LoanEntity loan = new LoanEntity(null, customer, tool,
-                LocalDate.now(), LocalDate.now().plusDays(3), "vencido", 3000);
+                LocalDate.now(), LocalDate.now().plusDays(3), "vencido", 3000, 0L);
 
         entityManager.persist(customer);
         entityManager.persist(category);
         entityManager.persist(tool);
         entityManager.persist(loan);
 
-        FineEntity fine1 = new FineEntity(null, customer, loan, "atraso", 1500, "no pagada");
-        FineEntity fine2 = new FineEntity(null, customer, loan, "atraso", 2000, "pagada");
+        FineEntity fine1 = new FineEntity(null, customer, loan, "atraso", 1500, "no pagada", null, null, null, null);
+        FineEntity fine2 = new FineEntity(null, customer, loan, "atraso", 2000, "pagada", null, null, null, null);
         entityManager.persist(fine1);
         entityManager.persist(fine2);
         entityManager.flush();
@@ -87,18 +90,18 @@ class FineRepositoryTest {
     public void whenFindFineByCustomerRut_thenReturnFines() {
         // given
         CustomerEntity customer = new CustomerEntity(null, "Pedro Silva", "11111111-1",
-                "pedro@email.com", "+56911111111", "ACTIVE");
+                "pedro@email.com", "+56911111111", "ACTIVE", 0, 0, 0, 0);
         CategoryEntity category = new CategoryEntity(null, "Equipo de Jardinería");
-        ToolEntity tool = new ToolEntity(null, "Cortacésped", category, "AVAILABLE");
+        ToolEntity tool = new ToolEntity(null, "Cortacésped", category, "AVAILABLE", 0L);
         LoanEntity loan = new LoanEntity(null, customer, tool,
-                LocalDate.now(), LocalDate.now().plusDays(7), "activo", 7000);
+                LocalDate.now(), LocalDate.now().plusDays(7), "activo", 7000, 0L);
 
         entityManager.persist(customer);
         entityManager.persist(category);
         entityManager.persist(tool);
         entityManager.persist(loan);
 
-        FineEntity fine = new FineEntity(null, customer, loan, "daño irreparable", 5000, "no pagada");
+        FineEntity fine = new FineEntity(null, customer, loan, "daño irreparable", 5000, "no pagada", null, null, null, null);
         entityManager.persistAndFlush(fine);
 
         // when
@@ -114,19 +117,19 @@ class FineRepositoryTest {
     public void whenFindFineByCustomerRutAndStatus_thenReturnFines() {
         // given
         CustomerEntity customer = new CustomerEntity(null, "Ana Torres", "22222222-2",
-                "ana@email.com", "+56922222222", "ACTIVE");
+                "ana@email.com", "+56922222222", "ACTIVE", 0, 0, 0, 0);
         CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
-        ToolEntity tool = new ToolEntity(null, "Sierra", category, "AVAILABLE");
+        ToolEntity tool = new ToolEntity(null, "Sierra", category, "AVAILABLE", 0L);
         LoanEntity loan = new LoanEntity(null, customer, tool,
-                LocalDate.now(), LocalDate.now().plusDays(5), "activo", 5000);
+                LocalDate.now(), LocalDate.now().plusDays(5), "activo", 5000, 0L);
 
         entityManager.persist(customer);
         entityManager.persist(category);
         entityManager.persist(tool);
         entityManager.persist(loan);
 
-        FineEntity fine1 = new FineEntity(null, customer, loan, "atraso", 1000, "no pagada");
-        FineEntity fine2 = new FineEntity(null, customer, loan, "daño leve", 2000, "pagada");
+        FineEntity fine1 = new FineEntity(null, customer, loan, "atraso", 1000, "no pagada", null, null, null, null);
+        FineEntity fine2 = new FineEntity(null, customer, loan, "daño leve", 2000, "pagada", null, null, null, null);
         entityManager.persist(fine1);
         entityManager.persist(fine2);
         entityManager.flush();
@@ -144,19 +147,19 @@ class FineRepositoryTest {
     public void whenFindFineByCustomerRutAndType_thenReturnFines() {
         // given
         CustomerEntity customer = new CustomerEntity(null, "Carlos Ramírez", "33333333-3",
-                "carlos@email.com", "+56933333333", "ACTIVE");
+                "carlos@email.com", "+56933333333", "ACTIVE", 0, 0, 0, 0);
         CategoryEntity category = new CategoryEntity(null, "Herramientas Manuales");
-        ToolEntity tool = new ToolEntity(null, "Destornillador", category, "AVAILABLE");
+        ToolEntity tool = new ToolEntity(null, "Destornillador", category, "AVAILABLE", 0L);
         LoanEntity loan = new LoanEntity(null, customer, tool,
-                LocalDate.now(), LocalDate.now().plusDays(3), "activo", 3000);
+                LocalDate.now(), LocalDate.now().plusDays(3), "activo", 3000, 0L);
 
         entityManager.persist(customer);
         entityManager.persist(category);
         entityManager.persist(tool);
         entityManager.persist(loan);
 
-        FineEntity fine1 = new FineEntity(null, customer, loan, "atraso", 1500, "no pagada");
-        FineEntity fine2 = new FineEntity(null, customer, loan, "daño leve", 2500, "no pagada");
+        FineEntity fine1 = new FineEntity(null, customer, loan, "atraso", 1500, "no pagada", null, null, null, null);
+        FineEntity fine2 = new FineEntity(null, customer, loan, "daño leve", 2500, "no pagada", null, null, null, null);
         entityManager.persist(fine1);
         entityManager.persist(fine2);
         entityManager.flush();
@@ -174,20 +177,20 @@ class FineRepositoryTest {
     public void whenFindFineByCustomerRutAndStatusAndType_thenReturnFines() {
         // given
         CustomerEntity customer = new CustomerEntity(null, "Laura Díaz", "44444444-4",
-                "laura@email.com", "+56944444444", "ACTIVE");
+                "laura@email.com", "+56944444444", "ACTIVE", 0, 0, 0, 0);
         CategoryEntity category = new CategoryEntity(null, "Equipo de Construcción");
-        ToolEntity tool = new ToolEntity(null, "Taladro", category, "AVAILABLE");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "AVAILABLE", 0L);
         LoanEntity loan = new LoanEntity(null, customer, tool,
-                LocalDate.now(), LocalDate.now().plusDays(5), "vencido", 5000);
+                LocalDate.now(), LocalDate.now().plusDays(5), "vencido", 5000, 0L);
 
         entityManager.persist(customer);
         entityManager.persist(category);
         entityManager.persist(tool);
         entityManager.persist(loan);
 
-        FineEntity fine1 = new FineEntity(null, customer, loan, "atraso", 2000, "no pagada");
-        FineEntity fine2 = new FineEntity(null, customer, loan, "atraso", 1500, "pagada");
-        FineEntity fine3 = new FineEntity(null, customer, loan, "daño leve", 3000, "no pagada");
+        FineEntity fine1 = new FineEntity(null, customer, loan, "atraso", 2000, "no pagada", null, null, null, null);
+        FineEntity fine2 = new FineEntity(null, customer, loan, "atraso", 1500, "pagada", null, null, null, null);
+        FineEntity fine3 = new FineEntity(null, customer, loan, "daño leve", 3000, "no pagada", null, null, null, null);
         entityManager.persist(fine1);
         entityManager.persist(fine2);
         entityManager.persist(fine3);
@@ -208,11 +211,11 @@ class FineRepositoryTest {
     public void whenFindCustomersWithOverdueLoansByDateRange_thenReturnCustomers() {
         // given
         CustomerEntity customer1 = new CustomerEntity(null, "Roberto Vega", "55555555-5",
-                "roberto@email.com", "+56955555555", "ACTIVE");
+                "roberto@email.com", "+56955555555", "ACTIVE", 0, 0, 0, 0);
         CustomerEntity customer2 = new CustomerEntity(null, "Sandra López", "66666666-6",
-                "sandra@email.com", "+56966666666", "ACTIVE");
+                "sandra@email.com", "+56966666666", "ACTIVE", 0, 0, 0, 0);
         CategoryEntity category = new CategoryEntity(null, "Herramientas de Medición");
-        ToolEntity tool = new ToolEntity(null, "Nivel", category, "AVAILABLE");
+        ToolEntity tool = new ToolEntity(null, "Nivel", category, "AVAILABLE", 0L);
 
         entityManager.persist(customer1);
         entityManager.persist(customer2);
@@ -223,15 +226,15 @@ class FineRepositoryTest {
         LocalDate endDate = LocalDate.of(2025, 11, 30);
 
         LoanEntity loan1 = new LoanEntity(null, customer1, tool,
-                LocalDate.of(2025, 11, 10), LocalDate.of(2025, 11, 15), "vencido", 5000);
+                LocalDate.of(2025, 11, 10), LocalDate.of(2025, 11, 15), "vencido", 5000, 0L);
         LoanEntity loan2 = new LoanEntity(null, customer2, tool,
-                LocalDate.of(2025, 11, 20), LocalDate.of(2025, 11, 25), "vencido", 5000);
+                LocalDate.of(2025, 11, 20), LocalDate.of(2025, 11, 25), "vencido", 5000, 0L);
 
         entityManager.persist(loan1);
         entityManager.persist(loan2);
 
-        FineEntity fine1 = new FineEntity(null, customer1, loan1, "atraso", 2000, "no pagada");
-        FineEntity fine2 = new FineEntity(null, customer2, loan2, "atraso", 2500, "no pagada");
+        FineEntity fine1 = new FineEntity(null, customer1, loan1, "atraso", 2000, "no pagada", null, null, null, null);
+        FineEntity fine2 = new FineEntity(null, customer2, loan2, "atraso", 2500, "no pagada", null, null, null, null);
         entityManager.persist(fine1);
         entityManager.persist(fine2);
         entityManager.flush();
@@ -249,19 +252,19 @@ class FineRepositoryTest {
     public void whenFindCustomersWithOverdueLoans_thenReturnCustomers() {
         // given
         CustomerEntity customer = new CustomerEntity(null, "Diego Morales", "77777777-7",
-                "diego@email.com", "+56977777777", "ACTIVE");
+                "diego@email.com", "+56977777777", "ACTIVE", 0, 0, 0, 0);
         CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
-        ToolEntity tool = new ToolEntity(null, "Taladro", category, "AVAILABLE");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "AVAILABLE", 0L);
 
         entityManager.persist(customer);
         entityManager.persist(category);
         entityManager.persist(tool);
 
         LoanEntity loan = new LoanEntity(null, customer, tool,
-                LocalDate.now(), LocalDate.now().minusDays(1), "vencido", 5000);
+                LocalDate.now(), LocalDate.now().minusDays(1), "vencido", 5000, 0L);
         entityManager.persist(loan);
 
-        FineEntity fine = new FineEntity(null, customer, loan, "atraso", 3000, "no pagada");
+        FineEntity fine = new FineEntity(null, customer, loan, "atraso", 3000, "no pagada", null, null, null, null);
         entityManager.persistAndFlush(fine);
 
         // when
@@ -271,4 +274,340 @@ class FineRepositoryTest {
         assertThat(customers).hasSize(1);
         assertThat(customers.get(0).getRut()).isEqualTo("77777777-7");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void whenInsertLateFinesForOverdueLoans_thenCreateOneFinePerOverdueLoan() {
+        // given
+        CustomerEntity customer = new CustomerEntity(null, "Pedro Soto", "88888888-8",
+                "pedro@email.com", "+56988888888", "activo", 0, 0, 0, 0);
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "prestada", 0L);
+
+        entityManager.persist(customer);
+        entityManager.persist(category);
+        entityManager.persist(tool);
+
+        LoanEntity overdueLoan = new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(5), LocalDate.now().minusDays(2), "activo", 5000, 0L);
+        LoanEntity onTimeLoan = new LoanEntity(null, customer, tool,
+                LocalDate.now(), LocalDate.now().plusDays(2), "activo", 5000, 0L);
+        entityManager.persist(overdueLoan);
+        entityManager.persist(onTimeLoan);
+        entityManager.flush();
+
+        // when
+        int inserted = fineRepository.insertLateFinesForOverdueLoans(LocalDate.now(), 0L, Long.MAX_VALUE, false, 2000, null);
+        int insertedAgain = fineRepository.insertLateFinesForOverdueLoans(LocalDate.now(), 0L, Long.MAX_VALUE, false, 2000, null);
+        entityManager.clear();
+
+        // then
+        assertThat(inserted).isEqualTo(1);
+        assertThat(insertedAgain).isZero();
+        List<FineEntity> fines = fineRepository.findAll();
+        assertThat(fines).hasSize(1);
+        assertThat(fines.get(0).getLoan().getId()).isEqualTo(overdueLoan.getId());
+        assertThat(fines.get(0).getType()).isEqualTo("atraso");
+        assertThat(fines.get(0).getStatus()).isEqualTo("no pagada");
+        assertThat(fines.get(0).getAccrualStartDate()).isNull();
+    }
+
+    @Test
+    public void whenRecalculateLateFines_thenUpdateOnlyChangedFinesOfOverdueLoans() {
+        // given
+        CustomerEntity customer = new CustomerEntity(null, "Ana Rojas", "99999999-9",
+                "ana@email.com", "+56999999999", "restringido", 0, 0, 0, 0);
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "prestada", 0L);
+
+        entityManager.persist(customer);
+        entityManager.persist(category);
+        entityManager.persist(tool);
+
+        LoanEntity overdueLoan = new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(10), LocalDate.now().minusDays(3), "vencido", 5000, 0L);
+        LoanEntity returnedLoan = new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(10), LocalDate.now().minusDays(3), "multa pendiente", 5000, 0L);
+        entityManager.persist(overdueLoan);
+        entityManager.persist(returnedLoan);
+
+        FineEntity openFine = new FineEntity(null, customer, overdueLoan, "atraso", 0, "no pagada", null, null, null, null);
+        FineEntity upToDateFine = new FineEntity(null, customer, overdueLoan, "atraso", 6000, "pagada", null, null, null, null);
+        FineEntity frozenFine = new FineEntity(null, customer, returnedLoan, "atraso", 4000, "no pagada", null, null, null, null);
+        entityManager.persist(openFine);
+        entityManager.persist(upToDateFine);
+        entityManager.persist(frozenFine);
+        entityManager.flush();
+
+        // when
+        int updated = fineRepository.recalculateLateFines(LocalDate.now(), 0L, Long.MAX_VALUE, 2000);
+        int updatedAgain = fineRepository.recalculateLateFines(LocalDate.now(), 0L, Long.MAX_VALUE, 2000);
+        entityManager.clear();
+
+        // then
+        assertThat(updated).isEqualTo(1);
+        assertThat(updatedAgain).isZero();
+        assertThat(fineRepository.findById(openFine.getId()).get().getFineValue()).isEqualTo(6000);
+        assertThat(fineRepository.findById(frozenFine.getId()).get().getFineValue()).isEqualTo(4000);
+    }
+
+    @Test
+    public void whenInsertAccruingLateFines_thenFineValueIsComputedOnRead() {
+        // given
+        CustomerEntity customer = new CustomerEntity(null, "Sofía Muñoz", "18181818-1",
+                "sofia@email.com", "+56918181818", "activo", 0, 0, 0, 0);
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "prestada", 0L);
+
+        entityManager.persist(customer);
+        entityManager.persist(category);
+        entityManager.persist(tool);
+
+        LoanEntity overdueLoan = new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(10), LocalDate.now().minusDays(4), "activo", 5000, 0L);
+        entityManager.persistAndFlush(overdueLoan);
+
+        // when
+        int inserted = fineRepository.insertLateFinesForOverdueLoans(LocalDate.now(), 0L, Long.MAX_VALUE, true, 2000, 5000);
+        entityManager.clear();
+
+        // then
+        assertThat(inserted).isEqualTo(1);
+        FineEntity fine = fineRepository.findAll().get(0);
+        assertThat(fine.getAccrualStartDate()).isEqualTo(overdueLoan.getReturnDate());
+        assertThat(fine.getDailyFineRate()).isEqualTo(2000);
+        assertThat(fine.getMaxFineValue()).isEqualTo(5000);
+        assertThat(fine.getFineValue()).isEqualTo(5000);
+        assertThat(fine.accruedValue(LocalDate.now().minusDays(2))).isEqualTo(4000);
+    }
+
+    @Test
+    public void whenStopLateFineAccrualAndUpdateRate_thenOnlyAccruingFinesChange() {
+        // given
+        CustomerEntity customer = new CustomerEntity(null, "Pablo Lagos", "19191919-1",
+                "pablo@email.com", "+56919191919", "restringido", 0, 0, 0, 0);
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "prestada", 0L);
+
+        entityManager.persist(customer);
+        entityManager.persist(category);
+        entityManager.persist(tool);
+
+        LoanEntity returnedLoan = new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(10), LocalDate.now().minusDays(3), "vencido", 5000, 0L);
+        LoanEntity overdueLoan = new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(10), LocalDate.now().minusDays(2), "vencido", 5000, 0L);
+        entityManager.persist(returnedLoan);
+        entityManager.persist(overdueLoan);
+
+        FineEntity returnedFine = new FineEntity(null, customer, returnedLoan, "atraso", 0, "no pagada",
+                returnedLoan.getReturnDate(), null, 2000, null);
+        FineEntity overdueFine = new FineEntity(null, customer, overdueLoan, "atraso", 0, "no pagada",
+                overdueLoan.getReturnDate(), null, 2000, null);
+        entityManager.persist(returnedFine);
+        entityManager.persist(overdueFine);
+        entityManager.flush();
+
+        // when
+        int stopped = fineRepository.stopLateFineAccrual(returnedLoan.getId(), LocalDate.now());
+        int updated = fineRepository.updateAccruingLateFineRate(3000);
+        entityManager.clear();
+
+        // then
+        assertThat(stopped).isEqualTo(1);
+        assertThat(updated).isEqualTo(1);
+        FineEntity frozen = fineRepository.findById(returnedFine.getId()).get();
+        assertThat(frozen.getAccrualEndDate()).isEqualTo(LocalDate.now());
+        assertThat(frozen.accruedValue(LocalDate.now().plusDays(5))).isEqualTo(6000);
+        assertThat(fineRepository.findById(overdueFine.getId()).get().getFineValue()).isEqualTo(6000);
+    }
+
+    @Test
+    public void whenStopLateFineAccrualForLoans_thenStopOnlyFinesOfThoseLoans() {
+        // given
+        CustomerEntity customer = new CustomerEntity(null, "Tomas Reyes", "20202020-1",
+                "tomas@email.com", "+56920202020", "restringido", 0, 0, 0, 0);
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "prestada", 0L);
+
+        entityManager.persist(customer);
+        entityManager.persist(category);
+        entityManager.persist(tool);
+
+        LoanEntity firstLoan = new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(10), LocalDate.now().minusDays(3), "vencido", 5000, 0L);
+        LoanEntity secondLoan = new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(10), LocalDate.now().minusDays(3), "vencido", 5000, 0L);
+        LoanEntity otherLoan = new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(10), LocalDate.now().minusDays(3), "vencido", 5000, 0L);
+        entityManager.persist(firstLoan);
+        entityManager.persist(secondLoan);
+        entityManager.persist(otherLoan);
+        for (LoanEntity loan : List.of(firstLoan, secondLoan, otherLoan)) {
+            entityManager.persist(new FineEntity(null, customer, loan, "atraso", 0, "no pagada",
+                    loan.getReturnDate(), null, 2000, null));
+        }
+        entityManager.flush();
+
+        // when
+        int stopped = fineRepository.stopLateFineAccrualForLoans(List.of(firstLoan.getId(), secondLoan.getId()), LocalDate.now());
+
+        // then
+        assertThat(stopped).isEqualTo(2);
+    }
+
+    @Test
+    public void whenFindFinePaymentChecks_thenEvaluateOtherFinesAndLoansOfCustomer() {
+        // given
+        CustomerEntity customer = new CustomerEntity(null, "Juan Pérez", "12345678-9",
+                "juan@email.com", "+56912345678", "restringido", 0, 0, 1, 2);
+        CustomerEntity otherCustomer = new CustomerEntity(null, "María González", "98765432-1",
+                "maria@email.com", "+56987654321", "restringido", 0, 0, 0, 1);
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "disponible", 0L);
+        LoanEntity loan = new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(5), LocalDate.now().minusDays(1), "multa pendiente", 5000, 0L);
+        LoanEntity pendingLoan = new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(5), LocalDate.now().minusDays(1), "evaluación pendiente", 5000, 0L);
+        LoanEntity otherLoan = new LoanEntity(null, otherCustomer, tool,
+                LocalDate.now().minusDays(5), LocalDate.now().minusDays(1), "multa pendiente", 5000, 0L);
+
+        entityManager.persist(customer);
+        entityManager.persist(otherCustomer);
+        entityManager.persist(category);
+        entityManager.persist(tool);
+        entityManager.persist(loan);
+        entityManager.persist(pendingLoan);
+        entityManager.persist(otherLoan);
+
+        FineEntity fine = new FineEntity(null, customer, loan, "atraso", 2000, "no pagada", null, null, null, null);
+        FineEntity paidFine = new FineEntity(null, customer, loan, "daño leve", 3000, "pagada", null, null, null, null);
+        FineEntity otherCustomerFine = new FineEntity(null, otherCustomer, otherLoan, "atraso", 2000, "no pagada", null, null, null, null);
+        entityManager.persist(fine);
+        entityManager.persist(paidFine);
+        entityManager.persist(otherCustomerFine);
+        entityManager.flush();
+
+        // when
+        FinePaymentChecksDTO onlyPendingLoan = fineRepository
+                .findFinePaymentChecks(fine.getId(), loan.getId(), customer.getId()).orElseThrow();
+        entityManager.persist(
+                new FineEntity(null, customer, loan, "daño leve", 3000, "no pagada", null, null, null, null));
+        entityManager.flush();
+        FinePaymentChecksDTO withSecondFine = fineRepository
+                .findFinePaymentChecks(fine.getId(), loan.getId(), customer.getId()).orElseThrow();
+        FinePaymentChecksDTO otherCustomerChecks = fineRepository
+                .findFinePaymentChecks(otherCustomerFine.getId(), otherLoan.getId(), otherCustomer.getId()).orElseThrow();
+
+        // then
+        //La multa pagada y la multa de otro cliente no cuentan, el otro prestamo en evaluacion pendiente si
+        assertThat(onlyPendingLoan).isEqualTo(new FinePaymentChecksDTO(false, false, true));
+        assertThat(withSecondFine).isEqualTo(new FinePaymentChecksDTO(true, true, true));
+        assertThat(otherCustomerChecks).isEqualTo(new FinePaymentChecksDTO(false, false, false));
+        assertThat(fineRepository.findFinePaymentChecks(fine.getId(), loan.getId(), -1L)).isEmpty();
+    }
+
+    @Test
+    public void whenFindUnpaidFinesWithLoanByCustomerId_thenReturnOnlyUnpaidFinesOfCustomer() {
+        // given
+        CustomerEntity customer = new CustomerEntity(null, "Juan Pérez", "12345678-9",
+                "juan@email.com", "+56912345678", "restringido", 0, 0, 0, 2);
+        CustomerEntity otherCustomer = new CustomerEntity(null, "María González", "98765432-1",
+                "maria@email.com", "+56987654321", "restringido", 0, 0, 0, 1);
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "disponible", 0L);
+        LoanEntity loan = new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(5), LocalDate.now().minusDays(1), "multa pendiente", 5000, 0L);
+        LoanEntity otherLoan = new LoanEntity(null, otherCustomer, tool,
+                LocalDate.now().minusDays(5), LocalDate.now().minusDays(1), "multa pendiente", 5000, 0L);
+
+        entityManager.persist(customer);
+        entityManager.persist(otherCustomer);
+        entityManager.persist(category);
+        entityManager.persist(tool);
+        entityManager.persist(loan);
+        entityManager.persist(otherLoan);
+
+        FineEntity lateFine = new FineEntity(null, customer, loan, "atraso", 2000, "no pagada", null, null, null, null);
+        FineEntity damageFine = new FineEntity(null, customer, loan, "daño leve", 3000, "no pagada", null, null, null, null);
+        FineEntity paidFine = new FineEntity(null, customer, loan, "atraso", 1000, "pagada", null, null, null, null);
+        FineEntity otherCustomerFine = new FineEntity(null, otherCustomer, otherLoan, "atraso", 2000, "no pagada", null, null, null, null);
+        entityManager.persist(lateFine);
+        entityManager.persist(damageFine);
+        entityManager.persist(paidFine);
+        entityManager.persist(otherCustomerFine);
+        entityManager.flush();
+        entityManager.clear();
+
+        // when
+        List<FineEntity> fines = fineRepository.findUnpaidFinesWithLoanByCustomerId(customer.getId());
+
+        // then
+        assertThat(fines).extracting(FineEntity::getId).containsExactly(lateFine.getId(), damageFine.getId());
+        assertThat(fines.get(0).getLoan().getStatus()).isEqualTo("multa pendiente");
+        assertThat(fines.get(0).getLoan().getTool().getName()).isEqualTo("Taladro");
+        assertThat(fineRepository.existsByCustomerIdAndStatus(customer.getId(), "no pagada")).isTrue();
+        assertThat(fineRepository.existsByCustomerIdAndStatus(otherCustomer.getId(), "pagada")).isFalse();
+    }
+
+    @Test
+    public void whenSearchFinesWithSpecifications_thenFilterAndPageByIdDescending() {
+        // given
+        LocalDate today = LocalDate.now();
+        CustomerEntity customer = new CustomerEntity(null, "Juan Pérez", "12345678-9",
+                "juan@email.com", "+56912345678", "restringido", 0, 0, 0, 2);
+        CustomerEntity otherCustomer = new CustomerEntity(null, "María González", "98765432-1",
+                "maria@email.com", "+56987654321", "restringido", 0, 0, 0, 1);
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "disponible", 0L);
+        LoanEntity oldLoan = new LoanEntity(null, customer, tool,
+                today.minusDays(60), today.minusDays(50), "finalizado con multa", 5000, 0L);
+        LoanEntity overdueLoan = new LoanEntity(null, customer, tool,
+                today.minusDays(20), today.minusDays(10), "vencido", 5000, 0L);
+        LoanEntity otherLoan = new LoanEntity(null, otherCustomer, tool,
+                today.minusDays(20), today.minusDays(10), "multa pendiente", 5000, 0L);
+
+        entityManager.persist(customer);
+        entityManager.persist(otherCustomer);
+        entityManager.persist(category);
+        entityManager.persist(tool);
+        entityManager.persist(oldLoan);
+        entityManager.persist(overdueLoan);
+        entityManager.persist(otherLoan);
+
+        FineEntity paidFine = new FineEntity(null, customer, oldLoan, "atraso", 2000, "pagada", null, null, null, null);
+        FineEntity damageFine = new FineEntity(null, customer, oldLoan, "daño leve", 3000, "no pagada", null, null, null, null);
+        //Multa que se calcula al leer: 10 dias de atraso * 1000, su fineValue guardado es 0
+        FineEntity accruingFine = new FineEntity(null, customer, overdueLoan, "atraso", 0, "no pagada",
+                today.minusDays(10), null, 1000, null);
+        FineEntity otherCustomerFine = new FineEntity(null, otherCustomer, otherLoan, "atraso", 4000, "no pagada", null, null, null, null);
+        entityManager.persist(paidFine);
+        entityManager.persist(damageFine);
+        entityManager.persist(accruingFine);
+        entityManager.persist(otherCustomerFine);
+        entityManager.flush();
+        entityManager.clear();
+
+        Specification<FineEntity> byCustomer = FineSpecifications.hasCustomerRut("12345678-9");
+
+        // when
+        List<FineSummaryDTO> firstPage = fineRepository.searchFines(byCustomer, today, 2);
+        List<FineSummaryDTO> secondPage = fineRepository.searchFines(
+                byCustomer.and(FineSpecifications.idBefore(firstPage.get(1).getId())), today, 2);
+        List<FineSummaryDTO> byValue = fineRepository.searchFines(
+                byCustomer.and(FineSpecifications.fineValueBetween(5000, null, today)), today, 10);
+        List<FineSummaryDTO> byStatusAndLoanDate = fineRepository.searchFines(Specification.allOf(
+                FineSpecifications.hasStatus("no pagada"),
+                FineSpecifications.hasType("atraso"),
+                FineSpecifications.loanDateBetween(today.minusDays(30), today)), today, 10);
+
+        // then
+        assertThat(firstPage).extracting(FineSummaryDTO::getId).containsExactly(accruingFine.getId(), damageFine.getId());
+        assertThat(firstPage.get(0).getFineValue()).isEqualTo(10000);
+        assertThat(firstPage.get(0).getCustomerRut()).isEqualTo("12345678-9");
+        assertThat(firstPage.get(0).getLoanId()).isEqualTo(overdueLoan.getId());
+        assertThat(secondPage).extracting(FineSummaryDTO::getId).containsExactly(paidFine.getId());
+        assertThat(byValue).extracting(FineSummaryDTO::getId).containsExactly(accruingFine.getId());
+        assertThat(byStatusAndLoanDate).extracting(FineSummaryDTO::getId)
+                .containsExactly(otherCustomerFine.getId(), accruingFine.getId());
+    }
+}
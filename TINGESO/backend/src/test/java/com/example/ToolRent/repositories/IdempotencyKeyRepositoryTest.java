@@ -0,0 +1,107 @@
+package com.example.ToolRent.repositories;
+
+import com.example.ToolRent.entities.IdempotencyKeyEntity;
+import com.example.ToolRent.entities.IdempotencyKeyId;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+//Sin transaccion de prueba, cada operacion sobre la llave se confirma por separado como entre solicitudes reales
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class IdempotencyKeyRepositoryTest {
+
+    private static final String HASH = "0".repeat(64);
+
+    @Autowired
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Test
+    public void whenSameKeyIsInsertedTwice_thenSecondInsertFails() {
+        // given
+        LocalDateTime now = LocalDateTime.now();
+        idempotencyKeyRepository.insert("ana", "key-insert", "POST", "/api/v1/loans/", HASH, "en curso", now, now.plusMinutes(5));
+
+        // when & then
+        assertThatThrownBy(() -> idempotencyKeyRepository.insert("ana", "key-insert", "POST", "/api/v1/loans/", HASH, "en curso", now, now.plusMinutes(5)))
+                .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @Test
+    public void whenAnotherUserInsertsSameKey_thenBothKeysAreStored() {
+        // given
+        LocalDateTime now = LocalDateTime.now();
+        idempotencyKeyRepository.insert("ana", "key-shared", "POST", "/api/v1/loans/", HASH, "en curso", now, now.plusMinutes(5));
+
+        // when
+        int inserted = idempotencyKeyRepository.insert("luis", "key-shared", "POST", "/api/v1/loans/", HASH, "en curso", now, now.plusMinutes(5));
+
+        // then
+        assertThat(inserted).isEqualTo(1);
+        assertThat(idempotencyKeyRepository.existsById(new IdempotencyKeyId("ana", "key-shared"))).isTrue();
+        assertThat(idempotencyKeyRepository.existsById(new IdempotencyKeyId("luis", "key-shared"))).isTrue();
+    }
+
+    @Test
+    public void whenKeyIsCompleted_thenResponseIsStored() {
+        // given
+        LocalDateTime now = LocalDateTime.now();
+        idempotencyKeyRepository.insert("ana", "key-complete", "PUT", "/api/v1/fines/", HASH, "en curso", now, now.plusMinutes(5));
+        String body = "{\"id\":1,\"status\":\"pagada\"," + "\"detalle\":\"" + "x".repeat(5000) + "\"}";
+
+        // when
+        int updated = idempotencyKeyRepository.complete("ana", "key-complete", "completado", 200, "application/json", body, now.plusHours(24));
+
+        // then
+        assertThat(updated).isEqualTo(1);
+        IdempotencyKeyEntity stored = idempotencyKeyRepository.findById(new IdempotencyKeyId("ana", "key-complete")).get();
+        assertThat(stored.getStatus()).isEqualTo("completado");
+        assertThat(stored.getResponseStatus()).isEqualTo(200);
+        assertThat(stored.getResponseBody()).isEqualTo(body);
+        assertThat(stored.getExpiresAt()).isAfter(now.plusHours(23));
+    }
+
+    @Test
+    public void whenReleasingKey_thenOnlyInProgressKeyIsDeleted() {
+        // given
+        LocalDateTime now = LocalDateTime.now();
+        idempotencyKeyRepository.insert("ana", "key-running", "POST", "/api/v1/loans/", HASH, "en curso", now, now.plusMinutes(5));
+        idempotencyKeyRepository.insert("ana", "key-done", "POST", "/api/v1/loans/", HASH, "en curso", now, now.plusMinutes(5));
+        idempotencyKeyRepository.complete("ana", "key-done", "completado", 200, "application/json", "{}", now.plusHours(24));
+
+        // when
+        int deletedRunning = idempotencyKeyRepository.deleteByKeyAndStatus("ana", "key-running", "en curso");
+        int deletedDone = idempotencyKeyRepository.deleteByKeyAndStatus("ana", "key-done", "en curso");
+
+        // then
+        assertThat(deletedRunning).isEqualTo(1);
+        assertThat(deletedDone).isZero();
+        assertThat(idempotencyKeyRepository.existsById(new IdempotencyKeyId("ana", "key-done"))).isTrue();
+    }
+
+    @Test
+    public void whenPurgingExpiredKeys_thenValidKeysRemain() {
+        // given
+        LocalDateTime now = LocalDateTime.now();
+        idempotencyKeyRepository.insert("ana", "key-old", "POST", "/api/v1/loans/", HASH, "completado", now.minusDays(2), now.minusDays(1));
+        idempotencyKeyRepository.insert("ana", "key-new", "POST", "/api/v1/loans/", HASH, "completado", now, now.plusDays(1));
+
+        // when
+        int deleted = idempotencyKeyRepository.deleteExpired(now);
+
+        // then
+        assertThat(deleted).isGreaterThanOrEqualTo(1);
+        assertThat(idempotencyKeyRepository.existsById(new IdempotencyKeyId("ana", "key-old"))).isFalse();
+        assertThat(idempotencyKeyRepository.existsById(new IdempotencyKeyId("ana", "key-new"))).isTrue();
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.ToolRent.repositories;
+
+import com.example.ToolRent.dto.KardexMovementDTO;
+import com.example.ToolRent.entities.CategoryEntity;
+import com.example.ToolRent.entities.ToolEntity;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+Benchmark del listado paginado de movimientos con la tabla creciendo de 1k a 500k movimientos.
+No corre con mvn test, se ejecuta con: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+@DataJpaTest
+@ActiveProfiles("test")
+class KardexPageBenchmarkTest {
+
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 200;
+    private static final int PAGE_SIZE = 50;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private KardexRepository kardexRepository;
+
+    @Test
+    public void whenMovementsGrowTo500k_thenPageLatencyStaysFlat() {
+        // given
+        CategoryEntity category = entityManager.persist(new CategoryEntity(null, "Herramientas Eléctricas"));
+        ToolEntity tool = entityManager.persist(new ToolEntity(null, "Taladro", category, "disponible", 0L));
+        entityManager.flush();
+
+        insertMovements(tool.getId(), 1, 1_000);
+        long smallTable = medianNanos();
+
+        insertMovements(tool.getId(), 1_001, 500_000);
+        long largeTable = medianNanos();
+
+        System.out.printf("findMovementPageBefore mediana (%d por pagina): 1k movimientos %d us, 500k movimientos %d us%n",
+                PAGE_SIZE, smallTable / 1_000, largeTable / 1_000);
+
+        // then: cada pagina recorre el indice (date, id) desde el cursor, no depende del tamaño de la tabla
+        assertThat(largeTable).isLessThan(Math.max(smallTable * 5, 2_000_000L));
+    }
+
+    //Movimientos repartidos en los ultimos 10 años, insertados en bloque
+    private void insertMovements(Long toolId, int from, int to) {
+        entityManager.getEntityManager().createNativeQuery(
+                "INSERT INTO movimientos (id, type, date, username, tool_id, affected_amount) " +
+                        "SELECT 1000000 + x, 'ingreso', DATEADD(DAY, -MOD(x, 3650), CURRENT_DATE), 'admin', :toolId, 1 " +
+                        "FROM SYSTEM_RANGE(:from, :to)")
+                .setParameter("toolId", toolId).setParameter("from", from).setParameter("to", to).executeUpdate();
+    }
+
+    //Primera pagina y una pagina a partir del cursor de la primera
+    private long medianNanos() {
+        long[] samples = new long[ITERATIONS];
+        for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+            entityManager.clear();
+            long start = System.nanoTime();
+            List<KardexMovementDTO> first = kardexRepository.findMovementPage(PageRequest.of(0, PAGE_SIZE));
+            KardexMovementDTO last = first.get(first.size() - 1);
+            List<KardexMovementDTO> next = kardexRepository.findMovementPageBefore(
+                    last.getDate(), last.getId(), PageRequest.of(0, PAGE_SIZE));
+            long elapsed = System.nanoTime() - start;
+            assertThat(next).hasSize(PAGE_SIZE);
+            if (i >= WARMUP) {
+                samples[i - WARMUP] = elapsed;
+            }
+        }
+        Arrays.sort(samples);
+        return samples[ITERATIONS / 2];
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.ToolRent.repositories;
 
+import com.example.ToolRent.dto.KardexMovementDTO;
 import com.example.ToolRent.entities.CategoryEntity;
 import com.example.ToolRent.entities.KardexEntity;
 import com.example.ToolRent.entities.ToolEntity;
@@ -7,10 +8,13 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -28,7 +32,7 @@ class KardexRepositoryTest {
     public void whenFindByToolOrderByDateDesc_thenReturnMovementsOrderedByDate() {
         // given
         CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
-        ToolEntity tool = new ToolEntity(null, "Taladro", category, "AVAILABLE");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "AVAILABLE", 0L);
 
         entityManager.persist(category);
         entityManager.persist(tool);
@@ -59,8 +63,8 @@ class KardexRepositoryTest {
     public void whenFindByDateBetweenOrderByDateDesc_thenReturnMovementsInRange() {
         // given
         CategoryEntity category = new CategoryEntity(null, "Herramientas Manuales");
-        ToolEntity tool1 = new ToolEntity(null, "Martillo", category, "AVAILABLE");
-        ToolEntity tool2 = new ToolEntity(null, "Destornillador", category, "AVAILABLE");
+        ToolEntity tool1 = new ToolEntity(null, "Martillo", category, "AVAILABLE", 0L);
+        ToolEntity tool2 = new ToolEntity(null, "Destornillador", category, "AVAILABLE", 0L);
 
         entityManager.persist(category);
         entityManager.persist(tool1);
@@ -93,7 +97,7 @@ class KardexRepositoryTest {
     public void whenFindByToolIdAndDateBetween_thenReturnToolMovementsInRange() {
         // given
         CategoryEntity category = new CategoryEntity(null, "Equipo de Jardinería");
-        ToolEntity tool = new ToolEntity(null, "Cortacésped", category, "AVAILABLE");
+        ToolEntity tool = new ToolEntity(null, "Cortacésped", category, "AVAILABLE", 0L);
 
         entityManager.persist(category);
         entityManager.persist(tool);
@@ -125,4 +129,105 @@ class KardexRepositoryTest {
         assertThat(movements.get(1).getType()).isEqualTo("prestamo");
         assertThat(movements.get(2).getType()).isEqualTo("ingreso");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void whenStreamExportRows_thenReturnRowsInRangeOrderedByDateAndId() {
+        // given
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "AVAILABLE", 0L);
+
+        entityManager.persist(category);
+        entityManager.persist(tool);
+
+        KardexEntity movement1 = entityManager.persist(new KardexEntity(null, "prestamo",
+                LocalDate.of(2025, 11, 10), "empleado1", tool, 1));
+        KardexEntity movement2 = entityManager.persist(new KardexEntity(null, "ingreso",
+                LocalDate.of(2025, 11, 1), "admin", tool, 1));
+        KardexEntity movement3 = entityManager.persist(new KardexEntity(null, "devolucion",
+                LocalDate.of(2025, 11, 10), "empleado1", tool, 1));
+        entityManager.persist(new KardexEntity(null, "baja",
+                LocalDate.of(2025, 12, 1), "admin", tool, 1));
+        entityManager.flush();
+        entityManager.clear();
+
+        // when
+        List<KardexMovementDTO> rows;
+        try (Stream<KardexMovementDTO> stream = kardexRepository.streamExportRows(
+                LocalDate.of(2025, 11, 1), LocalDate.of(2025, 11, 30))) {
+            rows = stream.toList();
+        }
+
+        // then
+        assertThat(rows).extracting(KardexMovementDTO::getId)
+                .containsExactly(movement2.getId(), movement1.getId(), movement3.getId());
+        assertThat(rows.get(0).getToolName()).isEqualTo("Taladro");
+        assertThat(rows.get(0).getCategoryName()).isEqualTo("Herramientas Eléctricas");
+        assertThat(rows.get(0).getAffectedAmount()).isEqualTo(1);
+    }
+
+    @Test
+    public void whenFindMovementPageBefore_thenContinueAfterCursorWithoutSkippingSameDate() {
+        // given
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Manuales");
+        ToolEntity tool = new ToolEntity(null, "Martillo", category, "AVAILABLE", 0L);
+
+        entityManager.persist(category);
+        entityManager.persist(tool);
+
+        KardexEntity movement1 = entityManager.persist(new KardexEntity(null, "ingreso",
+                LocalDate.of(2025, 11, 1), "admin", tool, 1));
+        KardexEntity movement2 = entityManager.persist(new KardexEntity(null, "prestamo",
+                LocalDate.of(2025, 11, 10), "empleado1", tool, 1));
+        KardexEntity movement3 = entityManager.persist(new KardexEntity(null, "devolucion",
+                LocalDate.of(2025, 11, 10), "empleado1", tool, 1));
+        KardexEntity movement4 = entityManager.persist(new KardexEntity(null, "reparacion",
+                LocalDate.of(2025, 11, 20), "tecnico", tool, 1));
+        entityManager.flush();
+        entityManager.clear();
+
+        // when
+        List<KardexMovementDTO> firstPage = kardexRepository.findMovementPage(PageRequest.of(0, 2));
+        KardexMovementDTO last = firstPage.get(firstPage.size() - 1);
+        List<KardexMovementDTO> secondPage = kardexRepository.findMovementPageBefore(
+                last.getDate(), last.getId(), PageRequest.of(0, 2));
+
+        // then
+        assertThat(firstPage).extracting(KardexMovementDTO::getId).containsExactly(movement4.getId(), movement3.getId());
+        assertThat(secondPage).extracting(KardexMovementDTO::getId).containsExactly(movement2.getId(), movement1.getId());
+        assertThat(secondPage.get(0).getToolName()).isEqualTo("Martillo");
+        assertThat(secondPage.get(0).getCategoryName()).isEqualTo("Herramientas Manuales");
+    }
+
+    @Test
+    public void whenFindMovementsAfter_thenIncludeLowerIdsRecordedInsideTheWindow() {
+        // given: el movimiento de otra replica tiene id menor pero se registro despues
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "AVAILABLE", 0L);
+        entityManager.persist(category);
+        entityManager.persist(tool);
+
+        LocalDateTime received = LocalDateTime.of(2026, 10, 18, 12, 0);
+        KardexEntity otherReplica = new KardexEntity(null, "prestamo", LocalDate.of(2026, 10, 18), "admin", tool, 1,
+                received.plusSeconds(2));
+        KardexEntity old = new KardexEntity(null, "ingreso", LocalDate.of(2026, 10, 1), "admin", tool, 1,
+                received.minusHours(1));
+        KardexEntity last = new KardexEntity(null, "devolucion", LocalDate.of(2026, 10, 18), "admin", tool, 1, received);
+        KardexEntity newer = new KardexEntity(null, "baja", LocalDate.of(2026, 10, 18), "admin", tool, 1, null);
+        entityManager.persist(otherReplica);
+        entityManager.persist(old);
+        entityManager.persist(last);
+        entityManager.persist(newer);
+        entityManager.flush();
+
+        // when
+        List<KardexMovementDTO> missed = kardexRepository.findMovementsAfter(last.getId(), received.minusSeconds(10),
+                PageRequest.of(0, 10));
+
+        // then
+        assertThat(missed).extracting(KardexMovementDTO::getId).containsExactly(otherReplica.getId(), newer.getId());
+        assertThat(kardexRepository.findRecordedAt(last.getId())).isEqualTo(received);
+        assertThat(kardexRepository.findIdsRecordedSince(received)).containsExactlyInAnyOrder(otherReplica.getId(), last.getId());
+        assertThat(kardexRepository.findMovementsByIds(List.of(newer.getId(), otherReplica.getId())))
+                .extracting(KardexMovementDTO::getType).containsExactly("prestamo", "baja");
+    }
+}
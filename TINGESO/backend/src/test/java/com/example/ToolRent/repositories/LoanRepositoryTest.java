@@ -1,9 +1,11 @@
 package com.example.ToolRent.repositories;
 
+import com.example.ToolRent.dto.LoanAdmissionDTO;
 import com.example.ToolRent.entities.CategoryEntity;
 import com.example.ToolRent.entities.CustomerEntity;
 import com.example.ToolRent.entities.LoanEntity;
 import com.example.ToolRent.entities.ToolEntity;
+import com.example.ToolRent.entities.ToolsInventoryEntity;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
@@ -30,16 +32,16 @@ class LoanRepositoryTest {
     public void whenFindLoanById_thenReturnLoan() {
         // given
         CustomerEntity customer = new CustomerEntity(null, "Juan Pérez", "12345678-9",
-                "juan@email.com", "+56912345678", "ACTIVE");
+                "juan@email.com", "+56912345678", "ACTIVE", 0, 0, 0, 0);
         CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
-        ToolEntity tool = new ToolEntity(null, "Taladro", category, "AVAILABLE");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "AVAILABLE", 0L);
 
         entityManager.persist(customer);
         entityManager.persist(category);
         entityManager.persist(tool);
 
         LoanEntity loan = new LoanEntity(null, customer, tool,
-                LocalDate.now(), LocalDate.now().plusDays(5), "activo", 5000);
+                LocalDate.now(), LocalDate.now().plusDays(5), "activo", 5000, 0L);
         entityManager.persistAndFlush(loan);
 
         // when
@@ -54,9 +56,9 @@ class LoanRepositoryTest {
     public void whenFindByReturnDate_thenReturnLoans() {
         // given
         CustomerEntity customer = new CustomerEntity(null, "María González", "98765432-1",
-                "maria@email.com", "+56987654321", "ACTIVE");
+                "maria@email.com", "+56987654321", "ACTIVE", 0, 0, 0, 0);
         CategoryEntity category = new CategoryEntity(null, "Herramientas Manuales");
-        ToolEntity tool = new ToolEntity(null, "Martillo", category, "AVAILABLE");
+        ToolEntity tool = new ToolEntity(null, "Martillo", category, "AVAILABLE", 0L);
 
         entityManager.persist(customer);
         entityManager.persist(category);
@@ -64,9 +66,9 @@ class LoanRepositoryTest {
 
         LocalDate returnDate = LocalDate.of(2025, 12, 31);
         LoanEntity loan1 = new LoanEntity(null, customer, tool,
-                LocalDate.now(), returnDate, "activo", 3000);
+                LocalDate.now(), returnDate, "activo", 3000, 0L);
         LoanEntity loan2 = new LoanEntity(null, customer, tool,
-                LocalDate.now(), returnDate, "vencido", 3000);
+                LocalDate.now(), returnDate, "vencido", 3000, 0L);
         entityManager.persist(loan1);
         entityManager.persist(loan2);
         entityManager.flush();
@@ -83,18 +85,18 @@ class LoanRepositoryTest {
     public void whenFindByStatus_thenReturnLoans() {
         // given
         CustomerEntity customer = new CustomerEntity(null, "Pedro Silva", "11111111-1",
-                "pedro@email.com", "+56911111111", "ACTIVE");
+                "pedro@email.com", "+56911111111", "ACTIVE", 0, 0, 0, 0);
         CategoryEntity category = new CategoryEntity(null, "Equipo de Jardinería");
-        ToolEntity tool = new ToolEntity(null, "Cortacésped", category, "AVAILABLE");
+        ToolEntity tool = new ToolEntity(null, "Cortacésped", category, "AVAILABLE", 0L);
 
         entityManager.persist(customer);
         entityManager.persist(category);
         entityManager.persist(tool);
 
         LoanEntity loan1 = new LoanEntity(null, customer, tool,
-                LocalDate.now(), LocalDate.now().plusDays(3), "activo", 2000);
+                LocalDate.now(), LocalDate.now().plusDays(3), "activo", 2000, 0L);
         LoanEntity loan2 = new LoanEntity(null, customer, tool,
-                LocalDate.now(), LocalDate.now().plusDays(7), "activo", 4000);
+                LocalDate.now(), LocalDate.now().plusDays(7), "activo", 4000, 0L);
         entityManager.persist(loan1);
         entityManager.persist(loan2);
         entityManager.flush();
@@ -112,16 +114,16 @@ class LoanRepositoryTest {
     public void whenFindByCustomerRut_thenReturnLoans() {
         // given
         CustomerEntity customer = new CustomerEntity(null, "Ana Torres", "22222222-2",
-                "ana@email.com", "+56922222222", "ACTIVE");
+                "ana@email.com", "+56922222222", "ACTIVE", 0, 0, 0, 0);
         CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
-        ToolEntity tool = new ToolEntity(null, "Sierra", category, "AVAILABLE");
+        ToolEntity tool = new ToolEntity(null, "Sierra", category, "AVAILABLE", 0L);
 
         entityManager.persist(customer);
         entityManager.persist(category);
         entityManager.persist(tool);
 
         LoanEntity loan = new LoanEntity(null, customer, tool,
-                LocalDate.now(), LocalDate.now().plusDays(5), "activo", 3500);
+                LocalDate.now(), LocalDate.now().plusDays(5), "activo", 3500, 0L);
         entityManager.persistAndFlush(loan);
 
         // when
@@ -137,18 +139,18 @@ class LoanRepositoryTest {
     public void whenFindByCustomerRutAndStatus_thenReturnLoans() {
         // given
         CustomerEntity customer = new CustomerEntity(null, "Carlos Ramírez", "33333333-3",
-                "carlos@email.com", "+56933333333", "ACTIVE");
+                "carlos@email.com", "+56933333333", "ACTIVE", 0, 0, 0, 0);
         CategoryEntity category = new CategoryEntity(null, "Herramientas Manuales");
-        ToolEntity tool = new ToolEntity(null, "Destornillador", category, "AVAILABLE");
+        ToolEntity tool = new ToolEntity(null, "Destornillador", category, "AVAILABLE", 0L);
 
         entityManager.persist(customer);
         entityManager.persist(category);
         entityManager.persist(tool);
 
         LoanEntity loan1 = new LoanEntity(null, customer, tool,
-                LocalDate.now(), LocalDate.now().plusDays(3), "activo", 1500);
+                LocalDate.now(), LocalDate.now().plusDays(3), "activo", 1500, 0L);
         LoanEntity loan2 = new LoanEntity(null, customer, tool,
-                LocalDate.now(), LocalDate.now().minusDays(1), "vencido", 2000);
+                LocalDate.now(), LocalDate.now().minusDays(1), "vencido", 2000, 0L);
         entityManager.persist(loan1);
         entityManager.persist(loan2);
         entityManager.flush();
@@ -166,9 +168,9 @@ class LoanRepositoryTest {
     public void whenFindActiveLoansByDateRange_thenReturnLoans() {
         // given
         CustomerEntity customer = new CustomerEntity(null, "Laura Díaz", "44444444-4",
-                "laura@email.com", "+56944444444", "ACTIVE");
+                "laura@email.com", "+56944444444", "ACTIVE", 0, 0, 0, 0);
         CategoryEntity category = new CategoryEntity(null, "Equipo de Construcción");
-        ToolEntity tool = new ToolEntity(null, "Taladro", category, "AVAILABLE");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "AVAILABLE", 0L);
 
         entityManager.persist(customer);
         entityManager.persist(category);
@@ -178,9 +180,9 @@ class LoanRepositoryTest {
         LocalDate endDate = LocalDate.of(2025, 11, 30);
 
         LoanEntity loan1 = new LoanEntity(null, customer, tool,
-                LocalDate.of(2025, 11, 10), LocalDate.of(2025, 11, 15), "activo", 2500);
+                LocalDate.of(2025, 11, 10), LocalDate.of(2025, 11, 15), "activo", 2500, 0L);
         LoanEntity loan2 = new LoanEntity(null, customer, tool,
-                LocalDate.of(2025, 11, 20), LocalDate.of(2025, 11, 25), "vencido", 3000);
+                LocalDate.of(2025, 11, 20), LocalDate.of(2025, 11, 25), "vencido", 3000, 0L);
         entityManager.persist(loan1);
         entityManager.persist(loan2);
         entityManager.flush();
@@ -196,20 +198,20 @@ class LoanRepositoryTest {
     public void whenFindAllActiveLoans_thenReturnLoans() {
         // given
         CustomerEntity customer = new CustomerEntity(null, "Roberto Vega", "55555555-5",
-                "roberto@email.com", "+56955555555", "ACTIVE");
+                "roberto@email.com", "+56955555555", "ACTIVE", 0, 0, 0, 0);
         CategoryEntity category = new CategoryEntity(null, "Herramientas de Medición");
-        ToolEntity tool = new ToolEntity(null, "Nivel", category, "AVAILABLE");
+        ToolEntity tool = new ToolEntity(null, "Nivel", category, "AVAILABLE", 0L);
 
         entityManager.persist(customer);
         entityManager.persist(category);
         entityManager.persist(tool);
 
         LoanEntity loan1 = new LoanEntity(null, customer, tool,
-                LocalDate.now(), LocalDate.now().plusDays(5), "activo", 2000);
+                LocalDate.now(), LocalDate.now().plusDays(5), "activo", 2000, 0L);
         LoanEntity loan2 = new LoanEntity(null, customer, tool,
-                LocalDate.now(), LocalDate.now().minusDays(1), "vencido", 2500);
+                LocalDate.now(), LocalDate.now().minusDays(1), "vencido", 2500, 0L);
         LoanEntity loan3 = new LoanEntity(null, customer, tool,
-                LocalDate.now(), LocalDate.now().plusDays(3), "finalizado", 1500);
+                LocalDate.now(), LocalDate.now().plusDays(3), "finalizado", 1500, 0L);
         entityManager.persist(loan1);
         entityManager.persist(loan2);
         entityManager.persist(loan3);
@@ -226,10 +228,10 @@ class LoanRepositoryTest {
     public void whenFindMostRentedToolsByDateRange_thenReturnRanking() {
         // given
         CustomerEntity customer = new CustomerEntity(null, "Sandra López", "66666666-6",
-                "sandra@email.com", "+56966666666", "ACTIVE");
+                "sandra@email.com", "+56966666666", "ACTIVE", 0, 0, 0, 0);
         CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
-        ToolEntity tool1 = new ToolEntity(null, "Taladro", category, "AVAILABLE");
-        ToolEntity tool2 = new ToolEntity(null, "Sierra", category, "AVAILABLE");
+        ToolEntity tool1 = new ToolEntity(null, "Taladro", category, "AVAILABLE", 0L);
+        ToolEntity tool2 = new ToolEntity(null, "Sierra", category, "AVAILABLE", 0L);
 
         entityManager.persist(customer);
         entityManager.persist(category);
@@ -240,11 +242,11 @@ class LoanRepositoryTest {
         LocalDate endDate = LocalDate.of(2025, 11, 30);
 
         LoanEntity loan1 = new LoanEntity(null, customer, tool1,
-                LocalDate.of(2025, 11, 5), LocalDate.of(2025, 11, 10), "finalizado", 2500);
+                LocalDate.of(2025, 11, 5), LocalDate.of(2025, 11, 10), "finalizado", 2500, 0L);
         LoanEntity loan2 = new LoanEntity(null, customer, tool1,
-                LocalDate.of(2025, 11, 15), LocalDate.of(2025, 11, 20), "finalizado", 2500);
+                LocalDate.of(2025, 11, 15), LocalDate.of(2025, 11, 20), "finalizado", 2500, 0L);
         LoanEntity loan3 = new LoanEntity(null, customer, tool2,
-                LocalDate.of(2025, 11, 25), LocalDate.of(2025, 11, 28), "activo", 1500);
+                LocalDate.of(2025, 11, 25), LocalDate.of(2025, 11, 28), "activo", 1500, 0L);
         entityManager.persist(loan1);
         entityManager.persist(loan2);
         entityManager.persist(loan3);
@@ -263,18 +265,18 @@ class LoanRepositoryTest {
     public void whenFindMostRentedTools_thenReturnRanking() {
         // given
         CustomerEntity customer = new CustomerEntity(null, "Diego Morales", "77777777-7",
-                "diego@email.com", "+56977777777", "ACTIVE");
+                "diego@email.com", "+56977777777", "ACTIVE", 0, 0, 0, 0);
         CategoryEntity category = new CategoryEntity(null, "Herramientas Manuales");
-        ToolEntity tool = new ToolEntity(null, "Martillo", category, "AVAILABLE");
+        ToolEntity tool = new ToolEntity(null, "Martillo", category, "AVAILABLE", 0L);
 
         entityManager.persist(customer);
         entityManager.persist(category);
         entityManager.persist(tool);
 
         LoanEntity loan1 = new LoanEntity(null, customer, tool,
-                LocalDate.now(), LocalDate.now().plusDays(3), "activo", 1500);
+                LocalDate.now(), LocalDate.now().plusDays(3), "activo", 1500, 0L);
         LoanEntity loan2 = new LoanEntity(null, customer, tool,
-                LocalDate.now(), LocalDate.now().plusDays(5), "finalizado", 2000);
+                LocalDate.now(), LocalDate.now().plusDays(5), "finalizado", 2000, 0L);
         entityManager.persist(loan1);
         entityManager.persist(loan2);
         entityManager.flush();
@@ -287,4 +289,225 @@ class LoanRepositoryTest {
         assertThat(ranking.get(0)[0]).isEqualTo("Martillo");
         assertThat(ranking.get(0)[2]).isEqualTo(2L);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void whenFindLoanAdmission_thenReturnCountSameToolStockAndRate() {
+        // given
+        CustomerEntity customer = new CustomerEntity(null, "Rosa Vidal", "17171717-1",
+                "rosa@email.com", "+56917171717", "activo", 2, 0, 0, 0);
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        ToolEntity drill = new ToolEntity(null, "Taladro", category, "prestada", 0L);
+        ToolEntity saw = new ToolEntity(null, "Sierra", category, "prestada", 0L);
+        ToolsInventoryEntity drillInventory = new ToolsInventoryEntity(null, "Taladro", "Herramientas Eléctricas",
+                5, 3, 50000, 4000, 0L);
+
+        entityManager.persist(customer);
+        entityManager.persist(category);
+        entityManager.persist(drill);
+        entityManager.persist(saw);
+        entityManager.persist(drillInventory);
+        entityManager.persist(new LoanEntity(null, customer, drill,
+                LocalDate.now().minusDays(2), LocalDate.now().plusDays(2), "activo", 5000, 0L));
+        entityManager.persist(new LoanEntity(null, customer, saw,
+                LocalDate.now().minusDays(2), LocalDate.now().plusDays(2), "activo", 5000, 0L));
+        entityManager.persist(new LoanEntity(null, customer, saw,
+                LocalDate.now().minusDays(9), LocalDate.now().minusDays(5), "finalizado", 5000, 0L));
+        entityManager.flush();
+
+        // when
+        LoanAdmissionDTO sameTool = loanRepository.findLoanAdmission("17171717-1", "Taladro", "Herramientas Eléctricas").get();
+        LoanAdmissionDTO notInInventory = loanRepository.findLoanAdmission("17171717-1", "Lijadora", "Herramientas Eléctricas").get();
+        Optional<LoanAdmissionDTO> unknownCustomer = loanRepository.findLoanAdmission("00000000-0", "Taladro", "Herramientas Eléctricas");
+
+        // then
+        assertThat(sameTool.getActiveLoans()).isEqualTo(2L);
+        assertThat(sameTool.getSameToolLoaned()).isTrue();
+        assertThat(sameTool.getCurrentStock()).isEqualTo(3);
+        assertThat(sameTool.getDailyRentalRate()).isEqualTo(4000);
+        assertThat(sameTool.getCustomerId()).isEqualTo(customer.getId());
+        assertThat(sameTool.getCustomerStatus()).isEqualTo("activo");
+        assertThat(notInInventory.getActiveLoans()).isEqualTo(2L);
+        assertThat(notInInventory.getSameToolLoaned()).isFalse();
+        assertThat(notInInventory.hasAvailableStock()).isFalse();
+        assertThat(unknownCustomer).isEmpty();
+    }
+
+    @Test
+    public void whenFindActiveLoanToolFamilies_thenReturnNameAndCategoryOfActiveLoans() {
+        // given
+        CustomerEntity customer = new CustomerEntity(null, "Ines Soto", "18181818-1",
+                "ines@email.com", "+56918181818", "activo", 0, 0, 0, 0);
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        ToolEntity drill = new ToolEntity(null, "Taladro", category, "prestada", 0L);
+        ToolEntity saw = new ToolEntity(null, "Sierra", category, "disponible", 0L);
+
+        entityManager.persist(customer);
+        entityManager.persist(category);
+        entityManager.persist(drill);
+        entityManager.persist(saw);
+        entityManager.persist(new LoanEntity(null, customer, drill,
+                LocalDate.now().minusDays(2), LocalDate.now().plusDays(2), "activo", 5000, 0L));
+        entityManager.persist(new LoanEntity(null, customer, saw,
+                LocalDate.now().minusDays(9), LocalDate.now().minusDays(5), "finalizado", 5000, 0L));
+        entityManager.flush();
+
+        // when
+        List<Object[]> families = loanRepository.findActiveLoanToolFamilies(customer.getId());
+
+        // then
+        assertThat(families).hasSize(1);
+        assertThat(families.get(0)).containsExactly("Taladro", "Herramientas Eléctricas");
+    }
+
+    @Test
+    public void whenFindAllForReturn_thenReturnLoansWithToolAndCustomer() {
+        // given
+        CustomerEntity customer = new CustomerEntity(null, "Olga Pinto", "21212121-1",
+                "olga@email.com", "+56921212121", "activo", 0, 0, 0, 0);
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        ToolEntity drill = new ToolEntity(null, "Taladro", category, "prestada", 0L);
+
+        entityManager.persist(customer);
+        entityManager.persist(category);
+        entityManager.persist(drill);
+        LoanEntity first = new LoanEntity(null, customer, drill,
+                LocalDate.now().minusDays(2), LocalDate.now().plusDays(2), "activo", 5000, 0L);
+        LoanEntity second = new LoanEntity(null, customer, drill,
+                LocalDate.now().minusDays(2), LocalDate.now().plusDays(2), "activo", 5000, 0L);
+        LoanEntity notRequested = new LoanEntity(null, customer, drill,
+                LocalDate.now().minusDays(2), LocalDate.now().plusDays(2), "activo", 5000, 0L);
+        entityManager.persist(first);
+        entityManager.persist(second);
+        entityManager.persist(notRequested);
+        entityManager.flush();
+        entityManager.clear();
+
+        // when
+        List<LoanEntity> loans = loanRepository.findAllForReturn(List.of(first.getId(), second.getId()));
+
+        // then
+        assertThat(loans).hasSize(2);
+        assertThat(loans).extracting(LoanEntity::getId).containsExactlyInAnyOrder(first.getId(), second.getId());
+        assertThat(loans.get(0).getTool().getCategory().getName()).isEqualTo("Herramientas Eléctricas");
+        assertThat(loans.get(0).getCustomer().getRut()).isEqualTo("21212121-1");
+    }
+
+    @Test
+    public void whenMarkOverdueLoans_thenOnlyDueActiveLoansBecomeOverdue() {
+        // given
+        CustomerEntity customer = new CustomerEntity(null, "Luis Torres", "13131313-1",
+                "luis@email.com", "+56913131313", "activo", 0, 0, 0, 0);
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "prestada", 0L);
+
+        entityManager.persist(customer);
+        entityManager.persist(category);
+        entityManager.persist(tool);
+
+        LoanEntity dueLoan = new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(5), LocalDate.now().minusDays(1), "activo", 5000, 0L);
+        LoanEntity dueTodayLoan = new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(5), LocalDate.now(), "activo", 5000, 0L);
+        LoanEntity finishedLoan = new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(5), LocalDate.now().minusDays(1), "finalizado", 5000, 0L);
+        entityManager.persist(dueLoan);
+        entityManager.persist(dueTodayLoan);
+        entityManager.persist(finishedLoan);
+        entityManager.flush();
+
+        // when
+        int updated = loanRepository.markOverdueLoans(LocalDate.now(), 0L, Long.MAX_VALUE);
+        entityManager.clear();
+
+        // then
+        assertThat(updated).isEqualTo(1);
+        assertThat(loanRepository.findById(dueLoan.getId()).get().getStatus()).isEqualTo("vencido");
+        assertThat(loanRepository.findById(dueTodayLoan.getId()).get().getStatus()).isEqualTo("activo");
+        assertThat(loanRepository.findById(finishedLoan.getId()).get().getStatus()).isEqualTo("finalizado");
+    }
+
+    @Test
+    public void whenMarkOverdueLoansInIdRange_thenOnlyLoansInRangeBecomeOverdue() {
+        // given
+        CustomerEntity customer = new CustomerEntity(null, "Pedro Rojas", "14141414-1",
+                "pedro@email.com", "+56914141414", "activo", 0, 0, 0, 0);
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "prestada", 0L);
+
+        entityManager.persist(customer);
+        entityManager.persist(category);
+        entityManager.persist(tool);
+
+        LoanEntity firstLoan = new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(5), LocalDate.now().minusDays(1), "activo", 5000, 0L);
+        LoanEntity secondLoan = new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(5), LocalDate.now().minusDays(1), "activo", 5000, 0L);
+        entityManager.persist(firstLoan);
+        entityManager.persist(secondLoan);
+        entityManager.flush();
+
+        // when
+        List<Object[]> range = loanRepository.findLoanIdRange();
+        int updated = loanRepository.markOverdueLoans(LocalDate.now(), firstLoan.getId(), firstLoan.getId());
+        entityManager.clear();
+
+        // then
+        assertThat(range.get(0)[0]).isEqualTo(firstLoan.getId());
+        assertThat(range.get(0)[1]).isEqualTo(secondLoan.getId());
+        assertThat(updated).isEqualTo(1);
+        assertThat(loanRepository.findById(firstLoan.getId()).get().getStatus()).isEqualTo("vencido");
+        assertThat(loanRepository.findById(secondLoan.getId()).get().getStatus()).isEqualTo("activo");
+    }
+
+    @Test
+    public void whenMarkLoanAsOverdue_thenOnlyFirstCallUpdates() {
+        // given
+        CustomerEntity customer = new CustomerEntity(null, "Marta Fuentes", "16161616-1",
+                "marta@email.com", "+56916161616", "activo", 0, 0, 0, 0);
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "prestada", 0L);
+
+        entityManager.persist(customer);
+        entityManager.persist(category);
+        entityManager.persist(tool);
+
+        LoanEntity loan = new LoanEntity(null, customer, tool,
+                LocalDate.now().minusDays(5), LocalDate.now().minusDays(1), "activo", 5000, 0L);
+        entityManager.persistAndFlush(loan);
+
+        // when
+        int first = loanRepository.markLoanAsOverdue(loan.getId(), LocalDate.now());
+        int second = loanRepository.markLoanAsOverdue(loan.getId(), LocalDate.now());
+
+        // then
+        assertThat(first).isEqualTo(1);
+        assertThat(second).isZero();
+    }
+
+    @Test
+    public void whenFindActiveLoanReturnDates_thenReturnOnlyActiveLoans() {
+        // given
+        CustomerEntity customer = new CustomerEntity(null, "Tomás Reyes", "17171717-1",
+                "tomas@email.com", "+56917171717", "activo", 0, 0, 0, 0);
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "prestada", 0L);
+
+        entityManager.persist(customer);
+        entityManager.persist(category);
+        entityManager.persist(tool);
+
+        LocalDate returnDate = LocalDate.now().plusDays(3);
+        LoanEntity activeLoan = new LoanEntity(null, customer, tool, LocalDate.now(), returnDate, "activo", 5000, 0L);
+        entityManager.persist(activeLoan);
+        entityManager.persist(new LoanEntity(null, customer, tool, LocalDate.now(), returnDate, "finalizado", 5000, 0L));
+        entityManager.flush();
+
+        // when
+        List<Object[]> rows = loanRepository.findActiveLoanReturnDates();
+
+        // then
+        assertThat(rows).hasSize(1);
+        assertThat(rows.get(0)[0]).isEqualTo(activeLoan.getId());
+        assertThat(rows.get(0)[1]).isEqualTo(returnDate);
+    }
+}
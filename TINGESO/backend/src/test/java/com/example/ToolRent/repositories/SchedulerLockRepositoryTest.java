@@ -0,0 +1,90 @@
+package com.example.ToolRent.repositories;
+
+import com.example.ToolRent.entities.SchedulerLockEntity;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+//Sin transaccion de prueba, cada operacion del arriendo se confirma por separado como entre nodos reales
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SchedulerLockRepositoryTest {
+
+    @Autowired
+    private SchedulerLockRepository schedulerLockRepository;
+
+    @Test
+    public void whenInsertLease_thenExpiryIsComputedWithTheDatabaseClock() {
+        // when
+        schedulerLockRepository.insert("job-clock", "node-a", 30L);
+
+        // then
+        SchedulerLockEntity lock = schedulerLockRepository.findById("job-clock").get();
+        assertThat(Duration.between(lock.getLockedAt(), lock.getLockedUntil())).isEqualTo(Duration.ofSeconds(30));
+    }
+
+    @Test
+    public void whenAnotherNodeHoldsValidLease_thenAcquireFails() {
+        // given
+        schedulerLockRepository.insert("job-valid", "node-a", 30L);
+
+        // when
+        int acquiredByB = schedulerLockRepository.acquire("job-valid", "node-b", 30L);
+        int renewedByA = schedulerLockRepository.acquire("job-valid", "node-a", 30L);
+
+        // then
+        assertThat(acquiredByB).isZero();
+        assertThat(renewedByA).isEqualTo(1);
+        assertThat(schedulerLockRepository.findById("job-valid").get().getLockedBy()).isEqualTo("node-a");
+    }
+
+    @Test
+    public void whenLeaseExpires_thenAnotherNodeTakesOver() {
+        // given: un arriendo de duracion cero ya vencio para la base de datos
+        schedulerLockRepository.insert("job-expired", "node-a", 0L);
+
+        // when
+        int acquiredByB = schedulerLockRepository.acquire("job-expired", "node-b", 30L);
+
+        // then
+        assertThat(acquiredByB).isEqualTo(1);
+        assertThat(schedulerLockRepository.findById("job-expired").get().getLockedBy()).isEqualTo("node-b");
+    }
+
+    @Test
+    public void whenLeaseIsReleased_thenAnotherNodeTakesOverImmediately() {
+        // given
+        schedulerLockRepository.insert("job-released", "node-a", 30L);
+
+        // when
+        int releasedByB = schedulerLockRepository.release("job-released", "node-b");
+        int releasedByA = schedulerLockRepository.release("job-released", "node-a");
+        int acquiredByB = schedulerLockRepository.acquire("job-released", "node-b", 30L);
+
+        // then
+        assertThat(releasedByB).isZero();
+        assertThat(releasedByA).isEqualTo(1);
+        assertThat(acquiredByB).isEqualTo(1);
+    }
+
+    @Test
+    public void whenTwoNodesInsertSameLease_thenSecondInsertFails() {
+        // given
+        schedulerLockRepository.insert("job-insert", "node-a", 30L);
+
+        // when & then
+        assertThatThrownBy(() -> schedulerLockRepository.insert("job-insert", "node-b", 30L))
+                .isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(schedulerLockRepository.findById("job-insert").get().getLockedBy()).isEqualTo("node-a");
+    }
+}
@@ -2,16 +2,20 @@ package com.example.ToolRent.repositories;
 
 import com.example.ToolRent.entities.CategoryEntity;
 import com.example.ToolRent.entities.ToolEntity;
+import com.example.ToolRent.entities.ToolsInventoryEntity;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @DataJpaTest
 @ActiveProfiles("test")
@@ -29,8 +33,8 @@ class ToolRepositoryTest {
         CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
         entityManager.persist(category);
 
-        ToolEntity tool1 = new ToolEntity(null, "Taladro", category, "AVAILABLE");
-        ToolEntity tool2 = new ToolEntity(null, "Taladro", category, "RENTED");
+        ToolEntity tool1 = new ToolEntity(null, "Taladro", category, "AVAILABLE", 0L);
+        ToolEntity tool2 = new ToolEntity(null, "Taladro", category, "RENTED", 0L);
         entityManager.persist(tool1);
         entityManager.persist(tool2);
         entityManager.flush();
@@ -42,14 +46,62 @@ class ToolRepositoryTest {
         assertThat(foundTools).hasSize(2).extracting(ToolEntity::getName).containsOnly("Taladro");
     }
 
+    @Test
+    public void whenSaveToolWithStaleVersion_thenThrowOptimisticLockingFailure() {
+        // given
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        entityManager.persist(category);
+        ToolEntity tool = new ToolEntity(null, "Sierra", category, "disponible", 0L);
+        entityManager.persist(tool);
+        entityManager.flush();
+        ToolEntity stale = new ToolEntity(tool.getId(), "Sierra", category, "prestada", tool.getVersion());
+
+        tool.setStatus("en reparacion");
+        entityManager.flush();
+        entityManager.clear();
+
+        // when & then
+        assertThatThrownBy(() -> toolRepository.saveAndFlush(stale))
+                .isInstanceOf(ObjectOptimisticLockingFailureException.class);
+    }
+
+    @Test
+    public void whenFindToolsWithInventory_thenReturnEachToolWithItsInventory() {
+        // given
+        CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
+        entityManager.persist(category);
+        ToolEntity drill = new ToolEntity(null, "Taladro", category, "disponible", 0L);
+        ToolEntity sander = new ToolEntity(null, "Lijadora", category, "disponible", 0L);
+        ToolsInventoryEntity drillInventory = new ToolsInventoryEntity(null, "Taladro", "Herramientas Eléctricas",
+                3, 2, 50000, 4000, 0L);
+        entityManager.persist(drill);
+        entityManager.persist(sander);
+        entityManager.persist(drillInventory);
+        entityManager.flush();
+
+        // when
+        List<Object[]> rows = toolRepository.findToolsWithInventory(List.of(drill.getId(), sander.getId()));
+
+        // then
+        assertThat(rows).hasSize(2);
+        for (Object[] row : rows) {
+            ToolEntity tool = (ToolEntity) row[0];
+            if (tool.getId().equals(drill.getId())) {
+                assertThat(((ToolsInventoryEntity) row[1]).getDailyRentalRate()).isEqualTo(4000);
+            } else {
+                assertThat(row[1]).isNull();
+            }
+        }
+    }
+
     @Test
     public void whenFindByStatus_thenReturnTools() {
         // given
         CategoryEntity category = new CategoryEntity(null, "Herramientas Manuales");
         entityManager.persist(category);
 
-        ToolEntity tool1 = new ToolEntity(null, "Martillo", category, "AVAILABLE");
-        ToolEntity tool2 = new ToolEntity(null, "Destornillador", category, "AVAILABLE");
+        ToolEntity tool1 = new ToolEntity(null, "Martillo", category, "AVAILABLE", 0L);
+        ToolEntity tool2 = new ToolEntity(null, "Destornillador", category, "AVAILABLE", 0L);
         entityManager.persist(tool1);
         entityManager.persist(tool2);
         entityManager.flush();
@@ -67,8 +119,8 @@ class ToolRepositoryTest {
         CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
         entityManager.persist(category);
 
-        ToolEntity tool1 = new ToolEntity(null, "Taladro", category, "AVAILABLE");
-        ToolEntity tool2 = new ToolEntity(null, "Sierra", category, "RENTED");
+        ToolEntity tool1 = new ToolEntity(null, "Taladro", category, "AVAILABLE", 0L);
+        ToolEntity tool2 = new ToolEntity(null, "Sierra", category, "RENTED", 0L);
         entityManager.persist(tool1);
         entityManager.persist(tool2);
         entityManager.flush();
@@ -88,7 +140,7 @@ class ToolRepositoryTest {
         CategoryEntity category = new CategoryEntity(null, "Equipo de Jardinería");
         entityManager.persist(category);
 
-        ToolEntity tool = new ToolEntity(null, "Cortacésped", category, "AVAILABLE");
+        ToolEntity tool = new ToolEntity(null, "Cortacésped", category, "AVAILABLE", 0L);
         entityManager.persistAndFlush(tool);
 
         // when
@@ -105,7 +157,7 @@ class ToolRepositoryTest {
         CategoryEntity category = new CategoryEntity(null, "Herramientas Eléctricas");
         entityManager.persist(category);
 
-        ToolEntity tool = new ToolEntity(null, "Taladro", category, "AVAILABLE");
+        ToolEntity tool = new ToolEntity(null, "Taladro", category, "AVAILABLE", 0L);
         entityManager.persistAndFlush(tool);
 
         // when
@@ -116,4 +168,31 @@ class ToolRepositoryTest {
         assertThat(found.get().getName()).isEqualTo("Taladro");
         assertThat(found.get().getCategory().getName()).isEqualTo("Herramientas Eléctricas");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void whenLockAvailableTool_thenReturnOneFreeUnitOfThatModel() {
+        // given
+        CategoryEntity electric = new CategoryEntity(null, "Herramientas Eléctricas");
+        CategoryEntity manual = new CategoryEntity(null, "Herramientas Manuales");
+        entityManager.persist(electric);
+        entityManager.persist(manual);
+        ToolEntity borrowed = new ToolEntity(null, "Taladro", electric, "prestada", 0L);
+        ToolEntity otherCategory = new ToolEntity(null, "Taladro", manual, "disponible", 0L);
+        ToolEntity free = new ToolEntity(null, "Taladro", electric, "disponible", 0L);
+        ToolEntity freeToo = new ToolEntity(null, "Taladro", electric, "disponible", 0L);
+        entityManager.persist(borrowed);
+        entityManager.persist(otherCategory);
+        entityManager.persist(free);
+        entityManager.persist(freeToo);
+        entityManager.flush();
+
+        // when
+        List<ToolEntity> locked = toolRepository.lockAvailableTool("Taladro", "Herramientas Eléctricas", PageRequest.of(0, 1));
+        List<ToolEntity> none = toolRepository.lockAvailableTool("Sierra", "Herramientas Eléctricas", PageRequest.of(0, 1));
+
+        // then
+        assertThat(locked).hasSize(1);
+        assertThat(locked.get(0).getId()).isEqualTo(free.getId());
+        assertThat(none).isEmpty();
+    }
+}
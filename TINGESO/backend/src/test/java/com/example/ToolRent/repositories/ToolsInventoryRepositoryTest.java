@@ -31,7 +31,7 @@ class ToolsInventoryRepositoryTest {
                 10,
                 7,
                 50000,
-                5000);
+                5000, 0L);
         entityManager.persistAndFlush(inventory);
 
         // when
@@ -54,7 +54,7 @@ class ToolsInventoryRepositoryTest {
                 15,
                 12,
                 10000,
-                2000);
+                2000, 0L);
         ToolsInventoryEntity inventory2 = new ToolsInventoryEntity(
                 null,
                 "Martillo",
@@ -62,7 +62,7 @@ class ToolsInventoryRepositoryTest {
                 8,
                 5,
                 30000,
-                4000);
+                4000, 0L);
         entityManager.persist(inventory1);
         entityManager.persist(inventory2);
         entityManager.flush();
@@ -88,7 +88,7 @@ class ToolsInventoryRepositoryTest {
                 10,
                 7,
                 50000,
-                5000);
+                5000, 0L);
         ToolsInventoryEntity inventory2 = new ToolsInventoryEntity(
                 null,
                 "Sierra",
@@ -96,7 +96,7 @@ class ToolsInventoryRepositoryTest {
                 5,
                 3,
                 40000,
-                4500);
+                4500, 0L);
         ToolsInventoryEntity inventory3 = new ToolsInventoryEntity(
                 null,
                 "Martillo",
@@ -104,7 +104,7 @@ class ToolsInventoryRepositoryTest {
                 15,
                 12,
                 10000,
-                2000);
+                2000, 0L);
         entityManager.persist(inventory1);
         entityManager.persist(inventory2);
         entityManager.persist(inventory3);
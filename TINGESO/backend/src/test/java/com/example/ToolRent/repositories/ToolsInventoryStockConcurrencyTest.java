@@ -0,0 +1,96 @@
+package com.example.ToolRent.repositories;
+
+import com.example.ToolRent.entities.ToolsInventoryEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//Sin transaccion de prueba, cada reserva se confirma en su propia transaccion como en prestamos concurrentes reales
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ToolsInventoryStockConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int ATTEMPTS = 40;
+
+    @Autowired
+    private ToolsInventoryRepository toolsInventoryRepository;
+
+    @AfterEach
+    void cleanUp() {
+        toolsInventoryRepository.deleteAll();
+    }
+
+    private List<Future<Integer>> runConcurrently(Callable<Integer> task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < ATTEMPTS; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return results;
+    }
+
+    @Test
+    public void whenConcurrentReservations_thenStockNeverGoesNegative() throws Exception {
+        // given
+        ToolsInventoryEntity inventory = toolsInventoryRepository.save(
+                new ToolsInventoryEntity(null, "Taladro", "Herramientas Eléctricas", 10, 10, 50000, 4000, 0L));
+
+        // when
+        List<Future<Integer>> results = runConcurrently(
+                () -> toolsInventoryRepository.reserveStock("Taladro", "Herramientas Eléctricas"));
+
+        // then
+        int reserved = 0;
+        for (Future<Integer> result : results) {
+            reserved += result.get();
+        }
+        ToolsInventoryEntity updated = toolsInventoryRepository.findById(inventory.getId()).get();
+        assertThat(reserved).isEqualTo(10);
+        assertThat(updated.getCurrentStock()).isZero();
+        //Cada reserva exitosa incrementa la version
+        assertThat(updated.getVersion()).isEqualTo(inventory.getVersion() + 10);
+    }
+
+    @Test
+    public void whenConcurrentReservationsAndReleases_thenNoUpdateIsLost() throws Exception {
+        // given
+        ToolsInventoryEntity inventory = toolsInventoryRepository.save(
+                new ToolsInventoryEntity(null, "Sierra", "Herramientas Eléctricas", 100, 50, 40000, 3000, 0L));
+
+        // when
+        runConcurrently(() -> toolsInventoryRepository.reserveStock("Sierra", "Herramientas Eléctricas")
+                + toolsInventoryRepository.releaseStock("Sierra", "Herramientas Eléctricas", 1)
+                + toolsInventoryRepository.reserveStock("Sierra", "Herramientas Eléctricas"));
+
+        // then
+        assertThat(toolsInventoryRepository.findById(inventory.getId()).get().getCurrentStock()).isEqualTo(50 - ATTEMPTS);
+    }
+}
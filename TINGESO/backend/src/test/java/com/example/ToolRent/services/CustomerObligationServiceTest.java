@@ -0,0 +1,90 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.dto.CustomerObligationsDTO;
+import com.example.ToolRent.repositories.CustomerRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class CustomerObligationServiceTest {
+
+    @Mock
+    private CustomerRepository customerRepository;
+
+    @Mock
+    private SchedulerLockService schedulerLockService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private CustomerObligationService customerObligationService;
+
+    @Test
+    void whenGetObligations_thenReturnCustomerCounters() {
+        // Given
+        when(customerRepository.findObligations(1L)).thenReturn(Optional.of(new CustomerObligationsDTO(2, 0, 0, 0)));
+
+        // When
+        CustomerObligationsDTO obligations = customerObligationService.getObligations(1L);
+
+        // Then
+        assertThat(obligations.getActiveLoans()).isEqualTo(2);
+        assertThat(obligations.canBeActivated()).isTrue();
+    }
+
+    @Test
+    void whenGetObligationsOfUnknownCustomer_thenThrowException() {
+        // Given
+        when(customerRepository.findObligations(9L)).thenReturn(Optional.empty());
+
+        // When & Then
+        assertThatThrownBy(() -> customerObligationService.getObligations(9L))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Cliente con id 9 no encontrado");
+    }
+
+    @Test
+    void whenReconcile_thenLockAndRecountEachDriftedCustomer() {
+        // Given
+        when(customerRepository.findCustomersWithDriftedObligations()).thenReturn(List.of(1L, 2L));
+        when(customerRepository.lockById(1L)).thenReturn(Optional.of(1L));
+        when(customerRepository.lockById(2L)).thenReturn(Optional.empty());
+        when(customerRepository.reconcileObligations(1L)).thenReturn(1);
+
+        // When
+        int fixed = customerObligationService.reconcile();
+
+        // Then
+        assertThat(fixed).isEqualTo(1);
+        verify(customerRepository, never()).reconcileObligations(2L);
+        verify(transactionManager, times(2)).commit(any());
+    }
+
+    @Test
+    void whenAnotherNodeHoldsTheLease_thenDoNotReconcile() {
+        // Given
+        when(schedulerLockService.holdJobLease(CustomerObligationService.RECONCILE_JOB)).thenReturn(false);
+
+        // When
+        customerObligationService.reconcileObligations();
+
+        // Then
+        verify(customerRepository, never()).findCustomersWithDriftedObligations();
+    }
+}
@@ -1,6 +1,9 @@
 package com.example.ToolRent.services;
 
 
+import com.example.ToolRent.dto.FinePaymentChecksDTO;
+import com.example.ToolRent.dto.FineSummaryDTO;
+import com.example.ToolRent.dto.KeysetSliceDTO;
 import com.example.ToolRent.entities.*;
 import com.example.ToolRent.repositories.*;
 import org.assertj.core.api.Assertions;
@@ -19,6 +22,7 @@ import java.util.Optional;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -415,6 +419,7 @@ public class FineServiceTest {
         assertThat(result.getStatus()).isEqualTo("no pagada");
         verify(loanRepository).save(any(LoanEntity.class));
         verify(toolService).decommissionedTool(1L);
+        verify(customerRepository).adjustObligations(1L, 0, 0, -1, 1);
     }
 
     @Test
@@ -510,16 +515,72 @@ public class FineServiceTest {
     }
 
 
+    // ==================== searchFines ====================
+
+    @Test
+    void whenSearchFinesWithMoreResultsThanPageSize_thenReturnSliceWithNextCursor() {
+        //Given: el repositorio entrega una fila extra
+        List<FineSummaryDTO> rows = List.of(
+                new FineSummaryDTO(30L, "12345678-9", "Juan Perez", 3L, LocalDate.now(), LocalDate.now(), "atraso", 3000, "no pagada"),
+                new FineSummaryDTO(20L, "12345678-9", "Juan Perez", 2L, LocalDate.now(), LocalDate.now(), "atraso", 2000, "no pagada"),
+                new FineSummaryDTO(10L, "12345678-9", "Juan Perez", 1L, LocalDate.now(), LocalDate.now(), "atraso", 1000, "no pagada"));
+        when(fineRepository.searchFines(any(), any(LocalDate.class), eq(3))).thenReturn(rows);
+
+        //When
+        KeysetSliceDTO<FineSummaryDTO> result = fineService.searchFines("12345678-9", "no pagada", null,
+                null, null, null, null, null, 2);
+
+        //Then
+        assertThat(result.getItems().size()).isEqualTo(2);
+        assertThat(result.isHasNext()).isTrue();
+        assertThat(result.getNextCursor()).isEqualTo(20L);
+    }
+
+    @Test
+    void whenSearchFinesWithLastPage_thenReturnSliceWithoutCursor() {
+        //Given
+        List<FineSummaryDTO> rows = List.of(
+                new FineSummaryDTO(10L, "12345678-9", "Juan Perez", 1L, LocalDate.now(), LocalDate.now(), "atraso", 1000, "no pagada"));
+        when(fineRepository.searchFines(any(), any(LocalDate.class), eq(21))).thenReturn(rows);
+
+        //When
+        KeysetSliceDTO<FineSummaryDTO> result = fineService.searchFines(null, null, null,
+                null, null, null, null, 20L, 20);
+
+        //Then
+        assertThat(result.getItems().size()).isEqualTo(1);
+        assertThat(result.isHasNext()).isFalse();
+        assertThat(result.getNextCursor()).isNull();
+    }
+
+    @Test
+    void whenSearchFinesWithInvalidParameters_thenThrowException() {
+        //When & Then
+        assertThatThrownBy(() -> fineService.searchFines(null, null, null, null, null, null, null, null, 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("El tamaño de página debe estar entre 1 y 100");
+        assertThatThrownBy(() -> fineService.searchFines(null, null, null, 5000, 1000, null, null, null, 20))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("El valor mínimo no puede ser mayor al valor máximo");
+        assertThatThrownBy(() -> fineService.searchFines(null, null, null, null, null,
+                LocalDate.now(), LocalDate.now().minusDays(1), null, 20))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("La fecha de inicio no puede ser posterior a la fecha de término");
+        verify(fineRepository, never()).searchFines(any(), any(), anyInt());
+    }
+
+
     // ==================== payFine ====================
 
     @Test
     void whenPayFineWithLoanInEvaluacionPendiente_thenOnlyUpdateFineStatus() {
         //Given
+        when(fineRepository.findById(1L)).thenReturn(Optional.of(fineEntity));
         loanEntity.setStatus("evaluación pendiente");
         when(fineRepository.save(any(FineEntity.class))).thenReturn(fineEntity);
 
         //When
-        FineEntity result = fineService.payFine(fineEntity);
+        FineEntity result = fineService.payFine(1L);
 
         //Then
         assertThat(result.getStatus()).isEqualTo("pagada");
@@ -529,51 +590,58 @@ public class FineServiceTest {
     }
 
     @Test
-    void whenPayFineWithAnotherFineForSameLoan_thenOnlyUpdateFineStatus() {
+    void whenPayAccruingLateFine_thenFreezeFineValue() {
         //Given
-        loanEntity.setStatus("multa pendiente");
-        FineEntity anotherFine = new FineEntity();
-        anotherFine.setId(2L);
-        anotherFine.setLoan(loanEntity);
-        anotherFine.setStatus("no pagada");
+        when(fineRepository.findById(1L)).thenReturn(Optional.of(fineEntity));
+        loanEntity.setStatus("evaluación pendiente");
+        fineEntity.setType("atraso");
+        fineEntity.setFineValue(0);
+        fineEntity.setAccrualStartDate(LocalDate.now().minusDays(5));
+        fineEntity.setAccrualEndDate(LocalDate.now().minusDays(2));
+        fineEntity.setDailyFineRate(1000);
+        when(fineRepository.save(any(FineEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        //When
+        FineEntity result = fineService.payFine(1L);
 
-        List<FineEntity> unpaidFines = new ArrayList<>();
-        unpaidFines.add(anotherFine);
+        //Then
+        assertThat(result.getStatus()).isEqualTo("pagada");
+        assertThat(result.isAccruing()).isFalse();
+        assertThat(result.getFineValue()).isEqualTo(3000);
+    }
 
-        when(fineRepository.findByStatus("no pagada")).thenReturn(Optional.of(unpaidFines));
+    @Test
+    void whenPayFineWithAnotherFineForSameLoan_thenOnlyUpdateFineStatus() {
+        //Given: la otra multa del mismo prestamo sigue sin pagar
+        when(fineRepository.findById(1L)).thenReturn(Optional.of(fineEntity));
+        loanEntity.setStatus("multa pendiente");
+        when(fineRepository.findFinePaymentChecks(1L, 1L, 1L))
+                .thenReturn(Optional.of(new FinePaymentChecksDTO(true, true, false)));
         when(fineRepository.save(any(FineEntity.class))).thenReturn(fineEntity);
 
         //When
-        FineEntity result = fineService.payFine(fineEntity);
+        FineEntity result = fineService.payFine(1L);
 
         //Then
         assertThat(result.getStatus()).isEqualTo("pagada");
         verify(fineRepository).save(any(FineEntity.class));
         verify(loanRepository, never()).save(any(LoanEntity.class));
+        verify(fineRepository, never()).findByStatus(any());
     }
 
 
     @Test
     void whenPayFineWithAnotherFineForSameCustomer_thenUpdateFineAndLoan() {
         //Given
+        when(fineRepository.findById(1L)).thenReturn(Optional.of(fineEntity));
         loanEntity.setStatus("multa pendiente");
-        FineEntity anotherFine = new FineEntity();
-        anotherFine.setId(2L);
-        anotherFine.setCustomer(customerEntity);
-        anotherFine.setStatus("no pagada");
-        LoanEntity anotherLoan = new LoanEntity();
-        anotherLoan.setId(2L);
-        anotherFine.setLoan(anotherLoan);
-
-        List<FineEntity> unpaidFines = new ArrayList<>();
-        unpaidFines.add(anotherFine);
-
-        when(fineRepository.findByStatus("no pagada")).thenReturn(Optional.of(unpaidFines));
+        when(fineRepository.findFinePaymentChecks(1L, 1L, 1L))
+                .thenReturn(Optional.of(new FinePaymentChecksDTO(false, true, false)));
         when(loanRepository.save(any(LoanEntity.class))).thenReturn(loanEntity);
         when(fineRepository.save(any(FineEntity.class))).thenReturn(fineEntity);
 
         //When
-        FineEntity result = fineService.payFine(fineEntity);
+        FineEntity result = fineService.payFine(1L);
 
         //Then
         assertThat(result.getStatus()).isEqualTo("pagada");
@@ -586,23 +654,15 @@ public class FineServiceTest {
     @Test
     void whenPayFineWithAnotherLoanInEvaluacionPendiente_thenUpdateFineAndLoan() {
         //Given
+        when(fineRepository.findById(1L)).thenReturn(Optional.of(fineEntity));
         loanEntity.setStatus("multa pendiente");
-        LoanEntity anotherLoan = new LoanEntity();
-        anotherLoan.setId(2L);
-        anotherLoan.setCustomer(customerEntity);
-        anotherLoan.setStatus("evaluación pendiente");
-
-        List<FineEntity> unpaidFines = new ArrayList<>();
-        List<LoanEntity> loansWithPendingEvaluation = new ArrayList<>();
-        loansWithPendingEvaluation.add(anotherLoan);
-
-        when(fineRepository.findByStatus("no pagada")).thenReturn(Optional.of(unpaidFines));
-        when(loanService.findLoanByStatus("evaluación pendiente")).thenReturn((ArrayList<LoanEntity>) loansWithPendingEvaluation);
+        when(fineRepository.findFinePaymentChecks(1L, 1L, 1L))
+                .thenReturn(Optional.of(new FinePaymentChecksDTO(false, false, true)));
         when(loanRepository.save(any(LoanEntity.class))).thenReturn(loanEntity);
         when(fineRepository.save(any(FineEntity.class))).thenReturn(fineEntity);
 
         //When
-        FineEntity result = fineService.payFine(fineEntity);
+        FineEntity result = fineService.payFine(1L);
 
         //Then
         assertThat(result.getStatus()).isEqualTo("pagada");
@@ -616,34 +676,55 @@ public class FineServiceTest {
     @Test
     void whenPayFineWithNoRestrictions_thenUpdateAllEntities() {
         //Given
+        when(fineRepository.findById(1L)).thenReturn(Optional.of(fineEntity));
         loanEntity.setStatus("multa pendiente");
-        List<FineEntity> unpaidFines = new ArrayList<>();
-        List<LoanEntity> loansWithPendingEvaluation = new ArrayList<>();
 
-        when(fineRepository.findByStatus("no pagada")).thenReturn(Optional.of(unpaidFines));
-        when(loanService.findLoanByStatus("evaluación pendiente")).thenReturn((ArrayList<LoanEntity>) loansWithPendingEvaluation);
+        when(fineRepository.findFinePaymentChecks(1L, 1L, 1L))
+                .thenReturn(Optional.of(new FinePaymentChecksDTO(false, false, false)));
         when(customerRepository.save(any(CustomerEntity.class))).thenReturn(customerEntity);
         when(loanRepository.save(any(LoanEntity.class))).thenReturn(loanEntity);
         when(fineRepository.save(any(FineEntity.class))).thenReturn(fineEntity);
 
         //When
-        FineEntity result = fineService.payFine(fineEntity);
+        FineEntity result = fineService.payFine(1L);
 
         //Then
         assertThat(result.getStatus()).isEqualTo("pagada");
+        verify(customerRepository).adjustObligations(1L, 0, 0, 0, -1);
         verify(customerRepository).save(any(CustomerEntity.class));
         verify(loanRepository).save(any(LoanEntity.class));
         verify(fineRepository).save(any(FineEntity.class));
     }
 
+    @Test
+    void whenPayFineWithAnotherOverdueLoan_thenCustomerStaysRestricted() {
+        //Given: el otro prestamo vencido tiene su multa por atraso no pagada
+        when(fineRepository.findById(1L)).thenReturn(Optional.of(fineEntity));
+        loanEntity.setStatus("multa pendiente");
+        customerEntity.setStatus("restringido");
+        when(fineRepository.findFinePaymentChecks(1L, 1L, 1L))
+                .thenReturn(Optional.of(new FinePaymentChecksDTO(false, true, false)));
+        when(fineRepository.save(any(FineEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        //When
+        FineEntity result = fineService.payFine(1L);
+
+        //Then
+        assertThat(result.getStatus()).isEqualTo("pagada");
+        assertThat(loanEntity.getStatus()).isEqualTo("finalizado con multa");
+        assertThat(customerEntity.getStatus()).isEqualTo("restringido");
+        verify(customerRepository, never()).save(any(CustomerEntity.class));
+    }
+
 
     @Test
     void whenPayFineWithAlreadyPaidFine_thenThrowException() {
         //Given
+        when(fineRepository.findById(1L)).thenReturn(Optional.of(fineEntity));
         fineEntity.setStatus("pagada");
 
         //When & Then
-        assertThatThrownBy(() -> fineService.payFine(fineEntity))
+        assertThatThrownBy(() -> fineService.payFine(1L))
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessage("El estado de la multa no es correcto");
     }
@@ -651,10 +732,11 @@ public class FineServiceTest {
     @Test
     void whenPayFineWithActiveLoan_thenThrowException() {
         //Given
+        when(fineRepository.findById(1L)).thenReturn(Optional.of(fineEntity));
         loanEntity.setStatus("activo");
 
         //When & Then
-        assertThatThrownBy(() -> fineService.payFine(fineEntity))
+        assertThatThrownBy(() -> fineService.payFine(1L))
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessage("El estado del prestamo no es correcto");
     }
@@ -662,12 +744,128 @@ public class FineServiceTest {
     @Test
     void whenPayFineWithVencidoLoan_thenThrowException() {
         //Given
+        when(fineRepository.findById(1L)).thenReturn(Optional.of(fineEntity));
         loanEntity.setStatus("vencido");
 
         //When & Then
-        assertThatThrownBy(() -> fineService.payFine(fineEntity))
+        assertThatThrownBy(() -> fineService.payFine(1L))
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessage("El estado del prestamo no es correcto");
     }
 
+    @Test
+    void whenPayFineNotFound_thenThrowException() {
+        //Given
+        when(fineRepository.findById(99L)).thenReturn(Optional.empty());
+
+        //When & Then
+        assertThatThrownBy(() -> fineService.payFine(99L))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Multa con ID 99 no encontrada");
+    }
+
+
+    // ==================== payAllFines ====================
+
+    @Test
+    void whenPayAllFinesWithNoOtherObligations_thenPayFinesFinishLoansAndActivateCustomer() {
+        //Given: dos multas del mismo prestamo y una de otro prestamo
+        customerEntity.setStatus("restringido");
+        loanEntity.setStatus("multa pendiente");
+        LoanEntity anotherLoan = new LoanEntity();
+        anotherLoan.setId(2L);
+        anotherLoan.setCustomer(customerEntity);
+        anotherLoan.setStatus("multa pendiente");
+        FineEntity damageFine = new FineEntity(2L, customerEntity, loanEntity, "daño leve", 3000, "no pagada", null, null, null, null);
+        FineEntity anotherFine = new FineEntity(3L, customerEntity, anotherLoan, "atraso", 2000, "no pagada", null, null, null, null);
+
+        when(customerRepository.findByRut("12345678-9")).thenReturn(Optional.of(customerEntity));
+        when(fineRepository.findUnpaidFinesWithLoanByCustomerId(1L)).thenReturn(List.of(fineEntity, damageFine, anotherFine));
+        when(fineRepository.existsByCustomerIdAndStatus(1L, "no pagada")).thenReturn(false);
+        when(loanRepository.existsByCustomerIdAndStatus(1L, "evaluación pendiente")).thenReturn(false);
+
+        //When
+        List<FineEntity> result = fineService.payAllFines("12345678-9");
+
+        //Then
+        Assertions.assertThat(result).extracting(FineEntity::getStatus).containsOnly("pagada");
+        assertThat(loanEntity.getStatus()).isEqualTo("finalizado con multa");
+        assertThat(anotherLoan.getStatus()).isEqualTo("finalizado con multa");
+        assertThat(customerEntity.getStatus()).isEqualTo("activo");
+        verify(customerRepository).lockById(1L);
+        verify(fineRepository).saveAll(List.of(fineEntity, damageFine, anotherFine));
+        verify(loanRepository).saveAll(List.of(loanEntity, anotherLoan));
+        verify(customerRepository).adjustObligations(1L, 0, 0, 0, -3);
+        verify(customerRepository).save(customerEntity);
+        verify(fineRepository, never()).save(any(FineEntity.class));
+    }
+
+    @Test
+    void whenPayAllFinesWithLoanInEvaluacionPendiente_thenCustomerStaysRestricted() {
+        //Given
+        customerEntity.setStatus("restringido");
+        loanEntity.setStatus("evaluación pendiente");
+        fineEntity.setFineValue(0);
+        fineEntity.setAccrualStartDate(LocalDate.now().minusDays(4));
+        fineEntity.setAccrualEndDate(LocalDate.now().minusDays(1));
+        fineEntity.setDailyFineRate(1000);
+
+        when(customerRepository.findByRut("12345678-9")).thenReturn(Optional.of(customerEntity));
+        when(fineRepository.findUnpaidFinesWithLoanByCustomerId(1L)).thenReturn(List.of(fineEntity));
+        when(fineRepository.existsByCustomerIdAndStatus(1L, "no pagada")).thenReturn(false);
+        when(loanRepository.existsByCustomerIdAndStatus(1L, "evaluación pendiente")).thenReturn(true);
+
+        //When
+        List<FineEntity> result = fineService.payAllFines("12345678-9");
+
+        //Then: el valor de la multa queda fijo y el prestamo sigue esperando la multa por daños
+        assertThat(result.get(0).getStatus()).isEqualTo("pagada");
+        assertThat(result.get(0).getFineValue()).isEqualTo(3000);
+        assertThat(loanEntity.getStatus()).isEqualTo("evaluación pendiente");
+        assertThat(customerEntity.getStatus()).isEqualTo("restringido");
+        verify(loanRepository).saveAll(List.of());
+        verify(customerRepository).adjustObligations(1L, 0, 0, 0, -1);
+        verify(customerRepository, never()).save(any(CustomerEntity.class));
+    }
+
+    @Test
+    void whenPayAllFinesWithVencidoLoan_thenThrowExceptionAndPayNothing() {
+        //Given
+        loanEntity.setStatus("vencido");
+        when(customerRepository.findByRut("12345678-9")).thenReturn(Optional.of(customerEntity));
+        when(fineRepository.findUnpaidFinesWithLoanByCustomerId(1L)).thenReturn(List.of(fineEntity));
+
+        //When & Then
+        assertThatThrownBy(() -> fineService.payAllFines("12345678-9"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("El estado del prestamo 1 no es correcto");
+        assertThat(fineEntity.getStatus()).isEqualTo("no pagada");
+        verify(fineRepository, never()).saveAll(any());
+        verify(customerRepository, never()).adjustObligations(any(), anyInt(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    void whenPayAllFinesWithoutUnpaidFines_thenThrowException() {
+        //Given
+        when(customerRepository.findByRut("12345678-9")).thenReturn(Optional.of(customerEntity));
+        when(fineRepository.findUnpaidFinesWithLoanByCustomerId(1L)).thenReturn(List.of());
+
+        //When & Then
+        assertThatThrownBy(() -> fineService.payAllFines("12345678-9"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("El cliente no tiene multas no pagadas");
+    }
+
+    @Test
+    void whenPayAllFinesWithUnknownRut_thenThrowException() {
+        //Given
+        when(customerRepository.findByRut("11111111-1")).thenReturn(Optional.empty());
+
+        //When & Then
+        assertThatThrownBy(() -> fineService.payAllFines("11111111-1"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Cliente con rut 11111111-1 no encontrado");
+        verify(fineRepository, never()).findUnpaidFinesWithLoanByCustomerId(any());
+    }
+
 }
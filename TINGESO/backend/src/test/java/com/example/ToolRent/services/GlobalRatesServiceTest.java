@@ -1,6 +1,7 @@
 package com.example.ToolRent.services;
 
 import com.example.ToolRent.entities.GlobalRatesEntity;
+import com.example.ToolRent.repositories.FineRepository;
 import com.example.ToolRent.repositories.GlobalRatesRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -24,6 +25,9 @@ class GlobalRatesServiceTest {
     @Mock
     private GlobalRatesRepository globalRatesRepository;
 
+    @Mock
+    private FineRepository fineRepository;
+
     @InjectMocks
     private GlobalRatesService globalRatesService;
 
@@ -253,6 +257,25 @@ class GlobalRatesServiceTest {
         assertThat(result.getDailyRateValue()).isEqualTo(newValue);
         verify(globalRatesRepository, times(1)).findById(id);
         verify(globalRatesRepository, times(1)).save(globalRatesEntity);
+        verify(fineRepository, never()).updateAccruingLateFineRate(anyInt());
+    }
+
+    @Test
+    void whenUpdateDailyFineRate_thenUpdateAccruingLateFines() {
+        //Given
+        Long id = 1L;
+        Integer newValue = 3000;
+        globalRatesEntity.setRateName("tarifa diaria de multa");
+        when(globalRatesRepository.findById(id))
+                .thenReturn(Optional.of(globalRatesEntity));
+        when(globalRatesRepository.save(any(GlobalRatesEntity.class)))
+                .thenReturn(globalRatesEntity);
+
+        //When
+        globalRatesService.updateValueRate(id, newValue);
+
+        //Then
+        verify(fineRepository, times(1)).updateAccruingLateFineRate(newValue);
     }
 
     @Test
@@ -0,0 +1,175 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.entities.IdempotencyKeyEntity;
+import com.example.ToolRent.entities.IdempotencyKeyId;
+import com.example.ToolRent.repositories.IdempotencyKeyRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class IdempotencyServiceTest {
+
+    private static final IdempotencyKeyId ID = new IdempotencyKeyId("ana", "k1");
+    private static final String HASH = "0".repeat(64);
+
+    @Mock
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @InjectMocks
+    private IdempotencyService idempotencyService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(idempotencyService, "ttlHours", 24L);
+        ReflectionTestUtils.setField(idempotencyService, "processingTimeoutSeconds", 300L);
+        ReflectionTestUtils.setField(idempotencyService, "cacheSize", 100);
+    }
+
+    @Test
+    void whenKeyIsNew_thenRegisterItAndExecuteOperation() {
+        // Given
+        when(idempotencyKeyRepository.findById(ID)).thenReturn(Optional.empty());
+        when(idempotencyKeyRepository.insert(eq("ana"), eq("k1"), eq("POST"), eq("/api/v1/loans/"), eq(HASH), eq("en curso"), any(), any()))
+                .thenReturn(1);
+
+        // When
+        Optional<IdempotencyKeyEntity> previous = idempotencyService.begin("ana", "k1", "POST", "/api/v1/loans/", HASH);
+
+        // Then
+        assertThat(previous.isPresent()).isFalse();
+    }
+
+    @Test
+    void whenKeyIsCompleted_thenReturnStoredResponse() {
+        // Given
+        LocalDateTime now = LocalDateTime.now();
+        IdempotencyKeyEntity stored = new IdempotencyKeyEntity("ana", "k1", "POST", "/api/v1/loans/", HASH, "completado",
+                200, "application/json", "{\"id\":1}", now, now.plusHours(1));
+        when(idempotencyKeyRepository.findById(ID)).thenReturn(Optional.of(stored));
+
+        // When
+        Optional<IdempotencyKeyEntity> previous = idempotencyService.begin("ana", "k1", "POST", "/api/v1/loans/", HASH);
+
+        // Then
+        assertThat(previous.get().getResponseBody()).isEqualTo("{\"id\":1}");
+        verify(idempotencyKeyRepository, never()).insert(any(), any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void whenKeyWasCompletedOnThisNode_thenReplayFromCacheWithoutQuery() {
+        // Given
+        when(idempotencyKeyRepository.complete(eq("ana"), eq("k1"), eq("completado"), eq(200), eq("application/json"),
+                eq("{\"id\":1}"), any())).thenReturn(1);
+        idempotencyService.complete("ana", "k1", "POST", "/api/v1/loans/", HASH, 200, "application/json", "{\"id\":1}");
+
+        // When
+        Optional<IdempotencyKeyEntity> first = idempotencyService.begin("ana", "k1", "POST", "/api/v1/loans/", HASH);
+        Optional<IdempotencyKeyEntity> second = idempotencyService.begin("ana", "k1", "POST", "/api/v1/loans/", HASH);
+
+        // Then
+        assertThat(first.get().getStatus()).isEqualTo("completado");
+        assertThat(second.get().getResponseStatus()).isEqualTo(200);
+        assertThat(second.get().getRequestHash()).isEqualTo(HASH);
+        verify(idempotencyKeyRepository, never()).findById(any());
+    }
+
+    @Test
+    void whenAnotherUserSendsSameKey_thenItIsANewKey() {
+        // Given: ana completo k1 en este nodo
+        when(idempotencyKeyRepository.complete(eq("ana"), eq("k1"), any(), any(), any(), any(), any())).thenReturn(1);
+        idempotencyService.complete("ana", "k1", "POST", "/api/v1/loans/", HASH, 200, "application/json", "{\"id\":1}");
+        IdempotencyKeyId luisKey = new IdempotencyKeyId("luis", "k1");
+        when(idempotencyKeyRepository.findById(luisKey)).thenReturn(Optional.empty());
+        when(idempotencyKeyRepository.insert(eq("luis"), eq("k1"), any(), any(), any(), any(), any(), any())).thenReturn(1);
+
+        // When
+        Optional<IdempotencyKeyEntity> previous = idempotencyService.begin("luis", "k1", "POST", "/api/v1/loans/", HASH);
+
+        // Then
+        assertThat(previous.isPresent()).isFalse();
+    }
+
+    @Test
+    void whenKeyIsUsedOnAnotherOperation_thenThrowException() {
+        // Given
+        LocalDateTime now = LocalDateTime.now();
+        IdempotencyKeyEntity stored = new IdempotencyKeyEntity("ana", "k1", "POST", "/api/v1/loans/", HASH, "completado",
+                200, "application/json", "{}", now, now.plusHours(1));
+        when(idempotencyKeyRepository.findById(ID)).thenReturn(Optional.of(stored));
+
+        // When & Then
+        assertThatThrownBy(() -> idempotencyService.begin("ana", "k1", "PUT", "/api/v1/fines/", HASH))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("La Idempotency-Key ya fue usada en otra operación");
+    }
+
+    @Test
+    void whenStoredKeyIsExpired_thenDeleteItAndRegisterAgain() {
+        // Given
+        LocalDateTime now = LocalDateTime.now();
+        IdempotencyKeyEntity expired = new IdempotencyKeyEntity("ana", "k1", "POST", "/api/v1/loans/", HASH, "completado",
+                200, "application/json", "{}", now.minusDays(2), now.minusDays(1));
+        when(idempotencyKeyRepository.findById(ID)).thenReturn(Optional.of(expired));
+        when(idempotencyKeyRepository.insert(eq("ana"), eq("k1"), any(), any(), any(), any(), any(), any())).thenReturn(1);
+
+        // When
+        Optional<IdempotencyKeyEntity> previous = idempotencyService.begin("ana", "k1", "POST", "/api/v1/loans/", HASH);
+
+        // Then
+        assertThat(previous.isPresent()).isFalse();
+        verify(idempotencyKeyRepository).deleteExpiredKey(eq("ana"), eq("k1"), any());
+    }
+
+    @Test
+    void whenAnotherRequestRegistersKeyConcurrently_thenReturnInProgress() {
+        // Given
+        LocalDateTime now = LocalDateTime.now();
+        IdempotencyKeyEntity running = new IdempotencyKeyEntity("ana", "k1", "POST", "/api/v1/loans/", HASH, "en curso",
+                null, null, null, now, now.plusMinutes(5));
+        when(idempotencyKeyRepository.findById(ID)).thenReturn(Optional.empty(), Optional.of(running));
+        when(idempotencyKeyRepository.insert(eq("ana"), eq("k1"), any(), any(), any(), any(), any(), any()))
+                .thenThrow(new DataIntegrityViolationException("duplicada"));
+
+        // When
+        Optional<IdempotencyKeyEntity> previous = idempotencyService.begin("ana", "k1", "POST", "/api/v1/loans/", HASH);
+
+        // Then
+        assertThat(previous.get().getStatus()).isEqualTo("en curso");
+        verify(idempotencyKeyRepository, times(2)).findById(ID);
+    }
+
+    @Test
+    void whenKeyIsTooLong_thenThrowException() {
+        // When & Then
+        assertThatThrownBy(() -> idempotencyService.begin("ana", "k".repeat(101), "POST", "/api/v1/loans/", HASH))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("La Idempotency-Key no puede tener mas de 100 caracteres");
+    }
+
+    @Test
+    void whenReleasingKey_thenDeleteOnlyInProgressRow() {
+        // When
+        idempotencyService.release("ana", "k1");
+
+        // Then
+        verify(idempotencyKeyRepository).deleteByKeyAndStatus("ana", "k1", "en curso");
+    }
+}
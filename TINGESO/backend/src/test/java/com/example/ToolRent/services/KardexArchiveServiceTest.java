@@ -0,0 +1,309 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.dto.StockAtDateDTO;
+import com.example.ToolRent.entities.CategoryEntity;
+import com.example.ToolRent.entities.KardexEntity;
+import com.example.ToolRent.entities.ToolEntity;
+import com.example.ToolRent.entities.ToolsInventoryEntity;
+import com.example.ToolRent.repositories.CategoryRepository;
+import com.example.ToolRent.repositories.KardexRepository;
+import com.example.ToolRent.repositories.KardexRollupRepository;
+import com.example.ToolRent.repositories.StockSnapshotRepository;
+import com.example.ToolRent.repositories.ToolRepository;
+import com.example.ToolRent.repositories.ToolsInventoryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//Sin transaccion de prueba: el archivo escribe y borra en sus propias transacciones
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({KardexArchiveService.class, KardexArchiveStore.class, StockHistoryService.class, KardexRollupService.class,
+        SchedulerLockService.class, KardexService.class})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+class KardexArchiveServiceTest {
+
+    //Con horizonte de 24 meses se archiva hasta septiembre de 2024
+    private static final LocalDate TODAY = LocalDate.of(2026, 10, 18);
+
+    @TempDir
+    Path archiveDir;
+
+    @Autowired
+    private KardexArchiveService kardexArchiveService;
+
+    @Autowired
+    private KardexArchiveStore kardexArchiveStore;
+
+    @Autowired
+    private StockHistoryService stockHistoryService;
+
+    @Autowired
+    private KardexRollupService kardexRollupService;
+
+    @Autowired
+    private KardexService kardexService;
+
+    @MockitoBean
+    private KardexWriter kardexWriter;
+
+    @Autowired
+    private KardexRepository kardexRepository;
+
+    @Autowired
+    private KardexRollupRepository kardexRollupRepository;
+
+    @Autowired
+    private StockSnapshotRepository stockSnapshotRepository;
+
+    @Autowired
+    private ToolRepository toolRepository;
+
+    @Autowired
+    private ToolsInventoryRepository toolsInventoryRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    private CategoryEntity category;
+    private ToolEntity drill;
+    private ToolEntity saw;
+    private ToolsInventoryEntity drillInventory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        kardexArchiveStore.directory = archiveDir.toString();
+        kardexArchiveStore.blockSize = 512;
+        kardexArchiveStore.rescanSeconds = 60;
+        kardexArchiveStore.loadSegments();
+        kardexArchiveService.horizonMonths = 24;
+
+        category = categoryRepository.save(new CategoryEntity(null, "herramientas eléctricas"));
+        drill = toolRepository.save(new ToolEntity(null, "taladro", category, "disponible", 0L));
+        saw = toolRepository.save(new ToolEntity(null, "sierra", category, "disponible", 0L));
+        drillInventory = toolsInventoryRepository.save(
+                new ToolsInventoryEntity(null, "taladro", "herramientas eléctricas", 1, 0, 50000, 5000, 0L));
+        toolsInventoryRepository.save(new ToolsInventoryEntity(null, "sierra", "herramientas eléctricas", 1, 1, 80000, 7000, 0L));
+
+        kardexRepository.saveAll(List.of(
+                movement("ingreso", LocalDate.of(2024, 8, 5), drill),
+                movement("ingreso", LocalDate.of(2024, 8, 5), saw),
+                movement("préstamo", LocalDate.of(2024, 9, 10), drill),
+                movement("devolución", LocalDate.of(2024, 10, 2), drill),
+                movement("préstamo", LocalDate.of(2026, 10, 1), drill)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        kardexRollupRepository.deleteAll();
+        stockSnapshotRepository.deleteAll();
+        kardexRepository.deleteAll();
+        toolRepository.deleteAll();
+        toolsInventoryRepository.deleteAll();
+        categoryRepository.deleteAll();
+    }
+
+    private KardexEntity movement(String type, LocalDate date, ToolEntity tool) {
+        return new KardexEntity(null, type, date, "testuser", tool, 1);
+    }
+
+    @Test
+    void whenArchive_thenOldMonthsMoveToSegmentsAndReadsStillSeeThem() {
+        // When
+        int archived = kardexArchiveService.archive(TODAY);
+
+        // Then
+        assertThat(archived).isEqualTo(3);
+        assertThat(kardexRepository.count()).isEqualTo(2);
+        assertThat(archiveDir.resolve("movimientos_2024_08.seg")).exists();
+        assertThat(archiveDir.resolve("movimientos_2024_09.seg")).exists();
+        assertThat(kardexArchiveStore.archivedBefore()).isEqualTo(LocalDate.of(2024, 10, 1));
+
+        List<KardexEntity> drillHistory = kardexArchiveStore.findToolMovements(drill.getId(), null, null);
+        assertThat(drillHistory).extracting(KardexEntity::getType).containsExactly("ingreso", "préstamo");
+        assertThat(drillHistory.get(0).getTool().getName()).isEqualTo("taladro");
+        assertThat(kardexArchiveStore.findMovements(LocalDate.of(2024, 8, 1), LocalDate.of(2024, 8, 31)))
+                .extracting(movement -> movement.getTool().getName())
+                .containsExactlyInAnyOrder("taladro", "sierra");
+    }
+
+    @Test
+    void whenLeaseIsLost_thenArchiveStopsBeforeTheNextMonth() {
+        // Given: el arriendo se renueva para las fotos de las dos herramientas y para agosto, despues se pierde
+        int[] heartbeats = {0};
+
+        // When
+        int archived = kardexArchiveService.archive(TODAY, () -> ++heartbeats[0] <= 3);
+
+        // Then
+        assertThat(archived).isEqualTo(2);
+        assertThat(archiveDir.resolve("movimientos_2024_08.seg")).exists();
+        assertThat(archiveDir.resolve("movimientos_2024_09.seg")).doesNotExist();
+        assertThat(kardexRepository.count()).isEqualTo(3);
+    }
+
+    @Test
+    void whenAnotherReplicaArchives_thenThisReplicaOpensTheNewSegments() throws Exception {
+        // Given: otra replica con el mismo directorio abrio sus segmentos antes del archivo
+        KardexArchiveStore otherReplica = new KardexArchiveStore();
+        otherReplica.toolRepository = toolRepository;
+        otherReplica.directory = archiveDir.toString();
+        otherReplica.blockSize = 512;
+        otherReplica.rescanSeconds = 60;
+        otherReplica.loadSegments();
+        assertThat(otherReplica.archivedBefore()).isNull();
+
+        // When
+        kardexArchiveService.archive(TODAY);
+
+        // Then: la otra replica ve los movimientos que ya no estan en la tabla sin reiniciar
+        assertThat(otherReplica.findToolMovements(drill.getId(), null, null))
+                .extracting(KardexEntity::getType).containsExactly("ingreso", "préstamo");
+        assertThat(otherReplica.archivedBefore()).isEqualTo(LocalDate.of(2024, 10, 1));
+    }
+
+    @Test
+    void whenArchiveAgain_thenNothingChanges() throws Exception {
+        // Given
+        kardexArchiveService.archive(TODAY);
+        long size = Files.size(archiveDir.resolve("movimientos_2024_08.seg"));
+
+        // When & Then
+        assertThat(kardexArchiveService.archive(TODAY)).isZero();
+        assertThat(Files.size(archiveDir.resolve("movimientos_2024_08.seg"))).isEqualTo(size);
+    }
+
+    @Test
+    void whenSegmentWasWrittenButRowsRemain_thenArchiveOnlyDeletesThem() throws Exception {
+        // Given: el proceso se detuvo despues de escribir el segmento de agosto
+        List<KardexSegment.Entry> august = new ArrayList<>();
+        for (KardexEntity movement : kardexRepository.findByDateBetweenOrderByDateDesc(
+                LocalDate.of(2024, 8, 1), LocalDate.of(2024, 8, 31))) {
+            august.add(new KardexSegment.Entry(movement.getId(), movement.getDate(), movement.getType(),
+                    movement.getUsername(), movement.getTool().getId(), movement.getAffectedAmount()));
+        }
+        kardexArchiveStore.writeMonth(YearMonth.of(2024, 8), august);
+
+        // When
+        int archived = kardexArchiveService.archiveMonth(YearMonth.of(2024, 8));
+
+        // Then
+        assertThat(archived).isEqualTo(2);
+        assertThat(kardexArchiveStore.archivedIds(YearMonth.of(2024, 8))).hasSize(2);
+        assertThat(kardexRepository.findByDateBetweenOrderByDateDesc(LocalDate.of(2024, 8, 1), LocalDate.of(2024, 8, 31))).isEmpty();
+    }
+
+    @Test
+    void whenExportAcrossArchivedMonths_thenArchivedMovementsFollowTheTable() throws Exception {
+        // Given
+        kardexArchiveService.archive(TODAY);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        long rows = kardexService.exportMovements(LocalDate.of(2024, 8, 1), LocalDate.of(2026, 10, 31), "csv", out);
+
+        // Then: primero los de la tabla y despues agosto y septiembre desde los segmentos
+        List<String> lines = Arrays.asList(out.toString(StandardCharsets.UTF_8).split("\n"));
+        assertThat(rows).isEqualTo(5);
+        assertThat(lines).hasSize(6);
+        assertThat(lines.subList(1, 6)).extracting(line -> line.split(",")[1] + " " + line.split(",")[2])
+                .containsExactly("2024-10-02 devolución", "2026-10-01 préstamo",
+                        "2024-08-05 ingreso", "2024-08-05 ingreso", "2024-09-10 préstamo");
+        assertThat(lines.get(3)).endsWith(",herramientas eléctricas");
+    }
+
+    @Test
+    void whenExportMonthStillInTableAndSegment_thenEachMovementOnce() throws Exception {
+        // Given: el segmento de agosto se escribio pero sus filas todavia no se borran
+        List<KardexSegment.Entry> august = new ArrayList<>();
+        for (KardexEntity movement : kardexRepository.findByDateBetweenOrderByDateDesc(
+                LocalDate.of(2024, 8, 1), LocalDate.of(2024, 8, 31))) {
+            august.add(new KardexSegment.Entry(movement.getId(), movement.getDate(), movement.getType(),
+                    movement.getUsername(), movement.getTool().getId(), movement.getAffectedAmount()));
+        }
+        kardexArchiveStore.writeMonth(YearMonth.of(2024, 8), august);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        long rows = kardexService.exportMovements(LocalDate.of(2024, 8, 1), LocalDate.of(2024, 8, 31), "ndjson", out);
+
+        // Then
+        assertThat(rows).isEqualTo(2);
+        assertThat(out.toString(StandardCharsets.UTF_8).split("\n")).hasSize(2);
+    }
+
+    @Test
+    void whenGetStockAtArchivedDate_thenReplayIncludesArchivedMovements() {
+        // Given
+        kardexArchiveService.archive(TODAY);
+
+        // When
+        StockAtDateDTO september = stockHistoryService.getStockAt(drillInventory.getId(), LocalDate.of(2024, 9, 15));
+        StockAtDateDTO october = stockHistoryService.getStockAt(drillInventory.getId(), LocalDate.of(2024, 10, 5));
+
+        // Then: la foto de septiembre se tomo antes de archivar
+        assertThat(september.getSnapshotDate()).isEqualTo(LocalDate.of(2024, 9, 1));
+        assertThat(september.getTotalTools()).isEqualTo(1);
+        assertThat(september.getCurrentStock()).isZero();
+        assertThat(october.getSnapshotDate()).isEqualTo(LocalDate.of(2024, 10, 1));
+        assertThat(october.getCurrentStock()).isEqualTo(1);
+    }
+
+    @Test
+    void whenRebuildRollupsOfArchivedDays_thenTheyAreKept() {
+        // Given
+        kardexArchiveService.archive(TODAY);
+
+        // When & Then
+        assertThat(kardexRollupService.rebuildRollups(LocalDate.of(2024, 8, 1), LocalDate.of(2024, 9, 30))).isZero();
+    }
+
+    @Test
+    void whenSegmentHasManyBlocks_thenToolReadsOnlyReturnThatTool() throws Exception {
+        // Given: bloques de 2 movimientos, las herramientas quedan repartidas en varios bloques
+        kardexArchiveStore.blockSize = 2;
+        List<KardexSegment.Entry> entries = new ArrayList<>();
+        long id = 1;
+        for (long tool = 1; tool <= 5; tool++) {
+            for (int day = 1; day <= 3; day++) {
+                entries.add(new KardexSegment.Entry(id++, LocalDate.of(2023, 1, day), "préstamo", "testuser", tool, 1));
+            }
+        }
+        entries.add(new KardexSegment.Entry(id, LocalDate.of(2023, 1, 9), "ingreso", "testuser", null, 1));
+        kardexArchiveStore.writeMonth(YearMonth.of(2023, 1), entries);
+
+        // When
+        KardexSegment segment = KardexSegment.open(archiveDir.resolve("movimientos_2023_01.seg"));
+
+        // Then
+        assertThat(segment.size()).isEqualTo(16);
+        for (long tool = 1; tool <= 5; tool++) {
+            assertThat(segment.readTool(tool)).hasSize(3).allMatch(entry -> entry.toolId() != null);
+        }
+        assertThat(segment.readTool(6)).isEmpty();
+        assertThat(segment.readAll()).hasSize(16);
+    }
+}
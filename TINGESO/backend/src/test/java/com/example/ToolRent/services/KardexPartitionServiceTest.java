@@ -0,0 +1,192 @@
+package com.example.ToolRent.services;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.jdbc.spi.JdbcServices;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class KardexPartitionServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private SchedulerLockService schedulerLockService;
+
+    @Mock
+    private KardexArchiveStore kardexArchiveStore;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private EntityManagerFactory entityManagerFactory;
+
+    @Mock
+    private SessionFactoryImplementor sessionFactory;
+
+    @Mock
+    private JdbcServices jdbcServices;
+
+    @InjectMocks
+    private KardexPartitionService kardexPartitionService;
+
+    @Test
+    void whenPartitionName_thenUsesYearAndMonth() {
+        // When & Then
+        assertThat(KardexPartitionService.partitionName(YearMonth.of(2026, 3))).isEqualTo("movimientos_2026_03");
+    }
+
+    @Test
+    void whenMissingMonths_thenReturnMonthsWithoutPartition() {
+        // Given
+        Set<YearMonth> attached = Set.of(YearMonth.of(2026, 10), YearMonth.of(2026, 12));
+
+        // When
+        List<YearMonth> missing = KardexPartitionService.missingMonths(attached, YearMonth.of(2026, 10), YearMonth.of(2027, 1));
+
+        // Then
+        assertThat(missing).containsExactly(YearMonth.of(2026, 11), YearMonth.of(2027, 1));
+    }
+
+    @Test
+    void whenExpiredMonths_thenReturnMonthsOlderThanRetention() {
+        // Given
+        Set<YearMonth> attached = Set.of(YearMonth.of(2025, 8), YearMonth.of(2025, 9), YearMonth.of(2025, 10), YearMonth.of(2026, 10));
+
+        // When & Then
+        assertThat(KardexPartitionService.expiredMonths(attached, YearMonth.of(2026, 10), 12))
+                .containsExactly(YearMonth.of(2025, 8), YearMonth.of(2025, 9));
+        //Sin retencion no se separa ninguna particion
+        assertThat(KardexPartitionService.expiredMonths(attached, YearMonth.of(2026, 10), 0)).isEmpty();
+    }
+
+    @Test
+    void whenDatabaseIsNotPostgres_thenTableStaysUnpartitioned() {
+        // Given
+        kardexPartitionService.enabled = true;
+        when(entityManagerFactory.unwrap(SessionFactoryImplementor.class)).thenReturn(sessionFactory);
+        when(sessionFactory.getJdbcServices()).thenReturn(jdbcServices);
+        when(jdbcServices.getDialect()).thenReturn(new H2Dialect());
+
+        // When
+        kardexPartitionService.initPartitions();
+
+        // Then
+        assertThat(kardexPartitionService.isActive()).isFalse();
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void whenMaintain_thenCreateFuturePartitionsAndDetachExpiredOnes() {
+        // Given
+        kardexPartitionService.monthsAhead = 2;
+        kardexPartitionService.retentionMonths = 12;
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class)))
+                .thenReturn(List.of("movimientos_2025_01", "movimientos_2026_09", "movimientos_2026_10", "movimientos_archivo_2024_12"));
+        when(kardexArchiveStore.hasMonth(YearMonth.of(2025, 1))).thenReturn(true);
+
+        // When
+        kardexPartitionService.maintain(LocalDate.of(2026, 10, 18));
+
+        // Then
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS movimientos_2026_11 PARTITION OF movimientos " +
+                "FOR VALUES FROM ('2026-11-01') TO ('2026-12-01')");
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS movimientos_2026_12 PARTITION OF movimientos " +
+                "FOR VALUES FROM ('2026-12-01') TO ('2027-01-01')");
+        verify(jdbcTemplate).execute("ALTER TABLE movimientos DETACH PARTITION movimientos_2025_01");
+        verify(jdbcTemplate).execute("ALTER TABLE movimientos_2025_01 RENAME TO movimientos_archivo_2025_01");
+        verify(jdbcTemplate, never()).execute("ALTER TABLE movimientos DETACH PARTITION movimientos_2026_09");
+    }
+
+    @Test
+    void whenExpiredMonthIsNotArchived_thenPartitionStaysAttached() {
+        // Given: enero no esta archivado y tiene movimientos, febrero no esta archivado pero esta vacio
+        kardexPartitionService.monthsAhead = 0;
+        kardexPartitionService.retentionMonths = 12;
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class)))
+                .thenReturn(List.of("movimientos_2025_01", "movimientos_2025_02", "movimientos_2026_10"));
+        when(kardexArchiveStore.hasMonth(any(YearMonth.class))).thenReturn(false);
+        when(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM movimientos_2025_01)", Boolean.class)).thenReturn(true);
+        when(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM movimientos_2025_02)", Boolean.class)).thenReturn(false);
+
+        // When
+        kardexPartitionService.maintain(LocalDate.of(2026, 10, 18));
+
+        // Then
+        verify(jdbcTemplate, never()).execute("ALTER TABLE movimientos DETACH PARTITION movimientos_2025_01");
+        verify(jdbcTemplate).execute("ALTER TABLE movimientos DETACH PARTITION movimientos_2025_02");
+    }
+
+    @Test
+    void whenConvertToPartitioned_thenCopyRowsIntoMonthlyPartitions() {
+        // Given
+        kardexPartitionService.monthsAhead = 1;
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class))).thenReturn(false);
+        when(jdbcTemplate.queryForList(anyString())).thenReturn(List.of(
+                Map.of("conname", "fk_tool", "definition", "FOREIGN KEY (tool_id) REFERENCES tools(id)")));
+        when(jdbcTemplate.queryForObject("SELECT MIN(date) FROM movimientos", LocalDate.class))
+                .thenReturn(LocalDate.of(2026, 8, 20));
+        when(jdbcTemplate.queryForObject("SELECT MAX(date) FROM movimientos", LocalDate.class))
+                .thenReturn(LocalDate.of(2026, 10, 1));
+
+        // When
+        kardexPartitionService.convertToPartitioned(YearMonth.of(2026, 10));
+
+        // Then
+        InOrder order = inOrder(jdbcTemplate);
+        order.verify(jdbcTemplate).execute("ALTER TABLE movimientos RENAME TO movimientos_sin_particion");
+        order.verify(jdbcTemplate).execute("CREATE TABLE movimientos (LIKE movimientos_sin_particion INCLUDING DEFAULTS) " +
+                "PARTITION BY RANGE (date)");
+        order.verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS movimientos_2026_08 PARTITION OF movimientos " +
+                "FOR VALUES FROM ('2026-08-01') TO ('2026-09-01')");
+        order.verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS movimientos_2026_11 PARTITION OF movimientos " +
+                "FOR VALUES FROM ('2026-11-01') TO ('2026-12-01')");
+        order.verify(jdbcTemplate).execute("INSERT INTO movimientos SELECT * FROM movimientos_sin_particion");
+        order.verify(jdbcTemplate).execute("DROP TABLE movimientos_sin_particion");
+        order.verify(jdbcTemplate).execute("ALTER TABLE movimientos ADD PRIMARY KEY (id, date)");
+        order.verify(jdbcTemplate).execute("ALTER TABLE movimientos ADD CONSTRAINT \"fk_tool\" " +
+                "FOREIGN KEY (tool_id) REFERENCES tools(id)");
+        order.verify(jdbcTemplate).execute("CREATE INDEX IF NOT EXISTS idx_movimientos_tool_date ON movimientos (tool_id, date)");
+        order.verify(jdbcTemplate).execute("CREATE INDEX IF NOT EXISTS idx_movimientos_date_id ON movimientos (date, id)");
+        order.verify(jdbcTemplate).execute("CREATE INDEX IF NOT EXISTS idx_movimientos_recorded_at ON movimientos (recorded_at, id)");
+    }
+
+    @Test
+    void whenAnotherNodeHasTheLease_thenMaintenanceIsSkipped() {
+        // Given
+        kardexPartitionService.active = true;
+        when(schedulerLockService.holdJobLease(KardexPartitionService.MAINTENANCE_JOB)).thenReturn(false);
+
+        // When
+        kardexPartitionService.maintainPartitions();
+
+        // Then
+        verifyNoInteractions(jdbcTemplate);
+    }
+}
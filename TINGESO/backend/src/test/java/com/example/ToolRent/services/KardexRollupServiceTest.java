@@ -0,0 +1,161 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.dto.KardexRollupDTO;
+import com.example.ToolRent.dto.KardexRollupTotalDTO;
+import com.example.ToolRent.entities.CategoryEntity;
+import com.example.ToolRent.entities.KardexDailyRollupEntity;
+import com.example.ToolRent.entities.KardexEntity;
+import com.example.ToolRent.entities.ToolEntity;
+import com.example.ToolRent.entities.ToolsInventoryEntity;
+import com.example.ToolRent.repositories.CategoryRepository;
+import com.example.ToolRent.repositories.KardexRepository;
+import com.example.ToolRent.repositories.KardexRollupRepository;
+import com.example.ToolRent.repositories.ToolRepository;
+import com.example.ToolRent.repositories.ToolsInventoryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+//Sin transaccion de prueba: el recalculo usa una transaccion por dia en otros hilos
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({KardexRollupService.class, KardexArchiveStore.class})
+class KardexRollupServiceTest {
+
+    @Autowired
+    private KardexRollupService kardexRollupService;
+
+    @Autowired
+    private KardexRollupRepository kardexRollupRepository;
+
+    @Autowired
+    private KardexRepository kardexRepository;
+
+    @Autowired
+    private ToolRepository toolRepository;
+
+    @Autowired
+    private ToolsInventoryRepository toolsInventoryRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transaction;
+    private ToolEntity drill;
+    private ToolEntity saw;
+    private ToolsInventoryEntity drillInventory;
+
+    @BeforeEach
+    void setUp() {
+        transaction = new TransactionTemplate(transactionManager);
+        CategoryEntity category = categoryRepository.save(new CategoryEntity(null, "herramientas eléctricas"));
+        drill = toolRepository.save(new ToolEntity(null, "taladro", category, "disponible", 0L));
+        saw = toolRepository.save(new ToolEntity(null, "sierra", category, "disponible", 0L));
+        drillInventory = toolsInventoryRepository.save(
+                new ToolsInventoryEntity(null, "taladro", "herramientas eléctricas", 2, 2, 50000, 5000, 0L));
+        toolsInventoryRepository.save(new ToolsInventoryEntity(null, "sierra", "herramientas eléctricas", 1, 1, 80000, 7000, 0L));
+    }
+
+    @AfterEach
+    void tearDown() {
+        kardexRollupRepository.deleteAll();
+        kardexRepository.deleteAll();
+        toolRepository.deleteAll();
+        toolsInventoryRepository.deleteAll();
+        categoryRepository.deleteAll();
+    }
+
+    private KardexEntity movement(String type, LocalDate date, ToolEntity tool) {
+        return new KardexEntity(null, type, date, "testuser", tool, 1);
+    }
+
+    @Test
+    void whenApplyMovements_thenRollupsAccumulatePerDayToolAndType() {
+        // Given
+        LocalDate day = LocalDate.of(2025, 3, 10);
+
+        // When: dos lotes del mismo dia suman sobre las mismas filas
+        transaction.executeWithoutResult(status -> kardexRollupService.applyMovements(List.of(
+                movement("préstamo", day, drill), movement("préstamo", day, drill), movement("préstamo", day, saw))));
+        transaction.executeWithoutResult(status -> kardexRollupService.applyMovements(List.of(
+                movement("préstamo", day, drill), movement("devolución", day, drill))));
+
+        // Then
+        List<KardexRollupDTO> rollups = kardexRollupService.getDailyRollups(day, day, null, null);
+        assertThat(rollups).extracting(KardexRollupDTO::getToolName, KardexRollupDTO::getType, KardexRollupDTO::getTotalAmount)
+                .containsExactly(
+                        tuple("sierra", "préstamo", 1L),
+                        tuple("taladro", "devolución", 1L),
+                        tuple("taladro", "préstamo", 3L));
+        assertThat(kardexRollupRepository.count()).isEqualTo(3);
+    }
+
+    @Test
+    void whenRebuildRollups_thenReplaceDaysWithTotalsFromMovements() {
+        // Given: movimientos de tres dias y un resumen desactualizado
+        LocalDate first = LocalDate.of(2025, 3, 1);
+        kardexRepository.saveAll(List.of(
+                movement("ingreso", first, drill),
+                movement("ingreso", first, drill),
+                movement("préstamo", first.plusDays(1), drill),
+                movement("baja", first.plusDays(2), saw)));
+        kardexRollupRepository.save(new KardexDailyRollupEntity(null, first, drillInventory, "ingreso", 99, 99));
+
+        // When
+        int days = kardexRollupService.rebuildRollups(first, first.plusDays(2));
+
+        // Then
+        assertThat(days).isEqualTo(3);
+        List<KardexRollupDTO> rollups = kardexRollupService.getDailyRollups(first, first.plusDays(2), null, null);
+        assertThat(rollups).extracting(KardexRollupDTO::getDate, KardexRollupDTO::getType, KardexRollupDTO::getMovementCount)
+                .containsExactly(
+                        tuple(first, "ingreso", 2L),
+                        tuple(first.plusDays(1), "préstamo", 1L),
+                        tuple(first.plusDays(2), "baja", 1L));
+    }
+
+    @Test
+    void whenGetRollupTotals_thenSumDaysOfRangeFilteredByType() {
+        // Given
+        LocalDate day = LocalDate.of(2025, 3, 10);
+        transaction.executeWithoutResult(status -> kardexRollupService.applyMovements(List.of(
+                movement("préstamo", day, drill), movement("préstamo", day.plusDays(1), drill),
+                movement("devolución", day.plusDays(1), drill), movement("préstamo", day.plusDays(5), drill))));
+
+        // When
+        List<KardexRollupTotalDTO> totals = kardexRollupService.getRollupTotals(day, day.plusDays(1), "Préstamo");
+
+        // Then
+        assertThat(totals).hasSize(1);
+        assertThat(totals.get(0).getInventoryId()).isEqualTo(drillInventory.getId());
+        assertThat(totals.get(0).getTotalAmount()).isEqualTo(2L);
+        assertThat(totals.get(0).getMovementCount()).isEqualTo(2L);
+    }
+
+    @Test
+    void whenGetDailyRollupsWithStartDateAfterEndDate_thenThrowException() {
+        // When & Then
+        assertThatThrownBy(() -> kardexRollupService.getDailyRollups(LocalDate.of(2025, 3, 2), LocalDate.of(2025, 3, 1), null, null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("La fecha de inicio no puede ser posterior a la fecha de fin");
+    }
+}
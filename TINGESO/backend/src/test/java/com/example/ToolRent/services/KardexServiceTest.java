@@ -1,22 +1,32 @@
 package com.example.ToolRent.services;
 
+import com.example.ToolRent.dto.KardexMovementDTO;
+import com.example.ToolRent.dto.KardexSliceDTO;
 import com.example.ToolRent.entities.KardexEntity;
 import com.example.ToolRent.entities.ToolEntity;
 import com.example.ToolRent.repositories.KardexRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.jwt.Jwt;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -29,6 +39,18 @@ class KardexServiceTest {
     @Mock
     private KardexRepository kardexRepository;
 
+    @Mock
+    private KardexWriter kardexWriter;
+
+    @Mock
+    private KardexArchiveStore kardexArchiveStore;
+
+    //Configurado como el ObjectMapper de Spring Boot (fechas ISO)
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
     @Mock
     private SecurityContext securityContext;
 
@@ -123,22 +145,59 @@ class KardexServiceTest {
         assertThat(result).isNull();
     }
 
-    // ==================== getAllMoves ====================
+    // ==================== getMovementsPage ====================
 
     @Test
-    void whenGetAllMoves_thenReturnAllKardexEntities() {
+    void whenGetFirstMovementsPage_thenReturnPageAndCursorOfLastMovement() {
         //Given
-        List<KardexEntity> kardexList = new ArrayList<>();
-        kardexList.add(kardexEntity);
-        when(kardexRepository.findAll()).thenReturn(kardexList);
+        KardexMovementDTO newest = new KardexMovementDTO(3L, LocalDate.of(2025, 1, 5), "ingreso", "admin", 1, 7L, "Martillo", "Manuales");
+        KardexMovementDTO middle = new KardexMovementDTO(2L, LocalDate.of(2025, 1, 4), "préstamo", "admin", 1, 7L, "Martillo", "Manuales");
+        KardexMovementDTO oldest = new KardexMovementDTO(1L, LocalDate.of(2025, 1, 4), "ingreso", "admin", 1, 7L, "Martillo", "Manuales");
+        when(kardexRepository.findMovementPage(PageRequest.of(0, 3))).thenReturn(new ArrayList<>(List.of(newest, middle, oldest)));
 
         //When
-        ArrayList<KardexEntity> result = kardexService.getAllMoves();
+        KardexSliceDTO result = kardexService.getMovementsPage(null, null, 2);
 
         //Then
-        assertThat(result).isNotNull();
-        assertThat(result.size()).isEqualTo(1);
-        assertThat(result.get(0).getType()).isEqualTo("ingreso");
+        assertThat(result.getItems()).extracting(KardexMovementDTO::getId).containsExactly(3L, 2L);
+        assertThat(result.isHasNext()).isTrue();
+        assertThat(result.getNextCursorDate()).isEqualTo(LocalDate.of(2025, 1, 4));
+        assertThat(result.getNextCursorId()).isEqualTo(2L);
+    }
+
+    @Test
+    void whenGetMovementsPageWithCursor_thenReadMovementsBeforeCursor() {
+        //Given
+        LocalDate cursorDate = LocalDate.of(2025, 1, 4);
+        KardexMovementDTO oldest = new KardexMovementDTO(1L, cursorDate, "ingreso", "admin", 1, 7L, "Martillo", "Manuales");
+        when(kardexRepository.findMovementPageBefore(cursorDate, 2L, PageRequest.of(0, 3))).thenReturn(new ArrayList<>(List.of(oldest)));
+
+        //When
+        KardexSliceDTO result = kardexService.getMovementsPage(cursorDate, 2L, 2);
+
+        //Then
+        assertThat(result.getItems()).extracting(KardexMovementDTO::getId).containsExactly(1L);
+        assertThat(result.isHasNext()).isFalse();
+        assertThat(result.getNextCursorDate()).isNull();
+        assertThat(result.getNextCursorId()).isNull();
+        verify(kardexRepository, never()).findMovementPage(any());
+    }
+
+    @Test
+    void whenGetMovementsPageWithInvalidSize_thenThrowException() {
+        //When & Then
+        assertThatThrownBy(() -> kardexService.getMovementsPage(null, null, 101))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("El tamaño de página debe estar entre 1 y 100");
+    }
+
+    @Test
+    void whenGetMovementsPageWithIncompleteCursor_thenThrowException() {
+        //When & Then
+        assertThatThrownBy(() -> kardexService.getMovementsPage(LocalDate.of(2025, 1, 4), null, 20))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("El cursor debe incluir la fecha y el id del movimiento");
+        verify(kardexRepository, never()).findMovementPageBefore(any(), any(), any());
     }
 
     // ==================== registerMovement ====================
@@ -150,7 +209,6 @@ class KardexServiceTest {
         when(securityContext.getAuthentication()).thenReturn(authentication);
         when(authentication.getPrincipal()).thenReturn(jwt);
         when(jwt.getClaimAsString("preferred_username")).thenReturn("testuser");
-        when(kardexRepository.save(any(KardexEntity.class))).thenReturn(kardexEntity);
 
         //When
         KardexEntity result = kardexService.registerMovement("INGRESO", toolEntity);
@@ -160,7 +218,7 @@ class KardexServiceTest {
         assertThat(result.getType()).isEqualTo("ingreso");
         assertThat(result.getTool()).isEqualTo(toolEntity);
         assertThat(result.getAffectedAmount()).isEqualTo(1);
-        verify(kardexRepository, times(1)).save(any(KardexEntity.class));
+        verify(kardexWriter, times(1)).write(any(KardexEntity.class));
     }
 
     @Test
@@ -171,7 +229,6 @@ class KardexServiceTest {
         when(authentication.getPrincipal()).thenReturn(jwt);
         when(jwt.getClaimAsString("preferred_username")).thenReturn("testuser");
         kardexEntity.setType("préstamo");
-        when(kardexRepository.save(any(KardexEntity.class))).thenReturn(kardexEntity);
 
         //When
         KardexEntity result = kardexService.registerMovement("  PrÉsTaMo  ", toolEntity);
@@ -179,7 +236,7 @@ class KardexServiceTest {
         //Then
         assertThat(result).isNotNull();
         assertThat(result.getType()).isEqualTo("préstamo");
-        verify(kardexRepository, times(1)).save(any(KardexEntity.class));
+        verify(kardexWriter, times(1)).write(any(KardexEntity.class));
     }
 
     @Test
@@ -190,7 +247,6 @@ class KardexServiceTest {
         when(authentication.getPrincipal()).thenReturn(jwt);
         when(jwt.getClaimAsString("preferred_username")).thenReturn("testuser");
         kardexEntity.setType("devolución");
-        when(kardexRepository.save(any(KardexEntity.class))).thenReturn(kardexEntity);
 
         //When
         KardexEntity result = kardexService.registerMovement("devolución", toolEntity);
@@ -198,7 +254,7 @@ class KardexServiceTest {
         //Then
         assertThat(result).isNotNull();
         assertThat(result.getType()).isEqualTo("devolución");
-        verify(kardexRepository, times(1)).save(any(KardexEntity.class));
+        verify(kardexWriter, times(1)).write(any(KardexEntity.class));
     }
 
     @Test
@@ -209,7 +265,6 @@ class KardexServiceTest {
         when(authentication.getPrincipal()).thenReturn(jwt);
         when(jwt.getClaimAsString("preferred_username")).thenReturn("testuser");
         kardexEntity.setType("baja");
-        when(kardexRepository.save(any(KardexEntity.class))).thenReturn(kardexEntity);
 
         //When
         KardexEntity result = kardexService.registerMovement("baja", toolEntity);
@@ -217,7 +272,7 @@ class KardexServiceTest {
         //Then
         assertThat(result).isNotNull();
         assertThat(result.getType()).isEqualTo("baja");
-        verify(kardexRepository, times(1)).save(any(KardexEntity.class));
+        verify(kardexWriter, times(1)).write(any(KardexEntity.class));
     }
 
     @Test
@@ -228,7 +283,6 @@ class KardexServiceTest {
         when(authentication.getPrincipal()).thenReturn(jwt);
         when(jwt.getClaimAsString("preferred_username")).thenReturn("testuser");
         kardexEntity.setType("reparación");
-        when(kardexRepository.save(any(KardexEntity.class))).thenReturn(kardexEntity);
 
         //When
         KardexEntity result = kardexService.registerMovement("reparación", toolEntity);
@@ -236,7 +290,7 @@ class KardexServiceTest {
         //Then
         assertThat(result).isNotNull();
         assertThat(result.getType()).isEqualTo("reparación");
-        verify(kardexRepository, times(1)).save(any(KardexEntity.class));
+        verify(kardexWriter, times(1)).write(any(KardexEntity.class));
     }
 
     @Test
@@ -248,7 +302,7 @@ class KardexServiceTest {
         assertThatThrownBy(() -> kardexService.registerMovement(invalidType, toolEntity))
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessage("El tipo de prestamo no es valido");
-        verify(kardexRepository, never()).save(any(KardexEntity.class));
+        verify(kardexWriter, never()).write(any(KardexEntity.class));
     }
 
     // ==================== getToolMovementHistory ====================
@@ -271,6 +325,22 @@ class KardexServiceTest {
         verify(kardexRepository, times(1)).findByToolOrderByDateDesc(toolId);
     }
 
+    @Test
+    void whenGetToolMovementHistoryWithArchivedMovements_thenMergeNewestFirstWithoutDuplicates() {
+        //Given: el movimiento 1 esta archivado y todavia en la tabla
+        KardexEntity archivedOld = new KardexEntity(2L, "ingreso", LocalDate.of(2023, 5, 2), "testuser", toolEntity, 1);
+        KardexEntity archivedCopy = new KardexEntity(1L, "ingreso", kardexEntity.getDate(), "testuser", toolEntity, 1);
+        when(kardexRepository.findByToolOrderByDateDesc(1L)).thenReturn(List.of(kardexEntity));
+        when(kardexArchiveStore.findToolMovements(1L, null, null)).thenReturn(List.of(archivedOld, archivedCopy));
+
+        //When
+        List<KardexEntity> result = kardexService.getToolMovementHistory(1L);
+
+        //Then
+        assertThat(result).extracting(KardexEntity::getId).containsExactly(1L, 2L);
+        assertThat(result.get(0)).isSameAs(kardexEntity);
+    }
+
     @Test
     void whenGetToolMovementHistoryWithNullToolId_thenThrowException() {
         //When & Then
@@ -410,4 +480,69 @@ class KardexServiceTest {
                 .hasMessage("La fecha de inicio no puede ser posterior a la fecha de fin");
         verify(kardexRepository, never()).findByToolIdAndDateBetween(any(), any(), any());
     }
-}
\ No newline at end of file
+
+    // ==================== exportMovements ====================
+
+    @Test
+    void whenExportMovementsAsCsv_thenWriteHeaderAndOneLinePerMovement() throws Exception {
+        //Given
+        LocalDate startDate = LocalDate.of(2025, 1, 1);
+        LocalDate endDate = LocalDate.of(2025, 1, 31);
+        when(kardexRepository.streamExportRows(startDate, endDate)).thenReturn(Stream.of(
+                new KardexMovementDTO(1L, LocalDate.of(2025, 1, 2), "ingreso", "admin", 1, 7L, "Martillo", "Manuales"),
+                new KardexMovementDTO(2L, LocalDate.of(2025, 1, 3), "préstamo", "empleado", 1, 8L, "Sierra, circular", "Eléctricas \"pro\"")));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        //When
+        long rows = kardexService.exportMovements(startDate, endDate, "CSV", out);
+
+        //Then
+        assertThat(rows).isEqualTo(2);
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "id,fecha,tipo,usuario,cantidad,herramienta_id,herramienta,categoria\n" +
+                "1,2025-01-02,ingreso,admin,1,7,Martillo,Manuales\n" +
+                "2,2025-01-03,préstamo,empleado,1,8,\"Sierra, circular\",\"Eléctricas \"\"pro\"\"\"\n");
+    }
+
+    @Test
+    void whenExportMovementsAsNdjson_thenWriteOneJsonObjectPerLine() throws Exception {
+        //Given
+        LocalDate startDate = LocalDate.of(2025, 1, 1);
+        LocalDate endDate = LocalDate.of(2025, 1, 31);
+        when(kardexRepository.streamExportRows(startDate, endDate)).thenReturn(Stream.of(
+                new KardexMovementDTO(1L, LocalDate.of(2025, 1, 2), "ingreso", "admin", 1, 7L, "Martillo", "Manuales"),
+                new KardexMovementDTO(2L, LocalDate.of(2025, 1, 3), "baja", "admin", 1, 7L, "Martillo", "Manuales")));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        //When
+        long rows = kardexService.exportMovements(startDate, endDate, "ndjson", out);
+
+        //Then
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(rows).isEqualTo(2);
+        assertThat(lines).hasSize(2);
+        assertThat(objectMapper.readTree(lines[0]).get("date").asText()).isEqualTo("2025-01-02");
+        assertThat(objectMapper.readTree(lines[1]).get("type").asText()).isEqualTo("baja");
+    }
+
+    @Test
+    void whenExportMovementsWithUnknownFormat_thenThrowException() {
+        //Given
+        LocalDate startDate = LocalDate.of(2025, 1, 1);
+        LocalDate endDate = LocalDate.of(2025, 1, 31);
+
+        //When & Then
+        assertThatThrownBy(() -> kardexService.exportMovements(startDate, endDate, "xml", new ByteArrayOutputStream()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("El formato de exportación debe ser csv o ndjson");
+        verify(kardexRepository, never()).streamExportRows(any(), any());
+    }
+
+    @Test
+    void whenValidateExportWithStartDateAfterEndDate_thenThrowException() {
+        //When & Then
+        assertThatThrownBy(() -> kardexService.validateExport(LocalDate.of(2025, 2, 1), LocalDate.of(2025, 1, 1), "csv"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("La fecha de inicio no puede ser posterior a la fecha de fin");
+    }
+}
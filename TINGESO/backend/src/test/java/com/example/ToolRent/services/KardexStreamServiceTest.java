@@ -0,0 +1,256 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.dto.KardexMovementDTO;
+import com.example.ToolRent.entities.CategoryEntity;
+import com.example.ToolRent.entities.KardexEntity;
+import com.example.ToolRent.entities.ToolEntity;
+import com.example.ToolRent.repositories.KardexRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class KardexStreamServiceTest {
+
+    @Mock
+    private KardexRepository kardexRepository;
+
+    @InjectMocks
+    private KardexStreamService kardexStreamService;
+
+    private ToolEntity tool;
+
+    //Tareas de envio pendientes cuando el envio se deja esperando (cliente lento)
+    private final List<Runnable> heldTasks = new ArrayList<>();
+
+    //Guarda cada evento como texto: "id:5 event:movement data:#5"
+    static class RecordingEmitter extends SseEmitter {
+        final List<String> events = new ArrayList<>();
+        boolean completed;
+
+        @Override
+        public synchronized void send(SseEventBuilder builder) {
+            StringBuilder event = new StringBuilder();
+            for (DataWithMediaType part : builder.build()) {
+                if (part.getData() instanceof KardexMovementDTO movement) {
+                    event.append("#").append(movement.getId());
+                } else {
+                    event.append(part.getData());
+                }
+            }
+            events.add(event.toString().trim().replace("\n", " "));
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed = true;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        kardexStreamService.meterRegistry = new SimpleMeterRegistry();
+        kardexStreamService.senderThreads = 1;
+        kardexStreamService.init();
+        //Envio en el mismo hilo
+        kardexStreamService.sender = Runnable::run;
+        kardexStreamService.bufferSize = 256;
+        kardexStreamService.overflow = "disconnect";
+        kardexStreamService.replayLimit = 1000;
+        kardexStreamService.pollLagSeconds = 10;
+        kardexStreamService.pollLimit = 500;
+        tool = new ToolEntity(1L, "taladro", new CategoryEntity(1L, "herramientas eléctricas"), "disponible", 0L);
+    }
+
+    private KardexEntity movement(Long id, String type) {
+        return new KardexEntity(id, type, LocalDate.of(2026, 10, 18), "testuser", tool, 1);
+    }
+
+    private KardexMovementDTO movementDTO(Long id) {
+        return new KardexMovementDTO(id, LocalDate.of(2026, 10, 18), "préstamo", "testuser", 1, 1L, "taladro", "herramientas eléctricas");
+    }
+
+    @Test
+    void whenPublish_thenEachSubscriberReceivesMovementsWithIdAsEventId() {
+        // Given
+        RecordingEmitter first = new RecordingEmitter();
+        RecordingEmitter second = new RecordingEmitter();
+        kardexStreamService.register(first, null);
+        kardexStreamService.register(second, null);
+
+        // When
+        kardexStreamService.publish(List.of(movement(10L, "ingreso"), movement(11L, "préstamo")));
+
+        // Then
+        assertThat(first.events).containsExactly("id:10 event:movement data:#10", "id:11 event:movement data:#11");
+        assertThat(second.events).isEqualTo(first.events);
+    }
+
+    @Test
+    void whenSubscribeWithLastEventId_thenMissedMovementsAreSentBeforeLiveOnes() {
+        // Given
+        when(kardexRepository.findMovementsAfter(eq(7L), any(), eq(PageRequest.of(0, 1001))))
+                .thenReturn(List.of(movementDTO(8L), movementDTO(9L)));
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        // When: el movimiento 9 tambien llega en vivo y no se repite
+        kardexStreamService.register(emitter, 7L);
+        kardexStreamService.publish(List.of(movement(9L, "préstamo"), movement(10L, "devolución")));
+
+        // Then
+        assertThat(emitter.events).containsExactly(
+                "id:8 event:movement data:#8", "id:9 event:movement data:#9", "id:10 event:movement data:#10");
+    }
+
+    @Test
+    void whenMissedMovementsExceedReplayLimit_thenSendReset() {
+        // Given
+        kardexStreamService.replayLimit = 1;
+        when(kardexRepository.findMovementsAfter(eq(7L), any(), eq(PageRequest.of(0, 2))))
+                .thenReturn(List.of(movementDTO(8L), movementDTO(9L)));
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        // When
+        kardexStreamService.register(emitter, 7L);
+
+        // Then
+        assertThat(emitter.events).containsExactly("event:reset data:Recargar el listado de movimientos");
+    }
+
+    @Test
+    void whenSlowSubscriberBufferIsFull_thenDisconnectOnlyThatSubscriber() {
+        // Given
+        kardexStreamService.bufferSize = 2;
+        kardexStreamService.sender = heldTasks::add;
+        RecordingEmitter slow = new RecordingEmitter();
+        kardexStreamService.register(slow, null);
+
+        // When
+        kardexStreamService.publish(List.of(movement(1L, "ingreso"), movement(2L, "ingreso"), movement(3L, "ingreso")));
+
+        // Then
+        assertThat(slow.completed).isTrue();
+        assertThat(kardexStreamService.subscriberCount()).isZero();
+        assertThat(kardexStreamService.meterRegistry.get("toolrent.kardex.stream.disconnected").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void whenSlowSubscriberBufferIsFullWithDropPolicy_thenNotifyDroppedMovements() {
+        // Given
+        kardexStreamService.bufferSize = 2;
+        kardexStreamService.overflow = KardexStreamService.OVERFLOW_DROP;
+        kardexStreamService.sender = heldTasks::add;
+        RecordingEmitter slow = new RecordingEmitter();
+        kardexStreamService.register(slow, null);
+
+        // When
+        kardexStreamService.publish(List.of(movement(1L, "ingreso"), movement(2L, "ingreso"), movement(3L, "ingreso")));
+        heldTasks.forEach(Runnable::run);
+
+        // Then
+        assertThat(slow.completed).isFalse();
+        assertThat(slow.events).containsExactly(
+                "id:1 event:movement data:#1", "id:2 event:movement data:#2", "event:dropped data:1");
+        assertThat(kardexStreamService.meterRegistry.get("toolrent.kardex.stream.dropped").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void whenPoll_thenMovementsFromOtherReplicasAreSentOnce() {
+        // Given: el movimiento 1 ya estaba confirmado al conectarse
+        when(kardexRepository.findIdsRecordedSince(any()))
+                .thenReturn(List.of(1L))
+                .thenReturn(List.of(1L, 5L, 3L))
+                .thenReturn(List.of(1L, 5L, 3L));
+        when(kardexRepository.findMovementsByIds(List.of(3L, 5L))).thenReturn(List.of(movementDTO(3L), movementDTO(5L)));
+        RecordingEmitter emitter = new RecordingEmitter();
+        kardexStreamService.register(emitter, null);
+
+        // When: la segunda revision vuelve a ver los mismos ids dentro de la ventana
+        kardexStreamService.poll();
+        kardexStreamService.poll();
+
+        // Then
+        assertThat(emitter.events).containsExactly("id:3 event:movement data:#3", "id:5 event:movement data:#5");
+        verify(kardexRepository).findMovementsByIds(anyCollection());
+    }
+
+    @Test
+    void whenMovementWasPublishedLocally_thenPollDoesNotRepeatIt() {
+        // Given
+        when(kardexRepository.findIdsRecordedSince(any())).thenReturn(List.of()).thenReturn(List.of(10L));
+        RecordingEmitter emitter = new RecordingEmitter();
+        kardexStreamService.register(emitter, null);
+        kardexStreamService.publish(List.of(movement(10L, "ingreso")));
+
+        // When
+        kardexStreamService.poll();
+
+        // Then
+        assertThat(emitter.events).containsExactly("id:10 event:movement data:#10");
+        verify(kardexRepository, never()).findMovementsByIds(anyCollection());
+    }
+
+    @Test
+    void whenNoSubscribers_thenPollDoesNotReadTheTable() {
+        // When
+        kardexStreamService.poll();
+
+        // Then
+        verifyNoInteractions(kardexRepository);
+    }
+
+    @Test
+    void whenHeartbeat_thenSendComment() {
+        // Given
+        RecordingEmitter emitter = new RecordingEmitter();
+        kardexStreamService.register(emitter, null);
+
+        // When
+        kardexStreamService.heartbeat();
+
+        // Then
+        assertThat(emitter.events).containsExactly(":ping");
+    }
+
+    @Test
+    void whenEmitterFails_thenSubscriberIsRemoved() {
+        // Given
+        SseEmitter broken = new SseEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) {
+                throw new IllegalStateException("ResponseBodyEmitter has already completed");
+            }
+
+            @Override
+            public void completeWithError(Throwable ex) {
+            }
+        };
+        kardexStreamService.register(broken, null);
+
+        // When
+        kardexStreamService.publish(Set.of(movement(1L, "ingreso")));
+
+        // Then
+        assertThat(kardexStreamService.subscriberCount()).isZero();
+    }
+}
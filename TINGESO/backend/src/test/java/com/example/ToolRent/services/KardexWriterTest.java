@@ -0,0 +1,271 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.entities.CategoryEntity;
+import com.example.ToolRent.entities.KardexEntity;
+import com.example.ToolRent.entities.ToolEntity;
+import com.example.ToolRent.entities.ToolsInventoryEntity;
+import com.example.ToolRent.repositories.CategoryRepository;
+import com.example.ToolRent.repositories.KardexRepository;
+import com.example.ToolRent.repositories.KardexRollupRepository;
+import com.example.ToolRent.repositories.ToolRepository;
+import com.example.ToolRent.repositories.ToolsInventoryRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+//Sin transaccion de prueba, cada caso abre y confirma (o deshace) su propia transaccion
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({KardexWriter.class, KardexRollupService.class, KardexArchiveStore.class, KardexWriterTest.MetricsConfig.class})
+class KardexWriterTest {
+
+    @TestConfiguration
+    static class MetricsConfig {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Autowired
+    private KardexWriter kardexWriter;
+
+    @Autowired
+    private KardexRepository kardexRepository;
+
+    @Autowired
+    private ToolRepository toolRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private ToolsInventoryRepository toolsInventoryRepository;
+
+    @Autowired
+    private KardexRollupRepository kardexRollupRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @MockitoBean
+    private KardexStreamService kardexStreamService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transaction;
+    private CategoryEntity category;
+
+    @BeforeEach
+    void setUp() {
+        transaction = new TransactionTemplate(transactionManager);
+        category = categoryRepository.save(new CategoryEntity(null, "Herramientas Eléctricas"));
+        kardexWriter.maxPending = 500;
+    }
+
+    @AfterEach
+    void tearDown() {
+        kardexRollupRepository.deleteAll();
+        kardexRepository.deleteAll();
+        toolRepository.deleteAll();
+        toolsInventoryRepository.deleteAll();
+        categoryRepository.deleteAll();
+    }
+
+    private KardexEntity movement(String type, ToolEntity tool) {
+        return new KardexEntity(null, type, LocalDate.now(), "testuser", tool, 1);
+    }
+
+    @Test
+    void whenTransactionCommits_thenMovementsAreInsertedBeforeCommit() {
+        // Given
+        List<Long> countsInsideTransaction = new ArrayList<>();
+        long flushes = meterRegistry.get("toolrent.kardex.flush").timer().count();
+
+        // When: la herramienta y sus movimientos se crean en la misma transaccion
+        transaction.executeWithoutResult(status -> {
+            ToolEntity tool = toolRepository.save(new ToolEntity(null, "taladro", category, "disponible", 0L));
+            kardexWriter.write(movement("ingreso", tool));
+            kardexWriter.writeAll(List.of(movement("préstamo", tool), movement("devolución", tool)));
+            countsInsideTransaction.add(kardexRepository.count());
+            countsInsideTransaction.add((long) kardexWriter.queueDepth());
+        });
+
+        // Then
+        assertThat(countsInsideTransaction).containsExactly(0L, 3L);
+        assertThat(kardexRepository.findAll()).extracting(KardexEntity::getType)
+                .containsExactlyInAnyOrder("ingreso", "préstamo", "devolución");
+        assertThat(kardexWriter.queueDepth()).isZero();
+        assertThat(meterRegistry.get("toolrent.kardex.queue.depth").gauge().value()).isZero();
+        assertThat(meterRegistry.get("toolrent.kardex.flush").timer().count()).isEqualTo(flushes + 1);
+    }
+
+    @Test
+    void whenTransactionRollsBack_thenQueuedMovementsAreDiscarded() {
+        // Given
+        ToolEntity tool = toolRepository.save(new ToolEntity(null, "taladro", category, "disponible", 0L));
+
+        // When
+        assertThatThrownBy(() -> transaction.executeWithoutResult(status -> {
+            kardexWriter.write(movement("baja", tool));
+            throw new IllegalArgumentException("El tipo de prestamo no es valido");
+        })).isInstanceOf(IllegalArgumentException.class);
+
+        // Then
+        assertThat(kardexRepository.count()).isZero();
+        assertThat(kardexWriter.queueDepth()).isZero();
+    }
+
+    @Test
+    void whenQueueReachesMaxPending_thenFlushBeforeCommit() {
+        // Given
+        kardexWriter.maxPending = 2;
+        List<Long> countsInsideTransaction = new ArrayList<>();
+
+        // When
+        transaction.executeWithoutResult(status -> {
+            ToolEntity tool = toolRepository.save(new ToolEntity(null, "taladro", category, "disponible", 0L));
+            kardexWriter.write(movement("ingreso", tool));
+            countsInsideTransaction.add(kardexRepository.count());
+            kardexWriter.write(movement("ingreso", tool));
+            countsInsideTransaction.add(kardexRepository.count());
+            kardexWriter.write(movement("ingreso", tool));
+        });
+
+        // Then
+        assertThat(countsInsideTransaction).containsExactly(0L, 2L);
+        assertThat(kardexRepository.count()).isEqualTo(3);
+    }
+
+    @Test
+    void whenNoTransaction_thenMovementIsInsertedImmediately() {
+        // Given
+        ToolEntity tool = toolRepository.save(new ToolEntity(null, "taladro", category, "disponible", 0L));
+
+        // When
+        kardexWriter.write(movement("reparación", tool));
+
+        // Then
+        assertThat(kardexRepository.count()).isEqualTo(1);
+        assertThat(kardexWriter.queueDepth()).isZero();
+    }
+
+    @Test
+    void whenTransactionCommits_thenDailyRollupIsUpdatedWithTheMovements() {
+        // Given
+        toolsInventoryRepository.save(new ToolsInventoryEntity(null, "taladro", category.getName(), 1, 1, 50000, 5000, 0L));
+
+        // When
+        transaction.executeWithoutResult(status -> {
+            ToolEntity tool = toolRepository.save(new ToolEntity(null, "taladro", category, "disponible", 0L));
+            kardexWriter.writeAll(List.of(movement("ingreso", tool), movement("ingreso", tool), movement("préstamo", tool)));
+        });
+
+        // Then
+        assertThat(kardexRollupRepository.findAll())
+                .extracting(rollup -> rollup.getType() + "=" + rollup.getTotalAmount())
+                .containsExactlyInAnyOrder("ingreso=2", "préstamo=1");
+    }
+
+    @Test
+    void whenTransactionRollsBack_thenDailyRollupIsNotUpdated() {
+        // Given
+        toolsInventoryRepository.save(new ToolsInventoryEntity(null, "taladro", category.getName(), 1, 1, 50000, 5000, 0L));
+        ToolEntity tool = toolRepository.save(new ToolEntity(null, "taladro", category, "disponible", 0L));
+        kardexWriter.maxPending = 1;
+
+        // When: el lote se inserta antes del error (max-pending) y se deshace con la transaccion
+        assertThatThrownBy(() -> transaction.executeWithoutResult(status -> {
+            kardexWriter.write(movement("préstamo", tool));
+            throw new IllegalArgumentException("El tipo de prestamo no es valido");
+        })).isInstanceOf(IllegalArgumentException.class);
+
+        // Then
+        assertThat(kardexRepository.count()).isZero();
+        assertThat(kardexRollupRepository.count()).isZero();
+    }
+
+    @Test
+    void whenTransactionCommits_thenMovementsArePublishedAfterCommit() {
+        // Given
+        List<Long> countsWhenPublished = new ArrayList<>();
+        List<Long> publishedIds = new ArrayList<>();
+        doAnswer(invocation -> {
+            countsWhenPublished.add(kardexRepository.count());
+            Collection<KardexEntity> movements = invocation.getArgument(0);
+            movements.forEach(movement -> publishedIds.add(movement.getId()));
+            return null;
+        }).when(kardexStreamService).publish(anyCollection());
+
+        // When
+        transaction.executeWithoutResult(status -> {
+            ToolEntity tool = toolRepository.save(new ToolEntity(null, "taladro", category, "disponible", 0L));
+            kardexWriter.writeAll(List.of(movement("ingreso", tool), movement("préstamo", tool)));
+        });
+
+        // Then: al publicar los movimientos ya estan confirmados y tienen id
+        assertThat(countsWhenPublished).containsExactly(2L);
+        assertThat(publishedIds).hasSize(2).doesNotContainNull();
+    }
+
+    @Test
+    void whenTransactionRollsBack_thenMovementsAreNotPublished() {
+        // Given
+        ToolEntity tool = toolRepository.save(new ToolEntity(null, "taladro", category, "disponible", 0L));
+        kardexWriter.maxPending = 1;
+
+        // When
+        assertThatThrownBy(() -> transaction.executeWithoutResult(status -> {
+            kardexWriter.write(movement("préstamo", tool));
+            throw new IllegalArgumentException("El tipo de prestamo no es valido");
+        })).isInstanceOf(IllegalArgumentException.class);
+
+        // Then
+        verify(kardexStreamService, never()).publish(anyCollection());
+    }
+
+    @Test
+    void whenMovementsAreInserted_thenTheyKeepTheirRecordingTime() {
+        // Given
+        LocalDateTime before = LocalDateTime.now();
+
+        // When
+        transaction.executeWithoutResult(status -> {
+            ToolEntity tool = toolRepository.save(new ToolEntity(null, "taladro", category, "disponible", 0L));
+            kardexWriter.writeAll(List.of(movement("ingreso", tool), movement("préstamo", tool)));
+        });
+
+        // Then: las demas replicas leen los movimientos nuevos por esta hora
+        assertThat(kardexRepository.findIdsRecordedSince(before)).hasSize(2);
+        assertThat(kardexRepository.findAll()).extracting(KardexEntity::getRecordedAt)
+                .allMatch(recordedAt -> !recordedAt.isBefore(before));
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.repositories.LoanRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class LoanDueDateSchedulerTest {
+
+    @Mock
+    private LoanRepository loanRepository;
+
+    @Mock
+    private LoanService loanService;
+
+    @InjectMocks
+    private LoanDueDateScheduler loanDueDateScheduler;
+
+    @Test
+    void whenDueInstant_thenReturnStartOfNextDay() {
+        LocalDate returnDate = LocalDate.of(2025, 10, 8);
+
+        assertThat(LoanDueDateScheduler.dueInstant(returnDate))
+                .isEqualTo(LocalDate.of(2025, 10, 9).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    @Test
+    void whenTimerIsDue_thenMarkLoanAsOverdueOnce() {
+        // Given
+        loanDueDateScheduler.schedule(1L, LocalDate.now().minusDays(1));
+
+        // When
+        int fired = loanDueDateScheduler.fireExpiredTimers();
+        int firedAgain = loanDueDateScheduler.fireExpiredTimers();
+
+        // Then
+        assertThat(fired).isEqualTo(1);
+        assertThat(firedAgain).isZero();
+        assertThat(loanDueDateScheduler.pendingTimers()).isZero();
+        verify(loanService).markLoanAsOverdue(1L);
+    }
+
+    @Test
+    void whenTimerIsNotDue_thenDoNotFire() {
+        // Given
+        loanDueDateScheduler.schedule(1L, LocalDate.now());
+
+        // When
+        int fired = loanDueDateScheduler.fireExpiredTimers();
+
+        // Then
+        assertThat(fired).isZero();
+        assertThat(loanDueDateScheduler.pendingTimers()).isEqualTo(1);
+        verify(loanService, never()).markLoanAsOverdue(any());
+    }
+
+    @Test
+    void whenTimerIsCancelled_thenDoNotFire() {
+        // Given
+        loanDueDateScheduler.schedule(1L, LocalDate.now().minusDays(1));
+        loanDueDateScheduler.cancel(1L);
+
+        // When
+        int fired = loanDueDateScheduler.fireExpiredTimers();
+
+        // Then
+        assertThat(fired).isZero();
+        verify(loanService, never()).markLoanAsOverdue(any());
+    }
+
+    @Test
+    void whenTimerIsRescheduled_thenOnlyLatestTimerCounts() {
+        // Given
+        loanDueDateScheduler.schedule(1L, LocalDate.now().minusDays(1));
+        loanDueDateScheduler.schedule(1L, LocalDate.now().plusDays(3));
+
+        // When
+        int fired = loanDueDateScheduler.fireExpiredTimers();
+
+        // Then
+        assertThat(fired).isZero();
+        assertThat(loanDueDateScheduler.pendingTimers()).isEqualTo(1);
+        verify(loanService, never()).markLoanAsOverdue(any());
+    }
+
+    @Test
+    void whenLoadActiveLoans_thenScheduleEveryActiveLoan() {
+        // Given
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[]{1L, LocalDate.now().minusDays(2)});
+        rows.add(new Object[]{2L, LocalDate.now().plusDays(2)});
+        when(loanRepository.findActiveLoanReturnDates()).thenReturn(rows);
+
+        // When
+        loanDueDateScheduler.loadActiveLoans();
+        int fired = loanDueDateScheduler.fireExpiredTimers();
+
+        // Then
+        assertThat(fired).isEqualTo(1);
+        assertThat(loanDueDateScheduler.pendingTimers()).isEqualTo(1);
+        verify(loanService).markLoanAsOverdue(1L);
+    }
+
+    @Test
+    void whenMarkLoanAsOverdueFails_thenKeepProcessingOtherTimers() {
+        // Given
+        loanDueDateScheduler.schedule(1L, LocalDate.now().minusDays(2));
+        loanDueDateScheduler.schedule(2L, LocalDate.now().minusDays(1));
+        doThrow(new IllegalStateException("db caída")).when(loanService).markLoanAsOverdue(1L);
+
+        // When
+        int fired = loanDueDateScheduler.fireExpiredTimers();
+
+        // Then
+        assertThat(fired).isEqualTo(2);
+        verify(loanService).markLoanAsOverdue(2L);
+    }
+
+    @Test
+    void whenSeveralTimersAreDue_thenFireInDueDateOrder() {
+        // Given
+        loanDueDateScheduler.schedule(1L, LocalDate.now().minusDays(1));
+        loanDueDateScheduler.schedule(2L, LocalDate.now().minusDays(5));
+        loanDueDateScheduler.schedule(3L, LocalDate.now().minusDays(3));
+
+        // When
+        loanDueDateScheduler.fireExpiredTimers();
+
+        // Then
+        InOrder order = inOrder(loanService);
+        order.verify(loanService).markLoanAsOverdue(2L);
+        order.verify(loanService).markLoanAsOverdue(3L);
+        order.verify(loanService).markLoanAsOverdue(1L);
+    }
+
+    @Test
+    void whenCancelledTimersOutnumberPendingOnes_thenQueueIsPurged() {
+        // Given
+        loanDueDateScheduler.schedule(1L, LocalDate.now().plusDays(5));
+        loanDueDateScheduler.schedule(2L, LocalDate.now().plusDays(5));
+        loanDueDateScheduler.schedule(3L, LocalDate.now().plusDays(5));
+
+        // When: el primer cancelado queda en la cola, el segundo supera a los vigentes y limpia la cola
+        loanDueDateScheduler.cancel(1L);
+        int queuedAfterFirstCancel = loanDueDateScheduler.queuedTimers();
+        loanDueDateScheduler.cancel(2L);
+
+        // Then
+        assertThat(queuedAfterFirstCancel).isEqualTo(3);
+        assertThat(loanDueDateScheduler.queuedTimers()).isEqualTo(1);
+        assertThat(loanDueDateScheduler.pendingTimers()).isEqualTo(1);
+    }
+}
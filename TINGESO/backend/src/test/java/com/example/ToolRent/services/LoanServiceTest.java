@@ -1,6 +1,8 @@
 package com.example.ToolRent.services;
 
 
+import com.example.ToolRent.dto.LoanAdmissionDTO;
+import com.example.ToolRent.dto.LoanReturnItemDTO;
 import com.example.ToolRent.entities.*;
 import com.example.ToolRent.repositories.*;
 import org.junit.jupiter.api.BeforeEach;
@@ -9,6 +11,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -18,7 +21,11 @@ import java.util.Optional;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -49,11 +56,20 @@ public class LoanServiceTest {
     private ToolsInventoryRepository toolsInventoryRepository;
 
     @Mock
-    private KardexRepository kardexRepository;
+    private ToolRepository toolRepository;
 
     @Mock
     private KardexService kardexService;
 
+    @Mock
+    private SchedulerLockService schedulerLockService;
+
+    @Mock
+    private LoanDueDateScheduler loanDueDateScheduler;
+
+    @Mock
+    private OverdueLoanBatchService overdueLoanBatchService;
+
     @InjectMocks
     private LoanService loanService;
 
@@ -151,75 +167,6 @@ public class LoanServiceTest {
         assertThat(result).isNull();
     }
 
-    // ==================== countLoands ====================
-
-    @Test
-    void whenCountLoandsWithNonEmptyList_thenReturnCount() {
-        // Given
-        ArrayList<LoanEntity> loans = new ArrayList<>();
-        loans.add(loanEntity);
-        loans.add(loanEntity);
-
-        // When
-        int result = loanService.countLoands(loans);
-
-        // Then
-        assertThat(result).isEqualTo(2);
-    }
-
-    @Test
-    void whenCountLoandsWithEmptyList_thenReturnZero() {
-        // Given
-        ArrayList<LoanEntity> loans = new ArrayList<>();
-
-        // When
-        int result = loanService.countLoands(loans);
-
-        // Then
-        assertThat(result).isEqualTo(0);
-    }
-
-    // ==================== isTheSameTool ====================
-
-    @Test
-    void whenIsTheSameToolWithSameTool_thenReturnTrue() {
-        // Given
-        ArrayList<LoanEntity> clientActiveLoans = new ArrayList<>();
-        clientActiveLoans.add(loanEntity);
-
-        when(toolsInventoryRepository.findByNameAndCategory("taladro", "Electricidad"))
-                .thenReturn(toolsInventoryEntity);
-
-        // When
-        boolean result = loanService.isTheSameTool(clientActiveLoans, toolEntity);
-
-        // Then
-        assertThat(result).isTrue();
-    }
-
-    @Test
-    void whenIsTheSameToolWithDifferentTool_thenReturnFalse() {
-        // Given
-        ToolEntity differentTool = new ToolEntity();
-        differentTool.setId(2L);
-        differentTool.setName("sierra");
-        differentTool.setCategory(categoryEntity);
-
-        ArrayList<LoanEntity> clientActiveLoans = new ArrayList<>();
-        clientActiveLoans.add(loanEntity);
-
-        when(toolsInventoryRepository.findByNameAndCategory("sierra", "Electricidad"))
-                .thenReturn(null);
-        when(toolsInventoryRepository.findByNameAndCategory("taladro", "Electricidad"))
-                .thenReturn(toolsInventoryEntity);
-
-        // When
-        boolean result = loanService.isTheSameTool(clientActiveLoans, differentTool);
-
-        // Then
-        assertThat(result).isFalse();
-    }
-
     // ==================== METODOS GET/FIND ====================
 
     // ==================== findLoanById ====================
@@ -394,42 +341,64 @@ public class LoanServiceTest {
     @Test
     void whenMakeLoanWithValidData_thenReturnLoan() {
         // Given
-        LoanEntity newLoan = new LoanEntity();
-        newLoan.setCustomer(customerEntity);
-        newLoan.setTool(toolEntity);
-        newLoan.setReturnDate(LocalDate.now().plusDays(5));
+        LocalDate returnDate = LocalDate.now().plusDays(5);
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customerEntity));
+        when(toolRepository.findById(1L)).thenReturn(Optional.of(toolEntity));
 
         when(customerService.isActive("activo")).thenReturn(true);
-        when(loanRepository.findByCustomerRutAndStatus("12345678-9", "activo"))
-                .thenReturn(Optional.of(new ArrayList<>()));
-        when(toolService.hasAvailableStock("taladro", "Electricidad")).thenReturn(true);
-        when(toolsInventoryRepository.findByNameAndCategory("taladro", "Electricidad"))
-                .thenReturn(toolsInventoryEntity);
+        when(loanRepository.findLoanAdmission("12345678-9", "taladro", "Electricidad"))
+                .thenReturn(Optional.of(new LoanAdmissionDTO(0L, false, 10, 5000, 1L, "activo")));
         when(toolService.borrowedTool(1L)).thenReturn(toolEntity);
         when(kardexService.registerMovement("préstamo", toolEntity)).thenReturn(kardexEntity);
-        when(loanRepository.save(any(LoanEntity.class))).thenReturn(newLoan);
+        when(loanRepository.save(any(LoanEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
         // When
-        LoanEntity result = loanService.makeLoan(newLoan);
+        LoanEntity result = loanService.makeLoan(1L, 1L, returnDate);
 
         // Then
         assertThat(result).isNotNull();
+        assertThat(result.getCustomer()).isEqualTo(customerEntity);
+        assertThat(result.getStatus()).isEqualTo("activo");
+        assertThat(result.getLoanDate()).isEqualTo(LocalDate.now());
         verify(loanRepository).save(any(LoanEntity.class));
-        verify(kardexRepository).save(any(KardexEntity.class));
+        verify(kardexService).registerMovement("préstamo", toolEntity);
+        verify(loanDueDateScheduler).schedule(result.getId(), returnDate);
+        verify(customerRepository).adjustObligations(1L, 1, 0, 0, 0);
+        assertThat(result.getLoanValue()).isEqualTo(5 * 5000);
+        verify(loanRepository, never()).findByCustomerRutAndStatus(any(), any());
+        verify(toolsInventoryRepository, never()).findByNameAndCategory(any(), any());
     }
 
     @Test
-    void whenMakeLoanWithRestrictedCustomer_thenThrowException() {
+    void whenMakeLoanWithToolNotInInventory_thenThrowException() {
         // Given
-        customerEntity.setStatus("restringido");
-        LoanEntity newLoan = new LoanEntity();
-        newLoan.setCustomer(customerEntity);
-        newLoan.setTool(toolEntity);
+        LocalDate returnDate = LocalDate.now().plusDays(5);
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customerEntity));
+        when(toolRepository.findById(1L)).thenReturn(Optional.of(toolEntity));
+
+        when(customerService.isActive("activo")).thenReturn(true);
+        when(loanRepository.findLoanAdmission("12345678-9", "taladro", "Electricidad"))
+                .thenReturn(Optional.of(new LoanAdmissionDTO(0L, false, null, null, 1L, "activo")));
 
+        // When & Then
+        assertThatThrownBy(() -> loanService.makeLoan(1L, 1L, returnDate))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("El stock de la herramienta es insuficiente");
+    }
+
+    @Test
+    void whenMakeLoanWithRestrictedCustomer_thenThrowException() {
+        // Given: el estado guardado del cliente es restringido
+        LocalDate returnDate = LocalDate.now().plusDays(5);
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customerEntity));
+        when(toolRepository.findById(1L)).thenReturn(Optional.of(toolEntity));
+
+        when(loanRepository.findLoanAdmission("12345678-9", "taladro", "Electricidad"))
+                .thenReturn(Optional.of(new LoanAdmissionDTO(0L, false, 10, 5000, 1L, "restringido")));
         when(customerService.isActive("restringido")).thenReturn(false);
 
         // When & Then
-        assertThatThrownBy(() -> loanService.makeLoan(newLoan))
+        assertThatThrownBy(() -> loanService.makeLoan(1L, 1L, returnDate))
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessage("El cliente tiene estado restringido");
     }
@@ -437,21 +406,16 @@ public class LoanServiceTest {
     @Test
     void whenMakeLoanWithFiveActiveLoans_thenThrowException() {
         // Given
-        LoanEntity newLoan = new LoanEntity();
-        newLoan.setCustomer(customerEntity);
-        newLoan.setTool(toolEntity);
-
-        List<LoanEntity> fiveLoans = new ArrayList<>();
-        for (int i = 0; i < 5; i++) {
-            fiveLoans.add(new LoanEntity());
-        }
+        LocalDate returnDate = LocalDate.now().plusDays(5);
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customerEntity));
+        when(toolRepository.findById(1L)).thenReturn(Optional.of(toolEntity));
 
         when(customerService.isActive("activo")).thenReturn(true);
-        when(loanRepository.findByCustomerRutAndStatus("12345678-9", "activo"))
-                .thenReturn(Optional.of(fiveLoans));
+        when(loanRepository.findLoanAdmission("12345678-9", "taladro", "Electricidad"))
+                .thenReturn(Optional.of(new LoanAdmissionDTO(5L, false, 10, 5000, 1L, "activo")));
 
         // When & Then
-        assertThatThrownBy(() -> loanService.makeLoan(newLoan))
+        assertThatThrownBy(() -> loanService.makeLoan(1L, 1L, returnDate))
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessage("El cliente tiene 5 prestamos activos");
     }
@@ -459,22 +423,16 @@ public class LoanServiceTest {
     @Test
     void whenMakeLoanWithSameTool_thenThrowException() {
         // Given
-        LoanEntity newLoan = new LoanEntity();
-        newLoan.setCustomer(customerEntity);
-        newLoan.setTool(toolEntity);
-
-        List<LoanEntity> existingLoans = new ArrayList<>();
-        existingLoans.add(loanEntity);
+        LocalDate returnDate = LocalDate.now().plusDays(5);
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customerEntity));
+        when(toolRepository.findById(1L)).thenReturn(Optional.of(toolEntity));
 
         when(customerService.isActive("activo")).thenReturn(true);
-        when(loanRepository.findByCustomerRutAndStatus("12345678-9", "activo"))
-                .thenReturn(Optional.of(existingLoans))
-                .thenReturn(Optional.of(existingLoans));
-        when(toolsInventoryRepository.findByNameAndCategory("taladro", "Electricidad"))
-                .thenReturn(toolsInventoryEntity);
+        when(loanRepository.findLoanAdmission("12345678-9", "taladro", "Electricidad"))
+                .thenReturn(Optional.of(new LoanAdmissionDTO(1L, true, 10, 5000, 1L, "activo")));
 
         // When & Then
-        assertThatThrownBy(() -> loanService.makeLoan(newLoan))
+        assertThatThrownBy(() -> loanService.makeLoan(1L, 1L, returnDate))
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessage("El cliente ya posee un prestamo con la herramienta solicitada");
     }
@@ -482,20 +440,16 @@ public class LoanServiceTest {
     @Test
     void whenMakeLoanWithNoStock_thenThrowException() {
         // Given
-        LoanEntity newLoan = new LoanEntity();
-        newLoan.setCustomer(customerEntity);
-        newLoan.setTool(toolEntity);
+        LocalDate returnDate = LocalDate.now().plusDays(5);
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customerEntity));
+        when(toolRepository.findById(1L)).thenReturn(Optional.of(toolEntity));
 
         when(customerService.isActive("activo")).thenReturn(true);
-        when(loanRepository.findByCustomerRutAndStatus("12345678-9", "activo"))
-                .thenReturn(Optional.of(new ArrayList<>()))
-                .thenReturn(Optional.of(new ArrayList<>()));
-        when(toolsInventoryRepository.findByNameAndCategory("taladro", "Electricidad"))
-                .thenReturn(toolsInventoryEntity);
-        when(toolService.hasAvailableStock("taladro", "Electricidad")).thenReturn(false);
+        when(loanRepository.findLoanAdmission("12345678-9", "taladro", "Electricidad"))
+                .thenReturn(Optional.of(new LoanAdmissionDTO(0L, false, 0, 5000, 1L, "activo")));
 
         // When & Then
-        assertThatThrownBy(() -> loanService.makeLoan(newLoan))
+        assertThatThrownBy(() -> loanService.makeLoan(1L, 1L, returnDate))
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessage("El stock de la herramienta es insuficiente");
     }
@@ -504,20 +458,16 @@ public class LoanServiceTest {
     void whenMakeLoanWithBorrowedTool_thenThrowException() {
         // Given
         toolEntity.setStatus("prestada");
-        LoanEntity newLoan = new LoanEntity();
-        newLoan.setCustomer(customerEntity);
-        newLoan.setTool(toolEntity);
+        LocalDate returnDate = LocalDate.now().plusDays(5);
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customerEntity));
+        when(toolRepository.findById(1L)).thenReturn(Optional.of(toolEntity));
 
         when(customerService.isActive("activo")).thenReturn(true);
-        when(loanRepository.findByCustomerRutAndStatus("12345678-9", "activo"))
-                .thenReturn(Optional.of(new ArrayList<>()))
-                .thenReturn(Optional.of(new ArrayList<>()));
-        when(toolsInventoryRepository.findByNameAndCategory("taladro", "Electricidad"))
-                .thenReturn(toolsInventoryEntity);
-        when(toolService.hasAvailableStock("taladro", "Electricidad")).thenReturn(true);
+        when(loanRepository.findLoanAdmission("12345678-9", "taladro", "Electricidad"))
+                .thenReturn(Optional.of(new LoanAdmissionDTO(0L, false, 10, 5000, 1L, "activo")));
 
         // When & Then
-        assertThatThrownBy(() -> loanService.makeLoan(newLoan))
+        assertThatThrownBy(() -> loanService.makeLoan(1L, 1L, returnDate))
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessage("La herramienta solicitada ya esta prestada");
     }
@@ -525,23 +475,212 @@ public class LoanServiceTest {
     @Test
     void whenMakeLoanWithInvalidReturnDate_thenThrowException() {
         // Given
-        LoanEntity newLoan = new LoanEntity();
-        newLoan.setCustomer(customerEntity);
-        newLoan.setTool(toolEntity);
-        newLoan.setReturnDate(LocalDate.now().minusDays(1));
+        LocalDate returnDate = LocalDate.now().minusDays(1);
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customerEntity));
+        when(toolRepository.findById(1L)).thenReturn(Optional.of(toolEntity));
 
         when(customerService.isActive("activo")).thenReturn(true);
-        when(loanRepository.findByCustomerRutAndStatus("12345678-9", "activo"))
-                .thenReturn(Optional.of(new ArrayList<>()))
-                .thenReturn(Optional.of(new ArrayList<>()));
-        when(toolsInventoryRepository.findByNameAndCategory("taladro", "Electricidad"))
-                .thenReturn(toolsInventoryEntity);
-        when(toolService.hasAvailableStock("taladro", "Electricidad")).thenReturn(true);
+        when(loanRepository.findLoanAdmission("12345678-9", "taladro", "Electricidad"))
+                .thenReturn(Optional.of(new LoanAdmissionDTO(0L, false, 10, 5000, 1L, "activo")));
+
+        // When & Then
+        assertThatThrownBy(() -> loanService.makeLoan(1L, 1L, returnDate))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("La fecha de devolución no puede ser anterior o igual a la fecha de prestamo");
+    }
+
+    @Test
+    void whenMakeLoanWithUnknownTool_thenThrowException() {
+        // Given
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customerEntity));
+        when(toolRepository.findById(99L)).thenReturn(Optional.empty());
+
+        // When & Then
+        assertThatThrownBy(() -> loanService.makeLoan(1L, 99L, LocalDate.now().plusDays(5)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Herramienta con ID 99 no encontrada");
+        verifyNoInteractions(toolService);
+    }
+
+    // ==================== makeLoans ====================
+
+    private ToolEntity cartTool(Long id, String name) {
+        return new ToolEntity(id, name, categoryEntity, "disponible", 0L);
+    }
+
+    private ToolsInventoryEntity cartInventory(String name, int stock) {
+        return new ToolsInventoryEntity(null, name, "Electricidad", 5, stock, 50000, 1000, 0L);
+    }
+
+    @Test
+    void whenMakeLoansWithValidCart_thenCreateAllLoansInBatch() {
+        // Given
+        ToolEntity drill = cartTool(1L, "taladro");
+        ToolEntity saw = cartTool(2L, "sierra");
+        LocalDate returnDate = LocalDate.now().plusDays(3);
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customerEntity));
+        when(customerService.isActive("activo")).thenReturn(true);
+        when(loanRepository.findActiveLoanToolFamilies(1L)).thenReturn(new ArrayList<>());
+        when(toolRepository.findToolsWithInventory(List.of(1L, 2L))).thenReturn(List.of(
+                new Object[]{drill, cartInventory("taladro", 2)},
+                new Object[]{saw, cartInventory("sierra", 1)}));
+        when(toolService.borrowedTool(1L)).thenReturn(drill);
+        when(toolService.borrowedTool(2L)).thenReturn(saw);
+        when(kardexService.buildMovement(any(), any())).thenReturn(kardexEntity);
+        when(loanRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        List<LoanEntity> loans = loanService.makeLoans(1L, List.of(1L, 2L), returnDate);
+
+        // Then
+        assertThat(loans.size()).isEqualTo(2);
+        for (LoanEntity loan : loans) {
+            assertThat(loan.getStatus()).isEqualTo("activo");
+            assertThat(loan.getLoanValue()).isEqualTo(3 * 1000);
+        }
+        verify(kardexService).registerMovements(List.of(kardexEntity, kardexEntity));
+        verify(loanRepository).saveAll(anyList());
+        verify(loanRepository, never()).save(any(LoanEntity.class));
+    }
+
+    @Test
+    void whenMakeLoansExceedsFiveActiveLoans_thenThrowException() {
+        // Given
+        List<Object[]> activeFamilies = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            activeFamilies.add(new Object[]{"herramienta" + i, "Electricidad"});
+        }
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customerEntity));
+        when(customerService.isActive("activo")).thenReturn(true);
+        when(loanRepository.findActiveLoanToolFamilies(1L)).thenReturn(activeFamilies);
+
+        // When & Then
+        assertThatThrownBy(() -> loanService.makeLoans(1L, List.of(1L, 2L), LocalDate.now().plusDays(3)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("El cliente no puede tener mas de 5 prestamos activos");
+        verify(toolService, never()).borrowedTool(any());
+    }
+
+    @Test
+    void whenMakeLoansWithToolAlreadyLoaned_thenThrowException() {
+        // Given
+        List<Object[]> activeFamilies = new ArrayList<>();
+        activeFamilies.add(new Object[]{"sierra", "Electricidad"});
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customerEntity));
+        when(customerService.isActive("activo")).thenReturn(true);
+        when(loanRepository.findActiveLoanToolFamilies(1L)).thenReturn(activeFamilies);
+        when(toolRepository.findToolsWithInventory(List.of(1L, 2L))).thenReturn(List.of(
+                new Object[]{cartTool(1L, "taladro"), cartInventory("taladro", 2)},
+                new Object[]{cartTool(2L, "sierra"), cartInventory("sierra", 1)}));
+
+        // When & Then
+        assertThatThrownBy(() -> loanService.makeLoans(1L, List.of(1L, 2L), LocalDate.now().plusDays(3)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("El cliente ya posee un prestamo con la herramienta solicitada");
+        verify(toolService, never()).borrowedTool(any());
+    }
+
+    @Test
+    void whenMakeLoansWithoutStock_thenThrowException() {
+        // Given
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customerEntity));
+        when(customerService.isActive("activo")).thenReturn(true);
+        when(loanRepository.findActiveLoanToolFamilies(1L)).thenReturn(new ArrayList<>());
+        when(toolRepository.findToolsWithInventory(List.of(1L))).thenReturn(List.<Object[]>of(
+                new Object[]{cartTool(1L, "taladro"), cartInventory("taladro", 0)}));
+
+        // When & Then
+        assertThatThrownBy(() -> loanService.makeLoans(1L, List.of(1L), LocalDate.now().plusDays(3)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("El stock de la herramienta es insuficiente");
+    }
+
+    @Test
+    void whenMakeLoansWithRepeatedTool_thenThrowException() {
+        // When & Then
+        assertThatThrownBy(() -> loanService.makeLoans(1L, List.of(1L, 1L), LocalDate.now().plusDays(3)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Una herramienta no puede estar dos veces en el mismo préstamo");
+        verifyNoInteractions(customerRepository, toolService);
+    }
+
+    @Test
+    void whenMakeLoansWithRestrictedCustomer_thenThrowException() {
+        // Given
+        customerEntity.setStatus("restringido");
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customerEntity));
+        when(customerService.isActive("restringido")).thenReturn(false);
 
         // When & Then
-        assertThatThrownBy(() -> loanService.makeLoan(newLoan))
+        assertThatThrownBy(() -> loanService.makeLoans(1L, List.of(1L), LocalDate.now().plusDays(3)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("El cliente tiene estado restringido");
+    }
+
+    @Test
+    void whenMakeLoansWithInvalidReturnDate_thenThrowException() {
+        // Given
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customerEntity));
+        when(customerService.isActive("activo")).thenReturn(true);
+        when(loanRepository.findActiveLoanToolFamilies(1L)).thenReturn(new ArrayList<>());
+        when(toolRepository.findToolsWithInventory(List.of(1L))).thenReturn(List.<Object[]>of(
+                new Object[]{cartTool(1L, "taladro"), cartInventory("taladro", 2)}));
+
+        // When & Then
+        assertThatThrownBy(() -> loanService.makeLoans(1L, List.of(1L), LocalDate.now()))
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessage("La fecha de devolución no puede ser anterior o igual a la fecha de prestamo");
+        verify(toolService, never()).borrowedTool(any());
+    }
+
+    // ==================== makeLoanByInventory ====================
+
+    @Test
+    void whenMakeLoanByInventory_thenServerPicksUnitAndCreatesLoan() {
+        // Given
+        LocalDate returnDate = LocalDate.now().plusDays(4);
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customerEntity));
+        when(customerService.isActive("activo")).thenReturn(true);
+        when(loanRepository.findLoanAdmission("12345678-9", "taladro", "Electricidad"))
+                .thenReturn(Optional.of(new LoanAdmissionDTO(0L, false, 3, 1000, 1L, "activo")));
+        when(toolService.borrowAvailableTool("taladro", "Electricidad")).thenReturn(toolEntity);
+        when(loanRepository.save(any(LoanEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        LoanEntity loan = loanService.makeLoanByInventory(1L, "taladro", "Electricidad", returnDate);
+
+        // Then
+        assertThat(loan.getTool()).isEqualTo(toolEntity);
+        assertThat(loan.getStatus()).isEqualTo("activo");
+        assertThat(loan.getLoanValue()).isEqualTo(4 * 1000);
+        verify(kardexService).registerMovement("préstamo", toolEntity);
+        verify(toolService, never()).borrowedTool(any());
+    }
+
+    @Test
+    void whenMakeLoanByInventoryWithoutStock_thenDoNotLockAnyUnit() {
+        // Given
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customerEntity));
+        when(customerService.isActive("activo")).thenReturn(true);
+        when(loanRepository.findLoanAdmission("12345678-9", "taladro", "Electricidad"))
+                .thenReturn(Optional.of(new LoanAdmissionDTO(0L, false, 0, 1000, 1L, "activo")));
+
+        // When & Then
+        assertThatThrownBy(() -> loanService.makeLoanByInventory(1L, "taladro", "Electricidad", LocalDate.now().plusDays(2)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("El stock de la herramienta es insuficiente");
+        verify(toolService, never()).borrowAvailableTool(any(), any());
+    }
+
+    @Test
+    void whenMakeLoanByInventoryWithUnknownCustomer_thenThrowException() {
+        // Given
+        when(customerRepository.findById(9L)).thenReturn(Optional.empty());
+
+        // When & Then
+        assertThatThrownBy(() -> loanService.makeLoanByInventory(9L, "taladro", "Electricidad", LocalDate.now().plusDays(2)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Cliente con id 9 no encontrado");
     }
 
     // ==================== loanReturn ====================
@@ -562,7 +701,8 @@ public class LoanServiceTest {
         assertThat(result).isNotNull();
         assertThat(result.getStatus()).isEqualTo("finalizado");
         verify(toolService).availableTool(1L);
-        verify(kardexRepository).save(any(KardexEntity.class));
+        verify(kardexService).registerMovement("devolución", toolEntity);
+        verify(loanDueDateScheduler).cancel(1L);
     }
 
     @Test
@@ -582,6 +722,7 @@ public class LoanServiceTest {
         assertThat(result.getStatus()).isEqualTo("evaluación pendiente");
         verify(toolService).damagedTool(1L);
         verify(customerRepository).save(any(CustomerEntity.class));
+        verify(customerRepository).adjustObligations(1L, -1, 0, 1, 0);
     }
 
     @Test
@@ -600,6 +741,7 @@ public class LoanServiceTest {
         assertThat(result).isNotNull();
         assertThat(result.getStatus()).isEqualTo("multa pendiente");
         verify(toolService).availableTool(1L);
+        verify(fineRepository).stopLateFineAccrual(1L, LocalDate.now());
     }
 
     @Test
@@ -619,6 +761,7 @@ public class LoanServiceTest {
         assertThat(result.getStatus()).isEqualTo("evaluación pendiente");
         verify(toolService).damagedTool(1L);
         verify(customerRepository).save(any(CustomerEntity.class));
+        verify(customerRepository).adjustObligations(1L, -1, 0, 1, 0);
     }
 
     @Test
@@ -654,6 +797,216 @@ public class LoanServiceTest {
         assertThatThrownBy(() -> loanService.loanReturn(1L, "Estado Inválido"))
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessage("El estado ingresado para la herramienta a devolver no es válido");
+        verify(loanDueDateScheduler, never()).cancel(any());
+    }
+
+    // ==================== loanReturns ====================
+
+    private LoanEntity returnLoan(Long id, ToolEntity tool, LocalDate returnDate) {
+        return new LoanEntity(id, customerEntity, tool, returnDate.minusDays(5), returnDate, "activo", 5000, 0L);
+    }
+
+    @Test
+    void whenLoanReturnsInGoodState_thenAggregateStockPerInventory() {
+        // Given
+        ToolEntity drill1 = new ToolEntity(1L, "taladro", categoryEntity, "prestada", 0L);
+        ToolEntity drill2 = new ToolEntity(2L, "taladro", categoryEntity, "prestada", 0L);
+        LoanEntity onTime = returnLoan(10L, drill1, LocalDate.now().plusDays(2));
+        LoanEntity late = returnLoan(11L, drill2, LocalDate.now().minusDays(1));
+        when(loanRepository.findAllForReturn(any())).thenReturn(List.of(onTime, late));
+        when(kardexService.buildMovement("devolución", drill1)).thenReturn(kardexEntity);
+        when(kardexService.buildMovement("devolución", drill2)).thenReturn(kardexEntity);
+
+        // When
+        List<LoanEntity> result = loanService.loanReturns(List.of(
+                new LoanReturnItemDTO(10L, "Buen Estado"),
+                new LoanReturnItemDTO(11L, "buen estado")));
+
+        // Then
+        assertThat(result.size()).isEqualTo(2);
+        assertThat(onTime.getStatus()).isEqualTo("finalizado");
+        assertThat(late.getStatus()).isEqualTo("multa pendiente");
+        assertThat(drill1.getStatus()).isEqualTo("disponible");
+        assertThat(drill2.getStatus()).isEqualTo("disponible");
+        verify(toolsInventoryRepository).releaseStock("taladro", "Electricidad", 2);
+        verify(fineRepository).stopLateFineAccrualForLoans(List.of(11L), LocalDate.now());
+        verify(kardexService).registerMovements(List.of(kardexEntity, kardexEntity));
+        verify(loanDueDateScheduler).cancel(10L);
+        verify(loanDueDateScheduler).cancel(11L);
+        verify(customerRepository).adjustObligations(1L, -2, 0, 0, 0);
+        verify(toolService, never()).availableTool(any());
+        verify(loanRepository, never()).save(any(LoanEntity.class));
+    }
+
+    @Test
+    void whenLoanReturnsWithDamagedTool_thenRestrictCustomerAndSendToRepair() {
+        // Given
+        ToolEntity saw = new ToolEntity(3L, "sierra", categoryEntity, "prestada", 0L);
+        LoanEntity loan = returnLoan(12L, saw, LocalDate.now().plusDays(2));
+        when(loanRepository.findAllForReturn(any())).thenReturn(List.of(loan));
+        when(kardexService.buildMovement(any(), any())).thenReturn(kardexEntity);
+
+        // When
+        loanService.loanReturns(List.of(new LoanReturnItemDTO(12L, "dañada")));
+
+        // Then
+        assertThat(loan.getStatus()).isEqualTo("evaluación pendiente");
+        assertThat(saw.getStatus()).isEqualTo("en reparacion");
+        assertThat(customerEntity.getStatus()).isEqualTo("restringido");
+        verify(kardexService).buildMovement("reparación", saw);
+        verify(kardexService).buildMovement("devolución", saw);
+        verify(toolsInventoryRepository, never()).releaseStock(any(), any(), anyInt());
+        verify(fineRepository, never()).stopLateFineAccrualForLoans(any(), any());
+    }
+
+    @Test
+    void whenLoanReturnsWithInvalidLoanStatus_thenWriteNothing() {
+        // Given
+        ToolEntity drill = new ToolEntity(1L, "taladro", categoryEntity, "prestada", 0L);
+        ToolEntity saw = new ToolEntity(3L, "sierra", categoryEntity, "disponible", 0L);
+        LoanEntity valid = returnLoan(10L, drill, LocalDate.now().plusDays(2));
+        LoanEntity finished = returnLoan(13L, saw, LocalDate.now().plusDays(2));
+        finished.setStatus("finalizado");
+        when(loanRepository.findAllForReturn(any())).thenReturn(List.of(valid, finished));
+
+        // When & Then
+        assertThatThrownBy(() -> loanService.loanReturns(List.of(
+                new LoanReturnItemDTO(10L, "buen estado"),
+                new LoanReturnItemDTO(13L, "buen estado"))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("El estado del préstamo no es válido");
+        assertThat(valid.getStatus()).isEqualTo("activo");
+        assertThat(drill.getStatus()).isEqualTo("prestada");
+        verifyNoInteractions(toolsInventoryRepository, kardexService, loanDueDateScheduler);
+    }
+
+    @Test
+    void whenLoanReturnsWithInvalidReturnStatus_thenThrowException() {
+        // Given
+        ToolEntity drill = new ToolEntity(1L, "taladro", categoryEntity, "prestada", 0L);
+        when(loanRepository.findAllForReturn(any())).thenReturn(List.of(returnLoan(10L, drill, LocalDate.now())));
+
+        // When & Then
+        assertThatThrownBy(() -> loanService.loanReturns(List.of(new LoanReturnItemDTO(10L, "perdida"))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("El estado ingresado para la herramienta a devolver no es válido");
+    }
+
+    @Test
+    void whenLoanReturnsWithUnknownLoan_thenThrowException() {
+        // Given
+        when(loanRepository.findAllForReturn(any())).thenReturn(new ArrayList<>());
+
+        // When & Then
+        assertThatThrownBy(() -> loanService.loanReturns(List.of(new LoanReturnItemDTO(99L, "buen estado"))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Préstamo con ID 99 no encontrada");
+    }
+
+    @Test
+    void whenLoanReturnsWithRepeatedLoan_thenThrowException() {
+        // When & Then
+        assertThatThrownBy(() -> loanService.loanReturns(List.of(
+                new LoanReturnItemDTO(10L, "buen estado"),
+                new LoanReturnItemDTO(10L, "dañada"))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("El préstamo 10 está dos veces en la devolución");
+        verifyNoInteractions(loanRepository);
+    }
+
+    // ==================== markLoanAsOverdue ====================
+
+    @Test
+    void whenMarkLoanAsOverdue_thenCreateFineAndRestrictCustomer() {
+        // Given
+        LocalDate today = LocalDate.now();
+        loanEntity.setReturnDate(today.minusDays(1));
+        when(loanRepository.findById(1L)).thenReturn(Optional.of(loanEntity));
+        when(loanRepository.markLoanAsOverdue(1L, today)).thenReturn(1);
+        when(globalRatesService.findByRateName("tarifa diaria de multa")).thenReturn(globalRatesEntity);
+        when(fineService.calculateLatePaymentPenalty(loanEntity.getReturnDate(), today, globalRatesEntity.getDailyRateValue()))
+                .thenReturn(globalRatesEntity.getDailyRateValue());
+        when(fineRepository.insertLateFineForLoan(1L, globalRatesEntity.getDailyRateValue(), false, globalRatesEntity.getDailyRateValue(), null))
+                .thenReturn(1);
+
+        // When
+        loanService.markLoanAsOverdue(1L);
+
+        // Then
+        verify(customerRepository).adjustObligations(1L, -1, 1, 0, 1);
+        verify(customerRepository).restrictCustomerOfLoan(1L);
+    }
+
+    @Test
+    void whenMarkLoanAsOverdueAlreadyProcessed_thenDoNothing() {
+        // Given
+        LocalDate today = LocalDate.now();
+        when(loanRepository.findById(1L)).thenReturn(Optional.of(loanEntity));
+        when(loanRepository.markLoanAsOverdue(1L, today)).thenReturn(0);
+
+        // When
+        loanService.markLoanAsOverdue(1L);
+
+        // Then
+        verifyNoInteractions(fineRepository, customerRepository, globalRatesService);
+    }
+
+    // ==================== processOverdueLoans ====================
+
+    @Test
+    void whenProcessOverdueLoans_thenRunBatchWithDailyFineRate() {
+        // Given
+        when(schedulerLockService.holdJobLease(LoanService.OVERDUE_LOANS_JOB)).thenReturn(true);
+        when(globalRatesService.findByRateName("tarifa diaria de multa")).thenReturn(globalRatesEntity);
+        LocalDate today = LocalDate.now();
+
+        // When
+        loanService.processOverdueLoans();
+
+        // Then
+        verify(overdueLoanBatchService).run(LoanService.OVERDUE_LOANS_JOB, today, false, globalRatesEntity.getDailyRateValue(), null);
+        verify(loanRepository, never()).findAll();
+    }
+
+    @Test
+    void whenProcessOverdueLoansWithAccrueOnReadAndCap_thenInsertAccruingFines() {
+        // Given
+        ReflectionTestUtils.setField(loanService, "accrueLateFinesOnRead", true);
+        ReflectionTestUtils.setField(loanService, "lateFineCap", 50000);
+        when(schedulerLockService.holdJobLease(LoanService.OVERDUE_LOANS_JOB)).thenReturn(true);
+        when(globalRatesService.findByRateName("tarifa diaria de multa")).thenReturn(globalRatesEntity);
+        LocalDate today = LocalDate.now();
+
+        // When
+        loanService.processOverdueLoans();
+
+        // Then
+        verify(overdueLoanBatchService).run(LoanService.OVERDUE_LOANS_JOB, today, true, globalRatesEntity.getDailyRateValue(), 50000);
+    }
+
+    @Test
+    void whenProcessOverdueLoansWithoutFineRate_thenDoNothing() {
+        // Given
+        when(schedulerLockService.holdJobLease(LoanService.OVERDUE_LOANS_JOB)).thenReturn(true);
+        when(globalRatesService.findByRateName("tarifa diaria de multa")).thenReturn(null);
+
+        // When
+        loanService.processOverdueLoans();
+
+        // Then
+        verifyNoInteractions(fineRepository, customerRepository, loanRepository, overdueLoanBatchService);
+    }
+
+    @Test
+    void whenProcessOverdueLoansWithoutLease_thenSkipRun() {
+        // Given
+        when(schedulerLockService.holdJobLease(LoanService.OVERDUE_LOANS_JOB)).thenReturn(false);
+
+        // When
+        loanService.processOverdueLoans();
+
+        // Then
+        verifyNoInteractions(globalRatesService, fineRepository, customerRepository, loanRepository, overdueLoanBatchService);
     }
 
     // ========== MÉTODOS PARA REPORTES (ÉPICA 6) ==========
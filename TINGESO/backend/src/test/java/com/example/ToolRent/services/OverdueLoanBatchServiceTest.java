@@ -0,0 +1,211 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.entities.BatchCheckpointEntity;
+import com.example.ToolRent.repositories.BatchCheckpointRepository;
+import com.example.ToolRent.repositories.CustomerRepository;
+import com.example.ToolRent.repositories.FineRepository;
+import com.example.ToolRent.repositories.LoanRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class OverdueLoanBatchServiceTest {
+
+    @Mock
+    private LoanRepository loanRepository;
+
+    @Mock
+    private FineRepository fineRepository;
+
+    @Mock
+    private CustomerRepository customerRepository;
+
+    @Mock
+    private BatchCheckpointRepository batchCheckpointRepository;
+
+    @Mock
+    private SchedulerLockService schedulerLockService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private OverdueLoanBatchService overdueLoanBatchService;
+
+    private final LocalDate today = LocalDate.now();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(overdueLoanBatchService, "chunkSize", 10L);
+        ReflectionTestUtils.setField(overdueLoanBatchService, "parallelism", 1);
+    }
+
+    private List<Object[]> idRange(long minId, long maxId) {
+        return Collections.singletonList(new Object[]{minId, maxId});
+    }
+
+    @Test
+    void whenProcessChunk_thenRunBulkStatementsInOrderInsideOneTransaction() {
+        // When
+        overdueLoanBatchService.processChunk(today, 1L, 10L, false, 2000, null);
+
+        // Then
+        InOrder inOrder = inOrder(transactionManager, fineRepository, customerRepository, loanRepository);
+        inOrder.verify(transactionManager).getTransaction(any());
+        inOrder.verify(customerRepository).countOverdueLoansInObligations(today, 1L, 10L);
+        inOrder.verify(fineRepository).insertLateFinesForOverdueLoans(today, 1L, 10L, false, 2000, null);
+        inOrder.verify(customerRepository).restrictCustomersWithOverdueLoans(today, 1L, 10L);
+        inOrder.verify(loanRepository).markOverdueLoans(today, 1L, 10L);
+        inOrder.verify(fineRepository).recalculateLateFines(today, 1L, 10L, 2000);
+        inOrder.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void whenRun_thenProcessEveryChunkAndCompleteCheckpoint() {
+        // Given
+        ReflectionTestUtils.setField(overdueLoanBatchService, "parallelism", 3);
+        when(loanRepository.findLoanIdRange()).thenReturn(idRange(1L, 25L));
+        when(batchCheckpointRepository.findById("job")).thenReturn(Optional.empty());
+        when(schedulerLockService.holdJobLease("job")).thenReturn(true);
+
+        // When
+        boolean completed = overdueLoanBatchService.run("job", today, false, 2000, null);
+
+        // Then
+        assertThat(completed).isTrue();
+        verify(loanRepository).markOverdueLoans(today, 1L, 10L);
+        verify(loanRepository).markOverdueLoans(today, 11L, 20L);
+        verify(loanRepository).markOverdueLoans(today, 21L, 25L);
+        verify(transactionManager, times(3)).commit(any());
+
+        ArgumentCaptor<BatchCheckpointEntity> captor = ArgumentCaptor.forClass(BatchCheckpointEntity.class);
+        verify(batchCheckpointRepository, atLeastOnce()).save(captor.capture());
+        BatchCheckpointEntity last = captor.getValue();
+        assertThat(last.getStatus()).isEqualTo(OverdueLoanBatchService.COMPLETED);
+        assertThat(last.getLastProcessedId()).isEqualTo(25L);
+    }
+
+    @Test
+    void whenCheckpointInProgressToday_thenResumeAfterLastProcessedId() {
+        // Given
+        BatchCheckpointEntity checkpoint = new BatchCheckpointEntity("job", today, 10L,
+                OverdueLoanBatchService.IN_PROGRESS, null);
+        when(loanRepository.findLoanIdRange()).thenReturn(idRange(1L, 25L));
+        when(batchCheckpointRepository.findById("job")).thenReturn(Optional.of(checkpoint));
+        when(schedulerLockService.holdJobLease("job")).thenReturn(true);
+
+        // When
+        overdueLoanBatchService.run("job", today, false, 2000, null);
+
+        // Then
+        verify(loanRepository, never()).markOverdueLoans(today, 1L, 10L);
+        verify(loanRepository).markOverdueLoans(today, 11L, 20L);
+        verify(loanRepository).markOverdueLoans(today, 21L, 25L);
+    }
+
+    @Test
+    void whenCheckpointFromAnotherDay_thenStartFromFirstId() {
+        // Given
+        BatchCheckpointEntity checkpoint = new BatchCheckpointEntity("job", today.minusDays(1), 10L,
+                OverdueLoanBatchService.IN_PROGRESS, null);
+        when(loanRepository.findLoanIdRange()).thenReturn(idRange(1L, 15L));
+        when(batchCheckpointRepository.findById("job")).thenReturn(Optional.of(checkpoint));
+        when(schedulerLockService.holdJobLease("job")).thenReturn(true);
+
+        // When
+        overdueLoanBatchService.run("job", today, false, 2000, null);
+
+        // Then
+        verify(loanRepository).markOverdueLoans(today, 1L, 10L);
+        verify(loanRepository).markOverdueLoans(today, 11L, 15L);
+    }
+
+    @Test
+    void whenChunkFails_thenCheckpointStaysInProgress() {
+        // Given
+        when(loanRepository.findLoanIdRange()).thenReturn(idRange(1L, 25L));
+        when(batchCheckpointRepository.findById("job")).thenReturn(Optional.empty());
+        when(schedulerLockService.holdJobLease("job")).thenReturn(true);
+        lenient().doThrow(new RuntimeException("timeout")).when(loanRepository).markOverdueLoans(today, 11L, 20L);
+
+        // When
+        boolean completed = overdueLoanBatchService.run("job", today, false, 2000, null);
+
+        // Then
+        assertThat(completed).isFalse();
+        ArgumentCaptor<BatchCheckpointEntity> captor = ArgumentCaptor.forClass(BatchCheckpointEntity.class);
+        verify(batchCheckpointRepository, atLeastOnce()).save(captor.capture());
+        BatchCheckpointEntity last = captor.getValue();
+        assertThat(last.getStatus()).isEqualTo(OverdueLoanBatchService.IN_PROGRESS);
+        assertThat(last.getLastProcessedId()).isEqualTo(10L);
+    }
+
+    @Test
+    void whenLeaseIsLost_thenStopProcessing() {
+        // Given
+        when(loanRepository.findLoanIdRange()).thenReturn(idRange(1L, 25L));
+        when(batchCheckpointRepository.findById("job")).thenReturn(Optional.empty());
+        when(schedulerLockService.holdJobLease("job")).thenReturn(false);
+
+        // When
+        boolean completed = overdueLoanBatchService.run("job", today, false, 2000, null);
+
+        // Then
+        assertThat(completed).isFalse();
+        verify(loanRepository, never()).markOverdueLoans(any(), anyLong(), anyLong());
+        verify(fineRepository, never()).insertLateFinesForOverdueLoans(any(), anyLong(), anyLong(), anyBoolean(), anyInt(), any());
+    }
+
+    @Test
+    void whenLoansTableIsEmpty_thenDoNothing() {
+        // Given
+        when(loanRepository.findLoanIdRange()).thenReturn(Collections.singletonList(new Object[]{null, null}));
+
+        // When
+        boolean completed = overdueLoanBatchService.run("job", today, false, 2000, null);
+
+        // Then
+        assertThat(completed).isTrue();
+        verify(batchCheckpointRepository, never()).save(any());
+        verify(schedulerLockService, never()).holdJobLease("job");
+    }
+
+    @Test
+    void whenChunksCompleteOutOfOrder_thenConfirmOnlyContiguousChunks() {
+        // Given
+        List<long[]> chunks = List.of(new long[]{1, 10}, new long[]{11, 20}, new long[]{21, 25});
+        OverdueLoanBatchService.ChunkProgress progress = new OverdueLoanBatchService.ChunkProgress(chunks, 0L);
+
+        // When / Then
+        assertThat(progress.complete(1)).isNull();
+        assertThat(progress.complete(0)).isEqualTo(20L);
+        assertThat(progress.complete(2)).isEqualTo(25L);
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.repositories.SchedulerLockRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class SchedulerLockServiceTest {
+
+    @Mock
+    private SchedulerLockRepository schedulerLockRepository;
+
+    @InjectMocks
+    private SchedulerLockService schedulerLockService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(schedulerLockService, "nodeId", "node-a");
+        ReflectionTestUtils.setField(schedulerLockService, "leaseSeconds", 30L);
+        ReflectionTestUtils.setField(schedulerLockService, "jobLeaseSeconds", 600L);
+    }
+
+    @Test
+    void whenLeaseIsRenewed_thenReturnTrueWithoutInsert() {
+        // Given
+        when(schedulerLockRepository.acquire("job", "node-a", 30L)).thenReturn(1);
+
+        // When
+        boolean acquired = schedulerLockService.tryAcquire("job");
+
+        // Then
+        assertThat(acquired).isTrue();
+        verify(schedulerLockRepository, never()).insert(any(), any(), anyLong());
+    }
+
+    @Test
+    void whenLeaseRowDoesNotExist_thenInsertIt() {
+        // Given
+        when(schedulerLockRepository.acquire(eq("job"), eq("node-a"), anyLong())).thenReturn(0);
+        when(schedulerLockRepository.existsById("job")).thenReturn(false);
+        when(schedulerLockRepository.insert("job", "node-a", 5L)).thenReturn(1);
+
+        // When
+        boolean acquired = schedulerLockService.tryAcquire("job", Duration.ofSeconds(5));
+
+        // Then
+        assertThat(acquired).isTrue();
+    }
+
+    @Test
+    void whenAnotherNodeInsertsFirst_thenReturnFalse() {
+        // Given
+        when(schedulerLockRepository.acquire(eq("job"), eq("node-a"), anyLong())).thenReturn(0);
+        when(schedulerLockRepository.existsById("job")).thenReturn(false);
+        when(schedulerLockRepository.insert(eq("job"), eq("node-a"), anyLong()))
+                .thenThrow(new DataIntegrityViolationException("duplicate key"));
+
+        // When
+        boolean acquired = schedulerLockService.tryAcquire("job");
+
+        // Then
+        assertThat(acquired).isFalse();
+    }
+
+    @Test
+    void whenAnotherNodeHoldsLease_thenReturnFalse() {
+        // Given
+        when(schedulerLockRepository.acquire(eq("job"), eq("node-a"), anyLong())).thenReturn(0);
+        when(schedulerLockRepository.existsById("job")).thenReturn(true);
+
+        // When
+        boolean acquired = schedulerLockService.tryAcquire("job");
+
+        // Then
+        assertThat(acquired).isFalse();
+        verify(schedulerLockRepository, never()).insert(any(), any(), anyLong());
+    }
+
+    @Test
+    void whenHoldJobLeaseAgainSoon_thenRenewOnlyOnceWithJobLease() {
+        // Given
+        when(schedulerLockRepository.acquire("job", "node-a", 600L)).thenReturn(1);
+
+        // When
+        boolean first = schedulerLockService.holdJobLease("job");
+        boolean second = schedulerLockService.holdJobLease("job");
+
+        // Then: la segunda llamada esta dentro del primer tercio del arriendo y no va a la base de datos
+        assertThat(first).isTrue();
+        assertThat(second).isTrue();
+        verify(schedulerLockRepository, times(1)).acquire("job", "node-a", 600L);
+    }
+
+    @Test
+    void whenJobLeaseIsLost_thenHoldJobLeaseReturnsFalse() {
+        // Given: el arriendo se renovo hace mas de un tercio de su duracion y otro nodo lo tomo
+        ReflectionTestUtils.setField(schedulerLockService, "jobLeaseSeconds", 0L);
+        when(schedulerLockRepository.acquire("job", "node-a", 0L)).thenReturn(1, 0);
+        when(schedulerLockRepository.existsById("job")).thenReturn(true);
+        schedulerLockService.holdJobLease("job");
+
+        // When
+        boolean held = schedulerLockService.holdJobLease("job");
+
+        // Then
+        assertThat(held).isFalse();
+    }
+
+    @Test
+    void whenReleaseAll_thenReleaseHeldLeases() {
+        // Given
+        when(schedulerLockRepository.acquire(eq("job"), eq("node-a"), anyLong())).thenReturn(1);
+        schedulerLockService.tryAcquire("job");
+
+        // When
+        schedulerLockService.releaseAll();
+
+        // Then
+        verify(schedulerLockRepository).release("job", "node-a");
+    }
+
+    @Test
+    void whenNodeIdIsBlank_thenGenerateOne() {
+        // Given
+        ReflectionTestUtils.setField(schedulerLockService, "nodeId", "");
+
+        // When
+        String nodeId = schedulerLockService.getNodeId();
+
+        // Then
+        assertThat(nodeId).isNotBlank();
+        assertThat(schedulerLockService.getNodeId()).isEqualTo(nodeId);
+    }
+
+    @Test
+    void whenNameIsBlank_thenThrowException() {
+        assertThatThrownBy(() -> schedulerLockService.tryAcquire(" "))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("El nombre del proceso no puede ser vacío");
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.dto.StockAtDateDTO;
+import com.example.ToolRent.entities.CategoryEntity;
+import com.example.ToolRent.entities.KardexEntity;
+import com.example.ToolRent.entities.StockSnapshotEntity;
+import com.example.ToolRent.entities.ToolEntity;
+import com.example.ToolRent.entities.ToolsInventoryEntity;
+import com.example.ToolRent.repositories.CategoryRepository;
+import com.example.ToolRent.repositories.KardexRepository;
+import com.example.ToolRent.repositories.StockSnapshotRepository;
+import com.example.ToolRent.repositories.ToolRepository;
+import com.example.ToolRent.repositories.ToolsInventoryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+//Sin transaccion de prueba: las fotos se guardan en una transaccion por herramienta del inventario
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({StockHistoryService.class, KardexArchiveStore.class, SchedulerLockService.class})
+class StockHistoryServiceTest {
+
+    @Autowired
+    private StockHistoryService stockHistoryService;
+
+    @Autowired
+    private StockSnapshotRepository stockSnapshotRepository;
+
+    @Autowired
+    private KardexRepository kardexRepository;
+
+    @Autowired
+    private ToolRepository toolRepository;
+
+    @Autowired
+    private ToolsInventoryRepository toolsInventoryRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    private ToolsInventoryEntity drillInventory;
+    private ToolsInventoryEntity sawInventory;
+
+    /*
+    Historial del taladro (3 unidades):
+    10/01 ingreso x3, 05/02 prestamo, 20/02 devolucion, 03/03 prestamo,
+    10/03 devolucion dañada (reparacion + devolucion), 14/03 baja, 25/03 prestamo
+     */
+    @BeforeEach
+    void setUp() {
+        CategoryEntity category = categoryRepository.save(new CategoryEntity(null, "herramientas eléctricas"));
+        ToolEntity drill = toolRepository.save(new ToolEntity(null, "taladro", category, "disponible", 0L));
+        drillInventory = toolsInventoryRepository.save(
+                new ToolsInventoryEntity(null, "taladro", "herramientas eléctricas", 2, 1, 50000, 5000, 0L));
+        sawInventory = toolsInventoryRepository.save(
+                new ToolsInventoryEntity(null, "sierra", "herramientas eléctricas", 0, 0, 80000, 7000, 0L));
+
+        kardexRepository.saveAll(List.of(
+                movement("ingreso", LocalDate.of(2025, 1, 10), drill),
+                movement("ingreso", LocalDate.of(2025, 1, 10), drill),
+                movement("ingreso", LocalDate.of(2025, 1, 10), drill),
+                movement("préstamo", LocalDate.of(2025, 2, 5), drill),
+                movement("devolución", LocalDate.of(2025, 2, 20), drill),
+                movement("préstamo", LocalDate.of(2025, 3, 3), drill),
+                movement("reparación", LocalDate.of(2025, 3, 10), drill),
+                movement("devolución", LocalDate.of(2025, 3, 10), drill),
+                movement("baja", LocalDate.of(2025, 3, 14), drill),
+                movement("préstamo", LocalDate.of(2025, 3, 25), drill)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        stockSnapshotRepository.deleteAll();
+        kardexRepository.deleteAll();
+        toolRepository.deleteAll();
+        toolsInventoryRepository.deleteAll();
+        categoryRepository.deleteAll();
+    }
+
+    private KardexEntity movement(String type, LocalDate date, ToolEntity tool) {
+        return new KardexEntity(null, type, date, "testuser", tool, 1);
+    }
+
+    @Test
+    void whenEnsureSnapshots_thenSaveFirstDayOfEachMonthAfterFirstMovement() {
+        // When
+        int created = stockHistoryService.ensureSnapshots(LocalDate.of(2025, 4, 15));
+
+        // Then: la sierra no tiene movimientos y no tiene fotos
+        assertThat(created).isEqualTo(3);
+        assertThat(stockSnapshotRepository.findAll())
+                .extracting(StockSnapshotEntity::getSnapshotDate, StockSnapshotEntity::getTotalTools, StockSnapshotEntity::getCurrentStock)
+                .containsExactlyInAnyOrder(
+                        tuple(LocalDate.of(2025, 2, 1), 3, 3),
+                        tuple(LocalDate.of(2025, 3, 1), 3, 3),
+                        tuple(LocalDate.of(2025, 4, 1), 2, 1));
+        //Volver a llamar no repite las fotos
+        assertThat(stockHistoryService.ensureSnapshots(LocalDate.of(2025, 4, 15))).isZero();
+    }
+
+    @Test
+    void whenInventoryHasUnitsMissingFromKardex_thenSnapshotsFollowInventory() {
+        // Given: una unidad del taladro se registro antes de existir el kardex
+        drillInventory.setTotalTools(3);
+        drillInventory.setCurrentStock(2);
+        drillInventory = toolsInventoryRepository.save(drillInventory);
+
+        // When
+        int created = stockHistoryService.ensureSnapshots(LocalDate.of(2025, 4, 15));
+
+        // Then: las fotos se obtienen hacia atras desde el inventario y el mes del primer movimiento guarda la diferencia
+        assertThat(created).isEqualTo(4);
+        assertThat(stockSnapshotRepository.findAll())
+                .extracting(StockSnapshotEntity::getSnapshotDate, StockSnapshotEntity::getTotalTools, StockSnapshotEntity::getCurrentStock)
+                .containsExactlyInAnyOrder(
+                        tuple(LocalDate.of(2025, 1, 1), 1, 1),
+                        tuple(LocalDate.of(2025, 2, 1), 4, 4),
+                        tuple(LocalDate.of(2025, 3, 1), 4, 4),
+                        tuple(LocalDate.of(2025, 4, 1), 3, 2));
+        StockAtDateDTO beforeFirstMovement = stockHistoryService.getStockAt(drillInventory.getId(), LocalDate.of(2025, 1, 9));
+        assertThat(beforeFirstMovement.getTotalTools()).isEqualTo(1);
+        assertThat(beforeFirstMovement.getCurrentStock()).isEqualTo(1);
+    }
+
+    @Test
+    void whenSavedSnapshotDriftsFromInventory_thenNewSnapshotsFollowInventory() {
+        // Given: foto de febrero calculada desde cero y un inventario con una unidad mas que el kardex
+        stockSnapshotRepository.save(new StockSnapshotEntity(null, drillInventory, LocalDate.of(2025, 2, 1), 3, 3));
+        drillInventory.setTotalTools(3);
+        drillInventory.setCurrentStock(2);
+        drillInventory = toolsInventoryRepository.save(drillInventory);
+
+        // When
+        int created = stockHistoryService.ensureSnapshots(LocalDate.of(2025, 4, 15));
+
+        // Then: la foto guardada no se toca, las nuevas cuadran con el inventario
+        assertThat(created).isEqualTo(2);
+        assertThat(stockSnapshotRepository.findAll())
+                .extracting(StockSnapshotEntity::getSnapshotDate, StockSnapshotEntity::getTotalTools, StockSnapshotEntity::getCurrentStock)
+                .containsExactlyInAnyOrder(
+                        tuple(LocalDate.of(2025, 2, 1), 3, 3),
+                        tuple(LocalDate.of(2025, 3, 1), 4, 4),
+                        tuple(LocalDate.of(2025, 4, 1), 3, 2));
+        StockAtDateDTO today = stockHistoryService.getStockAt(drillInventory.getId(), LocalDate.now());
+        assertThat(today.getTotalTools()).isEqualTo(3);
+        assertThat(today.getCurrentStock()).isEqualTo(2);
+    }
+
+    @Test
+    void whenGetStockAtWithSnapshots_thenReplayFromNearestSnapshot() {
+        // Given
+        stockHistoryService.ensureSnapshots(LocalDate.of(2025, 4, 15));
+
+        // When
+        StockAtDateDTO midMarch = stockHistoryService.getStockAt(drillInventory.getId(), LocalDate.of(2025, 3, 15));
+        StockAtDateDTO endOfFebruary = stockHistoryService.getStockAt(drillInventory.getId(), LocalDate.of(2025, 2, 28));
+
+        // Then
+        assertThat(midMarch.getSnapshotDate()).isEqualTo(LocalDate.of(2025, 3, 1));
+        assertThat(midMarch.getTotalTools()).isEqualTo(2);
+        assertThat(midMarch.getCurrentStock()).isEqualTo(2);
+        //El fin de febrero es la foto del 1 de marzo
+        assertThat(endOfFebruary.getSnapshotDate()).isEqualTo(LocalDate.of(2025, 3, 1));
+        assertThat(endOfFebruary.getTotalTools()).isEqualTo(3);
+        assertThat(endOfFebruary.getCurrentStock()).isEqualTo(3);
+    }
+
+    @Test
+    void whenGetStockAtWithoutSnapshots_thenReplayFromFirstMovement() {
+        // When
+        StockAtDateDTO midMarch = stockHistoryService.getStockAt(drillInventory.getId(), LocalDate.of(2025, 3, 15));
+        StockAtDateDTO beforeFirstMovement = stockHistoryService.getStockAt(drillInventory.getId(), LocalDate.of(2025, 1, 9));
+        StockAtDateDTO today = stockHistoryService.getStockAt(drillInventory.getId(), LocalDate.now());
+
+        // Then
+        assertThat(midMarch.getSnapshotDate()).isNull();
+        assertThat(midMarch.getTotalTools()).isEqualTo(2);
+        assertThat(midMarch.getCurrentStock()).isEqualTo(2);
+        assertThat(beforeFirstMovement.getTotalTools()).isZero();
+        assertThat(beforeFirstMovement.getCurrentStock()).isZero();
+        //Hoy coincide con el inventario actual
+        assertThat(today.getTotalTools()).isEqualTo(drillInventory.getTotalTools());
+        assertThat(today.getCurrentStock()).isEqualTo(drillInventory.getCurrentStock());
+    }
+
+    @Test
+    void whenReplayRepairedTool_thenReturnsToStock() {
+        // When
+        int[] stock = StockHistoryService.replay(3, 1, List.of(
+                new Object[]{"reparación", 1L}, new Object[]{"devolución", 1L}, new Object[]{"reingreso", 1L}));
+
+        // Then
+        assertThat(stock).containsExactly(3, 2);
+    }
+
+    @Test
+    void whenGetStockAtFutureDate_thenThrowException() {
+        // When & Then
+        assertThatThrownBy(() -> stockHistoryService.getStockAt(sawInventory.getId(), LocalDate.now().plusDays(1)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("La fecha no puede ser posterior a hoy");
+    }
+
+    @Test
+    void whenGetStockAtUnknownInventory_thenThrowException() {
+        // When & Then
+        assertThatThrownBy(() -> stockHistoryService.getStockAt(999L, LocalDate.of(2025, 3, 1)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Inventario de herramienta con ID 999 no encontrado");
+    }
+}
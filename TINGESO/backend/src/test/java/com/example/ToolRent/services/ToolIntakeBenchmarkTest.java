@@ -0,0 +1,118 @@
+package com.example.ToolRent.services;
+
+import com.example.ToolRent.entities.CategoryEntity;
+import com.example.ToolRent.entities.ToolEntity;
+import com.example.ToolRent.repositories.CategoryRepository;
+import com.example.ToolRent.repositories.KardexRepository;
+import com.example.ToolRent.repositories.KardexRollupRepository;
+import com.example.ToolRent.repositories.ToolRepository;
+import com.example.ToolRent.repositories.ToolsInventoryRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+Benchmark del ingreso masivo de herramientas (saveTool) con ids de secuencia y lotes JDBC.
+No corre con mvn test, se ejecuta con: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+@DataJpaTest
+@ActiveProfiles("test")
+//Sin el log de cada sentencia SQL, que en este volumen domina el tiempo
+@TestPropertySource(properties = "logging.level.org.hibernate.SQL=INFO")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({ToolService.class, KardexService.class, KardexWriter.class, KardexRollupService.class, KardexStreamService.class,
+        KardexArchiveStore.class, CategoryService.class,
+        ToolIntakeBenchmarkTest.MetricsConfig.class})
+class ToolIntakeBenchmarkTest {
+
+    private static final int UNITS = 5_000;
+    private static final int WARMUP_ROUNDS = 6;
+
+    @TestConfiguration
+    static class MetricsConfig {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Autowired
+    private ToolService toolService;
+
+    @Autowired
+    private ToolRepository toolRepository;
+
+    @Autowired
+    private ToolsInventoryRepository toolsInventoryRepository;
+
+    @Autowired
+    private KardexRepository kardexRepository;
+
+    @Autowired
+    private KardexRollupRepository kardexRollupRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void tearDown() {
+        kardexRollupRepository.deleteAllInBatch();
+        kardexRepository.deleteAllInBatch();
+        toolRepository.deleteAllInBatch();
+        toolsInventoryRepository.deleteAllInBatch();
+        categoryRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void whenIntakeThousandsOfUnits_thenFinishWellUnderASecond() {
+        // Given
+        CategoryEntity category = categoryRepository.save(new CategoryEntity(null, "Herramientas Eléctricas"));
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        //Calentamiento: carga de clases, planes de consulta y compilacion JIT de la ruta de ingreso
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            String name = "sierra " + i;
+            transaction.executeWithoutResult(status -> toolService.saveTool(
+                    new ToolEntity(null, name, category, null, 0L), UNITS, 50000, 5000));
+        }
+
+        // When
+        long start = System.nanoTime();
+        List<ToolEntity> tools = transaction.execute(status -> toolService.saveTool(
+                new ToolEntity(null, "taladro", category, null, 0L), UNITS, 50000, 5000));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("Ingreso de %d unidades (herramientas + movimientos): %d ms%n", UNITS, elapsedMs);
+
+        // Then
+        assertThat(tools).hasSize(UNITS);
+        assertThat(toolRepository.count()).isEqualTo(UNITS * (WARMUP_ROUNDS + 1));
+        assertThat(kardexRepository.count()).isEqualTo(UNITS * (WARMUP_ROUNDS + 1));
+        assertThat(toolsInventoryRepository.findByNameAndCategory("taladro", "Herramientas Eléctricas").getTotalTools())
+                .isEqualTo(UNITS);
+        assertThat(elapsedMs).isLessThan(1_000);
+    }
+}
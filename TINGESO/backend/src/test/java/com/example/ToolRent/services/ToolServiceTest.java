@@ -4,7 +4,6 @@ import com.example.ToolRent.entities.CategoryEntity;
 import com.example.ToolRent.entities.KardexEntity;
 import com.example.ToolRent.entities.ToolEntity;
 import com.example.ToolRent.entities.ToolsInventoryEntity;
-import com.example.ToolRent.repositories.KardexRepository;
 import com.example.ToolRent.repositories.ToolRepository;
 import com.example.ToolRent.repositories.ToolsInventoryRepository;
 
@@ -14,6 +13,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -22,6 +22,7 @@ import java.util.Optional;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -33,9 +34,6 @@ public class ToolServiceTest {
     @Mock
     private ToolsInventoryRepository toolsInventoryRepository;
 
-    @Mock
-    private KardexRepository kardexRepository;
-
     @Mock
     private KardexService kardexService;
 
@@ -550,8 +548,8 @@ public class ToolServiceTest {
         when(toolsInventoryRepository.findByName("taladro")).thenReturn(inventoryEntity);
         when(toolsInventoryRepository.findByNameAndCategory("taladro", "Electricidad"))
                 .thenReturn(inventoryEntity);
-        when(toolRepository.save(any())).thenReturn(toolEntity);
-        when(kardexService.registerMovement(eq("ingreso"), any())).thenReturn(new KardexEntity());
+        when(toolRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(kardexService.buildMovement(eq("ingreso"), any())).thenReturn(new KardexEntity());
 
         //When
         List<ToolEntity> result = toolService.saveRegisteredTool(toolEntity, 3);
@@ -562,8 +560,10 @@ public class ToolServiceTest {
         assertThat(inventoryEntity.getTotalTools()).isEqualTo(13);
         assertThat(inventoryEntity.getCurrentStock()).isEqualTo(11);
         verify(toolsInventoryRepository).save(inventoryEntity);
-        verify(toolRepository, times(3)).save(any());
-        verify(kardexRepository, times(3)).save(any());
+        verify(toolRepository).saveAll(anyList());
+        verify(toolRepository, never()).save(any());
+        verify(kardexService, times(3)).buildMovement(eq("ingreso"), any());
+        verify(kardexService).registerMovements(anyList());
     }
 
     @Test
@@ -604,8 +604,8 @@ public class ToolServiceTest {
         //Given
         when(categoryService.isCategoryExists("Electricidad")).thenReturn(true);
         when(toolsInventoryRepository.findByName("taladro")).thenReturn(null);
-        when(toolRepository.save(any())).thenReturn(toolEntity);
-        when(kardexService.registerMovement(eq("ingreso"), any())).thenReturn(new KardexEntity());
+        when(toolRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(kardexService.buildMovement(eq("ingreso"), any())).thenReturn(new KardexEntity());
 
         //When
         List<ToolEntity> result = toolService.saveTool(toolEntity, 2, 50000, 5000);
@@ -614,8 +614,10 @@ public class ToolServiceTest {
         assertThat(result).isNotNull();
         assertThat(result).hasSize(2);
         verify(toolsInventoryRepository).save(any());
-        verify(toolRepository, times(2)).save(any());
-        verify(kardexRepository, times(2)).save(any());
+        verify(toolRepository).saveAll(anyList());
+        verify(kardexService, times(2)).buildMovement(eq("ingreso"), any());
+        verify(kardexService).registerMovements(anyList());
+        assertThat(result).extracting(ToolEntity::getName).containsOnly("taladro");
     }
 
     @Test
@@ -673,8 +675,7 @@ public class ToolServiceTest {
     void whenBorrowedToolWithValidId_thenUpdateStatusAndDecreaseStock() {
         //Given
         when(toolRepository.findById(1L)).thenReturn(Optional.of(toolEntity));
-        when(toolsInventoryRepository.findByNameAndCategory("taladro", "Electricidad"))
-                .thenReturn(inventoryEntity);
+        when(toolsInventoryRepository.reserveStock("taladro", "Electricidad")).thenReturn(1);
         when(toolRepository.save(any())).thenReturn(toolEntity);
 
         //When
@@ -683,11 +684,25 @@ public class ToolServiceTest {
         //Then
         assertThat(result).isNotNull();
         assertThat(result.getStatus()).isEqualTo("prestada");
-        assertThat(inventoryEntity.getCurrentStock()).isEqualTo(7);
-        verify(toolsInventoryRepository).save(inventoryEntity);
+        verify(toolsInventoryRepository).reserveStock("taladro", "Electricidad");
+        verify(toolsInventoryRepository, never()).save(any());
         verify(toolRepository).save(toolEntity);
     }
 
+    @Test
+    void whenBorrowedToolWithoutStock_thenThrowExceptionAndKeepStatus() {
+        //Given
+        when(toolRepository.findById(1L)).thenReturn(Optional.of(toolEntity));
+        when(toolsInventoryRepository.reserveStock("taladro", "Electricidad")).thenReturn(0);
+
+        //When & Then
+        assertThatThrownBy(() -> toolService.borrowedTool(1L))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("El stock de la herramienta es insuficiente");
+        assertThat(toolEntity.getStatus()).isEqualTo("disponible");
+        verify(toolRepository, never()).save(any());
+    }
+
     @Test
     void whenBorrowedToolNotFound_thenThrowException() {
         //Given
@@ -699,6 +714,37 @@ public class ToolServiceTest {
                 .hasMessageContaining("Herramienta con ID 99 no encontrada");
     }
 
+    // ==================== borrowAvailableTool ====================
+
+    @Test
+    void whenBorrowAvailableTool_thenLockAnyUnitAndBorrowIt() {
+        //Given
+        when(toolRepository.lockAvailableTool(eq("taladro"), eq("Electricidad"), any(Pageable.class)))
+                .thenReturn(List.of(toolEntity));
+        when(toolsInventoryRepository.reserveStock("taladro", "Electricidad")).thenReturn(1);
+
+        //When
+        ToolEntity result = toolService.borrowAvailableTool("taladro", "Electricidad");
+
+        //Then
+        assertThat(result.getStatus()).isEqualTo("prestada");
+        verify(toolRepository).save(toolEntity);
+        verify(toolRepository, never()).findById(any());
+    }
+
+    @Test
+    void whenBorrowAvailableToolWithoutFreeUnits_thenThrowException() {
+        //Given
+        when(toolRepository.lockAvailableTool(eq("taladro"), eq("Electricidad"), any(Pageable.class)))
+                .thenReturn(List.of());
+
+        //When & Then
+        assertThatThrownBy(() -> toolService.borrowAvailableTool("taladro", "Electricidad"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("No hay unidades disponibles de la herramienta taladro");
+        verify(toolsInventoryRepository, never()).reserveStock(any(), any());
+    }
+
     // ==================== availableTool ====================
 
     @Test
@@ -706,8 +752,6 @@ public class ToolServiceTest {
         //Given
         toolEntity.setStatus("prestada");
         when(toolRepository.findById(1L)).thenReturn(Optional.of(toolEntity));
-        when(toolsInventoryRepository.findByNameAndCategory("taladro", "Electricidad"))
-                .thenReturn(inventoryEntity);
         when(toolRepository.save(any())).thenReturn(toolEntity);
 
         //When
@@ -716,8 +760,8 @@ public class ToolServiceTest {
         //Then
         assertThat(result).isNotNull();
         assertThat(result.getStatus()).isEqualTo("disponible");
-        assertThat(inventoryEntity.getCurrentStock()).isEqualTo(9);
-        verify(toolsInventoryRepository).save(inventoryEntity);
+        verify(toolsInventoryRepository).releaseStock("taladro", "Electricidad", 1);
+        verify(toolsInventoryRepository, never()).save(any());
         verify(toolRepository).save(toolEntity);
     }
 
@@ -751,7 +795,7 @@ public class ToolServiceTest {
         assertThat(inventoryEntity.getTotalTools()).isEqualTo(9);
         verify(toolsInventoryRepository).save(inventoryEntity);
         verify(toolRepository).save(toolEntity);
-        verify(kardexRepository).save(any());
+        verify(kardexService).registerMovement(eq("baja"), any());
     }
 
     @Test
@@ -780,7 +824,7 @@ public class ToolServiceTest {
         assertThat(result).isNotNull();
         assertThat(result.getStatus()).isEqualTo("en reparacion");
         verify(toolRepository).save(toolEntity);
-        verify(kardexRepository).save(any());
+        verify(kardexService).registerMovement(eq("reparación"), any());
     }
 
     @Test
@@ -800,8 +844,6 @@ public class ToolServiceTest {
         //Given
         toolEntity.setStatus("en reparacion");
         when(toolRepository.findById(1L)).thenReturn(Optional.of(toolEntity));
-        when(toolsInventoryRepository.findByNameAndCategory("taladro", "Electricidad"))
-                .thenReturn(inventoryEntity);
         when(toolRepository.save(any())).thenReturn(toolEntity);
 
         //When
@@ -811,6 +853,8 @@ public class ToolServiceTest {
         assertThat(result).isNotNull();
         assertThat(result.getStatus()).isEqualTo("disponible");
         verify(toolRepository, times(2)).save(any());
+        verify(toolsInventoryRepository).releaseStock("taladro", "Electricidad", 1);
+        verify(kardexService).registerMovement("reingreso", toolEntity);
     }
 
     @Test
@@ -1,4 +1,4 @@
-import { useState, useEffect } from "react";
+import { useState, useEffect, useRef } from "react";
 import { useNavigate } from 'react-router-dom';
 import {
     Box,
@@ -20,6 +20,7 @@ import {
 } from "@mui/material";
 import { ArrowBack as ArrowBackIcon } from "@mui/icons-material";
 import loanService from "../services/loan.service";
+import { idempotencyKeyFor } from "../services/idempotency";
 import toolService from "../services/tool.service";
 import customerService from "../services/customer.service";
 
@@ -35,6 +36,8 @@ const AddLoan = () => {
     const [loading, setLoading] = useState(false);
     const [loadingData, setLoadingData] = useState(true);
     const [error, setError] = useState('');
+    // Clave del último envío del préstamo, se reutiliza si se reintenta
+    const idempotencyKeyRef = useRef(null);
 
     // Paso 1: Seleccionar Cliente
     const [searchRut, setSearchRut] = useState('');
@@ -194,7 +197,8 @@ const AddLoan = () => {
                 status: 'activo'
             };
 
-            await loanService.createLoan(loanData);
+            // Mismo formulario sin cambios => misma clave, el backend no duplica el préstamo
+            await loanService.createLoan(loanData, idempotencyKeyFor(idempotencyKeyRef, loanData));
 
             alert('Préstamo creado exitosamente');
             navigate('/loans');
@@ -1,4 +1,4 @@
-import { useState } from "react";
+import { useState, useRef } from "react";
 import { useNavigate } from 'react-router-dom';
 import {
     Box,
@@ -21,12 +21,15 @@ import {
 } from "@mui/material";
 import { ArrowBack as ArrowBackIcon } from "@mui/icons-material";
 import loanService from "../services/loan.service";
+import { idempotencyKeyFor } from "../services/idempotency";
 
 const LoanReturn = () => {
     const navigate = useNavigate();
 
     // Estados generales
     const [error, setError] = useState('');
+    // Clave de la última devolución enviada, se reutiliza al reintentar
+    const idempotencyKeyRef = useRef(null);
     const [step, setStep] = useState(0); // 0: buscar préstamo, 1: seleccionar estado
 
     // Paso 1: Búsqueda de préstamos
@@ -145,7 +148,8 @@ const LoanReturn = () => {
         setError('');
 
         try {
-            await loanService.returnLoan(selectedLoan.id, toolCondition);
+            const returnRequest = { loanId: selectedLoan.id, toolCondition };
+            await loanService.returnLoan(selectedLoan.id, toolCondition, idempotencyKeyFor(idempotencyKeyRef, returnRequest));
 
             alert('Préstamo devuelto exitosamente');
             navigate('/loans');
@@ -1,4 +1,4 @@
-import { useState, useEffect } from "react";
+import { useState, useEffect, useRef } from "react";
 import { useNavigate } from 'react-router-dom';
 import {
     Box,
@@ -26,6 +26,7 @@ import {
     Payment as PaymentIcon
 } from "@mui/icons-material";
 import fineService from "../services/fine.service";
+import { idempotencyKeyFor } from "../services/idempotency";
 
 const PayFine = () => {
     const navigate = useNavigate();
@@ -35,6 +36,8 @@ const PayFine = () => {
     const [loading, setLoading] = useState(false);
     const [loadingData, setLoadingData] = useState(true);
     const [error, setError] = useState('');
+    // Clave del último intento de pago, se reutiliza si se reintenta la misma multa
+    const idempotencyKeyRef = useRef(null);
 
     // Buscar multas
     const [searchTerm, setSearchTerm] = useState('');
@@ -130,7 +133,7 @@ const PayFine = () => {
         setError('');
 
         try {
-            await fineService.payFine(selectedFine);
+            await fineService.payFine(selectedFine, idempotencyKeyFor(idempotencyKeyRef, selectedFine));
 
             alert('Multa pagada exitosamente');
             navigate('/fines');
@@ -1,4 +1,5 @@
 import httpClient from "../http-common";
+import { idempotencyConfig } from "./idempotency";
 
 const getAll = () => {
     return httpClient.get('/api/v1/fines/');
@@ -36,8 +37,9 @@ const createFineForMinorDamage = (customer, loanId, fineValue) => {
     return httpClient.post(`/api/v1/fines/minorDamage/${loanId}/${fineValue}`, customer);
 }
 
-const payFine = fine => {
-    return httpClient.put('/api/v1/fines/', fine);
+// idempotencyKey: misma clave en los reintentos para que el pago no se registre dos veces
+const payFine = (fine, idempotencyKey) => {
+    return httpClient.put('/api/v1/fines/', fine, idempotencyConfig(idempotencyKey));
 }
 
 // RF6.2: Listar clientes con atrasos
@@ -0,0 +1,31 @@
+// Claves Idempotency-Key para las operaciones de prestamos y multas.
+// Se genera una clave por envio de formulario y se reutiliza en los reintentos,
+// asi el backend responde lo mismo en vez de crear otro prestamo o pago.
+
+// crypto.randomUUID solo existe en contextos seguros (https o localhost);
+// desde http://<ip> se arma un UUID v4 con crypto.getRandomValues.
+export const newIdempotencyKey = () => {
+    if (typeof crypto.randomUUID === 'function') {
+        return crypto.randomUUID();
+    }
+    const bytes = crypto.getRandomValues(new Uint8Array(16));
+    bytes[6] = (bytes[6] & 0x0f) | 0x40;
+    bytes[8] = (bytes[8] & 0x3f) | 0x80;
+    const hex = Array.from(bytes, b => b.toString(16).padStart(2, '0')).join('');
+    return `${hex.slice(0, 8)}-${hex.slice(8, 12)}-${hex.slice(12, 16)}-${hex.slice(16, 20)}-${hex.slice(20)}`;
+}
+
+// Devuelve la clave guardada en keyRef si la solicitud es la misma (reintento);
+// si cambio el contenido se genera una nueva, porque el backend rechaza
+// una clave repetida con otro cuerpo.
+export const idempotencyKeyFor = (keyRef, request) => {
+    const fingerprint = JSON.stringify(request);
+    if (!keyRef.current || keyRef.current.fingerprint !== fingerprint) {
+        keyRef.current = { key: newIdempotencyKey(), fingerprint };
+    }
+    return keyRef.current.key;
+}
+
+export const idempotencyConfig = idempotencyKey => (
+    idempotencyKey ? { headers: { 'Idempotency-Key': idempotencyKey } } : undefined
+);
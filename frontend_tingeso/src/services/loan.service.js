@@ -1,4 +1,5 @@
 import httpClient from "../http-common";
+import { idempotencyConfig } from "./idempotency";
 
 const getAll = () => {
     return httpClient.get('/api/v1/loans/');
@@ -24,12 +25,13 @@ const findLoanByCustomerRutAndStatus = (customerRut, status) => {
     return httpClient.get(`/api/v1/loans/customerRut/status/${customerRut}/${status}`);
 }
 
-const createLoan = loanData => {
-    return httpClient.post("/api/v1/loans/", loanData);
+// idempotencyKey: clave generada una vez por envio del formulario y reutilizada en los reintentos
+const createLoan = (loanData, idempotencyKey) => {
+    return httpClient.post("/api/v1/loans/", loanData, idempotencyConfig(idempotencyKey));
 }
 
-const returnLoan = (loanId, status) => {
-    return httpClient.put(`/api/v1/loans/${loanId}/${status}`);
+const returnLoan = (loanId, status, idempotencyKey) => {
+    return httpClient.put(`/api/v1/loans/${loanId}/${status}`, null, idempotencyConfig(idempotencyKey));
 }
 
 // ========== ENDPOINTS PARA REPORTES (ÉPICA 6) ==========